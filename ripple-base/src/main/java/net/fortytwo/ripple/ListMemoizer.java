@@ -1,21 +1,41 @@
 package net.fortytwo.ripple;
 
 import java.util.Comparator;
-
-// TODO: balancing operations
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
- * A space-efficient map using where the key values are linked lists.
+ * A map in which the keys are linked lists, compared element by element.
+ * If a hash function is given, lists are looked up by their hash codes, in expected constant time.
+ * Lists whose hash codes collide (all lists, if there is no hash function) are kept in balanced trees ordered by
+ * the comparator, so that no lookup takes more than a logarithmic number of list comparisons.
  *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
 public class ListMemoizer<T, M> {
-    private final Comparator<T> comparator;
-    private ListMemoizerHelper helper;
+    private final Comparator<Object> comparator;
+    private final ToIntFunction<ListNode<T>> hashFunction;
+
+    private final Map<Key, M> memos = new HashMap<>();
 
+    /**
+     * @param comparator a comparator for the elements of lists
+     */
     public ListMemoizer(final Comparator<T> comparator) {
-        this.comparator = comparator;
-        this.helper = null;
+        this(comparator, null);
+    }
+
+    /**
+     * @param comparator   a comparator for the elements of lists
+     * @param hashFunction a hash function for lists, which gives the same hash code to any two lists which
+     *                     are equal according to the comparator, or null if lists are not to be hashed
+     */
+    public ListMemoizer(final Comparator<T> comparator,
+                        final ToIntFunction<ListNode<T>> hashFunction) {
+        this.comparator = forKeys(comparator);
+        this.hashFunction = hashFunction;
     }
 
     public M get(final ListNode<T> list) {
@@ -23,9 +43,9 @@ public class ListMemoizer<T, M> {
             throw new IllegalArgumentException("null key");
         }
 
-        return (null == helper)
+        return list.isNil()
                 ? null
-                : helper.get(list);
+                : memos.get(createKey(list));
     }
 
     /**
@@ -46,167 +66,104 @@ public class ListMemoizer<T, M> {
             throw new IllegalArgumentException("the empty list cannot be memoized");
         }
 
-        if (null == helper) {
-            helper = new ListMemoizerHelper(list, memo);
-            return true;
-        } else {
-            return helper.put(list, memo);
-        }
+        return null == memos.putIfAbsent(createKey(list), memo);
     }
 
-    public boolean remove(final ListNode<T> list) {
+    /**
+     * Finds the value of a key, adding a new value if there is none, in a single lookup.
+     *
+     * @param list            the list-valued key
+     * @param mappingFunction computes a new value for the key, if it has none
+     * @return the existing value of the key, or else the new value
+     */
+    public M computeIfAbsent(final ListNode<T> list,
+                             final Function<? super ListNode<T>, ? extends M> mappingFunction) {
         if (null == list) {
             throw new IllegalArgumentException("null key");
         }
 
-        return !list.isNil() && null != helper && helper.remove(list);
+        if (list.isNil()) {
+            throw new IllegalArgumentException("the empty list cannot be memoized");
+        }
+
+        return memos.computeIfAbsent(createKey(list), k -> mappingFunction.apply(list));
     }
 
-    private class ListMemoizerHelper {
-        private final T first;
-
-        private M memo;
-        private ListMemoizerHelper left, right;
-        private ListMemoizerHelper rest;
-
-        public ListMemoizerHelper(final ListNode<T> list, final M memo) {
-            first = list.getFirst();
-            left = null;
-            right = null;
-
-            ListNode<T> r = list.getRest();
-            if (r.isNil()) {
-                rest = null;
-                this.memo = memo;
-            } else {
-                rest = new ListMemoizerHelper(r, memo);
-                this.memo = null;
-            }
+    public boolean remove(final ListNode<T> list) {
+        if (null == list) {
+            throw new IllegalArgumentException("null key");
         }
 
-        // TODO: remove empty branches
-        public boolean remove(final ListNode<T> list) {
-            int cmp = comparator.compare(this.first, list.getFirst());
-
-            if (0 == cmp) {
-                ListNode<T> r = list.getRest();
-
-                if (r.isNil()) {
-                    if (null != this.memo) {
-                        this.memo = null;
-                        return true;
-                    } else {
-                        return false;
-                    }
-                } else {
-                    return null != this.rest && this.rest.remove(r);
-                }
-            } else if (cmp < 0) {
-                return null != this.left && this.left.remove(list);
-            } else {
-                return null != this.right && this.right.remove(list);
-            }
-        }
+        return !list.isNil() && null != memos.remove(createKey(list));
+    }
 
-        public boolean put(final ListNode<T> list, final M memo) {
-            int cmp = comparator.compare(this.first, list.getFirst());
-
-            if (0 == cmp) {
-                ListNode<T> r = list.getRest();
-
-                if (r.isNil()) {
-                    if (null == this.memo) {
-                        this.memo = memo;
-                        return true;
-                    } else {
-                        return false;
-                    }
-                } else {
-                    if (null == this.rest) {
-                        this.rest = new ListMemoizerHelper(r, memo);
-                        return true;
-                    } else {
-                        return this.rest.put(r, memo);
-                    }
-                }
-            } else if (cmp < 0) {
-                if (null == this.left) {
-                    this.left = new ListMemoizerHelper(list, memo);
-                    return true;
-                } else {
-                    return this.left.put(list, memo);
-                }
-            } else {
-                if (null == this.right) {
-                    this.right = new ListMemoizerHelper(list, memo);
-                    return true;
-                } else {
-                    return this.right.put(list, memo);
-                }
-            }
-        }
+    /**
+     * @return the number of lists in the map
+     */
+    public int size() {
+        return memos.size();
+    }
 
-        public M get(final ListNode<T> list) {
-            //System.out.println("getting " + list);
-            if (list.isNil()) {
-                return null;
-            }
+    private Key createKey(final ListNode<T> list) {
+        return new Key(list, null == hashFunction ? 0 : hashFunction.applyAsInt(list), comparator);
+    }
+
+    // the elements of the lists of all keys of this map are of type T, although the keys themselves do not know it
+    @SuppressWarnings("unchecked")
+    private static <T> Comparator<Object> forKeys(final Comparator<T> comparator) {
+        return (Comparator<Object>) comparator;
+    }
 
-            int cmp = comparator.compare(this.first, list.getFirst());
+    // Note: not a generic class, so that a HashMap recognizes it as Comparable to itself,
+    // and may order colliding keys in a balanced tree
+    private static final class Key implements Comparable<Key> {
+        private final ListNode<?> list;
+        private final int hash;
+        private final Comparator<Object> comparator;
+
+        public Key(final ListNode<?> list, final int hash, final Comparator<Object> comparator) {
+            this.list = list;
+            this.hash = hash;
+            this.comparator = comparator;
+        }
 
-            if (0 == cmp) {
-                ListNode<T> r = list.getRest();
+        @Override
+        public int compareTo(final Key other) {
+            ListNode<?> cur = list;
+            ListNode<?> otherCur = other.list;
 
-                if (r.isNil()) {
-                    return this.memo;
-                } else {
-                    return (null == this.rest)
-                            ? null
-                            : this.rest.get(r);
+            while (!cur.isNil()) {
+                // lists with a common tail are equal from there on
+                if (cur == otherCur) {
+                    return 0;
                 }
-            } else if (cmp < 0) {
-                return (null == this.left)
-                        ? null
-                        : this.left.get(list);
-            } else {
-                return (null == this.right)
-                        ? null
-                        : this.right.get(list);
-            }
-        }
 
-        private int compare(final ListMemoizerHelper first,
-                            final ListMemoizerHelper second) {
-            if (null == first) {
-                return (null == second)
-                        ? 0 : -1;
-            } else if (null == second) {
-                return 1;
-            } else {
-                return first.compareTo(second);
-            }
-        }
+                if (otherCur.isNil()) {
+                    return 1;
+                }
 
-        private int compareTo(final ListMemoizerHelper other) {
-            int cmp = comparator.compare(this.first, other.first);
+                int cmp = comparator.compare(cur.getFirst(), otherCur.getFirst());
+                if (0 != cmp) {
+                    return cmp;
+                }
 
-            if (0 != cmp) {
-                return cmp;
+                cur = cur.getRest();
+                otherCur = otherCur.getRest();
             }
 
-            cmp = compare(this.left, other.left);
-            if (0 != cmp) {
-                return cmp;
-            }
+            return otherCur.isNil() ? 0 : -1;
+        }
 
-            cmp = compare(this.rest, other.rest);
-            if (0 != cmp) {
-                return cmp;
-            }
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Key
+                    && ((Key) other).hash == hash
+                    && 0 == compareTo((Key) other);
+        }
 
-            cmp = compare(this.right, other.right);
-            return cmp;
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
 }
-
@@ -25,6 +25,7 @@ public final class Ripple {
             RESULT_VIEW_MAX_PREDICATES = "net.fortytwo.ripple.cli.resultViewMaxPredicates",
             RESULT_VIEW_PRINT_ENTIRE_STACK = "net.fortytwo.ripple.cli.resultViewPrintEntireStack",
             MAX_WORKER_THREADS = "net.fortytwo.ripple.control.maxWorkerThreads",
+            MAX_QUEUED_TASKS = "net.fortytwo.ripple.control.maxQueuedTasks",
             LINKEDDATASAIL_BASE_SAIL = "net.fortytwo.ripple.demo.linkedDataSailBaseSail",
             MEMORYSTORE_PERSIST_FILE = "net.fortytwo.ripple.demo.memoryStorePersistFile",
             NATIVESTORE_DIRECTORY = "net.fortytwo.ripple.demo.nativeStoreDirectory",
@@ -38,7 +39,27 @@ public final class Ripple {
             HTTPCONNECTION_COURTESY_INTERVAL = "net.fortytwo.ripple.io.httpConnectionCourtesyInterval",
             HTTPCONNECTION_TIMEOUT = "net.fortytwo.ripple.io.httpConnectionTimeout",
             MEMOIZE_LISTS_FROM_RDF = "net.fortytwo.ripple.model.memoizeListsFromRdf",
+            LIST_CACHE_CAPACITY = "net.fortytwo.ripple.model.listCacheCapacity",
+            OPERATOR_CACHE_CAPACITY = "net.fortytwo.ripple.model.operatorCacheCapacity",
+            LAZY_LISTS_FROM_RDF = "net.fortytwo.ripple.model.lazyListsFromRdf",
+            STREAM_STATEMENTS = "net.fortytwo.ripple.model.streamStatements",
+            MAX_IDLE_READ_CONNECTIONS = "net.fortytwo.ripple.model.maxIdleReadConnections",
+            LIST_MEMBERSHIP_CACHE_CAPACITY = "net.fortytwo.ripple.model.listMembershipCacheCapacity",
+            WRITE_BUFFER_CAPACITY = "net.fortytwo.ripple.model.writeBufferCapacity",
+            VALUE_INTERN_CACHE_CAPACITY = "net.fortytwo.ripple.model.valueInternCacheCapacity",
             DEFAULT_NAMESPACE = "net.fortytwo.ripple.model.defaultNamespace",
+            PARALLEL_EVALUATION = "net.fortytwo.ripple.query.parallelEvaluation",
+            EVALUATOR_PARALLELISM = "net.fortytwo.ripple.query.evaluatorParallelism",
+            EVALUATOR_SEQUENTIAL_CUTOFF = "net.fortytwo.ripple.query.evaluatorSequentialCutoff",
+            PROGRAM_CACHE_CAPACITY = "net.fortytwo.ripple.query.programCacheCapacity",
+            PROFILE_QUERIES = "net.fortytwo.ripple.query.profileQueries",
+            MEMO_CAPACITY = "net.fortytwo.ripple.query.memoCapacity",
+            ORDER_SPILL_THRESHOLD = "net.fortytwo.ripple.query.orderSpillThreshold",
+            JOIN_MEMORY_BUDGET = "net.fortytwo.ripple.query.joinMemoryBudget",
+            FIXPOINT_QUANTIFIERS = "net.fortytwo.ripple.query.fixpointQuantifiers",
+            PREDICATE_BATCH_SIZE = "net.fortytwo.ripple.query.predicateBatchSize",
+            CONNECTION_POOL_SIZE = "net.fortytwo.ripple.query.connectionPoolSize",
+            CONNECTION_IDLE_TIMEOUT = "net.fortytwo.ripple.query.connectionIdleTimeout",
             VERSION = "net.fortytwo.ripple.version";
 
     public static final String RIPPLE_ONTO_BASEURI = "http://fortytwo.net/2007/03/ripple/schema#";
@@ -51,7 +72,10 @@ public final class Ripple {
     private static RippleProperties configuration;
 
     // TODO: move this
-    private static boolean useAsynchronousQueries = true;
+    private static volatile boolean useAsynchronousQueries = true;
+
+    // whether queries issued by the current thread are answered synchronously, whatever the global setting
+    private static final ThreadLocal<Boolean> synchronousThread = ThreadLocal.withInitial(() -> false);
 
     private Ripple() {
     }
@@ -116,7 +140,20 @@ public final class Ripple {
 
     // TODO: move these
     public static boolean asynchronousQueries() {
-        return useAsynchronousQueries;
+        return useAsynchronousQueries && !synchronousThread.get();
+    }
+
+    /**
+     * Overrides the global setting of <code>enableAsynchronousQueries</code> for the current thread only,
+     * so that a computation which needs all of its solutions before it returns does not affect concurrent queries
+     *
+     * @param synchronous whether queries issued by the current thread are to be answered synchronously
+     * @return the previous value of the override, which the caller should restore when it is done
+     */
+    public static boolean forceSynchronousQueries(final boolean synchronous) {
+        boolean previous = synchronousThread.get();
+        synchronousThread.set(synchronous);
+        return previous;
     }
 
     public static void enableAsynchronousQueries(final boolean enable) {
@@ -54,6 +54,17 @@ public class ListMemoizerTest {
         assertFalse(m.put(createList("one", "two", "three"), 42));
     }
 
+    @Test
+    public void testComputeIfAbsent() throws Exception {
+        ListMemoizer<String, Integer> m = createMemoizer();
+
+        assertEquals((Integer) 2, m.computeIfAbsent(createList("foo", "bar"), l -> 2));
+        assertEquals((Integer) 2, m.computeIfAbsent(createList("foo", "bar"), l -> 42));
+        assertEquals((Integer) 2, m.get(createList("foo", "bar")));
+        assertEquals((Integer) 42, m.computeIfAbsent(createList("foo"), l -> 42));
+        assertEquals(2, m.size());
+    }
+
     @Test
     public void testRemove() throws Exception {
         ListMemoizer<String, Integer> m = createMemoizer();
@@ -79,6 +90,35 @@ public class ListMemoizerTest {
         assertEquals((Integer) 42, m.get(createList("one", "two", "three")));
     }
 
+    @Test
+    public void testHashedAndCollidingKeys() throws Exception {
+        // a weak hash, so that many keys collide
+        ListMemoizer<String, Integer> hashed = new ListMemoizer<>(new StringComparator(), l -> l.getFirst().length());
+        ListMemoizer<String, Integer> unhashed = createMemoizer();
+
+        // sorted input, which once degraded the memoizer to a linked list
+        for (int i = 0; i < 10000; i++) {
+            String s = String.format("%05d", i);
+            assertTrue(hashed.put(createList("x", s), i));
+            assertTrue(unhashed.put(createList("x", s), i));
+        }
+
+        assertEquals(10000, hashed.size());
+        assertEquals(10000, unhashed.size());
+        for (int i = 0; i < 10000; i += 7) {
+            String s = String.format("%05d", i);
+            assertEquals((Integer) i, hashed.get(createList("x", s)));
+            assertEquals((Integer) i, unhashed.get(createList("x", s)));
+            assertFalse(hashed.put(createList("x", s), -1));
+        }
+
+        assertNull(hashed.get(createList("x")));
+        assertNull(hashed.get(createList("x", "00042", "y")));
+        assertTrue(hashed.remove(createList("x", "00042")));
+        assertNull(hashed.get(createList("x", "00042")));
+        assertEquals(9999, hashed.size());
+    }
+
     private ListMemoizer<String, Integer> createMemoizer() {
         return new ListMemoizer<>(new StringComparator());
     }
@@ -31,6 +31,7 @@ import net.fortytwo.ripple.query.commands.QuitCmd;
 import net.fortytwo.ripple.query.commands.RedefineListCmd;
 import net.fortytwo.ripple.query.commands.ShowContextsCmd;
 import net.fortytwo.ripple.query.commands.ShowPrefixesCmd;
+import net.fortytwo.ripple.query.commands.ShowProfileCmd;
 import net.fortytwo.ripple.query.commands.UndefinePrefixCmd;
 import net.fortytwo.ripple.query.commands.UndefineListCmd;
 }
@@ -690,6 +691,10 @@ nt_Directive
 			{
 				matchCommand( new ShowPrefixesCmd() );
 			}
+		| "profile"
+			{
+				matchCommand( new ShowProfileCmd() );
+			}
 		)
 
 	| DRCTV_PREFIX nt_Ws ( nsPrefix=nt_PrefixName (nt_Ws)? )? COLON (nt_Ws)? ns=nt_URIRef ((nt_Ws)? PERIOD)?
@@ -7,198 +7,220 @@ import net.fortytwo.ripple.RippleException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * A global executor for <code>Task</code>s, backed by a work-stealing <code>ForkJoinPool</code>.
+ * A task added from within an executing task becomes a child of that task, so that stopping a task also stops
+ * any tasks it has spawned.
+ * <p>
+ * The number of tasks which may be queued at any one time is bounded.
+ * When the queue is full, a worker thread which adds a task executes it immediately,
+ * while any other thread waits for space in the queue.
+ * Worker threads are daemon threads which exit when idle, so the pool needs no shutting down.
+ * As tasks are added from anywhere (by model connections, by a <code>LinkedDataSail</code>'s cache, and so on),
+ * only an application which knows that none of them are needed any longer should call <code>shutDown</code>.
+ * A <code>QueryEngine</code> instead waits for the tasks of its own connections when it is shut down.
+ *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
 public final class Scheduler {
     private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
 
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+
     private static Scheduler singleInstance = null;
     private static long workerThreadCount = 0;
 
-    private final LinkedList<TaskItem> taskQueue;
-    private final LinkedList<WorkerRunnable> allRunnables;
-    private final LinkedList<WorkerRunnable> waitingRunnables;
-    private final int maxThreads;
+    private final ForkJoinPool pool;
+    private final Semaphore queueCapacity;
+    private final Set<Task> queuedTasks = ConcurrentHashMap.newKeySet();
+    private final Set<Task> executingTasks = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Task> currentTask = new ThreadLocal<>();
 
     public static void add(final Task task, final Sink<Task> completedTaskSink) throws RippleException {
-        if (null == singleInstance) {
-            singleInstance = new Scheduler();
-        }
-
-        singleInstance.addPrivate(task, completedTaskSink);
+        getInstance().addPrivate(task, completedTaskSink);
     }
 
     public static void add(final Task task) throws RippleException {
         add(task, new NullSink<>());
     }
 
+    /**
+     * Stops all executing and queued tasks, together with any tasks they have spawned.
+     * A stopped task which has not yet begun executing is passed to its completed task sink without executing.
+     */
+    public static void stopAll() {
+        Scheduler s;
+        synchronized (Scheduler.class) {
+            s = singleInstance;
+        }
+
+        if (null != s) {
+            s.stopAllPrivate();
+        }
+    }
+
+    /**
+     * Stops all executing and queued tasks and shuts down the worker threads.
+     * If further tasks are added, a new pool of worker threads is created for them.
+     */
+    public static void shutDown() {
+        Scheduler s;
+        synchronized (Scheduler.class) {
+            s = singleInstance;
+            singleInstance = null;
+        }
+
+        if (null != s) {
+            s.stopAllPrivate();
+            s.pool.shutdown();
+
+            try {
+                if (!s.pool.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    logger.warn("scheduler did not terminate within " + SHUTDOWN_TIMEOUT_MS + "ms");
+                    s.pool.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                logger.warn("interrupted while waiting for scheduler to terminate");
+                s.pool.shutdownNow();
+            }
+        }
+    }
+
+    private synchronized static Scheduler getInstance() throws RippleException {
+        if (null == singleInstance) {
+            singleInstance = new Scheduler();
+        }
+
+        return singleInstance;
+    }
+
     private synchronized static long nextWorkerId() {
         return ++workerThreadCount;
     }
 
     private Scheduler() throws RippleException {
-        taskQueue = new LinkedList<>();
-        allRunnables = new LinkedList<>();
-        waitingRunnables = new LinkedList<>();
+        int maxThreads = Ripple.getConfiguration().getInt(Ripple.MAX_WORKER_THREADS);
+        int maxQueuedTasks = Ripple.getConfiguration().getInt(Ripple.MAX_QUEUED_TASKS, 10000);
 
-        maxThreads = Ripple.getConfiguration().getInt(Ripple.MAX_WORKER_THREADS);
+        // asynchronous mode: tasks are never joined, so FIFO scheduling of local queues is appropriate
+        pool = new ForkJoinPool(maxThreads, WorkerThread::new, null, true);
+        queueCapacity = new Semaphore(maxQueuedTasks);
     }
 
-    private void addPrivate(final Task task, final Sink<Task> completedTaskSink) {
+    private void addPrivate(final Task task, final Sink<Task> completedTaskSink) throws RippleException {
         // Initialize the task immediately.  It may not begin executing for
         // some time.
         task.begin();
 
         // Add the new task as a child of the currently executing task.
-        Thread currentThread = Thread.currentThread();
-        if (currentThread instanceof WorkerThread) {
-            Task parent = ((WorkerThread) currentThread).getCurrentTask();
+        Task parent = currentTask.get();
+        if (null != parent) {
             parent.addChild(task);
         }
 
-        TaskItem taskItem = new TaskItem(task, completedTaskSink);
+        boolean isWorker = Thread.currentThread() instanceof WorkerThread
+                && ((WorkerThread) Thread.currentThread()).getPool() == pool;
 
-        synchronized (taskQueue) {
-            taskQueue.addLast(taskItem);
-
-            // When the queue goes from empty to nonempty, there may be a number
-            // of threads waiting for a task.  Notify the first in line that
-            // a task is available.
-            if (1 == taskQueue.size() && waitingRunnables.size() > 0) {
-                WorkerRunnable r = waitingRunnables.removeFirst();
-
-                // Remove a task from the queue immediately.
-                r.retrieveTask();
+        if (queueCapacity.tryAcquire()) {
+            enqueue(new TaskItem(task, completedTaskSink, true));
+        }
 
-                // Alert the waiting runnable that it now has a task.
-                synchronized (r) {
-                    r.notify();
-                }
+        // If the queue is full, a worker executes the task itself rather than block
+        // (which could leave no worker free to drain the queue).
+        else if (isWorker) {
+            new TaskItem(task, completedTaskSink, false).run();
+        } else {
+            try {
+                queueCapacity.acquire();
+            } catch (InterruptedException e) {
+                throw new RippleException("interrupted while waiting to schedule task");
             }
 
-            // If there are more tasks than threads, and we have not reached the
-            // maximum number of threads, then start a new one.
-            else if (allRunnables.size() < maxThreads) {
-                WorkerRunnable r = new WorkerRunnable();
-                allRunnables.add(r);
-                Thread t = new WorkerThread(r);
-                t.start();
-            }
+            enqueue(new TaskItem(task, completedTaskSink, true));
         }
     }
 
-    // has not been tested
-    public void stopAll() {
-        synchronized (allRunnables) {
-            for (WorkerRunnable r : allRunnables) {
-                Task task = r.getCurrentTask();
-                if (null != task) {
-                    task.stop();
-                }
-            }
-        }
+    private void enqueue(final TaskItem item) {
+        queuedTasks.add(item.task);
+        pool.execute(item);
     }
 
-    private class TaskItem {
-        public final Task task;
-        public final Sink<Task> sink;
+    private void stopAllPrivate() {
+        for (Task task : queuedTasks) {
+            task.stop();
+        }
 
-        public TaskItem(final Task task, final Sink<Task> sink) {
-            this.task = task;
-            this.sink = sink;
+        for (Task task : executingTasks) {
+            task.stop();
         }
     }
 
-    private class WorkerThread extends Thread {
-        private final WorkerRunnable runnable;
-        private final long id;
-
-        public WorkerThread(final WorkerRunnable r) {
-            super(r);
-            id = nextWorkerId();
-            this.setName("Ripple worker thread #" + id);
+    private class TaskItem implements Runnable {
+        private final Task task;
+        private final Sink<Task> sink;
+        private final boolean queued;
 
-            runnable = r;
+        public TaskItem(final Task task, final Sink<Task> sink, final boolean queued) {
+            this.task = task;
+            this.sink = sink;
+            this.queued = queued;
         }
 
-        public Task getCurrentTask() {
-            return runnable.getCurrentTask();
-        }
-    }
+        public void run() {
+            if (queued) {
+                queueCapacity.release();
+            }
 
-    private class WorkerRunnable implements Runnable {
-        private TaskItem currentTaskItem = null;
+            Task previous = currentTask.get();
+            currentTask.set(task);
 
-        public void run() {
-            // Continue waiting for and executing tasks indefinitely.
-            while (true) {
-                if (null == currentTaskItem) {
-                    // Try to remove a task from the queue.
-                    synchronized (taskQueue) {
-                        if (taskQueue.size() > 0) {
-                            currentTaskItem = taskQueue.removeFirst();
-                        }
-                    }
-                }
+            // the task is never absent from both sets, so that stopAll cannot miss it
+            executingTasks.add(task);
+            if (queued) {
+                queuedTasks.remove(task);
+            }
 
-                // If a task was found in the queue, execute it.
-                if (null != currentTaskItem) {
-                    try {
-                        currentTaskItem.task.execute();
-                    }
-
-                    // This is the end of the line for exceptions.
-                    catch (Throwable t) {
-                        logThrowable(t);
-                    }
-
-                    // Even tasks which failed with a throwable are put into
-                    // the appropriate completed task sink.
-                    try {
-                        currentTaskItem.sink.accept(currentTaskItem.task);
-                    } catch (Throwable t) {
-                        logThrowable(t);
-                    }
-
-                    currentTaskItem = null;
-                }
+            try {
+                task.execute();
+            }
 
-                // If there are no tasks in the queue, add this Runnable to a
-                // list and wait.
-                else {
-                    synchronized (taskQueue) {
-                        waitingRunnables.addLast(this);
-                    }
-
-                    synchronized (this) {
-                        try {
-                            wait();
-                        } catch (InterruptedException e) {
-                            logger.warn("worker runnable interrupted while waiting for new tasks");
-                        }
-                    }
-                }
+            // This is the end of the line for exceptions.
+            catch (Throwable t) {
+                logThrowable(t);
+            } finally {
+                executingTasks.remove(task);
+                currentTask.set(previous);
+            }
+
+            // Even tasks which failed with a throwable are put into
+            // the appropriate completed task sink.
+            try {
+                sink.accept(task);
+            } catch (Throwable t) {
+                logThrowable(t);
             }
         }
 
         private void logThrowable(final Throwable t) {
             if (t instanceof InterruptedException) {
-                logger.warn("task interrupted: " + currentTaskItem.task);
+                logger.warn("task interrupted: " + task);
             } else {
                 logger.error("exception in scheduler", t);
             }
         }
+    }
 
-        public void retrieveTask() {
-            currentTaskItem = taskQueue.removeFirst();
-        }
-
-        public Task getCurrentTask() {
-            return currentTaskItem.task;
+    private static class WorkerThread extends ForkJoinWorkerThread {
+        public WorkerThread(final ForkJoinPool pool) {
+            super(pool);
+            this.setName("Ripple worker thread #" + nextWorkerId());
         }
     }
 }
-
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
@@ -13,7 +14,8 @@ public abstract class Task {
     private static final Logger logger = LoggerFactory.getLogger(Task.class.getName());
 
     private LinkedList<Task> children = null;
-    private boolean finished = true, stopped = false;
+    private boolean finished = true;
+    private volatile boolean stopped = false;
 
     protected abstract void executeProtected() throws RippleException;
 
@@ -31,10 +33,18 @@ public abstract class Task {
         synchronized (this) {
             finished = true;
 
-            notify();
+            notifyAll();
         }
     }
 
+    /**
+     * @return whether this task has been stopped.
+     * Long-running tasks may check this periodically, in order to give up their work as soon as possible.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
     /**
      * Note: it is possible to stop a task which has already finished executing
      * (the effect is to stop any children which may still be executing).
@@ -70,6 +80,7 @@ public abstract class Task {
     /**
      * Adds a child task.
      * Note: should not be called outside of Scheduler.
+     * A child added to a task which has already been stopped is stopped immediately.
      *
      * @param child the task to add
      */
@@ -83,6 +94,10 @@ public abstract class Task {
             }
 
             children.add(child);
+
+            if (stopped) {
+                child.stop();
+            }
         }
     }
 
@@ -93,14 +108,27 @@ public abstract class Task {
      */
     public void waitUntilFinished() throws RippleException {
 //System.out.println( "[" + this + "].waitUntilFinished()" );
-        synchronized (this) {
-            if (!finished) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    throw new RippleException("interrupted while waiting for task to finish");
+        // Note: a managed block allows the scheduler to compensate for a blocked worker thread
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                public boolean block() throws InterruptedException {
+                    synchronized (Task.this) {
+                        while (!finished) {
+                            Task.this.wait();
+                        }
+                    }
+
+                    return true;
                 }
-            }
+
+                public boolean isReleasable() {
+                    synchronized (Task.this) {
+                        return finished;
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            throw new RippleException("interrupted while waiting for task to finish");
         }
 //System.out.println( "    done -- " + this );
     }
@@ -3,6 +3,12 @@ package net.fortytwo.ripple.control;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.RippleException;
 
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * A set of tasks which are executed concurrently.  Tasks are scheduled for
  * execution as soon as they are added to the set.
@@ -10,21 +16,22 @@ import net.fortytwo.ripple.RippleException;
  * @author Joshua Shinavier (http://fortytwo.net)
  */
 public class TaskSet {
-    private int count = 0;
+    private final Set<Task> pending = new LinkedHashSet<>();
+    private boolean released = false;
 
     private final Sink<Task> completedTaskSink = new Sink<Task>() {
         public synchronized void accept(final Task task) throws RippleException {
-            count--;
+            pending.remove(task);
 
-            if (0 == count) {
-                notify();
+            if (pending.isEmpty()) {
+                notifyAll();
             }
         }
     };
 
     public void add(final Task task) throws RippleException {
         synchronized (completedTaskSink) {
-            count++;
+            pending.add(task);
         }
 
         Scheduler.add(task, completedTaskSink);
@@ -37,20 +44,52 @@ public class TaskSet {
      */
     public void waitUntilEmpty() throws RippleException {
         synchronized (completedTaskSink) {
-            if (count > 0) {
-                try {
-                    completedTaskSink.wait();
-                } catch (java.lang.InterruptedException e) {
-                    throw new RippleException("interrupted while waiting to complete tasks");
+            released = false;
+        }
+
+        // Note: a managed block allows the scheduler to compensate for a blocked worker thread
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                public boolean block() throws InterruptedException {
+                    synchronized (completedTaskSink) {
+                        while (!isReleasable()) {
+                            completedTaskSink.wait();
+                        }
+                    }
+
+                    return true;
                 }
-            }
+
+                public boolean isReleasable() {
+                    synchronized (completedTaskSink) {
+                        return pending.isEmpty() || released;
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            throw new RippleException("interrupted while waiting to complete tasks");
         }
     }
 
     public void stopWaiting() {
         synchronized (completedTaskSink) {
-            completedTaskSink.notify();
+            released = true;
+            completedTaskSink.notifyAll();
         }
     }
-}
 
+    /**
+     * Stops all tasks in this set which have not yet finished, together with any tasks they have spawned.
+     * Tasks which have not yet begun executing will not execute at all.
+     */
+    public void stop() {
+        List<Task> toStop;
+        synchronized (completedTaskSink) {
+            toStop = new LinkedList<>(pending);
+        }
+
+        for (Task task : toStop) {
+            task.stop();
+        }
+    }
+}
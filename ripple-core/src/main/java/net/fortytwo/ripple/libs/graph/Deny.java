@@ -55,13 +55,7 @@ public class Deny extends PrimitiveStackMapping {
 
         mc.remove(subj, pred, obj);
 
-        // TODO: store added and removed statements in a buffer until the
-        // ModelConnection commits.  You may not simply wait to commit,
-        // as writing and then reading without first committing may result
-        // in a deadlock.  The LinkedDataSail already does this sort of
-        // buffering, which is why it does not deadlock w.r.t. its base
-        // Sail.
-        mc.commit();
+        // Note: the change is committed along with the rest of the query, later reads seeing it in the meantime
 
         solutions.accept(stack.push(subj));
     }
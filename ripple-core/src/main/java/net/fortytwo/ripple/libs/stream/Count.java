@@ -1,20 +1,17 @@
 package net.fortytwo.ripple.libs.stream;
 
-import net.fortytwo.flow.Collector;
 import net.fortytwo.flow.Sink;
-import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.Operator;
 import net.fortytwo.ripple.model.PrimitiveStackMapping;
 import net.fortytwo.ripple.model.RippleList;
-import net.fortytwo.ripple.query.LazyStackEvaluator;
-import net.fortytwo.ripple.query.StackEvaluator;
 
 /**
+ * A primitive which counts the solutions of a mapping without retaining them.
+ *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
-// FIXME: this is a total hack
 public class Count extends PrimitiveStackMapping {
     private static final String[] IDENTIFIERS = {
             // Note: this "count" has different semantics than the 2008-08 version
@@ -43,19 +40,11 @@ public class Count extends PrimitiveStackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
-        // FIXME: cheat to temporarily disable asynchronous query answering
-        boolean a = Ripple.asynchronousQueries();
-        Ripple.enableAsynchronousQueries(false);
-        try {
-            Collector<RippleList> s = new Collector<>();
-            StackEvaluator e = new LazyStackEvaluator();
-            e.apply(arg.push(Operator.OP), s, mc);
-            int count = s.size();
-
-            solutions.accept(
-                    arg.getRest().push(count));
-        } finally {
-            Ripple.enableAsynchronousQueries(a);
-        }
+        // solutions are counted as they are found, rather than retained
+        long[] count = {0};
+        StreamLibrary.evaluateFully(arg.push(Operator.OP), s -> count[0]++, mc);
+
+        solutions.accept(
+                arg.getRest().push(StreamLibrary.countValue(count[0])));
     }
 }
@@ -0,0 +1,64 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+
+/**
+ * A primitive which estimates the number of distinct solutions of a mapping in constant memory,
+ * using a HyperLogLog sketch.
+ * Solutions are distinguished as by stream:distinct, although they are hashed with a <code>SketchHash</code>
+ * so that distinct numbers, however large, seldom collide.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class CountDistinct extends PrimitiveStackMapping {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "countDistinct"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public CountDistinct() {
+        super();
+    }
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("mapping",
+                        "a mapping to apply before counting",
+                        false),
+                new Parameter("err",
+                        "the desired relative standard error of the count, e.g. 0.01,"
+                                + " which is no less than " + HyperLogLog.MIN_RELATIVE_ERROR,
+                        true)
+        };
+    }
+
+    public String getComment() {
+        return "m err -> m op, for which distinct solutions are estimated to within a relative standard error of err,"
+                + " then the result replaces m on the stack.  err may be no less than about 0.004";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        double err = mc.toNumber(arg.getFirst()).doubleValue();
+        if (!(err >= HyperLogLog.MIN_RELATIVE_ERROR && err < 1)) {
+            throw new RippleException("relative error must be at least " + HyperLogLog.MIN_RELATIVE_ERROR
+                    + " and less than 1: " + err);
+        }
+        RippleList stack = arg.getRest();
+
+        HyperLogLog sketch = new HyperLogLog(err);
+        SketchHash hash = new SketchHash(mc);
+        StreamLibrary.evaluateFully(stack.push(Operator.OP), s -> sketch.add(hash.hash(s)), mc);
+
+        solutions.accept(
+                stack.getRest().push(StreamLibrary.countValue(sketch.estimate())));
+    }
+}
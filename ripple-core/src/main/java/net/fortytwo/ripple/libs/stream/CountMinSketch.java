@@ -0,0 +1,55 @@
+package net.fortytwo.ripple.libs.stream;
+
+/**
+ * A count-min sketch, which estimates the number of occurrences of each item in a stream in constant memory.
+ * Items are given as 32-bit hash codes.
+ * An estimate is never less than the true count, and exceeds it by more than epsilon times the length of the stream
+ * with probability at most delta.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class CountMinSketch {
+    private final int width;
+    private final long[][] counts;
+
+    /**
+     * @param epsilon the desired error, as a fraction of the length of the stream
+     * @param delta   the probability of exceeding the desired error
+     */
+    public CountMinSketch(final double epsilon,
+                          final double delta) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("epsilon must be positive: " + epsilon);
+        }
+        if (!(delta > 0 && delta < 1)) {
+            throw new IllegalArgumentException("delta must be between 0 and 1: " + delta);
+        }
+
+        width = (int) Math.ceil(Math.E / epsilon);
+        int depth = (int) Math.ceil(Math.log(1 / delta));
+        counts = new long[depth][width];
+    }
+
+    /**
+     * Counts one occurrence of an item
+     *
+     * @param hash the hash code of the item
+     * @return the estimated number of occurrences of the item, including this one
+     */
+    public long add(final int hash) {
+        int h1 = HyperLogLog.mix(hash);
+        int h2 = HyperLogLog.mix(h1);
+
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < counts.length; i++) {
+            // each row takes a different hash function of the form h1 + i * h2
+            int j = Math.floorMod(h1 + i * h2, width);
+            long c = ++counts[i][j];
+            if (c < min) {
+                min = c;
+            }
+        }
+
+        return min;
+    }
+}
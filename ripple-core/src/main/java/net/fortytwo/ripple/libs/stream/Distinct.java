@@ -65,7 +65,7 @@ public class Distinct extends PrimitiveStackMapping {
                           final Sink<RippleList> solutions,
                           final ModelConnection mc) throws RippleException {
             if (null == memoizer) {
-                memoizer = new ListMemoizer<>(mc.getComparator());
+                memoizer = new ListMemoizer<>(mc.getComparator(), mc.getComparator().getListHashFunction());
             }
 
             if (memoizer.put(arg, MEMO)) {
@@ -0,0 +1,52 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.RippleComparator;
+import net.fortytwo.ripple.model.types.NumericType;
+
+/**
+ * An accumulator for the least or greatest of a group of values, according to Ripple's total order.
+ * Numbers are compared with one another directly, without resolving their types again.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class Extremum implements GroupAggregation.Accumulator {
+    private final ModelConnection mc;
+    private final RippleComparator comparator;
+    private final boolean greatest;
+
+    private Object best = null;
+    private Number bestNumber = null;
+
+    /**
+     * @param mc       a connection to the model in which the values are compared
+     * @param greatest whether to keep the greatest value, rather than the least
+     */
+    public Extremum(final ModelConnection mc,
+                    final boolean greatest) {
+        this.mc = mc;
+        this.comparator = mc.getComparator();
+        this.greatest = greatest;
+    }
+
+    public void add(final Object value) throws RippleException {
+        Number n = GroupAggregation.isNumeric(value, mc) ? mc.toNumber(value) : null;
+
+        if (null != best) {
+            int c = null != n && null != bestNumber
+                    ? NumericType.compare(n, bestNumber)
+                    : comparator.compare(value, best);
+            if (greatest ? c <= 0 : c >= 0) {
+                return;
+            }
+        }
+
+        best = value;
+        bestNumber = n;
+    }
+
+    public Object getResult() {
+        return best;
+    }
+}
@@ -0,0 +1,114 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.ListMemoizer;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.types.NumericType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A primitive which groups the solutions of a mapping by the keys which a second mapping produces for them,
+ * and aggregates the values at the top of the solutions in each group.
+ * Each group keeps an incremental accumulator rather than its solutions.
+ * Once all solutions have been found, a stack is produced for each group, in the order in which the groups were
+ * first seen, with the key and the aggregate in place of the two mappings.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public abstract class GroupAggregation extends PrimitiveStackMapping {
+
+    /**
+     * An aggregate of the values in a single group
+     */
+    protected interface Accumulator {
+        void add(Object value) throws RippleException;
+
+        /**
+         * @return the aggregate value, or null if there is none (e.g. the mean of no numbers)
+         * @throws RippleException if the aggregate cannot be produced
+         */
+        Object getResult() throws RippleException;
+    }
+
+    /**
+     * @param mc a connection to the model in which the values are aggregated
+     * @return a new accumulator for a group
+     */
+    protected abstract Accumulator createAccumulator(ModelConnection mc);
+
+    /**
+     * @return a brief description of the aggregate, for the comment of the primitive
+     */
+    protected abstract String getAggregateDescription();
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("mapping",
+                        "a mapping to apply before grouping",
+                        false),
+                new Parameter("key",
+                        "a mapping which produces the group key of a solution",
+                        true)
+        };
+    }
+
+    public String getComment() {
+        return "m key -> m op, whose solutions are grouped by key, then for each group the key and "
+                + getAggregateDescription() + " replace m";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        RippleList stack = arg;
+
+        Object key = stack.getFirst();
+        stack = stack.getRest();
+
+        // groups are indexed by singleton lists of their keys, so that keys are hashed and compared as values
+        ListMemoizer<Object, Group> index
+                = new ListMemoizer<>(mc.getComparator(), mc.getComparator().getListHashFunction());
+        List<Group> groups = new ArrayList<>();
+
+        StreamLibrary.evaluateFully(stack.push(Operator.OP), s -> {
+            for (Object k : StreamLibrary.findKeys(s, key, mc)) {
+                Group g = index.computeIfAbsent(mc.list().push(k), l -> {
+                    Group created = new Group(k, createAccumulator(mc));
+                    groups.add(created);
+                    return created;
+                });
+
+                g.accumulator.add(s.getFirst());
+            }
+        }, mc);
+
+        RippleList rest = stack.getRest();
+        for (Group g : groups) {
+            Object result = g.accumulator.getResult();
+            if (null != result) {
+                solutions.accept(rest.push(g.key).push(result));
+            }
+        }
+    }
+
+    protected static boolean isNumeric(final Object value,
+                                       final ModelConnection mc) throws RippleException {
+        return mc.getModel().getTypeOf(value) instanceof NumericType;
+    }
+
+    private static class Group {
+        private final Object key;
+        private final Accumulator accumulator;
+
+        public Group(final Object key, final Accumulator accumulator) {
+            this.key = key;
+            this.accumulator = accumulator;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+
+/**
+ * A primitive which averages the numbers at the top of the solutions of a mapping in each group.
+ * Solutions which do not have a number at the top are ignored, and a group with no numbers produces no average.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupAverage extends GroupAggregation {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "groupAvg"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public GroupAverage() {
+        super();
+    }
+
+    protected String getAggregateDescription() {
+        return "the mean of the numbers";
+    }
+
+    protected Accumulator createAccumulator(final ModelConnection mc) {
+        return new Accumulator() {
+            private final NumericSum sum = new NumericSum();
+
+            public void add(final Object value) throws RippleException {
+                if (isNumeric(value, mc)) {
+                    sum.add(mc.toNumber(value));
+                }
+            }
+
+            public Object getResult() {
+                return sum.getMean();
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.RippleList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A primitive which collects the values at the top of the solutions of a mapping in each group into a list,
+ * in the order in which they were found.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupCollect extends GroupAggregation {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "groupCollect"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public GroupCollect() {
+        super();
+    }
+
+    protected String getAggregateDescription() {
+        return "a list of the values";
+    }
+
+    protected Accumulator createAccumulator(final ModelConnection mc) {
+        return new Accumulator() {
+            private final List<Object> values = new ArrayList<>();
+
+            public void add(final Object value) {
+                values.add(value);
+            }
+
+            public Object getResult() {
+                RippleList list = mc.list();
+                for (int i = values.size() - 1; i >= 0; i--) {
+                    list = list.push(values.get(i));
+                }
+                return list;
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.ModelConnection;
+
+/**
+ * A primitive which counts the solutions of a mapping in each group.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupCount extends GroupAggregation {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "groupCount"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public GroupCount() {
+        super();
+    }
+
+    protected String getAggregateDescription() {
+        return "the number of solutions";
+    }
+
+    protected Accumulator createAccumulator(final ModelConnection mc) {
+        return new Accumulator() {
+            private long count = 0;
+
+            public void add(final Object value) {
+                count++;
+            }
+
+            public Object getResult() {
+                return StreamLibrary.countValue(count);
+            }
+        };
+    }
+}
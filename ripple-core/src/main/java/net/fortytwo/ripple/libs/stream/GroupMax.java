@@ -0,0 +1,30 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.ModelConnection;
+
+/**
+ * A primitive which finds the greatest of the values at the top of the solutions of a mapping in each group,
+ * according to Ripple's total order.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupMax extends GroupAggregation {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "groupMax"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public GroupMax() {
+        super();
+    }
+
+    protected String getAggregateDescription() {
+        return "the greatest value";
+    }
+
+    protected Accumulator createAccumulator(final ModelConnection mc) {
+        return new Extremum(mc, true);
+    }
+}
@@ -0,0 +1,30 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.ModelConnection;
+
+/**
+ * A primitive which finds the least of the values at the top of the solutions of a mapping in each group,
+ * according to Ripple's total order.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupMin extends GroupAggregation {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "groupMin"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public GroupMin() {
+        super();
+    }
+
+    protected String getAggregateDescription() {
+        return "the least value";
+    }
+
+    protected Accumulator createAccumulator(final ModelConnection mc) {
+        return new Extremum(mc, false);
+    }
+}
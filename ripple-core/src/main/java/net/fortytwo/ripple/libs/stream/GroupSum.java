@@ -0,0 +1,43 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+
+/**
+ * A primitive which sums the numbers at the top of the solutions of a mapping in each group.
+ * Solutions which do not have a number at the top are ignored.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupSum extends GroupAggregation {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "groupSum"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public GroupSum() {
+        super();
+    }
+
+    protected String getAggregateDescription() {
+        return "the sum of the numbers";
+    }
+
+    protected Accumulator createAccumulator(final ModelConnection mc) {
+        return new Accumulator() {
+            private final NumericSum sum = new NumericSum();
+
+            public void add(final Object value) throws RippleException {
+                if (isNumeric(value, mc)) {
+                    sum.add(mc.toNumber(value));
+                }
+            }
+
+            public Object getResult() {
+                return sum.getSum();
+            }
+        };
+    }
+}
@@ -0,0 +1,194 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.ListMemoizer;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleComparator;
+import net.fortytwo.ripple.model.RippleList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A primitive which finds the most frequent solutions of a mapping, and estimates their frequencies,
+ * in constant memory.
+ * Frequencies are estimated by a count-min sketch, and only the k solutions with the highest estimates so far
+ * are kept as candidates, in a min-heap so that the least frequent of them is found in constant time.
+ * Solutions are distinguished as by stream:distinct.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class HeavyHitters extends PrimitiveStackMapping {
+    // the probability that an estimate exceeds the error bound
+    private static final double DELTA = 0.01;
+
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "heavyHitters"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public HeavyHitters() {
+        super();
+    }
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("mapping",
+                        "a mapping to apply before counting",
+                        false),
+                new Parameter("k",
+                        "the number of solutions to produce",
+                        true),
+                new Parameter("err",
+                        "the desired error in frequency, as a fraction of the number of solutions, e.g. 0.001",
+                        true)
+        };
+    }
+
+    public String getComment() {
+        return "m k err -> m op, of whose solutions the k most frequent are produced, each with its estimated"
+                + " frequency, from most to least frequent";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        RippleList stack = arg;
+
+        double err = mc.toNumber(stack.getFirst()).doubleValue();
+        stack = stack.getRest();
+        int k = mc.toNumber(stack.getFirst()).intValue();
+        stack = stack.getRest();
+
+        if (!(err > 0 && err < 1)) {
+            throw new RippleException("frequency error must be between 0 and 1: " + err);
+        }
+        if (k < 0) {
+            throw new RippleException("negative number of solutions: " + k);
+        }
+
+        RippleComparator comparator = mc.getComparator();
+        CountMinSketch sketch = new CountMinSketch(err, DELTA);
+        SketchHash hash = new SketchHash(mc);
+        ListMemoizer<Object, Candidate> index
+                = new ListMemoizer<>(comparator, comparator.getListHashFunction());
+        CandidateHeap candidates = new CandidateHeap();
+
+        StreamLibrary.evaluateFully(stack.push(Operator.OP), s -> {
+            long estimate = sketch.add(hash.hash(s));
+
+            // candidates are indexed by singleton lists, as the empty stack cannot itself be a key
+            RippleList key = mc.list().push(s);
+            Candidate c = index.get(key);
+            if (null != c) {
+                c.estimate = estimate;
+                candidates.update(c);
+            } else if (candidates.size() < k) {
+                c = new Candidate(key, estimate);
+                candidates.add(c);
+                index.put(key, c);
+            } else if (k > 0) {
+                // the new solution displaces the least frequent candidate, if it is more frequent
+                Candidate least = candidates.least();
+                if (estimate > least.estimate) {
+                    index.remove(least.key);
+                    least.key = key;
+                    least.estimate = estimate;
+                    index.put(key, least);
+                    candidates.update(least);
+                }
+            }
+        }, mc);
+
+        List<Candidate> sorted = new ArrayList<>(candidates.heap);
+        sorted.sort((a, b) -> Long.compare(b.estimate, a.estimate));
+        for (Candidate c : sorted) {
+            RippleList solution = (RippleList) c.key.getFirst();
+            solutions.accept(solution.push(StreamLibrary.countValue(c.estimate)));
+        }
+    }
+
+    private static class Candidate {
+        private RippleList key;
+        private long estimate;
+
+        // the index of the candidate in the heap
+        private int position;
+
+        public Candidate(final RippleList key, final long estimate) {
+            this.key = key;
+            this.estimate = estimate;
+        }
+    }
+
+    // a binary min-heap of candidates by estimate, in which each candidate knows its position,
+    // so that it may be moved into place in logarithmic time when its estimate changes.
+    // The heap grows with the candidates, rather than being allocated up front, as k may be very large
+    private static class CandidateHeap {
+        private final List<Candidate> heap = new ArrayList<>();
+
+        public int size() {
+            return heap.size();
+        }
+
+        public Candidate least() {
+            return heap.get(0);
+        }
+
+        public void add(final Candidate c) {
+            c.position = heap.size();
+            heap.add(c);
+            siftUp(c.position);
+        }
+
+        public void update(final Candidate c) {
+            siftDown(siftUp(c.position));
+        }
+
+        private int siftUp(final int start) {
+            int i = start;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heap.get(parent).estimate <= heap.get(i).estimate) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+
+            return i;
+        }
+
+        private void siftDown(final int start) {
+            int i = start;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heap.size()) {
+                    break;
+                }
+                if (child + 1 < heap.size() && heap.get(child + 1).estimate < heap.get(child).estimate) {
+                    child++;
+                }
+                if (heap.get(i).estimate <= heap.get(child).estimate) {
+                    break;
+                }
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        private void swap(final int i, final int j) {
+            Candidate a = heap.get(i);
+            Candidate b = heap.get(j);
+            heap.set(i, b);
+            heap.set(j, a);
+            b.position = i;
+            a.position = j;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package net.fortytwo.ripple.libs.stream;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct items in a stream in constant memory.
+ * Items are given as 32-bit hash codes, so the estimator of the original HyperLogLog paper,
+ * including its corrections for small and large cardinalities, is used.
+ * The relative standard error of the estimate is about 1.04 / sqrt(m), where m is the number of registers.
+ * There are at most 2^16 registers, so that no error below {@link #MIN_RELATIVE_ERROR} may be requested.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class HyperLogLog {
+    private static final int MIN_PRECISION = 4, MAX_PRECISION = 16;
+
+    /**
+     * The least relative standard error which a sketch can achieve, with the greatest number of registers
+     */
+    public static final double MIN_RELATIVE_ERROR = 1.04 / Math.sqrt(1 << MAX_PRECISION);
+
+    private static final double TWO_TO_THE_32 = 4294967296.0;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param relativeError the desired relative standard error of the estimate,
+     *                      which is no less than {@link #MIN_RELATIVE_ERROR}
+     */
+    public HyperLogLog(final double relativeError) {
+        if (!(relativeError >= MIN_RELATIVE_ERROR)) {
+            throw new IllegalArgumentException("relative error must be at least " + MIN_RELATIVE_ERROR
+                    + ": " + relativeError);
+        }
+
+        double m = Math.pow(1.04 / relativeError, 2);
+        int p = (int) Math.ceil(Math.log(m) / Math.log(2));
+        // Note: rounding may take the minimum error just past the maximum precision
+        precision = Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, p));
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param hash the hash code of an item
+     */
+    public void add(final int hash) {
+        int h = mix(hash);
+        int index = h >>> (32 - precision);
+        // the position of the leftmost 1-bit in the remaining bits, or one more than their number if there is none
+        int rho = Math.min(Integer.numberOfLeadingZeros(h << precision), 32 - precision) + 1;
+        if (rho > registers[index]) {
+            registers[index] = (byte) rho;
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct items
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (0 == r) {
+                zeros++;
+            }
+        }
+
+        double e = alpha(m) * m * m / sum;
+
+        if (e <= 2.5 * m) {
+            // linear counting is more accurate while many registers are empty
+            if (zeros > 0) {
+                e = m * Math.log((double) m / zeros);
+            }
+        } else if (e > TWO_TO_THE_32 / 30) {
+            // correct for collisions among 32-bit hash codes
+            e = -TWO_TO_THE_32 * Math.log(1 - e / TWO_TO_THE_32);
+        }
+
+        return Math.round(e);
+    }
+
+    private static double alpha(final int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    // the MurmurHash3 finalizer, which spreads structural hash codes across all bits
+    static int mix(final int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -10,17 +10,14 @@ import net.fortytwo.ripple.model.PrimitiveStackMapping;
 import net.fortytwo.ripple.model.RippleList;
 import net.fortytwo.ripple.model.StackMapping;
 
-
 /**
- * A filter which drops any stack which has already been transmitted and behaves
- * like the identity filter otherwise, making a stream of stacks into a set of
- * stacks.
+ * A primitive which applies two relations to the same stack and produces those stacks
+ * which are produced by both, as soon as they have been received from each side.
+ * Stacks are kept in a hash table, up to a configurable budget.
  *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
 public class Intersect extends PrimitiveStackMapping {
-    private static final String MEMO = "memo";
-
     private static final String[] IDENTIFIERS = {
             StreamLibrary.NS_2013_03 + "intersect",
             StreamLibrary.NS_2008_08 + "intersect"};
@@ -61,8 +58,9 @@ public class Intersect extends PrimitiveStackMapping {
     }
 
     protected class IntersectInner implements StackMapping {
-        private ListMemoizer<Object, String> trueMemoizer = null;
-        private ListMemoizer<Object, String> falseMemoizer = null;
+        // the sides from which each distinct stack has been received
+        private ListMemoizer<Object, boolean[]> sides = null;
+        private int budget;
 
         public int arity() {
             // Require that the remainder of the stack (below the marker) is
@@ -73,44 +71,21 @@ public class Intersect extends PrimitiveStackMapping {
         public void apply(final RippleList arg,
                           final Sink<RippleList> solutions,
                           final ModelConnection mc) throws RippleException {
-            Object marker = arg.getFirst();
-
-            if (mc.toBoolean(marker)) {
-                applyTrue(arg, solutions, mc);
-            } else {
-                applyFalse(arg, solutions, mc);
-            }
-        }
-
-        private void applyTrue(final RippleList arg,
-                               final Sink<RippleList> sink,
-                               final ModelConnection mc) throws RippleException {
-            RippleList stack = arg.getRest();
-
-            if (null == trueMemoizer) {
-                trueMemoizer = new ListMemoizer<>(mc.getComparator());
-            }
-
-            trueMemoizer.put(stack, MEMO);
-
-            if (null != falseMemoizer && null != falseMemoizer.get(stack)) {
-                sink.accept(stack);
-            }
-        }
-
-        private void applyFalse(final RippleList arg,
-                                final Sink<RippleList> sink,
-                                final ModelConnection mc) throws RippleException {
+            int side = mc.toBoolean(arg.getFirst()) ? 0 : 1;
             RippleList stack = arg.getRest();
 
-            if (null == falseMemoizer) {
-                falseMemoizer = new ListMemoizer<>(mc.getComparator());
+            if (null == sides) {
+                sides = new ListMemoizer<>(mc.getComparator(), mc.getComparator().getListHashFunction());
+                budget = StreamLibrary.getJoinMemoryBudget();
             }
 
-            falseMemoizer.put(stack, MEMO);
+            // a single lookup both records the stack and finds any match from the other side
+            boolean[] seen = sides.computeIfAbsent(stack, s -> new boolean[2]);
+            StreamLibrary.checkJoinMemoryBudget(sides.size(), budget);
+            seen[side] = true;
 
-            if (null != trueMemoizer && null != trueMemoizer.get(stack)) {
-                sink.accept(stack);
+            if (seen[1 - side]) {
+                solutions.accept(stack);
             }
         }
 
@@ -0,0 +1,138 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.ListMemoizer;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.NullStackMapping;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A primitive which applies two relations to the same stack and pairs up their solutions on a key.
+ * The key of a solution is the value at the top of each stack produced by applying a key mapping to it.
+ * For each solution of the first relation and solution of the second with a key in common,
+ * the top of the second solution is pushed onto the first.
+ * This is a symmetric hash join: each solution is kept in a hash table for its side,
+ * up to a configurable budget, and is paired as soon as a matching solution has been received from the other side.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class Join extends PrimitiveStackMapping {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "join"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public Join() {
+        super();
+    }
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("r1", null, true),
+                new Parameter("r2", null, true),
+                new Parameter("key", "a mapping which produces the join key of a solution", true)};
+    }
+
+    public String getComment() {
+        return "r1 r2 key => for solutions x of r1 and y of r2 whose keys are equal, x with the top of y";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        RippleList stack = arg;
+
+        Object key = stack.getFirst();
+        stack = stack.getRest();
+        Object r2 = stack.getFirst();
+        stack = stack.getRest();
+        Object r1 = stack.getFirst();
+        stack = stack.getRest();
+
+        Operator inner = new Operator(new JoinInner(key));
+        solutions.accept(
+                stack.push(r1).push(Operator.OP).push(true).push(inner));
+        solutions.accept(
+                stack.push(r2).push(Operator.OP).push(false).push(inner));
+    }
+
+    protected class JoinInner implements StackMapping {
+        private final Object key;
+
+        // for each key, the solutions received from each side
+        private ListMemoizer<Object, Buckets> table = null;
+        private int budget;
+        private long size = 0;
+
+        public JoinInner(final Object key) {
+            this.key = key;
+        }
+
+        public int arity() {
+            // Require that the remainder of the stack (below the marker) is
+            // in normal form, as for intersect.
+            return 2;
+        }
+
+        public void apply(final RippleList arg,
+                          final Sink<RippleList> solutions,
+                          final ModelConnection mc) throws RippleException {
+            boolean left = mc.toBoolean(arg.getFirst());
+            RippleList stack = arg.getRest();
+            if (stack.isNil()) {
+                return;
+            }
+
+            if (null == table) {
+                table = new ListMemoizer<>(mc.getComparator(), mc.getComparator().getListHashFunction());
+                budget = StreamLibrary.getJoinMemoryBudget();
+            }
+
+            for (Object k : StreamLibrary.findKeys(stack, key, mc)) {
+                // keys are indexed as singleton lists, so that they are hashed and compared as values
+                Buckets b = table.computeIfAbsent(mc.list().push(k), l -> new Buckets());
+
+                if (left) {
+                    b.left.add(stack);
+                } else {
+                    b.right.add(stack);
+                }
+                StreamLibrary.checkJoinMemoryBudget(++size, budget);
+
+                if (left) {
+                    for (RippleList other : b.right) {
+                        solutions.accept(stack.push(other.getFirst()));
+                    }
+                } else {
+                    for (RippleList other : b.left) {
+                        solutions.accept(other.push(stack.getFirst()));
+                    }
+                }
+            }
+        }
+
+        public boolean isTransparent() {
+            return true;
+        }
+
+        // A join has no inverse: a paired solution does not record which solutions of r1 and r2 it came from,
+        // nor does it keep the key by which they were matched, so the inputs cannot be recovered from it.
+        public StackMapping getInverse() throws RippleException {
+            return new NullStackMapping();
+        }
+    }
+
+    private static class Buckets {
+        private final List<RippleList> left = new LinkedList<>();
+        private final List<RippleList> right = new LinkedList<>();
+    }
+}
@@ -1,5 +1,6 @@
 package net.fortytwo.ripple.libs.stream;
 
+import net.fortytwo.flow.Demand;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.model.ModelConnection;
@@ -9,9 +10,13 @@ import net.fortytwo.ripple.model.PrimitiveStackMapping;
 import net.fortytwo.ripple.model.RippleList;
 import net.fortytwo.ripple.model.StackMapping;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * A primitive which consumes a number n and produces a filter which transmits
  * at most n stacks.
+ * Once n stacks have been transmitted, the filter signals that it has no further demand,
+ * so that the evaluator may abandon any work which would only produce more arguments for it.
  *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
@@ -55,8 +60,8 @@ public class Limit extends PrimitiveStackMapping {
                                 new LimitInner((long) lim))));
     }
 
-    protected class LimitInner implements StackMapping {
-        private long count;
+    protected class LimitInner implements StackMapping, Demand {
+        private final AtomicLong count = new AtomicLong(0);
         private final long limit;
 
         public int arity() {
@@ -65,18 +70,20 @@ public class Limit extends PrimitiveStackMapping {
 
         public LimitInner(final long lim) {
             limit = lim;
-            count = 0;
         }
 
         public void apply(final RippleList arg,
                           final Sink<RippleList> solutions,
                           final ModelConnection mc) throws RippleException {
-            if (count < limit) {
-                count++;
+            if (count.getAndIncrement() < limit) {
                 solutions.accept(arg);
             }
         }
 
+        public boolean isSatisfied() {
+            return count.get() >= limit;
+        }
+
         public boolean isTransparent() {
             return true;
         }
@@ -0,0 +1,177 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.types.NumericType;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * An incremental sum of numbers, kept in a primitive long or double for as long as the numbers allow.
+ * As with NumericType.add, the sum takes the widest datatype of the numbers added;
+ * integers are summed exactly, however, and a sum of integers which would overflow a long becomes a decimal.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class NumericSum {
+    private enum Mode {INTEGRAL, FLOATING_POINT, DECIMAL}
+
+    private Mode mode = Mode.INTEGRAL;
+    private NumericType.Datatype widest = NumericType.Datatype.INTEGER;
+
+    private long longSum = 0;
+    private double doubleSum = 0;
+    private BigDecimal decimalSum;
+
+    private long count = 0;
+
+    public void add(final Number n) {
+        NumericType.Datatype d = NumericType.datatypeOf(n);
+        if (wider(d, widest)) {
+            widest = d;
+        }
+        count++;
+
+        switch (d) {
+            case INTEGER:
+            case LONG:
+                addIntegral(n.longValue());
+                break;
+            case FLOAT:
+            case DOUBLE:
+                addFloatingPoint(n.doubleValue());
+                break;
+            case DECIMAL:
+                addDecimal(n instanceof BigDecimal ? (BigDecimal) n : BigDecimal.valueOf(n.doubleValue()));
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * @return the number of numbers added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the numbers added, in the widest of their datatypes
+     */
+    public Number getSum() {
+        switch (mode) {
+            case INTEGRAL:
+                return widest == NumericType.Datatype.INTEGER
+                        && longSum >= Integer.MIN_VALUE && longSum <= Integer.MAX_VALUE
+                        ? (Number) (int) longSum
+                        : (Number) longSum;
+            case FLOATING_POINT:
+                return widest == NumericType.Datatype.FLOAT
+                        ? (Number) (float) doubleSum
+                        : (Number) doubleSum;
+            case DECIMAL:
+                return decimalSum;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * @return the mean of the numbers added, as a double unless any is a decimal, or null if none has been added
+     */
+    public Number getMean() {
+        if (0 == count) {
+            return null;
+        }
+
+        switch (mode) {
+            case INTEGRAL:
+                return (double) longSum / count;
+            case FLOATING_POINT:
+                return doubleSum / count;
+            case DECIMAL:
+                return decimalSum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL128);
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void addIntegral(final long x) {
+        switch (mode) {
+            case INTEGRAL:
+                long sum = longSum + x;
+                // the sum overflows if both operands have a sign different from that of the result
+                if (((longSum ^ sum) & (x ^ sum)) < 0) {
+                    mode = Mode.DECIMAL;
+                    decimalSum = BigDecimal.valueOf(longSum).add(BigDecimal.valueOf(x));
+                } else {
+                    longSum = sum;
+                }
+                break;
+            case FLOATING_POINT:
+                doubleSum += x;
+                break;
+            case DECIMAL:
+                decimalSum = decimalSum.add(BigDecimal.valueOf(x));
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void addFloatingPoint(final double x) {
+        switch (mode) {
+            case INTEGRAL:
+                mode = Mode.FLOATING_POINT;
+                doubleSum = longSum + x;
+                break;
+            case FLOATING_POINT:
+                doubleSum += x;
+                break;
+            case DECIMAL:
+                decimalSum = decimalSum.add(BigDecimal.valueOf(x));
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void addDecimal(final BigDecimal x) {
+        switch (mode) {
+            case INTEGRAL:
+                decimalSum = BigDecimal.valueOf(longSum).add(x);
+                break;
+            case FLOATING_POINT:
+                decimalSum = BigDecimal.valueOf(doubleSum).add(x);
+                break;
+            case DECIMAL:
+                decimalSum = decimalSum.add(x);
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+        mode = Mode.DECIMAL;
+    }
+
+    // the order of promotion used by NumericType
+    private static boolean wider(final NumericType.Datatype a, final NumericType.Datatype b) {
+        return rank(a) > rank(b);
+    }
+
+    private static int rank(final NumericType.Datatype d) {
+        switch (d) {
+            case INTEGER:
+                return 0;
+            case LONG:
+                return 1;
+            case FLOAT:
+                return 2;
+            case DOUBLE:
+                return 3;
+            case DECIMAL:
+                return 4;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+}
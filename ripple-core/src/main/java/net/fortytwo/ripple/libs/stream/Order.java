@@ -1,21 +1,15 @@
 package net.fortytwo.ripple.libs.stream;
 
-import net.fortytwo.flow.Collector;
 import net.fortytwo.flow.Sink;
-import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.PrimitiveStackMapping;
 import net.fortytwo.ripple.model.RippleList;
-import net.fortytwo.ripple.query.LazyStackEvaluator;
-import net.fortytwo.ripple.query.StackEvaluator;
-
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.stream.Collectors;
 
 /**
+ * A primitive which produces all solutions of the stack beneath it in Ripple's total order.
+ * Solutions are sorted in memory up to a configurable number, beyond which sorted runs are spilled to disk.
+ *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
 // FIXME: this is a total hack
@@ -42,22 +36,12 @@ public class Order extends PrimitiveStackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
-        // FIXME: cheat to temporarily disable asynchronous query answering
-        boolean a = Ripple.asynchronousQueries();
-        Ripple.enableAsynchronousQueries(false);
+        StackSorter sorter = new StackSorter(mc, -1);
         try {
-            Collector<RippleList> s = new Collector<>();
-            StackEvaluator e = new LazyStackEvaluator();
-            e.apply(arg, s, mc);
-
-            List<RippleList> all = s.stream().collect(Collectors.toCollection(() -> new LinkedList<>()));
-            Collections.sort(all, mc.getComparator());
-
-            for (RippleList l : all) {
-                solutions.accept(l);
-            }
+            StreamLibrary.evaluateFully(arg, sorter::add, mc);
+            sorter.writeTo(solutions);
         } finally {
-            Ripple.enableAsynchronousQueries(a);
+            sorter.close();
         }
     }
 }
@@ -0,0 +1,54 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+
+/**
+ * A primitive which consumes a number n and produces the first n solutions of the stack beneath it,
+ * in Ripple's total order.
+ * This is equivalent to ordering the solutions and then limiting them to n,
+ * but only the n least solutions seen so far are kept in memory.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class OrderLimit extends PrimitiveStackMapping {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "orderLimit"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public OrderLimit() {
+        super();
+    }
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("lim", "a non-negative integer", true)};
+    }
+
+    public String getComment() {
+        return "produces the first lim solutions according to Ripple's total order (closed world operation)";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        int lim = mc.toNumber(arg.getFirst()).intValue();
+        if (lim < 0) {
+            throw new RippleException("negative limit: " + lim);
+        }
+
+        StackSorter sorter = new StackSorter(mc, lim);
+        try {
+            StreamLibrary.evaluateFully(arg.getRest(), sorter::add, mc);
+            sorter.writeTo(solutions);
+        } finally {
+            sorter.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.types.NumericType;
+
+/**
+ * A primitive which estimates a quantile of the numbers at the top of the solutions of a mapping,
+ * using a KLL sketch whose memory grows only with the logarithm of the number of solutions.
+ * The result is one of the numbers themselves, ordered as by the model's comparator.
+ * Solutions which do not have a number at the top are ignored.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class Quantile extends PrimitiveStackMapping {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "quantile"};
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public Quantile() {
+        super();
+    }
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("mapping",
+                        "a mapping which produces numbers",
+                        false),
+                new Parameter("q",
+                        "a fraction between 0 and 1, e.g. 0.5 for the median",
+                        true),
+                new Parameter("err",
+                        "the desired error in rank, as a fraction of the number of solutions, e.g. 0.01",
+                        true)
+        };
+    }
+
+    public String getComment() {
+        return "m q err -> m op, whose numeric solutions are summarized, then a number whose rank is within err"
+                + " of q replaces m on the stack";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        RippleList stack = arg;
+
+        double err = mc.toNumber(stack.getFirst()).doubleValue();
+        stack = stack.getRest();
+        double q = mc.toNumber(stack.getFirst()).doubleValue();
+        stack = stack.getRest();
+
+        if (!(err > 0 && err < 1)) {
+            throw new RippleException("rank error must be between 0 and 1: " + err);
+        }
+        if (!(q >= 0 && q <= 1)) {
+            throw new RippleException("quantile must be between 0 and 1: " + q);
+        }
+
+        QuantileSketch<Object> sketch = new QuantileSketch<>(err, mc.getComparator());
+        StreamLibrary.evaluateFully(stack.push(Operator.OP), s -> {
+            if (!s.isNil() && mc.getModel().getTypeOf(s.getFirst()) instanceof NumericType) {
+                sketch.add(s.getFirst());
+            }
+        }, mc);
+
+        // there is no quantile of an empty stream
+        if (sketch.getCount() > 0) {
+            solutions.accept(
+                    stack.getRest().push(sketch.quantile(q)));
+        }
+    }
+}
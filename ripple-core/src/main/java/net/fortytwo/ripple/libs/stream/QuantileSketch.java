@@ -0,0 +1,160 @@
+package net.fortytwo.ripple.libs.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A KLL sketch, which estimates the quantiles of a stream of items in memory which grows only with the
+ * logarithm of the length of the stream.
+ * Items are kept in a hierarchy of compactors; when a compactor is full, it is sorted and every other item,
+ * starting at a random offset, is promoted to the next level with twice the weight, while the rest are discarded.
+ * An estimated quantile is always one of the items of the stream.
+ * The rank of an estimated quantile differs from the true rank by about epsilon times the length of the stream,
+ * with high probability.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class QuantileSketch<T> {
+    private static final int MIN_CAPACITY = 8;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private final Comparator<? super T> comparator;
+    private final Random random = new Random();
+    private final List<Object[]> levels = new ArrayList<>();
+    private final List<Integer> sizes = new ArrayList<>();
+
+    private long count = 0;
+
+    /**
+     * @param epsilon    the desired error in normalized rank
+     * @param comparator the order of the items
+     */
+    public QuantileSketch(final double epsilon, final Comparator<? super T> comparator) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("epsilon must be positive: " + epsilon);
+        }
+
+        k = Math.max(MIN_CAPACITY, (int) Math.ceil(1.65 / epsilon));
+        this.comparator = comparator;
+        addLevel();
+    }
+
+    public void add(final T x) {
+        append(0, x);
+        count++;
+
+        if (sizes.get(0) >= capacity(0)) {
+            compress();
+        }
+    }
+
+    /**
+     * @return the number of items added to the sketch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param q a fraction between 0 and 1
+     * @return an item whose rank is approximately q times the number of items added,
+     * or null if no items have been added
+     */
+    @SuppressWarnings("unchecked")
+    public T quantile(final double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("quantile out of range: " + q);
+        }
+
+        int total = 0;
+        for (int s : sizes) {
+            total += s;
+        }
+        if (0 == total) {
+            return null;
+        }
+
+        Object[] values = new Object[total];
+        long[] weights = new long[total];
+        Integer[] order = new Integer[total];
+        int i = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            Object[] level = levels.get(h);
+            for (int j = 0; j < sizes.get(h); j++) {
+                values[i] = level[j];
+                weights[i] = 1L << h;
+                order[i] = i;
+                i++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> comparator.compare((T) values[a], (T) values[b]));
+
+        long totalWeight = 0;
+        for (long w : weights) {
+            totalWeight += w;
+        }
+
+        // the least item whose cumulative weight reaches the desired rank
+        double rank = q * totalWeight;
+        long cumulative = 0;
+        for (int j : order) {
+            cumulative += weights[j];
+            if (cumulative >= rank) {
+                return (T) values[j];
+            }
+        }
+
+        return (T) values[order[total - 1]];
+    }
+
+    // levels nearer the top have larger capacities, since their items carry more weight
+    private int capacity(final int level) {
+        int depth = levels.size() - 1 - level;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void compress() {
+        for (int h = 0; h < levels.size(); h++) {
+            int size = sizes.get(h);
+            if (size >= capacity(h)) {
+                if (h + 1 == levels.size()) {
+                    addLevel();
+                }
+
+                Object[] level = levels.get(h);
+                Arrays.sort((T[]) level, 0, size, comparator);
+
+                // if there is an odd item out, the least item stays behind
+                int start = size % 2;
+                int offset = random.nextBoolean() ? 1 : 0;
+                for (int j = start + offset; j < size; j += 2) {
+                    append(h + 1, (T) level[j]);
+                }
+
+                sizes.set(h, start);
+            }
+        }
+    }
+
+    private void addLevel() {
+        levels.add(new Object[MIN_CAPACITY]);
+        sizes.add(0);
+    }
+
+    private void append(final int level, final T x) {
+        Object[] values = levels.get(level);
+        int size = sizes.get(level);
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * values.length);
+            levels.set(level, values);
+        }
+
+        values[size] = x;
+        sizes.set(level, size + 1);
+    }
+}
@@ -0,0 +1,79 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A primitive which produces a uniform random sample of the solutions of a mapping,
+ * keeping no more solutions in memory than the size of the sample (reservoir sampling).
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class Sample extends PrimitiveStackMapping {
+    private static final String[] IDENTIFIERS = {
+            StreamLibrary.NS_2013_03 + "sample"};
+
+    private final Random random = new Random();
+
+    public String[] getIdentifiers() {
+        return IDENTIFIERS;
+    }
+
+    public Sample() {
+        super();
+    }
+
+    public Parameter[] getParameters() {
+        return new Parameter[]{
+                new Parameter("mapping",
+                        "a mapping to apply before sampling",
+                        false),
+                new Parameter("size",
+                        "the maximum number of solutions to produce",
+                        true)
+        };
+    }
+
+    public String getComment() {
+        return "m size -> m op, of whose solutions at most size are produced,"
+                + " each solution being equally likely to be chosen";
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        int size = mc.toNumber(arg.getFirst()).intValue();
+        if (size < 0) {
+            throw new RippleException("negative sample size: " + size);
+        }
+        RippleList stack = arg.getRest();
+
+        // the reservoir grows with the solutions, rather than being allocated up front, as the size may be very large
+        List<RippleList> reservoir = new ArrayList<>();
+        long[] seen = {0};
+        StreamLibrary.evaluateFully(stack.push(Operator.OP), s -> {
+            long n = seen[0]++;
+            if (n < size) {
+                reservoir.add(s);
+            } else {
+                // the new solution replaces a random member of the sample with probability size / (n + 1)
+                long i = (long) (random.nextDouble() * (n + 1));
+                if (i < size) {
+                    reservoir.set((int) i, s);
+                }
+            }
+        }, mc);
+
+        for (RippleList s : reservoir) {
+            solutions.accept(s);
+        }
+    }
+}
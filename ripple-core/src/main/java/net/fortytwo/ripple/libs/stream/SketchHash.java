@@ -0,0 +1,138 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.ListNode;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.RippleComparator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.RippleType;
+import net.fortytwo.ripple.model.types.NumericType;
+
+import java.math.BigDecimal;
+
+/**
+ * A hash function for the solutions which are fed to sketches such as <code>HyperLogLog</code> and
+ * <code>CountMinSketch</code>, which can tell items apart only by their hash codes.
+ * Like the hash of <code>RippleComparator</code>, it gives the same hash code to values which compare as equal.
+ * Unlike that hash, which must agree with comparisons made at the precision of a float, and so maps every integer
+ * above 2^24 onto a float, it hashes numbers by their exact values: integral numbers by their integer values,
+ * and others by their decimal values, which is how numbers of mixed types are compared.
+ * The only numbers which compare as equal and yet are hashed apart are those which are compared as floats
+ * and differ beyond the precision of a float.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class SketchHash {
+    private static final long
+            NIL_HASH = 0x6a09e667f3bcc908L,
+            NAN_HASH = 0xbb67ae8584caa73bL,
+            POSITIVE_INFINITY_HASH = 0x3c6ef372fe94f82bL,
+            NEGATIVE_INFINITY_HASH = 0xa54ff53a5f1d36f1L;
+
+    private final ModelConnection mc;
+    private final RippleComparator comparator;
+
+    public SketchHash(final ModelConnection mc) {
+        this.mc = mc;
+        this.comparator = mc.getComparator();
+    }
+
+    /**
+     * @param list a list of values, such as a solution stack
+     * @return the hash code of the list
+     * @throws RippleException if a value cannot be examined
+     */
+    public int hash(final ListNode<?> list) throws RippleException {
+        long h = hashList(list);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private long hashList(final ListNode<?> list) throws RippleException {
+        long h = NIL_HASH;
+        ListNode<?> cur = list;
+        while (!cur.isNil()) {
+            h = mix(31 * h + hashValue(cur.getFirst()));
+            cur = cur.getRest();
+        }
+
+        return h;
+    }
+
+    private long hashValue(final Object v) throws RippleException {
+        RippleType type = mc.getModel().getTypeOf(v);
+        RippleType.Category cat = comparator.categoryOf(v, type);
+
+        if (RippleType.Category.NUMERIC_TYPED_LITERAL == cat && type instanceof NumericType) {
+            return hashNumber(((NumericType) type).findNumber(v));
+        } else if (RippleType.Category.LIST == cat) {
+            if (v instanceof RippleList) {
+                return hashList((RippleList) v);
+            }
+
+            // a branching list is equal only to another branching list, as in RippleComparator
+            Collector<RippleList> lists = new Collector<>();
+            mc.toList(v, lists);
+            return 1 == lists.size()
+                    ? hashList(lists.iterator().next())
+                    : cat.ordinal();
+        } else {
+            // the comparator's hash, which is exact for everything but numbers
+            return mix(comparator.hash(v));
+        }
+    }
+
+    /**
+     * @param n a number
+     * @return a hash code which is the same for any two numbers which are equal as integers, or as decimals
+     */
+    static long hashNumber(final Number n) {
+        if (n instanceof Integer || n instanceof Long) {
+            return mix(n.longValue());
+        }
+
+        BigDecimal d;
+        if (n instanceof BigDecimal) {
+            d = (BigDecimal) n;
+        } else {
+            // floats and doubles are compared with decimals as NumericType does, through their double values
+            double x = n.doubleValue();
+            if (Double.isNaN(x)) {
+                return NAN_HASH;
+            } else if (Double.isInfinite(x)) {
+                return x > 0 ? POSITIVE_INFINITY_HASH : NEGATIVE_INFINITY_HASH;
+            }
+
+            d = BigDecimal.valueOf(x);
+        }
+
+        // 0.0 and -0.0, along with zeros of any scale, are zero
+        if (0 == d.signum()) {
+            return mix(0);
+        }
+
+        // the canonical form of a decimal, which is the same for all decimals with the same value
+        d = d.stripTrailingZeros();
+
+        if (d.scale() <= 0 && d.precision() - d.scale() <= 19) {
+            try {
+                return mix(d.longValueExact());
+            } catch (ArithmeticException e) {
+                // too large for a long
+            }
+        }
+
+        return mix(31L * d.unscaledValue().hashCode() + d.scale());
+    }
+
+    // the MurmurHash3 64-bit finalizer
+    private static long mix(final long hash) {
+        long h = hash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,226 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Op;
+import net.fortytwo.ripple.model.PrimitiveStackMapping;
+import net.fortytwo.ripple.model.RippleList;
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Optional;
+
+/**
+ * Writes stacks to, and reads them back from, a binary stream, so that solutions may be set aside on disk.
+ * RDF values, strings, booleans, numbers, native lists of these, and special values such as primitives
+ * are supported; any other value (a closure, for instance) makes a stack unencodable.
+ * RDF values which are read back are interned, as they were when first read from the model.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class StackCodec {
+    private static final byte
+            IRI_VALUE = 0,
+            BNODE_VALUE = 1,
+            LANGUAGE_TAGGED_LITERAL = 2,
+            TYPED_LITERAL = 3,
+            STRING = 4,
+            BOOLEAN = 5,
+            INTEGER = 6,
+            LONG = 7,
+            FLOAT = 8,
+            DOUBLE = 9,
+            DECIMAL = 10,
+            SPECIAL_VALUE = 11,
+            LIST = 12;
+
+    private static final ValueFactory valueFactory = SimpleValueFactory.getInstance();
+
+    private final ModelConnection mc;
+
+    public StackCodec(final ModelConnection mc) {
+        this.mc = mc;
+    }
+
+    /**
+     * @param stack a stack
+     * @return whether every value in the stack can be encoded
+     * @throws RippleException if a value cannot be examined
+     */
+    public boolean isEncodable(final RippleList stack) throws RippleException {
+        RippleList cur = stack;
+        while (!cur.isNil()) {
+            if (!isEncodable(cur.getFirst())) {
+                return false;
+            }
+
+            cur = cur.getRest();
+        }
+
+        return true;
+    }
+
+    /**
+     * @param stack an encodable stack
+     * @param out   the stream to write to
+     * @throws IOException     if the stream cannot be written to
+     * @throws RippleException if a value cannot be encoded
+     */
+    public void write(final RippleList stack, final DataOutput out) throws IOException, RippleException {
+        out.writeInt(stack.length());
+
+        RippleList cur = stack;
+        while (!cur.isNil()) {
+            writeValue(cur.getFirst(), out);
+            cur = cur.getRest();
+        }
+    }
+
+    /**
+     * @param in the stream to read from
+     * @return the next stack in the stream
+     * @throws IOException     if the stream cannot be read from
+     * @throws RippleException if a value cannot be decoded
+     */
+    public RippleList read(final DataInput in) throws IOException, RippleException {
+        int length = in.readInt();
+        Object[] values = new Object[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = readValue(in);
+        }
+
+        // the top of the stack was written first
+        RippleList stack = mc.list();
+        for (int i = length - 1; i >= 0; i--) {
+            stack = stack.push(values[i]);
+        }
+
+        return stack;
+    }
+
+    private boolean isEncodable(final Object v) throws RippleException {
+        if (v instanceof RippleList) {
+            return isEncodable((RippleList) v);
+        } else if (v instanceof Value || v instanceof String || v instanceof Boolean
+                || v instanceof Integer || v instanceof Long || v instanceof Float || v instanceof Double
+                || v instanceof BigDecimal) {
+            return true;
+        } else if (v instanceof PrimitiveStackMapping || v instanceof Op) {
+            // a special value must be restored from its RDF equivalent
+            Value rdf = mc.toRDF(v);
+            return rdf instanceof IRI && mc.canonicalValue(rdf) == v;
+        } else {
+            return false;
+        }
+    }
+
+    private void writeValue(final Object v, final DataOutput out) throws IOException, RippleException {
+        if (v instanceof RippleList) {
+            out.writeByte(LIST);
+            write((RippleList) v, out);
+        } else if (v instanceof IRI) {
+            out.writeByte(IRI_VALUE);
+            out.writeUTF(((IRI) v).stringValue());
+        } else if (v instanceof BNode) {
+            out.writeByte(BNODE_VALUE);
+            out.writeUTF(((BNode) v).getID());
+        } else if (v instanceof Literal) {
+            Literal l = (Literal) v;
+            Optional<String> language = l.getLanguage();
+            if (language.isPresent()) {
+                out.writeByte(LANGUAGE_TAGGED_LITERAL);
+                writeString(l.getLabel(), out);
+                out.writeUTF(language.get());
+            } else {
+                out.writeByte(TYPED_LITERAL);
+                writeString(l.getLabel(), out);
+                out.writeUTF(l.getDatatype().stringValue());
+            }
+        } else if (v instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) v, out);
+        } else if (v instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) v);
+        } else if (v instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) v);
+        } else if (v instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) v);
+        } else if (v instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) v);
+        } else if (v instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) v);
+        } else if (v instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeUTF(v.toString());
+        } else {
+            out.writeByte(SPECIAL_VALUE);
+            out.writeUTF(mc.toRDF(v).stringValue());
+        }
+    }
+
+    private Object readValue(final DataInput in) throws IOException, RippleException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case IRI_VALUE:
+                return intern(valueFactory.createIRI(in.readUTF()));
+            case BNODE_VALUE:
+                return intern(valueFactory.createBNode(in.readUTF()));
+            case LANGUAGE_TAGGED_LITERAL:
+                String label = readString(in);
+                return intern(valueFactory.createLiteral(label, in.readUTF()));
+            case TYPED_LITERAL:
+                String typedLabel = readString(in);
+                return intern(valueFactory.createLiteral(typedLabel, valueFactory.createIRI(in.readUTF())));
+            case STRING:
+                return readString(in);
+            case BOOLEAN:
+                return in.readBoolean();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case SPECIAL_VALUE:
+                return mc.canonicalValue(valueFactory.createIRI(in.readUTF()));
+            case LIST:
+                return read(in);
+            default:
+                throw new RippleException("unknown value tag: " + tag);
+        }
+    }
+
+    private Value intern(final Value v) {
+        return mc.getValueInternCache().intern(v);
+    }
+
+    // labels and strings may exceed the 64KB limit of writeUTF
+    private static void writeString(final String s, final DataOutput out) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,428 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.RippleType;
+import net.fortytwo.ripple.model.types.BNodeType;
+import net.fortytwo.ripple.model.types.IRIType;
+import net.fortytwo.ripple.model.types.NumericType;
+import net.fortytwo.ripple.model.types.PlainLiteralType;
+import net.fortytwo.ripple.model.types.StringLiteralType;
+import net.fortytwo.ripple.model.types.StringType;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts a stream of stacks according to Ripple's total order, producing either all of them or only the first few.
+ * Once a configurable number of stacks has been buffered, the buffer is sorted and written to a temporary file,
+ * and the sorted runs are merged as the stacks are produced, so that the stream need not fit in memory.
+ * Stacks which cannot be written (for instance, because they contain closures) remain in memory.
+ * If only the first n stacks are wanted, and n is within the threshold, the sorter instead keeps the n least stacks
+ * seen so far in a bounded heap.
+ * The top element of each stack is reduced to a sort key when the stack is added,
+ * and the full comparison is made only if the keys do not decide the order.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class StackSorter {
+    private static final Logger logger = LoggerFactory.getLogger(StackSorter.class.getName());
+
+    // the maximum number of runs on disk; once reached, the runs are merged into one
+    private static final int MAX_RUNS = 64;
+
+    private final ModelConnection mc;
+    private final Comparator<RippleList> listComparator;
+    private final StackCodec codec;
+    private final Comparator<Entry> entryComparator;
+    private final int spillThreshold;
+    private final long limit;
+
+    private final List<Entry> buffer = new ArrayList<>();
+    private final List<Entry> pinned = new LinkedList<>();
+    private final List<Run> runs = new LinkedList<>();
+    private final PriorityQueue<Entry> heap;
+
+    /**
+     * @param mc    a connection to the model from which the stacks are drawn
+     * @param limit the maximum number of stacks to produce, or a negative number if there is no limit
+     * @throws RippleException if configuration fails
+     */
+    public StackSorter(final ModelConnection mc,
+                       final long limit) throws RippleException {
+        this.mc = mc;
+        this.listComparator = mc.getComparator().getListComparator();
+        this.codec = new StackCodec(mc);
+        this.entryComparator = this::compare;
+        this.limit = limit;
+
+        spillThreshold = Math.max(1, Ripple.getConfiguration().getInt(Ripple.ORDER_SPILL_THRESHOLD, 100000));
+
+        heap = limit >= 0 && limit <= spillThreshold
+                ? new PriorityQueue<>(11, entryComparator.reversed())
+                : null;
+    }
+
+    /**
+     * @param stack a stack to be sorted
+     * @throws RippleException if the stack cannot be added
+     */
+    public void add(final RippleList stack) throws RippleException {
+        Entry e = new Entry(stack);
+
+        if (null != heap) {
+            if (heap.size() < limit) {
+                heap.add(e);
+            } else if (limit > 0 && compare(e, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        } else {
+            buffer.add(e);
+            if (buffer.size() >= spillThreshold) {
+                spill();
+            }
+        }
+    }
+
+    /**
+     * Produces the sorted stacks, then releases any temporary files
+     *
+     * @param sink a handler for the sorted stacks
+     * @throws RippleException if the stacks cannot be read back or handled
+     */
+    public void writeTo(final Sink<RippleList> sink) throws RippleException {
+        try {
+            List<Entry> inMemory = new ArrayList<>(buffer.size() + pinned.size() + (null == heap ? 0 : heap.size()));
+            inMemory.addAll(buffer);
+            inMemory.addAll(pinned);
+            if (null != heap) {
+                inMemory.addAll(heap);
+            }
+            buffer.clear();
+            pinned.clear();
+            Collections.sort(inMemory, entryComparator);
+
+            List<Cursor> cursors = new LinkedList<>();
+            cursors.add(new ListCursor(inMemory));
+            for (Run r : runs) {
+                cursors.add(new FileCursor(r));
+            }
+
+            merge(cursors, limit, e -> sink.accept(e.stack));
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Releases any temporary files
+     */
+    public void close() {
+        for (Run r : runs) {
+            r.delete();
+        }
+        runs.clear();
+    }
+
+    private void spill() throws RippleException {
+        Collections.sort(buffer, entryComparator);
+
+        Run run = new Run();
+        try {
+            try (DataOutputStream out = run.openOutput()) {
+                for (Entry e : buffer) {
+                    if (codec.isEncodable(e.stack)) {
+                        codec.write(e.stack, out);
+                        run.size++;
+                    } else {
+                        pinned.add(e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            run.delete();
+            throw new RippleException(e);
+        }
+
+        buffer.clear();
+        if (0 == run.size) {
+            run.delete();
+            return;
+        }
+
+        runs.add(run);
+        logger.debug("wrote sorted run of " + run.size + " stacks to " + run.file);
+
+        if (runs.size() >= MAX_RUNS) {
+            mergeRuns();
+        }
+    }
+
+    // merges all runs on disk into a single run
+    private void mergeRuns() throws RippleException {
+        List<Cursor> cursors = new LinkedList<>();
+        for (Run r : runs) {
+            cursors.add(new FileCursor(r));
+        }
+
+        Run merged = new Run();
+        try (DataOutputStream out = merged.openOutput()) {
+            merge(cursors, -1, e -> {
+                try {
+                    codec.write(e.stack, out);
+                } catch (IOException ex) {
+                    throw new RippleException(ex);
+                }
+                merged.size++;
+            });
+        } catch (IOException e) {
+            merged.delete();
+            throw new RippleException(e);
+        } catch (RippleException e) {
+            merged.delete();
+            throw e;
+        }
+
+        close();
+        runs.add(merged);
+    }
+
+    // produces at most max entries, or all entries if max is negative
+    private void merge(final List<Cursor> cursors,
+                       final long max,
+                       final Sink<Entry> sink) throws RippleException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(
+                Math.max(1, cursors.size()), (a, b) -> compare(a.current(), b.current()));
+        try {
+            for (Cursor c : cursors) {
+                if (c.advance()) {
+                    queue.add(c);
+                } else {
+                    c.close();
+                }
+            }
+
+            long count = 0;
+            while (!queue.isEmpty() && (max < 0 || count++ < max)) {
+                Cursor c = queue.poll();
+                sink.accept(c.current());
+                if (c.advance()) {
+                    queue.add(c);
+                } else {
+                    c.close();
+                }
+            }
+        } finally {
+            for (Cursor c : queue) {
+                c.close();
+            }
+        }
+    }
+
+    private int compare(final Entry e1, final Entry e2) {
+        int c = e1.key.compareTo(e2.key);
+        return 0 == c
+                ? listComparator.compare(e1.stack, e2.stack)
+                : c;
+    }
+
+    private class Entry {
+        private final RippleList stack;
+        private final SortKey key;
+
+        public Entry(final RippleList stack) throws RippleException {
+            this.stack = stack;
+            this.key = new SortKey(stack);
+        }
+    }
+
+    /**
+     * A normalized form of the top element of a stack which, when it differs from that of another stack,
+     * orders the two stacks as the comparator would.
+     * Values for which there is no such form are left to the comparator.
+     */
+    private class SortKey {
+        private final Object value;
+        private final RippleType type;
+        private final RippleType.Category category;
+        private final Number number;
+        private final String string;
+
+        public SortKey(final RippleList stack) throws RippleException {
+            if (stack.isNil()) {
+                value = null;
+                type = null;
+                category = null;
+                number = null;
+                string = null;
+                return;
+            }
+
+            Object v = stack.getFirst();
+            value = v;
+            type = mc.getModel().getTypeOf(v);
+            category = null == type ? null : mc.getComparator().categoryOf(v, type);
+
+            if (type instanceof NumericType) {
+                number = ((NumericType) type).findNumber(v);
+                string = null;
+            } else if (type instanceof StringType) {
+                number = null;
+                string = (String) v;
+            } else if (type instanceof StringLiteralType || type instanceof PlainLiteralType
+                    || type instanceof IRIType || type instanceof BNodeType) {
+                number = null;
+                string = ((Value) v).stringValue();
+            } else {
+                number = null;
+                string = null;
+            }
+        }
+
+        // a return value of 0 means that the keys do not decide the order
+        public int compareTo(final SortKey other) {
+            if (null == type || null == other.type) {
+                return 0;
+            }
+
+            boolean sameType = type == other.type;
+            if (!sameType) {
+                int c = category.compareTo(other.category);
+                // a resource which is the head of a list is compared with values of other types as a list
+                if (0 != c || RippleType.Category.LIST == category) {
+                    return c;
+                }
+            }
+
+            if (null != number && null != other.number) {
+                // numbers are compared exactly as the comparator compares them: by their type if it is the same,
+                // otherwise in the wider of their datatypes
+                return sameType
+                        ? compareWithinType(value, other.value)
+                        : NumericType.compare(number, other.number);
+            } else if (null != string && null != other.string) {
+                return string.compareTo(other.string);
+            } else {
+                return 0;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compareWithinType(final Object v1, final Object v2) {
+            return ((RippleType<Object>) type).compare(v1, v2, mc);
+        }
+    }
+
+    private interface Cursor {
+        Entry current();
+
+        boolean advance() throws RippleException;
+
+        void close();
+    }
+
+    private class ListCursor implements Cursor {
+        private final Iterator<Entry> iterator;
+        private Entry current;
+
+        public ListCursor(final List<Entry> entries) {
+            iterator = entries.iterator();
+        }
+
+        public Entry current() {
+            return current;
+        }
+
+        public boolean advance() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            return null != current;
+        }
+
+        public void close() {
+        }
+    }
+
+    private class FileCursor implements Cursor {
+        private final Run run;
+        private DataInputStream in;
+        private long remaining;
+        private Entry current;
+
+        public FileCursor(final Run run) {
+            this.run = run;
+            this.remaining = run.size;
+        }
+
+        public Entry current() {
+            return current;
+        }
+
+        public boolean advance() throws RippleException {
+            if (0 == remaining) {
+                current = null;
+                return false;
+            }
+
+            try {
+                if (null == in) {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file)));
+                }
+
+                current = new Entry(codec.read(in));
+            } catch (IOException e) {
+                throw new RippleException(e);
+            }
+
+            remaining--;
+            return true;
+        }
+
+        public void close() {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    logger.warn("failed to close sorted run " + run.file, e);
+                }
+                in = null;
+            }
+        }
+    }
+
+    private static class Run {
+        private File file;
+        private long size = 0;
+
+        public DataOutputStream openOutput() throws IOException {
+            file = File.createTempFile("ripple-order-", ".run");
+            file.deleteOnExit();
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        }
+
+        public void delete() {
+            if (null != file && file.exists() && !file.delete()) {
+                logger.warn("failed to delete sorted run " + file);
+            }
+        }
+    }
+}
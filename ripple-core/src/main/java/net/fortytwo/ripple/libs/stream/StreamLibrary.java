@@ -1,10 +1,20 @@
 package net.fortytwo.ripple.libs.stream;
 
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.libs.stream.ranking.Amp;
 import net.fortytwo.ripple.libs.stream.ranking.Rank;
 import net.fortytwo.ripple.model.Library;
 import net.fortytwo.ripple.model.LibraryLoader;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.query.IterativeStackEvaluator;
+import net.fortytwo.ripple.query.StackEvaluator;
+
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * A collection of data flow primitives.
@@ -26,6 +36,7 @@ public class StreamLibrary extends Library {
                 Distinct.class,
                 Each.class,
                 Intersect.class,
+                Join.class,
                 Limit.class,
                 Scrap.class,
 
@@ -33,7 +44,62 @@ public class StreamLibrary extends Library {
                 Amp.class,
                 Count.class,
                 Order.class,
-                Rank.class);
+                OrderLimit.class,
+                Rank.class,
+
+                // Constant-memory summaries
+                CountDistinct.class,
+                HeavyHitters.class,
+                Quantile.class,
+                Sample.class,
+
+                // Grouped aggregation
+                GroupAverage.class,
+                GroupCollect.class,
+                GroupCount.class,
+                GroupMax.class,
+                GroupMin.class,
+                GroupSum.class);
+    }
+
+    // closed-world primitives see all solutions of a stack before producing any of their own
+    static void evaluateFully(final RippleList stack,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+        // queries are answered synchronously in this thread only, so that all solutions are in hand on return
+        StackEvaluator e = new IterativeStackEvaluator(true);
+        e.apply(stack, solutions, mc);
+    }
+
+    // counts are produced as integers where they fit, and as longs otherwise
+    static Object countValue(final long count) {
+        return count <= Integer.MAX_VALUE
+                ? (Object) (int) count
+                : count;
+    }
+
+    // the values at the top of the solutions of a key mapping applied to a stack
+    static List<Object> findKeys(final RippleList stack,
+                                 final Object keyMapping,
+                                 final ModelConnection mc) throws RippleException {
+        List<Object> keys = new LinkedList<>();
+        evaluateFully(stack.push(keyMapping).push(Operator.OP), s -> {
+            if (!s.isNil()) {
+                keys.add(s.getFirst());
+            }
+        }, mc);
+        return keys;
     }
-}
 
+    // the number of stacks which a join may hold, or 0 if there is no limit
+    static int getJoinMemoryBudget() throws RippleException {
+        return Math.max(0, Ripple.getConfiguration().getInt(Ripple.JOIN_MEMORY_BUDGET, 1000000));
+    }
+
+    static void checkJoinMemoryBudget(final long size, final int budget) throws RippleException {
+        if (budget > 0 && size > budget) {
+            throw new RippleException("join exceeded its memory budget of " + budget + " stacks (see "
+                    + Ripple.JOIN_MEMORY_BUDGET + ")");
+        }
+    }
+}
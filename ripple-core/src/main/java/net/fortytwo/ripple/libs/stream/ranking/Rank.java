@@ -44,9 +44,8 @@ public class Rank extends PrimitiveStackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
-        // FIXME: cheat to temporarily disable asynchronous query answering
-        boolean a = Ripple.asynchronousQueries();
-        Ripple.enableAsynchronousQueries(false);
+        // answer queries synchronously, in this thread only
+        boolean a = Ripple.forceSynchronousQueries(true);
         try {
             RippleList stack = arg;
             int steps = mc.toNumber(stack.getFirst()).intValue();
@@ -55,7 +54,7 @@ public class Rank extends PrimitiveStackMapping {
             //System.out.println("ranking on: " + stack);
             new RankingEvaluator(steps).apply(stack, solutions, mc);
         } finally {
-            Ripple.enableAsynchronousQueries(a);
+            Ripple.forceSynchronousQueries(a);
         }
     }
 }
@@ -7,7 +7,6 @@ import net.fortytwo.ripple.model.Closure;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.Operator;
 import net.fortytwo.ripple.model.RippleList;
-import net.fortytwo.ripple.model.RippleComparator;
 import net.fortytwo.ripple.model.StackMapping;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,8 +39,7 @@ public class RankingEvaluatorHelper {
         queue = new PriorityQueue<>(1, comparator);
 
         resultList = new LinkedList<>();
-        resultMemos = new ListMemoizer<>(
-                new RippleComparator(mc));
+        resultMemos = new ListMemoizer<>(mc.getComparator(), mc.getComparator().getListHashFunction());
 
         handleOutput(new RankingContext(arg, mc));
     }
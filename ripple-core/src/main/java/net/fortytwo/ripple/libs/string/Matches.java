@@ -33,6 +33,11 @@ public class Matches extends PrimitiveStackMapping {
                 new Parameter("regex", null, true)};
     }
 
+    @Override
+    public boolean isFunctional() {
+        return true;
+    }
+
     public String getComment() {
         return "s regex  =>  b -- where b is true if the given string matches the given regular expression," +
                 " otherwise false";
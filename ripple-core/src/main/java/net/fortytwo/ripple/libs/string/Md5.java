@@ -30,6 +30,11 @@ public class Md5 extends PrimitiveStackMapping {
                 new Parameter("plaintext", null, true)};
     }
 
+    @Override
+    public boolean isFunctional() {
+        return true;
+    }
+
     public String getComment() {
         return "finds the md5 hash of a string";
     }
@@ -34,6 +34,11 @@ public class ReplaceAll extends PrimitiveStackMapping {
                 new Parameter("replacement", null, true)};
     }
 
+    @Override
+    public boolean isFunctional() {
+        return true;
+    }
+
     public String getComment() {
         return "s regex replacement  =>  s2 -- in which each occurrence of the given regular expression in s" +
                 " has been substituted with the given replacement";
@@ -33,6 +33,11 @@ public class Sha1 extends PrimitiveStackMapping {
                 new Parameter("plaintext", null, true)};
     }
 
+    @Override
+    public boolean isFunctional() {
+        return true;
+    }
+
     public String getComment() {
         return "finds the sha1 hash of a string";
     }
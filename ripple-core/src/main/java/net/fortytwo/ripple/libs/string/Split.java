@@ -38,6 +38,11 @@ public class Split extends PrimitiveStackMapping {
                 new Parameter("regex", null, true)};
     }
 
+    @Override
+    public boolean isFunctional() {
+        return true;
+    }
+
     public String getComment() {
         return "s regex  =>  (s1, s2, s3, ...) -- where s has been divided into substrings" +
                 " by occurrences of regular expression regex";
@@ -0,0 +1,174 @@
+package net.fortytwo.ripple.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A bounded map which evicts its least recently used entries, and which counts the lookups which do and do not
+ * find an entry.  It is the storage behind the model's caches of operators, programs, lists and solutions.
+ * <p>
+ * The entries are divided among segments, each with its own lock, so that threads working with different keys
+ * seldom wait for one another.  Recency is tracked within each segment, so that the entry evicted is the least
+ * recently used entry of its segment, rather than of the whole cache.  A cache too small to be divided usefully
+ * has a single segment, and evicts in exact LRU order.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class BoundedCache<K, V> {
+    // no segment is made smaller than this, so that eviction stays close to LRU order
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final List<Segment<K, V>> segments;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of entries to keep
+     */
+    public BoundedCache(final int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param capacity         the maximum number of entries to keep
+     * @param evictionListener a handler for each entry evicted to make room for another, called while the lock of
+     *                         its segment is held, or null
+     */
+    public BoundedCache(final int capacity,
+                        final BiConsumer<K, V> evictionListener) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("negative capacity: " + capacity);
+        }
+
+        // a power of two, so that a key's segment is found by masking its hash code
+        int n = 1;
+        while (n < MAX_SEGMENTS && 2 * n * MIN_SEGMENT_CAPACITY <= capacity) {
+            n *= 2;
+        }
+
+        segments = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            segments.add(new Segment<>(capacity / n + (i < capacity % n ? 1 : 0), evictionListener));
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return the value for the key, or null if there is none
+     */
+    public V get(final K key) {
+        V value = segmentFor(key).getValue(key);
+        if (null == value) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+
+        return value;
+    }
+
+    /**
+     * @param key   a key
+     * @param value the value for the key
+     */
+    public void put(final K key, final V value) {
+        segmentFor(key).putValue(key, value);
+    }
+
+    /**
+     * @param key a key
+     * @return the value which was removed, or null if there was none
+     */
+    public V remove(final K key) {
+        return segmentFor(key).removeValue(key);
+    }
+
+    /**
+     * Discards all entries
+     */
+    public void clear() {
+        for (Segment<K, V> s : segments) {
+            s.clearValues();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> s : segments) {
+            size += s.countValues();
+        }
+
+        return size;
+    }
+
+    /**
+     * @return the number of lookups which found an entry
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups which did not find an entry
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Segment<K, V> segmentFor(final K key) {
+        int h = key.hashCode();
+        return segments.get((h ^ (h >>> 16)) & (segments.size() - 1));
+    }
+
+    // an access-order linked hashmap with the given maximum capacity
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int capacity;
+        private final BiConsumer<K, V> evictionListener;
+
+        public Segment(final int capacity,
+                       final BiConsumer<K, V> evictionListener) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictionListener = evictionListener;
+        }
+
+        public synchronized V getValue(final K key) {
+            return get(key);
+        }
+
+        public synchronized void putValue(final K key, final V value) {
+            put(key, value);
+        }
+
+        public synchronized V removeValue(final K key) {
+            return remove(key);
+        }
+
+        public synchronized void clearValues() {
+            clear();
+        }
+
+        public synchronized int countValues() {
+            return size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                if (null != evictionListener) {
+                    evictionListener.accept(eldest.getKey(), eldest.getValue());
+                }
+
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+}
@@ -21,6 +21,20 @@ public class Closure implements StackMapping {
         calculatedArity = innerMapping.arity() - 1;
     }
 
+    /**
+     * @return the mapping to which the argument of this closure is passed
+     */
+    public StackMapping getInnerMapping() {
+        return innerMapping;
+    }
+
+    /**
+     * @return the argument which this closure passes to its inner mapping
+     */
+    public Object getArgument() {
+        return argument;
+    }
+
     public int arity() {
         return calculatedArity;
     }
@@ -42,5 +56,17 @@ public class Closure implements StackMapping {
     public StackMapping getInverse() throws RippleException {
         return new Closure(innerMapping.getInverse(), argument);
     }
-}
 
+    public boolean equals(final Object other) {
+        if (other instanceof Closure) {
+            Closure c = (Closure) other;
+            return c.innerMapping.equals(innerMapping) && c.argument.equals(argument);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return 1457307683 + 31 * innerMapping.hashCode() + argument.hashCode();
+    }
+}
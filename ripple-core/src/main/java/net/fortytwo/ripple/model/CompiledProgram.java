@@ -0,0 +1,189 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import org.openrdf.model.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A list program whose elements have been resolved ahead of time.
+ * When a program is dequoted, the evaluator turns each element followed by <code>op</code> into an active
+ * <code>Operator</code>, which for an RDF value requires lookups in the model.
+ * A compiled program instead pushes a <code>ResolvedOp</code> which carries a shared, pre-created operator,
+ * wherever the operator does not depend on the contents of the model: for primitives, quoted lists,
+ * and the names of defined programs.  A <code>ResolvedOp</code> is equal to <code>op</code>, and is printed as
+ * <code>op</code>, so a stack which is never fully reduced looks just as it would had the program not been compiled.
+ * <p>
+ * Programs which come from the store, or are defined by name, are compiled and cached by the
+ * <code>ProgramCache</code> of a model, which must be cleared whenever a program is defined or undefined.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class CompiledProgram implements StackMapping {
+    private final RippleList program;
+
+    // the elements to push, from the bottom of the stack to the top
+    private final Object[] items;
+
+    private final int operatorCount;
+
+    private CompiledProgram(final RippleList program,
+                            final Object[] items,
+                            final int operatorCount) {
+        this.program = program;
+        this.items = items;
+        this.operatorCount = operatorCount;
+    }
+
+    /**
+     * @param program a list program
+     * @param mc      a connection to the model in which the program is to be executed
+     * @return the compiled program
+     * @throws RippleException if compilation fails
+     */
+    public static CompiledProgram compile(final RippleList program,
+                                          final ModelConnection mc) throws RippleException {
+        List<Object> items = new ArrayList<>();
+        int operatorCount = 0;
+
+        RippleList cur = program;
+        while (!cur.isNil()) {
+            Object first = cur.getFirst();
+            RippleList rest = cur.getRest();
+
+            Operator op = rest.isNil() || !(rest.getFirst() instanceof Op)
+                    ? null
+                    : resolveOperator(first, mc);
+
+            items.add(first);
+            if (null == op) {
+                cur = rest;
+            } else {
+                items.add(new ResolvedOp(op));
+                operatorCount++;
+                cur = rest.getRest();
+            }
+        }
+
+        return new CompiledProgram(program, items.toArray(), operatorCount);
+    }
+
+    /**
+     * @return the program from which this one was compiled
+     */
+    public RippleList getProgram() {
+        return program;
+    }
+
+    /**
+     * @return the number of operators which were resolved at compile time
+     */
+    public int getOperatorCount() {
+        return operatorCount;
+    }
+
+    public int arity() {
+        return 0;
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        RippleList out = arg;
+        for (Object item : items) {
+            out = out.push(item);
+        }
+
+        // Never emit an empty stack.
+        if (!out.isNil()) {
+            solutions.accept(out);
+        }
+    }
+
+    public boolean isTransparent() {
+        return true;
+    }
+
+    public StackMapping getInverse() throws RippleException {
+        return new ListDequotation(program).getInverse();
+    }
+
+    public String toString() {
+        return "Compiled(" + program + ")";
+    }
+
+    // the operator which the evaluator would create for the given value, if it can be determined in advance
+    private static Operator resolveOperator(final Object v,
+                                            final ModelConnection mc) {
+        // an active value is applied before op ever sees it
+        if (null != mc.toMapping(v)) {
+            return null;
+        }
+
+        if (v instanceof StackMapping) {
+            return new Operator((StackMapping) v);
+        } else if (v instanceof RippleList) {
+            return new Operator((RippleList) v);
+        } else if (v instanceof Value) {
+            Object special = mc.getModel().getSpecialValues().get((Value) v);
+            if (special instanceof RippleList) {
+                return new Operator((RippleList) special);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * An <code>op</code> whose operator has already been resolved.
+     * Its mapping discards the element below it in favor of the resolved operator.
+     */
+    public static class ResolvedOp extends Op {
+        private final StackMapping mapping;
+
+        public ResolvedOp(final Operator operator) {
+            mapping = new ResolvedMapping(operator, false);
+        }
+
+        public StackMapping getMapping() {
+            return mapping;
+        }
+    }
+
+    private static class ResolvedMapping implements StackMapping {
+        private final Operator operator;
+        private final boolean invert;
+
+        public ResolvedMapping(final Operator operator,
+                               final boolean invert) {
+            this.operator = operator;
+            this.invert = invert;
+        }
+
+        public int arity() {
+            return 1;
+        }
+
+        public void apply(final RippleList arg,
+                          final Sink<RippleList> solutions,
+                          final ModelConnection mc) throws RippleException {
+            solutions.accept(arg.getRest().push(invert
+                    ? new Operator(operator.getMapping().getInverse())
+                    : operator));
+        }
+
+        public boolean isTransparent() {
+            return true;
+        }
+
+        public StackMapping getInverse() throws RippleException {
+            return new ResolvedMapping(operator, !invert);
+        }
+
+        public String toString() {
+            return invert ? "opInverse" : "op";
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.fortytwo.ripple.model;
 
 import info.aduna.iteration.CloseableIteration;
 import net.fortytwo.flow.Buffer;
+import net.fortytwo.flow.Demand;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.sail.RippleSesameValue;
@@ -14,9 +15,26 @@ import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.SimpleValueFactory;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.impl.MapBindingSet;
 import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
  */
@@ -39,14 +57,22 @@ public class GetStatementsQuery {
     // TODO: use model-specific factory
     private static final ValueFactory valueFactory = SimpleValueFactory.getInstance();
 
+    // the variables of a lookup of many subjects at once
+    private static final String
+            SUBJECT_VAR = "subject",
+            OBJECT_VAR = "object";
+
     private final Resource subject;
     private final IRI predicate;
     private final Value object;
     private final Resource[] contexts;
+    private final Profiler profiler;
     private Type type = Type.SP_O;
 
     public GetStatementsQuery(final StatementPatternQuery patternQuery,
                               final ModelConnection mc) throws RippleException {
+        profiler = mc.getProfiler();
+
         switch (patternQuery.getPattern()) {
             case SP_O:
                 type = Type.SP_O;
@@ -106,19 +132,22 @@ public class GetStatementsQuery {
         return mc.toRDF(rv);
     }
 
-    private void getStatements(final SailConnection sc, final Sink<Statement> results) throws RippleException {
-        getStatementsPrivate(results, sc, subject, predicate, object);
+    private void getStatements(final SailConnection sc,
+                               final Sink<Statement> results,
+                               final boolean streaming) throws RippleException {
+        getStatementsPrivate(results, sc, subject, predicate, object, streaming);
 
         if (STRING_LITERALS_EQUIVALENT_TO_PLAIN_LITERALS
+                && !Demand.isSatisfied(results)
                 && null != object
                 && object instanceof Literal) {
             IRI datatype = ((Literal) object).getDatatype();
             if (null == datatype) {
                 Literal newObj = valueFactory.createLiteral(((Literal) object).getLabel(), XMLSchema.STRING);
-                getStatementsPrivate(results, sc, subject, predicate, newObj);
+                getStatementsPrivate(results, sc, subject, predicate, newObj, streaming);
             } else if (XMLSchema.STRING == datatype) {
                 Literal newObj = valueFactory.createLiteral(((Literal) object).getLabel());
-                getStatementsPrivate(results, sc, subject, predicate, newObj);
+                getStatementsPrivate(results, sc, subject, predicate, newObj, streaming);
             }
         }
     }
@@ -127,28 +156,36 @@ public class GetStatementsQuery {
                                       final SailConnection sc,
                                       Resource subject,
                                       IRI predicate,
-                                      Value object) throws RippleException {
+                                      Value object,
+                                      final boolean streaming) throws RippleException {
         if (null != object && object instanceof RippleSesameValue) {
             object = ((RippleSesameValue) object).getNativeValue();
         }
 
-        // Note: we must collect results in a buffer before putting anything
-        //       into the sink, as inefficient as that is, because otherwise
+        // Note: unless the connection is used for nothing but this query, we must collect results in a buffer
+        //       before putting anything into the sink, as inefficient as that is, because otherwise
         //       we might end up opening another RepositoryResult before
         //       the one below closes, which currently causes Sesame to
-        //       deadlock.  Even using a separate RepositoryConnection for
-        //       each RepositoryResult doesn't seem to help.
-        Buffer<Statement> buffer = new Buffer<>(results);
+        //       deadlock.
+        Buffer<Statement> buffer = streaming ? null : new Buffer<>(results);
+        Sink<Statement> sink = streaming ? results : buffer;
         CloseableIteration<? extends Statement, SailException> stmtIter;
 
 //TODO: use CloseableIterationSource
 
-        // Perform the query and collect results.
+        // Perform the query and collect results, unless and until the results are no longer wanted.
+        if (Demand.isSatisfied(results)) {
+            return;
+        }
+
         try {
             stmtIter = sc.getStatements(subject, predicate, object, false, contexts);
+            if (null != profiler) {
+                profiler.countGetStatements();
+            }
             try {
-                while (stmtIter.hasNext()) {
-                    buffer.accept(stmtIter.next());
+                while (stmtIter.hasNext() && !Demand.isSatisfied(results)) {
+                    sink.accept(stmtIter.next());
                 }
             } finally {
                 stmtIter.close();
@@ -157,11 +194,134 @@ public class GetStatementsQuery {
             throw new RippleException(e);
         }
 
-        buffer.flush();
+        if (!streaming) {
+            buffer.flush();
+        }
     }
 
+    /**
+     * Finds the values matched by this query, collecting all of them before passing any along
+     *
+     * @param sc      a connection which may be used for other queries as these values are received
+     * @param results a handler for the values
+     * @throws RippleException if the query fails
+     */
     public void getValues(final SailConnection sc, final Sink<Value> results) throws RippleException {
-        Sink<Statement> stSink = st -> {
+        getStatements(sc, new ValueSink(results), false);
+    }
+
+    /**
+     * Finds the values matched by this query, passing each one along as soon as it is read
+     *
+     * @param sc      a connection which is not to be used for any other query until this method returns
+     * @param results a handler for the values
+     * @throws RippleException if the query fails
+     */
+    public void streamValues(final SailConnection sc, final Sink<Value> results) throws RippleException {
+        getStatements(sc, new ValueSink(results), true);
+    }
+
+    /**
+     * @return whether this query finds the objects of a given subject and predicate, in all contexts,
+     * and so may be answered together with other such queries of the same predicate
+     */
+    public boolean isSubjectLookup() {
+        return Type.SP_O == type && null != subject && null != predicate && 0 == contexts.length;
+    }
+
+    public IRI getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Finds the values of a number of subject lookups of the same predicate in a single evaluation,
+     * which binds the subject to each of theirs in turn, passing each value along as soon as it is read
+     *
+     * @param sc       a connection which is not to be used for any other query until this method returns
+     * @param lookups  subject lookups of a single predicate, each with a different subject
+     * @param results  a handler for the values of each lookup, in the same order as the lookups
+     * @param profiler a profiler to which the lookup is counted, or null
+     * @throws RippleException if the lookup fails
+     */
+    public static void streamValues(final SailConnection sc,
+                                    final List<GetStatementsQuery> lookups,
+                                    final List<? extends Sink<Value>> results,
+                                    final Profiler profiler) throws RippleException {
+        Map<Value, Sink<Value>> resultsBySubject = new HashMap<>();
+        List<BindingSet> subjects = new ArrayList<>(lookups.size());
+        for (int i = 0; i < lookups.size(); i++) {
+            if (!Demand.isSatisfied(results.get(i))) {
+                Resource subject = lookups.get(i).subject;
+                resultsBySubject.put(subject, results.get(i));
+
+                MapBindingSet b = new MapBindingSet(1);
+                b.addBinding(SUBJECT_VAR, subject);
+                subjects.add(b);
+            }
+        }
+
+        if (subjects.isEmpty()) {
+            return;
+        }
+
+        // the equivalent of SELECT ?subject ?object WHERE { VALUES ?subject { ... } ?subject <predicate> ?object }
+        BindingSetAssignment values = new BindingSetAssignment();
+        values.setBindingNames(Collections.singleton(SUBJECT_VAR));
+        values.setBindingSets(subjects);
+        Var predicateVar = new Var("-const-predicate", lookups.get(0).predicate);
+        predicateVar.setConstant(true);
+        predicateVar.setAnonymous(true);
+        TupleExpr expr = new Join(values,
+                new StatementPattern(new Var(SUBJECT_VAR), predicateVar, new Var(OBJECT_VAR)));
+
+        try {
+            CloseableIteration<? extends BindingSet, QueryEvaluationException> iter
+                    = sc.evaluate(expr, null, EmptyBindingSet.getInstance(), false);
+            if (null != profiler) {
+                profiler.countGetStatements();
+            }
+
+            try {
+                while (iter.hasNext()) {
+                    BindingSet b = iter.next();
+                    Sink<Value> sink = resultsBySubject.get(b.getValue(SUBJECT_VAR));
+                    if (null != sink && !Demand.isSatisfied(sink)) {
+                        sink.accept(b.getValue(OBJECT_VAR));
+                    }
+                }
+            } finally {
+                iter.close();
+            }
+        } catch (SailException | QueryEvaluationException e) {
+            throw new RippleException(e);
+        }
+    }
+
+    public boolean equals(final Object other) {
+        if (other instanceof GetStatementsQuery) {
+            GetStatementsQuery q = (GetStatementsQuery) other;
+            return q.type == type
+                    && Objects.equals(q.subject, subject)
+                    && Objects.equals(q.predicate, predicate)
+                    && Objects.equals(q.object, object)
+                    && Arrays.equals(q.contexts, contexts);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return Objects.hash(type, subject, predicate, object) + 31 * Arrays.hashCode(contexts);
+    }
+
+    private class ValueSink implements Sink<Statement>, Demand {
+        private final Sink<Value> results;
+
+        public ValueSink(final Sink<Value> results) {
+            this.results = results;
+        }
+
+        public void accept(final Statement st) throws RippleException {
             Value result;
 
             switch (type) {
@@ -179,8 +339,10 @@ public class GetStatementsQuery {
             }
 
             results.accept(result);
-        };
+        }
 
-        getStatements(sc, stSink);
+        public boolean isSatisfied() {
+            return Demand.isSatisfied(results);
+        }
     }
 }
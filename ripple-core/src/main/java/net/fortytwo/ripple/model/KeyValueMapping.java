@@ -43,4 +43,12 @@ public class KeyValueMapping implements StackMapping {
             throw new RippleException("argument is not a key/value pair: " + first);
         }
     }
+
+    public boolean equals(final Object other) {
+        return other instanceof KeyValueMapping && ((KeyValueMapping) other).key.equals(key);
+    }
+
+    public int hashCode() {
+        return 1306125431 + key.hashCode();
+    }
 }
@@ -18,6 +18,7 @@ import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -58,6 +59,8 @@ public class Lexicon {
             NAME_OR_PREFIX = Pattern.compile("(" + NAME_START_CHAR_NOUSC + ")(" + NAME_CHAR + ")*"),
             NAME_NOT_PREFIX = Pattern.compile("_(" + NAME_CHAR + ")*");
 
+    // keywords are fixed when the lexicon is created, while namespaces and temporary values may change at any time,
+    // including while the lexicon is shared by concurrent query sessions
     private final Map<String, Set<IRI>> keywordToUri;
     private final Map<IRI, String> uriToKeyword;
     private final Map<String, String> prefixToUri;
@@ -68,10 +71,10 @@ public class Lexicon {
     private final ValueFactory valueFactory = SimpleValueFactory.getInstance();
 
     public Lexicon(final Model model) throws RippleException {
-        prefixToUri = new HashMap<>();
-        uriToPrefix = new HashMap<>();
-        allQNames = new ArrayList<>();
-        temporaryValues = new HashMap<>();
+        prefixToUri = Collections.synchronizedMap(new HashMap<>());
+        uriToPrefix = Collections.synchronizedMap(new HashMap<>());
+        allQNames = Collections.synchronizedList(new ArrayList<>());
+        temporaryValues = Collections.synchronizedMap(new HashMap<>());
 
         ModelConnection mc = model.createConnection();
         try {
@@ -181,13 +184,20 @@ public class Lexicon {
 
     public Completer getCompletor() {
         Set<String> keywords = keywordToUri.keySet();
-        Set<String> prefixes = prefixToUri.keySet();
+        Collection<String> qNames;
+        Set<String> prefixes;
+        synchronized (allQNames) {
+            qNames = new ArrayList<>(allQNames);
+        }
+        synchronized (prefixToUri) {
+            prefixes = new HashSet<>(prefixToUri.keySet());
+        }
 
-        int size = keywords.size() + prefixes.size() + allQNames.size();
+        int size = keywords.size() + prefixes.size() + qNames.size();
         if (0 < size) {
             Collection<String> alts = keywords.stream().collect(Collectors.toList());
 
-            alts.addAll(allQNames.stream().collect(Collectors.toList()));
+            alts.addAll(qNames);
 
             alts.addAll(prefixes.stream().map(prefixe -> prefixe + ":").collect(Collectors.toList()));
 
@@ -265,17 +275,19 @@ public class Lexicon {
                              final ModelConnection mc) throws RippleException {
         mc.setNamespace(prefix, uri, true);
 
-        String p = uriToPrefix.remove(uri);
-        String u = prefixToUri.remove(prefix);
-        if (null != p) {
-            prefixToUri.remove(p);
-        }
-        if (null != u) {
-            uriToPrefix.remove(u);
-        }
+        synchronized (this) {
+            String p = uriToPrefix.remove(uri);
+            String u = prefixToUri.remove(prefix);
+            if (null != p) {
+                prefixToUri.remove(p);
+            }
+            if (null != u) {
+                uriToPrefix.remove(u);
+            }
 
-        prefixToUri.put(prefix, uri);
-        uriToPrefix.put(uri, prefix);
+            prefixToUri.put(prefix, uri);
+            uriToPrefix.put(uri, prefix);
+        }
     }
 
     /**
@@ -285,7 +297,7 @@ public class Lexicon {
      *
      * @param prefix the prefix of the namespace to remove
      */
-    public void removeNamespace(final String prefix) {
+    public synchronized void removeNamespace(final String prefix) {
         String u = prefixToUri.remove(prefix);
         if (null != u) {
             uriToPrefix.remove(u);
@@ -0,0 +1,151 @@
+package net.fortytwo.ripple.model;
+
+import org.openrdf.model.Value;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of the native lists converted from RDF lists, by the RDF value at the head of each list.
+ * Along with its lists, each entry records the RDF nodes which were visited in converting them,
+ * so that the entry can be invalidated when an <code>rdf:first</code> or <code>rdf:rest</code> statement
+ * about any of those nodes is added or removed.
+ * Since a conversion may overlap a change to the nodes it visits, each conversion takes a generation stamp before
+ * it begins, and its lists are kept only if the cache has not been invalidated since.
+ * Entries are evicted as described for <code>BoundedCache</code>.  Lookups take no lock shared by all sessions,
+ * while changes to the cache, which must keep its index of nodes up to date, are serialized.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ListCache {
+    private final BoundedCache<Value, Entry> entries;
+
+    // the heads of the entries which depend on each node; guarded by the cache's own monitor
+    private final Map<Value, Set<Value>> headsByNode = new HashMap<>();
+
+    // advanced by every invalidation; written only while holding the cache's monitor
+    private volatile long generation = 0;
+
+    /**
+     * @param capacity the maximum number of lists to keep
+     */
+    public ListCache(final int capacity) {
+        // entries are evicted only by put, which holds the cache's monitor
+        entries = new BoundedCache<>(capacity, this::unindex);
+    }
+
+    /**
+     * @param head the RDF value at the head of a list
+     * @return the native lists previously converted from the given value, or null if there are none
+     */
+    public RippleList[] get(final Value head) {
+        Entry e = entries.get(head);
+        return null == e ? null : e.lists;
+    }
+
+    /**
+     * @return the current generation of this cache, to be taken before a conversion begins
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @param head       the RDF value at the head of a list
+     * @param lists      the native lists converted from the given value
+     * @param nodes      the RDF nodes visited in converting the lists
+     * @param generation the generation of this cache before the conversion began.
+     *                   If the cache has been invalidated since, the lists may be stale, and are not kept.
+     */
+    public synchronized void put(final Value head,
+                                 final RippleList[] lists,
+                                 final Collection<Value> nodes,
+                                 final long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+
+        Entry old = entries.remove(head);
+        if (null != old) {
+            unindex(head, old);
+        }
+
+        Entry e = new Entry(lists, nodes.toArray(new Value[nodes.size()]));
+        entries.put(head, e);
+        for (Value node : e.nodes) {
+            headsByNode.computeIfAbsent(node, n -> new HashSet<>()).add(head);
+        }
+    }
+
+    /**
+     * Discards any lists whose conversion visited the given node
+     *
+     * @param node the subject of an <code>rdf:first</code> or <code>rdf:rest</code> statement which has changed
+     */
+    public synchronized void invalidate(final Value node) {
+        // a conversion still in progress may have visited the node without yet having been put
+        generation++;
+
+        Set<Value> heads = headsByNode.remove(node);
+        if (null != heads) {
+            for (Value head : heads) {
+                Entry e = entries.remove(head);
+                if (null != e) {
+                    unindex(head, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all lists
+     */
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        headsByNode.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of lookups which found previously converted lists
+     */
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    /**
+     * @return the number of lookups which did not find previously converted lists
+     */
+    public long getMisses() {
+        return entries.getMisses();
+    }
+
+    private void unindex(final Value head, final Entry e) {
+        for (Value node : e.nodes) {
+            Set<Value> heads = headsByNode.get(node);
+            if (null != heads) {
+                heads.remove(head);
+                if (heads.isEmpty()) {
+                    headsByNode.remove(node);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final RippleList[] lists;
+        private final Value[] nodes;
+
+        public Entry(final RippleList[] lists, final Value[] nodes) {
+            this.lists = lists;
+            this.nodes = nodes;
+        }
+    }
+}
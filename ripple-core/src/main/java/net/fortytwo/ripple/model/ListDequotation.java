@@ -22,6 +22,14 @@ public class ListDequotation implements StackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
+        // a program from the store, or one defined by name, pushes the pre-resolved elements of its compiled form
+        if (!invert) {
+            CompiledProgram compiled = mc.getModel().getProgramCache().get(list, mc);
+            if (null != compiled) {
+                compiled.apply(arg, solutions, mc);
+                return;
+            }
+        }
 
         RippleList in = list;
         RippleList out = arg;
@@ -60,4 +68,14 @@ public class ListDequotation implements StackMapping {
     public String toString() {
         return "Dequote(" + list + ")";
     }
+
+    public boolean equals(final Object other) {
+        return other instanceof ListDequotation
+                && ((ListDequotation) other).invert == invert
+                && ((ListDequotation) other).list.equals(list);
+    }
+
+    public int hashCode() {
+        return (invert ? 1793604017 : 871409315) + list.hashCode();
+    }
 }
@@ -0,0 +1,98 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.ripple.RippleException;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+
+/**
+ * A bounded cache, belonging to a single model connection, of whether resources are the heads of RDF lists;
+ * that is, whether they are the subject of at least one <code>rdf:first</code> statement.
+ * Both positive and negative answers are kept.
+ * An answer is to be invalidated when an <code>rdf:first</code> statement about its resource is added or removed,
+ * and the whole cache cleared when the connection commits or rolls back, after which the connection may see
+ * the changes of other connections.
+ * Answers are evicted as described for <code>BoundedCache</code>.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ListMembershipCache {
+    private final BoundedCache<Value, Boolean> answers;
+
+    // incremented whenever answers are discarded, so that a probe which races with a change is not cached;
+    // guarded by the cache's own monitor
+    private long generation = 0;
+
+    /**
+     * @param capacity the maximum number of answers to keep
+     */
+    public ListMembershipCache(final int capacity) {
+        answers = new BoundedCache<>(capacity);
+    }
+
+    /**
+     * Determines whether a resource is the head of an RDF list, probing the model only if the answer is not cached
+     *
+     * @param r  a resource
+     * @param mc the connection to which this cache belongs
+     * @return whether the resource is the subject of an <code>rdf:first</code> statement
+     * @throws RippleException if the model cannot be probed
+     */
+    public boolean isRDFList(final Resource r, final ModelConnection mc) throws RippleException {
+        long g;
+        synchronized (this) {
+            g = generation;
+        }
+
+        Boolean cached = answers.get(r);
+        if (null != cached) {
+            return cached;
+        }
+
+        boolean b = mc.exists(r, RDF.FIRST, null);
+
+        synchronized (this) {
+            if (g == generation) {
+                answers.put(r, b);
+            }
+        }
+
+        return b;
+    }
+
+    /**
+     * Discards the answer for the given resource
+     *
+     * @param subj the subject of an <code>rdf:first</code> statement which has been added or removed
+     */
+    public synchronized void invalidate(final Value subj) {
+        answers.remove(subj);
+        generation++;
+    }
+
+    /**
+     * Discards all answers
+     */
+    public synchronized void clear() {
+        answers.clear();
+        generation++;
+    }
+
+    public int size() {
+        return answers.size();
+    }
+
+    /**
+     * @return the number of lookups answered without probing the model
+     */
+    public long getHits() {
+        return answers.getHits();
+    }
+
+    /**
+     * @return the number of lookups which required the model to be probed
+     */
+    public long getMisses() {
+        return answers.getMisses();
+    }
+}
@@ -0,0 +1,263 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Demand;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded table of the solutions of RDF predicates and functional primitives, applied to particular arguments.
+ * An application is identified by its closure, that is, by the mapping together with the arguments it has been
+ * given, so that a repeated application (for instance, of the same predicate to the same subject in the course
+ * of a <code>map</code>, a <code>fold</code> or a regular expression) need not be re-evaluated.
+ * <p>
+ * Solutions are recorded relative to the otherwise unused portion of the argument stack, and are pushed
+ * onto the actual stack of each later application.  An application which is to be recorded answers its queries
+ * synchronously, even where queries are otherwise asynchronous, so that all of its solutions have been received
+ * by the time it returns.  An application whose solutions nonetheless arrive late, or whose consumer stops asking
+ * for solutions, is not recorded.
+ * Applications are evicted as described for <code>BoundedCache</code>.  The table is cleared whenever
+ * statements are added to or removed from the model through a <code>ModelConnection</code>,
+ * and again when such changes are committed.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class MemoTable {
+    // the base of the stack to which a mapping is applied when its solutions are recorded
+    private static final Object BASE_ITEM = new Object() {
+        public String toString() {
+            return "[memo base]";
+        }
+    };
+
+    private final BoundedCache<StackMapping, RippleList[]> solutions;
+
+    /**
+     * @param capacity the maximum number of applications to keep
+     */
+    public MemoTable(final int capacity) {
+        solutions = new BoundedCache<>(capacity);
+    }
+
+    /**
+     * Applies a nullary mapping, making use of the memo table of the model if it has one
+     *
+     * @param mapping   the mapping to apply
+     * @param arg       the argument stack
+     * @param solutions a handler for the solutions of the mapping
+     * @param mc        a connection to the model
+     * @throws RippleException if the mapping fails
+     */
+    public static void apply(final StackMapping mapping,
+                             final RippleList arg,
+                             final Sink<RippleList> solutions,
+                             final ModelConnection mc) throws RippleException {
+        MemoTable table = mc.getModel().getMemoTable();
+        if (null == table) {
+            Profiler.apply(mapping, arg, solutions, mc);
+        } else {
+            table.applyMemoized(mapping, arg, solutions, mc);
+        }
+    }
+
+    // only a closure over a predicate, key or functional primitive is known to depend on nothing but its arguments
+    private static boolean isMemoizable(final StackMapping mapping) {
+        if (!(mapping instanceof Closure) || 0 != mapping.arity() || !mapping.isTransparent()) {
+            return false;
+        }
+
+        StackMapping inner = mapping;
+        while (inner instanceof Closure) {
+            inner = ((Closure) inner).getInnerMapping();
+        }
+
+        return inner instanceof RDFPredicateMapping
+                || inner instanceof KeyValueMapping
+                || (inner instanceof PrimitiveStackMapping && ((PrimitiveStackMapping) inner).isFunctional());
+    }
+
+    /**
+     * Applies a nullary mapping, making use of this table if the mapping is a closure over an RDF predicate,
+     * a key, or a functional primitive
+     *
+     * @param mapping the mapping to apply
+     * @param arg     the argument stack
+     * @param sink    a handler for the solutions of the mapping
+     * @param mc      a connection to the model
+     * @throws RippleException if the mapping fails
+     */
+    public void applyMemoized(final StackMapping mapping,
+                              final RippleList arg,
+                              final Sink<RippleList> sink,
+                              final ModelConnection mc) throws RippleException {
+        if (!isMemoizable(mapping)) {
+            Profiler.apply(mapping, arg, sink, mc);
+            return;
+        }
+
+        RippleList[] recorded = solutions.get(mapping);
+        if (null == recorded) {
+            RippleList base = mc.list().push(BASE_ITEM);
+            Recorder recorder = new Recorder(mapping, arg, sink);
+
+            // an asynchronous query would return before any solution has arrived, and would be recorded as empty
+            boolean previous = Ripple.forceSynchronousQueries(true);
+            try {
+                Profiler.apply(mapping, base, recorder, mc);
+            } finally {
+                Ripple.forceSynchronousQueries(previous);
+            }
+            recorded = recorder.close();
+
+            // the solutions could not be captured; apply the mapping again, directly
+            if (null == recorded) {
+                Profiler.apply(mapping, arg, sink, mc);
+                return;
+            }
+        }
+
+        for (RippleList s : recorded) {
+            sink.accept(rebase(s, arg));
+        }
+    }
+
+    /**
+     * Discards all recorded solutions
+     */
+    public void clear() {
+        solutions.clear();
+    }
+
+    public int size() {
+        return solutions.size();
+    }
+
+    /**
+     * @return the number of applications whose solutions had already been recorded
+     */
+    public long getHits() {
+        return solutions.getHits();
+    }
+
+    /**
+     * @return the number of applications whose solutions had not been recorded
+     */
+    public long getMisses() {
+        return solutions.getMisses();
+    }
+
+    // the items of a recorded solution, above the base, pushed onto the given stack
+    private static RippleList rebase(final RippleList solution, final RippleList stack) {
+        List<Object> items = new ArrayList<>();
+        RippleList cur = solution;
+        while (!isBase(cur)) {
+            items.add(cur.getFirst());
+            cur = cur.getRest();
+        }
+
+        RippleList result = stack;
+        for (int i = items.size() - 1; i >= 0; i--) {
+            result = result.push(items.get(i));
+        }
+
+        return result;
+    }
+
+    private static boolean isBase(final RippleList stack) {
+        return !stack.isNil() && BASE_ITEM == stack.getFirst() && stack.getRest().isNil();
+    }
+
+    // whether a solution consists of some number of items on top of the base
+    private static boolean isRelative(final RippleList solution) {
+        RippleList cur = solution;
+        while (!cur.isNil()) {
+            if (isBase(cur)) {
+                return true;
+            }
+
+            cur = cur.getRest();
+        }
+
+        return false;
+    }
+
+    /**
+     * Collects the solutions of a single application.  Solutions which arrive after the application has returned
+     * are passed along directly, and the application is forgotten.
+     */
+    private class Recorder implements Sink<RippleList>, Demand {
+        private final StackMapping mapping;
+        private final RippleList arg;
+        private final Sink<RippleList> sink;
+        private final List<RippleList> received = new ArrayList<>();
+
+        private boolean closed = false;
+        private boolean relative = true;
+        private boolean complete = true;
+
+        public Recorder(final StackMapping mapping,
+                        final RippleList arg,
+                        final Sink<RippleList> sink) {
+            this.mapping = mapping;
+            this.arg = arg;
+            this.sink = sink;
+        }
+
+        public void accept(final RippleList solution) throws RippleException {
+            boolean late;
+            synchronized (this) {
+                late = closed;
+                if (late) {
+                    complete = false;
+                    solutions.remove(mapping);
+                } else if (isRelative(solution)) {
+                    received.add(solution);
+                } else {
+                    // the mapping has not left the rest of the stack alone
+                    relative = false;
+                }
+            }
+
+            if (late) {
+                // a late solution which is not relative to the base is lost, although this should not happen
+                // for a primitive which respects its arity
+                if (isRelative(solution)) {
+                    sink.accept(rebase(solution, arg));
+                }
+            }
+        }
+
+        public boolean isSatisfied() {
+            // a partial set of solutions is not to be recorded
+            if (Demand.isSatisfied(sink)) {
+                synchronized (this) {
+                    complete = false;
+                }
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * @return the solutions received so far, or null if they cannot be used
+         */
+        public synchronized RippleList[] close() {
+            closed = true;
+
+            if (!relative) {
+                return null;
+            }
+
+            RippleList[] recorded = received.toArray(new RippleList[received.size()]);
+            if (complete) {
+                solutions.put(mapping, recorded);
+            }
+
+            return recorded;
+        }
+    }
+}
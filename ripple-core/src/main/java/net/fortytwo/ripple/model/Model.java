@@ -50,6 +50,35 @@ public interface Model {
      */
     SpecialValueMap getSpecialValues();
 
+    /**
+     * @return a cache of compiled list programs, shared by all connections to this model
+     */
+    ProgramCache getProgramCache();
+
+    /**
+     * @return a table of the solutions of transparent mappings, shared by all connections to this model,
+     * or null if memoization is disabled
+     */
+    MemoTable getMemoTable();
+
+    /**
+     * @return a cache of the native lists converted from RDF lists, shared by all connections to this model,
+     * or null if converted lists are not to be kept
+     */
+    ListCache getListCache();
+
+    /**
+     * @return a cache of the operators resolved from RDF values, shared by all connections to this model,
+     * or null if resolved operators are not to be kept
+     */
+    OperatorCache getOperatorCache();
+
+    /**
+     * @return whether the <code>*</code> and <code>+</code> quantifiers are evaluated as a fixpoint in this model,
+     * each distinct solution being produced once, rather than by re-applying themselves
+     */
+    boolean usesFixpointQuantifiers();
+
     /**
      * Shuts down this model, releasing its resources.
      *
@@ -14,6 +14,7 @@ import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryEvaluationException;
 
 import java.util.Date;
+import java.util.List;
 
 /**
  * A transactional connection to a <code>Model</code>.
@@ -150,6 +151,8 @@ public interface ModelConnection {
     /**
      * Finds the "canonical" value, in Ripple space, for a given RDF value.
      * Several RDF values may map to the same canonical value.
+     * Equal RDF values which are not special values are mapped to a single instance, as long as they fit into
+     * the value intern cache of this connection.
      * See also <code>SpecialValueMap</code>.
      *
      * @param v the RDF value to look up
@@ -191,6 +194,17 @@ public interface ModelConnection {
      */
     void query(StatementPatternQuery query, Sink sink, boolean asynchronous) throws RippleException;
 
+    /**
+     * Issues a number of triple pattern queries over the model as a single batch.
+     * Equivalent queries are evaluated only once, their results being passed to each of the corresponding sinks.
+     *
+     * @param queries      the queries to evaluate
+     * @param sinks        a handler for the results of each query, in the same order as the queries
+     * @param asynchronous whether the batch should be evaluated in an asynchronous fashion
+     * @throws RippleException if the queries cannot be evaluated
+     */
+    void query(List<StatementPatternQuery> queries, List<Sink> sinks, boolean asynchronous) throws RippleException;
+
     /**
      * Retrieves all namespaces defined in this model.
      *
@@ -212,6 +226,28 @@ public interface ModelConnection {
     // TODO: Statements should not be part of the ModelConnection API
     void getStatements(Value subj, Value pred, Value obj, Sink<Statement> sink) throws RippleException;
 
+    /**
+     * Determines whether any RDF statement matches a pattern, reading no further than the first match.
+     *
+     * @param subj the subject of matching statements, or <code>null</code> as a wildcard
+     * @param pred the predicate of matching statements, or <code>null</code> as a wildcard
+     * @param obj  the object of matching statements, or <code>null</code> as a wildcard
+     * @return whether at least one statement matches
+     * @throws RippleException if statements cannot be retrieved
+     */
+    boolean exists(Value subj, Value pred, Value obj) throws RippleException;
+
+    /**
+     * @return the cache of resources which this connection has found to be, or not to be, the heads of RDF lists
+     */
+    ListMembershipCache getListMembershipCache();
+
+    /**
+     * @return the cache of the RDF values which this connection has mapped to canonical values
+     * since it last committed or was reset
+     */
+    ValueInternCache getValueInternCache();
+
     /**
      * Evaluates a SPARQL query against the model.
      *
@@ -273,4 +309,16 @@ public interface ModelConnection {
      * Complete any still-executing tasks.
      */
     void finish() throws RippleException;
+
+    /**
+     * @return the profiler which records the evaluation statistics of this connection,
+     * or null if profiling is disabled
+     */
+    Profiler getProfiler();
+
+    /**
+     * @param profiler a profiler to record the evaluation statistics of this connection,
+     *                 or null to disable profiling
+     */
+    void setProfiler(Profiler profiler);
 }
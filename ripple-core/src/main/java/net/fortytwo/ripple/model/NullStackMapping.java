@@ -32,5 +32,13 @@ public class NullStackMapping implements StackMapping {
     public String toString() {
         return "[NullStackMapping]";
     }
-}
 
+    public boolean equals(final Object other) {
+        return other instanceof NullStackMapping;
+    }
+
+    public int hashCode() {
+        // Arbitrary.
+        return 1958275409;
+    }
+}
@@ -32,9 +32,8 @@ public class Operator {
         mapping = new ListDequotation(list);
     }
 
-    // TODO: implement equals() and hashCode() for all StackMappings
     public boolean equals(final Object other) {
-        return ((Operator) other).mapping.equals(mapping) && (other instanceof Operator);
+        return other instanceof Operator && ((Operator) other).mapping.equals(mapping);
     }
 
     public int hashCode() {
@@ -83,14 +82,27 @@ public class Operator {
             } else {
                 Value sv = ((Value) v);
 
-                if (sv instanceof Literal) {
-                    opSink.accept(new Operator(((Literal) sv).getLabel()));
-                    return;
+                // Apart from lists, a value always resolves to the same operator, which may be shared.
+                OperatorCache cache = mc.getModel().getOperatorCache();
+                Operator op = null == cache ? null : cache.get(sv);
+
+                if (null == op) {
+                    if (sv instanceof Literal) {
+                        op = new Operator(((Literal) sv).getLabel());
+                    }
+
+                    // An RDF resource not otherwise recognizable becomes a predicate filter.
+                    else if (sv instanceof Resource) {
+                        op = new Operator(sv);
+                    }
+
+                    if (null != op && null != cache) {
+                        cache.put(sv, op);
+                    }
                 }
 
-                // An RDF resource not otherwise recognizable becomes a predicate filter.
-                else if (sv instanceof Resource) {
-                    opSink.accept(new Operator((Value) v));
+                if (null != op) {
+                    opSink.accept(op);
                     return;
                 }
             }
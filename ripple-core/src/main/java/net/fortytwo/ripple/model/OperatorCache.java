@@ -0,0 +1,64 @@
+package net.fortytwo.ripple.model;
+
+import org.openrdf.model.Value;
+
+/**
+ * A bounded cache of the operators to which RDF values resolve when they are applied, other than as RDF lists.
+ * A resource which is not the head of a list resolves to a predicate mapping, and a literal to a key mapping,
+ * whatever the state of the model, so that entries never need to be invalidated; whether a value is the head
+ * of a list is decided by each connection before the cache is consulted.
+ * Lookups take no lock shared by all sessions; see <code>BoundedCache</code> for the eviction policy.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class OperatorCache {
+    private final BoundedCache<Value, Operator> operators;
+
+    /**
+     * @param capacity the maximum number of operators to keep
+     */
+    public OperatorCache(final int capacity) {
+        operators = new BoundedCache<>(capacity);
+    }
+
+    /**
+     * @param v an RDF value which is not the head of a list
+     * @return the operator previously resolved for the given value, or null if there is none
+     */
+    public Operator get(final Value v) {
+        return operators.get(v);
+    }
+
+    /**
+     * @param v  an RDF value which is not the head of a list
+     * @param op the operator to which the value resolves
+     */
+    public void put(final Value v, final Operator op) {
+        operators.put(v, op);
+    }
+
+    /**
+     * Discards all operators
+     */
+    public void clear() {
+        operators.clear();
+    }
+
+    public int size() {
+        return operators.size();
+    }
+
+    /**
+     * @return the number of lookups which found a previously resolved operator
+     */
+    public long getHits() {
+        return operators.getHits();
+    }
+
+    /**
+     * @return the number of lookups which did not find a previously resolved operator
+     */
+    public long getMisses() {
+        return operators.getMisses();
+    }
+}
@@ -59,6 +59,17 @@ public abstract class PrimitiveStackMapping implements StackMapping {
         return getParameters().length;
     }
 
+    /**
+     * @return whether the solutions of this primitive depend only on its arguments,
+     * so that they may be memoized.
+     * A primitive which applies programs to the rest of the stack, which keeps state between applications,
+     * or which has side effects is not functional, even if it is transparent.
+     * Only primitives whose work outweighs the cost of memoization need to declare themselves functional.
+     */
+    public boolean isFunctional() {
+        return false;
+    }
+
     public Value getRDFEquivalent() {
         return rdfEquivalent;
     }
@@ -0,0 +1,220 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Demand;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records, for each primitive and RDF predicate applied during query evaluation, the number of invocations,
+ * the number of solutions, the wall-clock and CPU time spent, and the number of statement lookups in the
+ * underlying Sail.
+ * A profiler is attached to a <code>ModelConnection</code>; when a connection has no profiler, as is the default,
+ * mappings are applied directly and nothing is recorded.
+ * <p>
+ * Times are inclusive: a primitive which evaluates programs of its own (such as <code>count</code>)
+ * is charged for the mappings it applies.  For asynchronous queries, only the time spent issuing the query
+ * is recorded, although solutions and statement lookups are counted whenever they occur.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class Profiler {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Entry> current = new ThreadLocal<>();
+    private final boolean cpuTimeSupported = THREADS.isCurrentThreadCpuTimeSupported();
+
+    /**
+     * Applies a mapping, recording its statistics if the connection has a profiler
+     *
+     * @param mapping   the mapping to apply
+     * @param arg       the argument stack
+     * @param solutions a handler for the solutions of the mapping
+     * @param mc        a connection to the model
+     * @throws RippleException if the mapping fails
+     */
+    public static void apply(final StackMapping mapping,
+                             final RippleList arg,
+                             final Sink<RippleList> solutions,
+                             final ModelConnection mc) throws RippleException {
+        Profiler profiler = mc.getProfiler();
+        if (null == profiler) {
+            mapping.apply(arg, solutions, mc);
+        } else {
+            profiler.profile(mapping, arg, solutions, mc);
+        }
+    }
+
+    private void profile(final StackMapping mapping,
+                         final RippleList arg,
+                         final Sink<RippleList> solutions,
+                         final ModelConnection mc) throws RippleException {
+        // closures are charged to the mappings they wrap
+        StackMapping target = mapping;
+        while (target instanceof Closure) {
+            target = ((Closure) target).getInnerMapping();
+        }
+
+        if (!(target instanceof PrimitiveStackMapping || target instanceof RDFPredicateMapping)) {
+            mapping.apply(arg, solutions, mc);
+            return;
+        }
+
+        Entry entry = entries.computeIfAbsent(target.toString(), Entry::new);
+
+        Entry outer = enter(entry);
+        long cpu = cpuTime();
+        long wall = System.nanoTime();
+        try {
+            mapping.apply(arg, new CountingSink(solutions, entry), mc);
+        } finally {
+            entry.invocations.increment();
+            entry.wallNanos.add(System.nanoTime() - wall);
+            entry.cpuNanos.add(cpuTime() - cpu);
+            exit(outer);
+        }
+    }
+
+    /**
+     * @return the entry of the mapping currently being applied in this thread, if any
+     */
+    public Entry current() {
+        return current.get();
+    }
+
+    /**
+     * Charges any work done in this thread to the given entry, until <code>exit</code> is called
+     *
+     * @param entry the entry of a mapping, or null
+     * @return the entry previously charged, to be passed to <code>exit</code>
+     */
+    public Entry enter(final Entry entry) {
+        Entry outer = current.get();
+        current.set(entry);
+        return outer;
+    }
+
+    /**
+     * @param outer the entry returned by the matching call to <code>enter</code>
+     */
+    public void exit(final Entry outer) {
+        if (null == outer) {
+            current.remove();
+        } else {
+            current.set(outer);
+        }
+    }
+
+    /**
+     * Counts a statement lookup against the mapping currently being applied in this thread, if any
+     */
+    public void countGetStatements() {
+        Entry entry = current.get();
+        if (null != entry) {
+            entry.getStatementsCalls.increment();
+        }
+    }
+
+    /**
+     * @return an entry for each mapping applied since this profiler was created or last cleared,
+     * in order of decreasing wall-clock time
+     */
+    public List<Entry> getReport() {
+        List<Entry> report = new ArrayList<>(entries.values());
+        Collections.sort(report, (a, b) -> Long.compare(b.getWallNanos(), a.getWallNanos()));
+        return report;
+    }
+
+    /**
+     * Discards all statistics
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private long cpuTime() {
+        return cpuTimeSupported ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * The statistics of a single mapping
+     */
+    public static class Entry {
+        private final String name;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder solutions = new LongAdder();
+        private final LongAdder wallNanos = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder getStatementsCalls = new LongAdder();
+
+        private Entry(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name of the primitive or predicate
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getInvocations() {
+            return invocations.sum();
+        }
+
+        public long getSolutions() {
+            return solutions.sum();
+        }
+
+        public long getWallNanos() {
+            return wallNanos.sum();
+        }
+
+        /**
+         * @return the CPU time spent, or 0 if the JVM does not support measurement of thread CPU time
+         */
+        public long getCpuNanos() {
+            return cpuNanos.sum();
+        }
+
+        public long getGetStatementsCalls() {
+            return getStatementsCalls.sum();
+        }
+
+        public String toString() {
+            return name + " (invocations: " + getInvocations()
+                    + ", solutions: " + getSolutions()
+                    + ", wall ms: " + getWallNanos() / 1000000.0
+                    + ", cpu ms: " + getCpuNanos() / 1000000.0
+                    + ", getStatements: " + getGetStatementsCalls() + ")";
+        }
+    }
+
+    private static class CountingSink implements Sink<RippleList>, Demand {
+        private final Sink<RippleList> sink;
+        private final Entry entry;
+
+        public CountingSink(final Sink<RippleList> sink, final Entry entry) {
+            this.sink = sink;
+            this.entry = entry;
+        }
+
+        public void accept(final RippleList stack) throws RippleException {
+            entry.solutions.increment();
+            sink.accept(stack);
+        }
+
+        public boolean isSatisfied() {
+            return Demand.isSatisfied(sink);
+        }
+    }
+}
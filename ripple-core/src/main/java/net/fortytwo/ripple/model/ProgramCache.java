@@ -0,0 +1,106 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.ripple.RippleException;
+import org.openrdf.model.Value;
+
+/**
+ * A bounded cache of compiled list programs, keyed by the RDF list from which each program was converted,
+ * or as which it was defined.
+ * Lists built at runtime, which have no RDF equivalent, are rarely applied more than a few times, and are not
+ * compiled at all, so that they neither pay for compilation nor crowd out the programs which are reused.
+ * A program is found again only if it is the same list, or an equal one, as the program compiled for its RDF list,
+ * so that the branches of a branching RDF list, or an RDF list which has since changed, are told apart.
+ * Programs are evicted as described for <code>BoundedCache</code>.
+ * Compiled programs refer directly to the definitions of any programs they invoke by name,
+ * so the cache is to be cleared whenever a program is defined, redefined or undefined.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ProgramCache {
+    private final BoundedCache<ProgramKey, CompiledProgram> programs;
+
+    /**
+     * @param capacity the maximum number of compiled programs to keep
+     */
+    public ProgramCache(final int capacity) {
+        programs = new BoundedCache<>(capacity);
+    }
+
+    /**
+     * Finds the compiled form of a program, compiling it if necessary
+     *
+     * @param program a list program
+     * @param mc      a connection to the model in which the program is to be executed
+     * @return the compiled program, or null if the program has no RDF equivalent, and is not to be compiled
+     * @throws RippleException if compilation fails
+     */
+    public CompiledProgram get(final RippleList program,
+                               final ModelConnection mc) throws RippleException {
+        Value head = program.getRDFEquivalent();
+        if (null == head) {
+            return null;
+        }
+
+        ProgramKey key = new ProgramKey(head, program);
+
+        CompiledProgram compiled = programs.get(key);
+        if (null == compiled) {
+            // Note: two threads may occasionally compile the same program; either result will do.
+            compiled = CompiledProgram.compile(program, mc);
+            programs.put(key, compiled);
+        }
+
+        return compiled;
+    }
+
+    /**
+     * Discards all compiled programs
+     */
+    public void clear() {
+        programs.clear();
+    }
+
+    public int size() {
+        return programs.size();
+    }
+
+    /**
+     * @return the number of lookups which found an already-compiled program
+     */
+    public long getHits() {
+        return programs.getHits();
+    }
+
+    /**
+     * @return the number of lookups which required a program to be compiled
+     */
+    public long getMisses() {
+        return programs.getMisses();
+    }
+
+    // RippleList equality is structural (and expensive), and is checked only for programs of the same RDF list
+    private static class ProgramKey {
+        private final Value head;
+        private final RippleList program;
+
+        public ProgramKey(final Value head, final RippleList program) {
+            this.head = head;
+            this.program = program;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (other instanceof ProgramKey) {
+                ProgramKey k = (ProgramKey) other;
+                return k.head.equals(head) && (k.program == program || k.program.equals(program));
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return head.hashCode();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.fortytwo.ripple.model;
 
+import net.fortytwo.flow.Demand;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
@@ -9,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
@@ -63,34 +66,61 @@ public class RDFPredicateMapping implements StackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
+        StatementPatternQuery query = createQuery(arg, solutions, mc);
+
+        Sink<Object> resultSink = new ValueSink(arg, solutions);
+
+        //System.out.println("asynch: " + Ripple.asynchronousQueries());
+        if (Ripple.asynchronousQueries()) {
+            mc.query(query, resultSink, true);
+        } else {
+            mc.query(query, resultSink, false);
+        }
+    }
+
+    /**
+     * Applies this mapping to a number of argument stacks at once, so that the statement lookups for all of them
+     * are issued as a single batch
+     *
+     * @param args      the argument stacks
+     * @param solutions a handler for the solutions of each application, in the same order as the arguments
+     * @param mc        a connection to the model
+     * @throws RippleException if the mapping fails
+     */
+    public void applyAll(final List<RippleList> args,
+                         final List<Sink<RippleList>> solutions,
+                         final ModelConnection mc) throws RippleException {
+        List<StatementPatternQuery> queries = new ArrayList<>(args.size());
+        List<Sink> sinks = new ArrayList<>(args.size());
+
+        for (int i = 0; i < args.size(); i++) {
+            queries.add(createQuery(args.get(i), solutions.get(i), mc));
+            sinks.add(new ValueSink(args.get(i), solutions.get(i)));
+        }
+
+        mc.query(queries, sinks, Ripple.asynchronousQueries());
+    }
+
+    // also produces any solutions for a native list argument
+    private StatementPatternQuery createQuery(final RippleList arg,
+                                              final Sink<RippleList> solutions,
+                                              final ModelConnection mc) throws RippleException {
         Object sourceVal = arg.getFirst();
-        StatementPatternQuery query;
 
         switch (this.type) {
             case SP_O:
                 findListPredicateSolutions(sourceVal, arg.getRest(), solutions, mc);
 
-                query = (null == context)
+                return (null == context)
                         ? new StatementPatternQuery(sourceVal, predicate, null)
                         : new StatementPatternQuery(sourceVal, predicate, null, context);
-                break;
             case PO_S:
-                query = (null == context)
+                return (null == context)
                         ? new StatementPatternQuery(null, predicate, sourceVal)
                         : new StatementPatternQuery(null, predicate, sourceVal, context);
-                break;
             default:
                 throw new RippleException("unsupported query type: " + type);
         }
-
-        Sink<Object> resultSink = new ValueSink(arg, solutions);
-
-        //System.out.println("asynch: " + Ripple.asynchronousQueries());
-        if (Ripple.asynchronousQueries()) {
-            mc.query(query, resultSink, true);
-        } else {
-            mc.query(query, resultSink, false);
-        }
     }
 
     public String toString() {
@@ -115,7 +145,7 @@ public class RDFPredicateMapping implements StackMapping {
         return new RDFPredicateMapping(inverseType, this.predicate, this.context);
     }
 
-    private class ValueSink implements Sink<Object> {
+    private class ValueSink implements Sink<Object>, Demand {
         private final Sink<RippleList> sink;
         private final RippleList arg;
 
@@ -134,5 +164,24 @@ public class RDFPredicateMapping implements StackMapping {
                 logger.warn("failed to put solution", e);
             }
         }
+
+        public boolean isSatisfied() {
+            return Demand.isSatisfied(sink);
+        }
+    }
+
+    public boolean equals(final Object other) {
+        if (other instanceof RDFPredicateMapping) {
+            RDFPredicateMapping m = (RDFPredicateMapping) other;
+            return m.type == type
+                    && m.predicate.equals(predicate)
+                    && (null == context ? null == m.context : context.equals(m.context));
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return 583041577 + 31 * type.hashCode() + predicate.hashCode() + (null == context ? 0 : context.hashCode());
     }
 }
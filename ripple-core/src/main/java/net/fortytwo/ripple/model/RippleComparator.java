@@ -1,6 +1,7 @@
 package net.fortytwo.ripple.model;
 
 import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.ListNode;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.model.types.NumericType;
 import net.fortytwo.ripple.util.ModelConnectionHelper;
@@ -11,9 +12,12 @@ import org.openrdf.model.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Optional;
+import java.util.function.ToIntFunction;
 
 // TODO: this comparator currently ignores the equivalence of RDF lists with native lists,
 // and of numeric values with numeric-typed literals
@@ -24,6 +28,8 @@ import java.util.Optional;
 public class RippleComparator implements Comparator<Object> {
     private static final Logger logger = LoggerFactory.getLogger(RippleComparator.class.getName());
 
+    private static final int NIL_HASH = 1320672831;
+
     private final ModelConnection modelConnection;
     private final Comparator<RippleList> listComparator;
 
@@ -36,8 +42,155 @@ public class RippleComparator implements Comparator<Object> {
         return listComparator;
     }
 
+    /**
+     * @return a hash function for lists of values which is consistent with this comparator,
+     * for use with a <code>ListMemoizer</code>
+     */
+    public ToIntFunction<ListNode<Object>> getListHashFunction() {
+        return this::hashList;
+    }
+
+    /**
+     * Computes a hash code for a value which is consistent with this comparator,
+     * so that any two values which compare as equal have the same hash code
+     *
+     * @param v a value
+     * @return the hash code of the value
+     */
+    public int hash(final Object v) {
+        try {
+            RippleType type = modelConnection.getModel().getTypeOf(v);
+            RippleType.Category cat = categoryOf(v, type);
+            if (null == cat) {
+                return 0;
+            }
+
+            switch (cat) {
+                case PLAIN_LITERAL_WITHOUT_LANGUAGE_TAG:
+                    return modelConnection.toRDF(v).stringValue().hashCode();
+                case PLAIN_LITERAL_WITH_LANGUAGE_TAG:
+                    Literal l = (Literal) modelConnection.toRDF(v);
+                    return 31 * l.getLanguage().get().hashCode() + l.getLabel().hashCode();
+                case NUMERIC_TYPED_LITERAL:
+                    return type instanceof NumericType
+                            ? hashNumber(((NumericType) type).findNumber(v))
+                            : cat.ordinal();
+                case OTHER_TYPED_LITERAL:
+                    Literal tl = (Literal) modelConnection.toRDF(v);
+                    return 31 * tl.getDatatype().stringValue().hashCode() + tl.getLabel().hashCode();
+                case LIST:
+                    return hashListValue(v);
+                case OTHER_RESOURCE:
+                    Value r = modelConnection.toRDF(v);
+                    return null == r ? 0 : r.stringValue().hashCode();
+                case STRING_TYPED_LITERAL:
+                    return v instanceof String
+                            ? v.hashCode()
+                            : ((Literal) modelConnection.toRDF(v)).getLabel().hashCode();
+                default:
+                    // key/value pairs and operators are compared in ways which are specific to their types
+                    return cat.ordinal();
+            }
+        } catch (RippleException e) {
+            logger.warn("failed to hash " + v, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Computes a hash code for a list which is consistent with this comparator.
+     * The hash codes of <code>RippleList</code> nodes are kept, so that a list which shares its tail with
+     * previously hashed lists is hashed in time proportional to the length of the rest of the list.
+     *
+     * @param list a list of values
+     * @return the hash code of the list
+     */
+    public int hashList(final ListNode<?> list) {
+        // find the nodes, from the head of the list, which have yet to be hashed
+        Deque<ListNode<?>> unhashed = new ArrayDeque<>();
+        int h = NIL_HASH;
+        ListNode<?> cur = list;
+        while (!cur.isNil()) {
+            if (cur instanceof RippleList) {
+                int known = ((RippleList) cur).getStructuralHash();
+                if (0 != known) {
+                    h = known;
+                    break;
+                }
+            }
+
+            unhashed.push(cur);
+            cur = cur.getRest();
+        }
+
+        // then hash them, from the tail up
+        while (!unhashed.isEmpty()) {
+            ListNode<?> node = unhashed.pop();
+            h = 31 * h + hash(node.getFirst());
+
+            // 0 is reserved for nodes which have yet to be hashed
+            if (0 == h) {
+                h = 1;
+            }
+
+            if (node instanceof RippleList) {
+                ((RippleList) node).setStructuralHash(h);
+            }
+        }
+
+        return h;
+    }
+
+    /**
+     * Finds the category by which a value is compared with values of other types.
+     * Resources which are the heads of RDF lists are compared as lists.
+     *
+     * @param v    a value
+     * @param type the type of the value in the model, if any
+     * @return the category of the value, or null if the value cannot be compared with values of other types
+     * @throws RippleException if the category cannot be determined
+     */
+    public RippleType.Category categoryOf(final Object v, final RippleType type) throws RippleException {
+        if (null == type && !(v instanceof Value)) {
+            return null;
+        }
+
+        RippleType.Category cat = findCategory(v, type);
+        return cat == RippleType.Category.OTHER_RESOURCE && ModelConnectionHelper.isRDFList(v, modelConnection)
+                ? RippleType.Category.LIST
+                : cat;
+    }
+
+    // a native list, or a resource which is the head of an RDF list, is equal to the native lists it converts to
+    private int hashListValue(final Object v) throws RippleException {
+        if (v instanceof RippleList) {
+            return hashList((RippleList) v);
+        }
+
+        Collector<RippleList> lists = new Collector<>();
+        modelConnection.toList(v, lists);
+
+        // a branching list is equal only to another branching list, with the same branches
+        return 1 == lists.size()
+                ? hashList(lists.iterator().next())
+                : RippleType.Category.LIST.ordinal();
+    }
+
+    // numbers which are equal at any of the precisions at which they may be compared are equal as floats
+    private static int hashNumber(final Number n) {
+        float f = n.floatValue();
+
+        // 0.0 and -0.0, which are equal as decimals, have the same hash
+        return 0.0f == f ? 0 : Float.hashCode(f);
+    }
+
     public int compare(final Object o1,
                        final Object o2) {
+        // canonical values are interned, so that equal RDF values are usually identical
+        if (o1 == o2) {
+            return 0;
+        }
+
         try {
             RippleType o1Type = modelConnection.getModel().getTypeOf(o1);
             RippleType o2Type = modelConnection.getModel().getTypeOf(o2);
@@ -277,6 +430,11 @@ public class RippleComparator implements Comparator<Object> {
         RippleList cur2 = l2;
 
         while (!cur1.isNil()) {
+            // stacks derived from the same stack share their tails
+            if (cur1 == cur2) {
+                return 0;
+            }
+
             if (cur2.isNil()) {
                 return 1;
             }
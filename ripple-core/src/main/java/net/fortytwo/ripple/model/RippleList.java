@@ -18,6 +18,10 @@ public abstract class RippleList<T> extends ListNode<T> {
     protected T first;
     protected final RippleList<T> rest;
 
+    // The structural hash of this list, as computed by a RippleComparator, or 0 if it has yet to be computed.
+    // The hash reflects which resources in the list were RDF lists at the time it was computed.
+    private int structuralHash = 0;
+
     protected RippleList(final T first,
                          final RippleList<T> rest) {
         this.first = first;
@@ -36,6 +40,20 @@ public abstract class RippleList<T> extends ListNode<T> {
 
     public abstract void setRDFEquivalent(final Value id);
 
+    /**
+     * @return the RDF list from which this list was converted, or as which it has been defined or written,
+     * or null if this list has no RDF equivalent (yet)
+     */
+    public abstract Value getRDFEquivalent();
+
+    int getStructuralHash() {
+        return structuralHash;
+    }
+
+    void setStructuralHash(final int hash) {
+        structuralHash = hash;
+    }
+
     /**
      * @return the number of items in this list.
      * This is purely a convenience method.
@@ -101,7 +119,7 @@ public abstract class RippleList<T> extends ListNode<T> {
                 sb.append(" ");
             }
 
-            if (Operator.OP == val) {
+            if (val instanceof Op) {
                 sb.append("op");
             } else {
                 sb.append(val);
@@ -130,7 +148,7 @@ public abstract class RippleList<T> extends ListNode<T> {
         while (!cur.isNil()) {
             T val = cur.getFirst();
 
-            if (Operator.OP == val) {
+            if (val instanceof Op) {
                 p.print(".");
             } else {
                 if (!isFirst) {
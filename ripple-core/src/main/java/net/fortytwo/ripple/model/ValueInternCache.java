@@ -0,0 +1,93 @@
+package net.fortytwo.ripple.model;
+
+import org.openrdf.model.Value;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An intern cache, belonging to a single model connection, of the RDF values which the connection has seen.
+ * Equal values are replaced with a single canonical instance, so that they may be compared by identity.
+ * Values are not assigned ids, and their order is not affected.
+ * The cache is cleared whenever its connection commits or is reset,
+ * so that a long-lived connection does not hold on to every value it has ever seen.
+ * Once the cache is full, further values are passed along as they are.
+ * Values are interned without a lock, as the threads of a parallel evaluation may share a connection.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ValueInternCache {
+    private final int capacity;
+
+    private volatile ConcurrentMap<Value, Value> values = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of values to intern
+     */
+    public ValueInternCache(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("negative capacity: " + capacity);
+        }
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param v an RDF value
+     * @return the canonical instance of the value, which is the value itself if it is seen for the first time,
+     * or if the cache is full
+     */
+    public Value intern(final Value v) {
+        ConcurrentMap<Value, Value> m = values;
+
+        Value canonical = m.get(v);
+        if (null != canonical) {
+            hits.increment();
+            return canonical;
+        }
+
+        misses.increment();
+
+        // Note: concurrent misses may take the cache slightly past its capacity
+        if (m.size() < capacity) {
+            canonical = m.putIfAbsent(v, v);
+            if (null != canonical) {
+                return canonical;
+            }
+        }
+
+        return v;
+    }
+
+    /**
+     * Forgets all interned values
+     */
+    public void clear() {
+        // a new map, so that a cache which was once full does not keep its table at full size
+        values = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the number of interned values
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return the number of values which were found to have been interned already
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of values which were seen for the first time
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
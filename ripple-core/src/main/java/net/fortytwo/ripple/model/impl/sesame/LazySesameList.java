@@ -0,0 +1,46 @@
+package net.fortytwo.ripple.model.impl.sesame;
+
+import net.fortytwo.ripple.model.RippleList;
+
+/**
+ * A native list converted from an RDF list, whose rest is created only when it is first requested.
+ * The nodes of the RDF list have all been resolved by the time the list is created,
+ * so that reading the list involves no further lookups, and may follow the closing of the connection which
+ * converted it.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class LazySesameList<T> extends SesameList<T> {
+    private final RDFListResolver.Node node;
+    private final RDFListResolver resolver;
+    private volatile RippleList resolvedRest = null;
+
+    /**
+     * @param first    the first element of the list
+     * @param node     the resolved node of the RDF list which this list represents
+     * @param resolver the resolver of the RDF list
+     */
+    public LazySesameList(final T first,
+                          final RDFListResolver.Node node,
+                          final RDFListResolver resolver) {
+        super(first, null);
+        this.node = node;
+        this.resolver = resolver;
+    }
+
+    @Override
+    public boolean isNil() {
+        return false;
+    }
+
+    @Override
+    public RippleList getRest() {
+        RippleList r = resolvedRest;
+        if (null == r) {
+            r = resolver.restOf(node);
+            resolvedRest = r;
+        }
+
+        return r;
+    }
+}
@@ -0,0 +1,237 @@
+package net.fortytwo.ripple.model.impl.sesame;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StatementPatternQuery;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the nodes of an RDF list, each node (that is, its <code>rdf:first</code> and <code>rdf:rest</code>
+ * values) being looked up at most once.
+ * Lists may be converted either all at once, following every branch of the RDF list, or, for a list which neither
+ * branches nor is broken nor cyclic, as a list whose nodes are created only as it is read.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class RDFListResolver {
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final ModelConnection mc;
+    private final Map<Value, Node> nodes = new ConcurrentHashMap<>();
+
+    public RDFListResolver(final ModelConnection mc) {
+        this.mc = mc;
+    }
+
+    /**
+     * @return the RDF nodes resolved so far
+     */
+    public Collection<Value> getNodes() {
+        return nodes.keySet();
+    }
+
+    /**
+     * Finds all of the lists of a (possibly branching) RDF list.  A node without an <code>rdf:first</code>
+     * ends the list with a "conceptual" list of itself, as in <code>SesameList.from</code>, while a node with an
+     * <code>rdf:first</code> but no <code>rdf:rest</code> produces no lists.  Cycles are not followed.
+     *
+     * @param head the head of the RDF list
+     * @return the native lists, in which the lists which follow the first branch of each node come first
+     * @throws RippleException if resolution fails
+     */
+    public List<RippleList> lists(final Object head) throws RippleException {
+        Map<Value, List<RippleList>> done = new HashMap<>();
+        Set<Value> inProgress = new HashSet<>();
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(head);
+
+        // a post-order traversal of the nodes, so that the lists of each rest are found before those of its node
+        while (!stack.isEmpty()) {
+            Object o = stack.peek();
+            Value v = mc.toRDF(o);
+
+            if (done.containsKey(v)) {
+                stack.pop();
+                continue;
+            }
+
+            if (RDF.NIL.equals(v)) {
+                done.put(v, singleton(SesameList.nilList()));
+                stack.pop();
+                continue;
+            }
+
+            Node n = resolve(o, v);
+            if (0 == n.firsts.length) {
+                done.put(v, singleton(conceptualList(o)));
+                stack.pop();
+                continue;
+            }
+
+            if (inProgress.add(v)) {
+                for (int i = n.rests.length - 1; i >= 0; i--) {
+                    Value r = n.restValues[i];
+                    if (!done.containsKey(r) && !inProgress.contains(r)) {
+                        stack.push(n.rests[i]);
+                    }
+                }
+            } else {
+                List<RippleList> result = new ArrayList<>();
+                for (Value rest : n.restValues) {
+                    List<RippleList> tails = done.get(rest);
+
+                    // a rest which is still in progress closes a cycle
+                    if (null != tails) {
+                        for (RippleList tail : tails) {
+                            for (Object first : n.firsts) {
+                                result.add(createList(first, tail, v));
+                            }
+                        }
+                    }
+                }
+
+                done.put(v, result);
+                inProgress.remove(v);
+                stack.pop();
+            }
+        }
+
+        return done.get(mc.toRDF(head));
+    }
+
+    /**
+     * Resolves the nodes of an RDF list from the head onwards, without recursion, as long as each node has exactly
+     * one <code>rdf:first</code> and one <code>rdf:rest</code>.
+     *
+     * @param head the head of an RDF list
+     * @return a list whose nodes are created only as it is read, if the RDF list is a single, unbroken, acyclic
+     * chain of nodes with at least one element, or <code>null</code> otherwise, in which case the list is to be
+     * converted with {@link #lists(Object)}, which re-uses the nodes resolved here
+     * @throws RippleException if resolution fails
+     */
+    public RippleList simpleList(final Object head) throws RippleException {
+        Value headValue = mc.toRDF(head);
+        if (null == headValue || RDF.NIL.equals(headValue)) {
+            return null;
+        }
+
+        Node headNode = resolve(head, headValue);
+        if (0 == headNode.firsts.length) {
+            return null;
+        }
+
+        Set<Value> visited = new HashSet<>();
+        Object o = head;
+        Value v = headValue;
+        while (true) {
+            Node n = resolve(o, v);
+            if (0 == n.firsts.length) {
+                // a conceptual end of the list, as in lists()
+                break;
+            } else if (1 != n.firsts.length || 1 != n.rests.length || !visited.add(v)) {
+                // branching, broken or cyclic
+                return null;
+            }
+
+            o = n.rests[0];
+            v = n.restValues[0];
+            if (RDF.NIL.equals(v)) {
+                break;
+            }
+        }
+
+        LazySesameList list = new LazySesameList(headNode.firsts[0], headNode, this);
+        list.setRDFEquivalent(headValue);
+        return list;
+    }
+
+    /**
+     * @param node a node of a list found by {@link #simpleList(Object)}
+     * @return the rest of the list at the given node
+     */
+    RippleList restOf(final Node node) {
+        Object rest = node.rests[0];
+        Value v = node.restValues[0];
+        if (RDF.NIL.equals(v)) {
+            return SesameList.nilList();
+        }
+
+        // the node has already been resolved by simpleList()
+        Node n = nodes.get(v);
+        if (0 == n.firsts.length) {
+            return conceptualList(rest);
+        } else {
+            LazySesameList list = new LazySesameList(n.firsts[0], n, this);
+            list.setRDFEquivalent(v);
+            return list;
+        }
+    }
+
+    private Node resolve(final Object o, final Value v) throws RippleException {
+        Node n = nodes.get(v);
+        if (null == n) {
+            Object[] firsts = values(o, RDF.FIRST);
+            Object[] rests = 0 == firsts.length ? NO_VALUES : values(o, RDF.REST);
+            Value[] restValues = new Value[rests.length];
+            for (int i = 0; i < rests.length; i++) {
+                restValues[i] = mc.toRDF(rests[i]);
+            }
+            n = new Node(firsts, rests, restValues);
+            Node previous = nodes.putIfAbsent(v, n);
+            if (null != previous) {
+                n = previous;
+            }
+        }
+
+        return n;
+    }
+
+    private Object[] values(final Object subj, final Object pred) throws RippleException {
+        Collector<Object> results = new Collector<>();
+        mc.query(new StatementPatternQuery(subj, pred, null), results, false);
+        return results.toArray();
+    }
+
+    private static RippleList createList(final Object first, final RippleList rest, final Value rdfEquivalent) {
+        SesameList list = new SesameList(first, rest);
+        list.setRDFEquivalent(rdfEquivalent);
+        return list;
+    }
+
+    private static RippleList conceptualList(final Object head) {
+        return new SesameList(Operator.OP).push(head);
+    }
+
+    private static List<RippleList> singleton(final RippleList list) {
+        List<RippleList> l = new ArrayList<>(1);
+        l.add(list);
+        return l;
+    }
+
+    static class Node {
+        private final Object[] firsts;
+        private final Object[] rests;
+        private final Value[] restValues;
+
+        public Node(final Object[] firsts, final Object[] rests, final Value[] restValues) {
+            this.firsts = firsts;
+            this.rests = rests;
+            this.restValues = restValues;
+        }
+    }
+}
@@ -1,21 +1,17 @@
 package net.fortytwo.ripple.model.impl.sesame;
 
-import net.fortytwo.flow.Collector;
 import net.fortytwo.flow.Sink;
-import net.fortytwo.flow.Source;
 import net.fortytwo.ripple.ListNode;
-import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ListCache;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.Operator;
 import net.fortytwo.ripple.model.RippleList;
-import net.fortytwo.ripple.model.StatementPatternQuery;
 import net.fortytwo.ripple.util.ModelConnectionHelper;
 import org.openrdf.model.Value;
 import org.openrdf.model.vocabulary.RDF;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
@@ -24,9 +20,6 @@ public class SesameList<T> extends RippleList<T> {
 
     private static final RippleList NIL = new SesameList();
 
-    private static final Map<Value, Source<RippleList>> nativeLists = new HashMap<>();
-    private static Boolean memoize;
-
     private Value rdfEquivalent;
 
     public static RippleList nilList() {
@@ -95,10 +88,6 @@ public class SesameList<T> extends RippleList<T> {
                                 final Sink<RippleList> sink,
                                 final ModelConnection mc)
             throws RippleException {
-        if (null == memoize) {
-            memoize = Ripple.getConfiguration().getBoolean(Ripple.MEMOIZE_LISTS_FROM_RDF);
-        }
-
         // If already a list...
         if (v instanceof RippleList) {
             sink.accept((RippleList) v);
@@ -106,21 +95,35 @@ public class SesameList<T> extends RippleList<T> {
 
         // If the argument is an RDF value, try to convert it to a native list.
         else if (v instanceof Value) {
-            if (memoize) {
-                Value rdfVal = (Value) v;
-                Source<RippleList> source = nativeLists.get(rdfVal);
-                if (null == source) {
-                    Collector<RippleList> coll = new Collector<>();
-
-                    listsFromRdf(v, coll, mc);
+            Value rdfVal = (Value) v;
+            ListCache cache = mc.getModel().getListCache();
+            RippleList[] lists = null == cache ? null : cache.get(rdfVal);
+
+            if (null == lists) {
+                long generation = null == cache ? 0 : cache.getGeneration();
+                RDFListResolver resolver = new RDFListResolver(mc);
+
+                if (mc instanceof SesameModelConnection && ((SesameModel) mc.getModel()).lazyLists) {
+                    // a list which neither branches nor is broken nor cyclic is created only as it is read;
+                    // any other list is converted all at once, so as to produce the same lists in either mode
+                    RippleList simple = resolver.simpleList(rdfVal);
+                    if (null != simple) {
+                        sink.accept(simple);
+                        return;
+                    }
+                }
 
-                    source = coll;
-                    nativeLists.put(rdfVal, source);
+                List<RippleList> all = resolver.lists(rdfVal);
+                lists = all.toArray(new RippleList[all.size()]);
+                // lists which may depend on this connection's uncommitted changes are not shared with other connections
+                if (null != cache && !(mc instanceof SesameModelConnection
+                        && ((SesameModelConnection) mc).hasUncommittedListChanges())) {
+                    cache.put(rdfVal, lists, resolver.getNodes(), generation);
                 }
+            }
 
-                source.writeTo(sink);
-            } else {
-                listsFromRdf(v, sink, mc);
+            for (RippleList l : lists) {
+                sink.accept(l);
             }
         }
 
@@ -150,66 +153,11 @@ public class SesameList<T> extends RippleList<T> {
         sink.accept(new SesameList(Operator.OP).push(head));
     }
 
-    // TODO: extend circular lists and other convergent structures
-    private static <T> void listsFromRdf(final T head,
-                                         final Sink<RippleList> sink,
-                                         final ModelConnection mc)
-            throws RippleException {
-        if (mc.toRDF(head).equals(RDF.NIL)) {
-            sink.accept(NIL);
-        } else {
-            final Collector<Object> firstValues = new Collector<>();
-
-            final Sink<RippleList> restSink = rest1 -> {
-                Sink<Object> firstSink = new Sink<Object>() {
-                    public void accept(final Object first) throws RippleException {
-                        SesameList list = new SesameList(first, rest1);
-                        list.rdfEquivalent = mc.toRDF(head);
-                        sink.accept(list);
-                    }
-                };
-
-                firstValues.writeTo(firstSink);
-            };
-
-            Sink<Object> rdfRestSink = rest1 -> {
-                // Recurse.
-                listsFromRdf(rest1, restSink, mc);
-            };
-
-            /*
-               Sink<RdfValue> rdfFirstSink = new Sink<RdfValue>()
-               {
-                   public void put( final RdfValue first ) throws RippleException
-                   {
-                       // Note: it might be more efficient to use ModelBridge only
-                       //       lazily, binding RDF to generic RippleValues on an
-                       //       as-needed basis.  However, for now there is no better
-                       //       place to do this when we're coming from an rdf:List.
-                       //       Consider a list containing operators.
-                       firstValues.put( mc.getModel().getBridge().get( first ) );
-                   }
-               };*/
-
-            multiply(mc, head, RDF.FIRST, firstValues);
-
-            if (firstValues.size() > 0 || mc.toRDF(head).equals(RDF.NIL)) {
-                multiply(mc, head, RDF.REST, rdfRestSink);
-            } else {
-                createConceptualList(head, sink);
-            }
-        }
-    }
-
-    private static void multiply(final ModelConnection mc,
-                                 final Object subj,
-                                 final Object pred,
-                                 final Sink sink) throws RippleException {
-        StatementPatternQuery query = new StatementPatternQuery(subj, pred, null);
-        mc.query(query, sink, false);
-    }
-
     public void setRDFEquivalent(final Value id) {
         rdfEquivalent = id;
     }
+
+    public Value getRDFEquivalent() {
+        return rdfEquivalent;
+    }
 }
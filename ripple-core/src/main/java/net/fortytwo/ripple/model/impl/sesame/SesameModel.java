@@ -1,11 +1,16 @@
 package net.fortytwo.ripple.model.impl.sesame;
 
 import net.fortytwo.flow.rdf.diff.RDFDiffSink;
+import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.model.LibraryLoader;
+import net.fortytwo.ripple.model.ListCache;
+import net.fortytwo.ripple.model.MemoTable;
 import net.fortytwo.ripple.model.Model;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.OperatorCache;
+import net.fortytwo.ripple.model.ProgramCache;
 import net.fortytwo.ripple.model.RippleType;
 import net.fortytwo.ripple.model.SpecialValueMap;
 import net.fortytwo.ripple.model.types.BNodeType;
@@ -27,17 +32,17 @@ import net.fortytwo.ripple.model.types.StringType;
 import net.fortytwo.ripple.model.types.IRIType;
 import org.openrdf.IsolationLevel;
 import org.openrdf.sail.Sail;
+import org.openrdf.sail.SailException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A Ripple <code>Model</code> implementation using the Sesame RDF toolkit.
@@ -47,20 +52,62 @@ import java.util.Stack;
 public class SesameModel implements Model {
     private static final Logger logger = LoggerFactory.getLogger(SesameModel.class);
 
-    private final Map<Class, List<RippleType>> registeredTypes;
-    private final Set<Class> unmappedTypes;
+    private static final RippleType[] NO_TYPES = new RippleType[0];
+
+    // the types registered for each class, replaced (rather than modified) when a type is registered
+    private final Map<Class, RippleType[]> registeredTypes;
+
+    // the types of each class, as resolved against a particular generation of registered types
+    private final ClassValue<TypeDispatch> typesOfClass = new ClassValue<TypeDispatch>() {
+        @Override
+        protected TypeDispatch computeValue(final Class<?> c) {
+            // read the generation first, so that a concurrent registration causes the types to be resolved again
+            int g = generation;
+            return new TypeDispatch(findTypes(c), g);
+        }
+    };
+
+    private volatile int generation = 0;
 
     final Sail sail;
+
+    // whether connections may skip transactions altogether, as there are never any changes to commit
+    final boolean readOnly;
+
+    // whether RDF lists are converted lazily, following only the first branch of each node
+    final boolean lazyLists;
+
+    private final boolean fixpointQuantifiers;
+
     final Set<ModelConnection> openConnections = new LinkedHashSet<>();
     SpecialValueMap specialValues;
+    private final ProgramCache programCache;
+    private final MemoTable memoTable;
+    private final ListCache listCache;
+    private final OperatorCache operatorCache;
 
     public SesameModel(final Sail sail) throws RippleException {
         this.sail = sail;
 
         logger.info("instantiating SesameModel");
 
-        unmappedTypes = new HashSet<>();
-        registeredTypes = new HashMap<>();
+        try {
+            readOnly = Ripple.getConfiguration().getBoolean(Ripple.READ_ONLY, false) || !sail.isWritable();
+        } catch (SailException e) {
+            throw new RippleException(e);
+        }
+
+        lazyLists = Ripple.getConfiguration().getBoolean(Ripple.LAZY_LISTS_FROM_RDF, false);
+        fixpointQuantifiers = Ripple.getConfiguration().getBoolean(Ripple.FIXPOINT_QUANTIFIERS, false);
+        registeredTypes = new ConcurrentHashMap<>();
+        programCache = new ProgramCache(Ripple.getConfiguration().getInt(Ripple.PROGRAM_CACHE_CAPACITY, 1000));
+        int memoCapacity = Ripple.getConfiguration().getInt(Ripple.MEMO_CAPACITY, 0);
+        memoTable = memoCapacity > 0 ? new MemoTable(memoCapacity) : null;
+        listCache = Ripple.getConfiguration().getBoolean(Ripple.MEMOIZE_LISTS_FROM_RDF)
+                ? new ListCache(Ripple.getConfiguration().getInt(Ripple.LIST_CACHE_CAPACITY, 10000))
+                : null;
+        int operatorCapacity = Ripple.getConfiguration().getInt(Ripple.OPERATOR_CACHE_CAPACITY, 10000);
+        operatorCache = operatorCapacity > 0 ? new OperatorCache(operatorCapacity) : null;
 
         // register string-typed literals before other literal types
         register(new StringLiteralType());
@@ -107,6 +154,31 @@ public class SesameModel implements Model {
         return specialValues;
     }
 
+    @Override
+    public ProgramCache getProgramCache() {
+        return programCache;
+    }
+
+    @Override
+    public MemoTable getMemoTable() {
+        return memoTable;
+    }
+
+    @Override
+    public ListCache getListCache() {
+        return listCache;
+    }
+
+    @Override
+    public OperatorCache getOperatorCache() {
+        return operatorCache;
+    }
+
+    @Override
+    public boolean usesFixpointQuantifiers() {
+        return fixpointQuantifiers;
+    }
+
     @Override
     public ModelConnection createConnection()
             throws RippleException {
@@ -138,7 +210,8 @@ public class SesameModel implements Model {
 
                 logger.warn(sb.toString());
 
-                for (ModelConnection mc : openConnections) {
+                // closing a connection removes it from the set
+                for (ModelConnection mc : new ArrayList<>(openConnections)) {
                     mc.reset(true);
                     mc.close();
                 }
@@ -151,20 +224,36 @@ public class SesameModel implements Model {
         return sail;
     }
 
+    /**
+     * @return whether this model is read-only, either by configuration or because its Sail is not writable.
+     * Connections to a read-only model ignore any changes, and read within a single transaction
+     * which is never committed.
+     */
+    // Note: this method is not in the Model API
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     @Override
-    public void register(final RippleType type) {
+    public synchronized void register(final RippleType type) {
         if (null == type || null == type.getInstanceClasses() || 0 == type.getInstanceClasses().size()) {
             throw new IllegalArgumentException();
         }
 
         for (Class c : (Iterable<Class>) type.getInstanceClasses()) {
-            List<RippleType> types = registeredTypes.get(c);
+            RippleType[] types = registeredTypes.get(c);
+            RippleType[] newTypes;
             if (null == types) {
-                types = new LinkedList<>();
-                registeredTypes.put(c, types);
+                newTypes = new RippleType[]{type};
+            } else {
+                newTypes = Arrays.copyOf(types, types.length + 1);
+                newTypes[types.length] = type;
             }
-            types.add(type);
+            registeredTypes.put(c, newTypes);
         }
+
+        // types resolved before this registration are stale
+        generation++;
     }
 
     @Override
@@ -174,23 +263,14 @@ public class SesameModel implements Model {
         }
 
         Class c = instance.getClass();
-        List<RippleType> types = registeredTypes.get(c);
-
-        if (null == types) {
-            // quickly check whether this class has been marked as non mapped...
-            if (unmappedTypes.contains(c)) {
-                return null;
-            }
-
-            // ...before attempting to discover a mapped superclass or inherited interface
-            types = findTypes(c, new Stack<>());
-            if (null == types) {
-                return null;
-            }
+        TypeDispatch dispatch = typesOfClass.get(c);
+        if (dispatch.generation != generation) {
+            typesOfClass.remove(c);
+            dispatch = typesOfClass.get(c);
         }
 
         // tie goes to the first matching type in order of registration
-        for (RippleType type : types) {
+        for (RippleType type : dispatch.types) {
             if (type.isInstance(instance)) {
                 return type;
             }
@@ -199,47 +279,29 @@ public class SesameModel implements Model {
         return null;
     }
 
-    private List<RippleType> findTypes(final Class c,
-                                       final Stack<Class> hierarchy) {
-        if (unmappedTypes.contains(c)) {
-            return null;
-        }
-
-        hierarchy.push(c);
-
-        List<RippleType> types = registeredTypes.get(c);
+    // finds the types of the class itself, else of the nearest mapped superclass, else of an inherited interface
+    private RippleType[] findTypes(final Class c) {
+        RippleType[] types = registeredTypes.get(c);
         if (null != types) {
-            for (Class d : hierarchy) {
-                List<RippleType> newTypes = new LinkedList<>();
-                newTypes.addAll(types);
-                registeredTypes.put(d, newTypes);
-            }
-
             return types;
         }
 
         Class sc = c.getSuperclass();
         if (null != sc) {
-            types = findTypes(sc, hierarchy);
-            if (null != types) {
+            types = findTypes(sc);
+            if (types.length > 0) {
                 return types;
-            } else {
-                unmappedTypes.add(sc);
             }
         }
 
         for (Class ic : c.getInterfaces()) {
-            types = findTypes(ic, hierarchy);
-            if (null != types) {
+            types = findTypes(ic);
+            if (types.length > 0) {
                 return types;
-            } else {
-                unmappedTypes.add(ic);
             }
         }
 
-        hierarchy.pop();
-        unmappedTypes.add(c);
-        return null;
+        return NO_TYPES;
     }
 
     @Override
@@ -251,4 +313,18 @@ public class SesameModel implements Model {
     public IsolationLevel getDefaultIsolationLevel() {
         return sail.getDefaultIsolationLevel();
     }
+
+    /**
+     * The types of a class, in order of registration, together with the generation of registered types
+     * against which they were resolved
+     */
+    private static class TypeDispatch {
+        private final RippleType[] types;
+        private final int generation;
+
+        public TypeDispatch(final RippleType[] types, final int generation) {
+            this.types = types;
+            this.generation = generation;
+        }
+    }
 }
@@ -3,24 +3,31 @@ package net.fortytwo.ripple.model.impl.sesame;
 import info.aduna.iteration.CloseableIteration;
 import net.fortytwo.flow.Buffer;
 import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Demand;
 import net.fortytwo.flow.NullSink;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.flow.Source;
 import net.fortytwo.flow.rdf.CloseableIterationSource;
 import net.fortytwo.flow.rdf.diff.RDFDiffSink;
+import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.control.Task;
 import net.fortytwo.ripple.control.TaskSet;
 import net.fortytwo.ripple.io.RDFImporter;
 import net.fortytwo.ripple.io.RipplePrintStream;
 import net.fortytwo.ripple.model.GetStatementsQuery;
+import net.fortytwo.ripple.model.ListCache;
+import net.fortytwo.ripple.model.ListMembershipCache;
+import net.fortytwo.ripple.model.MemoTable;
 import net.fortytwo.ripple.model.Model;
 import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Profiler;
 import net.fortytwo.ripple.model.RippleComparator;
 import net.fortytwo.ripple.model.RippleList;
 import net.fortytwo.ripple.model.RippleType;
 import net.fortytwo.ripple.model.StackMapping;
 import net.fortytwo.ripple.model.StatementPatternQuery;
+import net.fortytwo.ripple.model.ValueInternCache;
 import net.fortytwo.ripple.model.types.NumericType;
 import org.openrdf.model.IRI;
 import org.openrdf.model.Literal;
@@ -42,15 +49,22 @@ import org.openrdf.sail.SailConnection;
 import org.openrdf.sail.SailConnectionListener;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.SailReadOnlyException;
+import org.openrdf.sail.helpers.SailConnectionWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -63,13 +77,39 @@ public class SesameModelConnection implements ModelConnection {
     private static DatatypeFactory DATATYPE_FACTORY;
 
     private final SesameModel model;
+
+    // The Sail connection, the write buffer, and the record of uncommitted changes are guarded by the monitor of
+    // this object, so that the connection may be shared by asynchronous query tasks and by the branches of a parallel
+    // evaluation.  Streaming reads use read connections of their own, and do not hold the monitor.
     private SailConnection sailConnection;
     private final RDFDiffSink listenerSink;
     private final ValueFactory valueFactory;
     private final TaskSet taskSet = new TaskSet();
     private final RippleComparator comparator;
 
-    private boolean closed = false;
+    private volatile boolean closed = false;
+    private boolean uncommittedChanges = false;
+
+    // whether changes have been written to the Sail connection, and are visible only through it, since the last commit
+    private volatile boolean uncommittedSailChanges = false;
+
+    // changes which have not yet been written to the Sail connection, or null if changes are written as they are made
+    private final WriteBuffer writeBuffer;
+    private final int writeBufferCapacity;
+
+    // whether statements may be passed along as they are read, rather than collected first
+    private final boolean streamStatements;
+
+    // connections used for nothing but streaming reads, while they are not in use, and how many of them are kept
+    private final Deque<SailConnection> idleReadConnections = new ArrayDeque<>();
+    private final int maxIdleReadConnections;
+
+    // the subjects of list statements added or removed since the last commit, or null if all lists are affected
+    private Set<Value> uncommittedListNodes = new HashSet<>();
+    private volatile boolean uncommittedListChanges = false;
+    private final ListMembershipCache listMembershipCache;
+    private final ValueInternCache valueInternCache;
+    private Profiler profiler = null;
 
     protected SesameModelConnection(final SesameModel model, final RDFDiffSink listenerSink)
             throws RippleException {
@@ -89,6 +129,15 @@ public class SesameModelConnection implements ModelConnection {
         }
 
         comparator = new RippleComparator(this);
+
+        streamStatements = Ripple.getConfiguration().getBoolean(Ripple.STREAM_STATEMENTS);
+        maxIdleReadConnections = Ripple.getConfiguration().getInt(Ripple.MAX_IDLE_READ_CONNECTIONS, 4);
+        listMembershipCache = new ListMembershipCache(
+                Ripple.getConfiguration().getInt(Ripple.LIST_MEMBERSHIP_CACHE_CAPACITY, 10000));
+        writeBufferCapacity = Ripple.getConfiguration().getInt(Ripple.WRITE_BUFFER_CAPACITY, 10000);
+        valueInternCache = new ValueInternCache(
+                Ripple.getConfiguration().getInt(Ripple.VALUE_INTERN_CACHE_CAPACITY, 100000));
+        writeBuffer = writeBufferCapacity > 0 ? new WriteBuffer(valueFactory) : null;
     }
 
     public ValueFactory getValueFactory() {
@@ -116,6 +165,95 @@ public class SesameModelConnection implements ModelConnection {
         taskSet.waitUntilEmpty();
     }
 
+    // memoized solutions may depend on statements which have been added or removed
+    private void statementsChanged() {
+        uncommittedChanges = true;
+
+        MemoTable memoTable = model.getMemoTable();
+        if (null != memoTable) {
+            memoTable.clear();
+        }
+    }
+
+    // converted lists, and the list membership of resources,
+    // may depend on rdf:first and rdf:rest statements which have been added or removed
+    private void listStatementsChanged(final Value subj, final Value pred) {
+        if (null != pred && !RDF.FIRST.equals(pred) && !RDF.REST.equals(pred)) {
+            return;
+        }
+
+        if (null == pred || RDF.FIRST.equals(pred)) {
+            if (null == subj) {
+                listMembershipCache.clear();
+            } else {
+                listMembershipCache.invalidate(subj);
+            }
+        }
+
+        ListCache listCache = model.getListCache();
+        if (null == listCache) {
+            return;
+        }
+
+        uncommittedListChanges = true;
+        if (null == subj) {
+            listCache.clear();
+            uncommittedListNodes = null;
+        } else {
+            listCache.invalidate(subj);
+            if (null != uncommittedListNodes) {
+                uncommittedListNodes.add(subj);
+            }
+        }
+    }
+
+    // other connections may have converted lists from uncommitted statements in the meantime
+    private void listStatementsCommitted() {
+        ListCache listCache = model.getListCache();
+        if (null != listCache) {
+            if (null == uncommittedListNodes) {
+                listCache.clear();
+            } else {
+                for (Value node : uncommittedListNodes) {
+                    listCache.invalidate(node);
+                }
+            }
+        }
+
+        uncommittedListNodes = new HashSet<>();
+        uncommittedListChanges = false;
+    }
+
+    // whether lists converted through this connection may depend on statements which other connections cannot see
+    boolean hasUncommittedListChanges() {
+        return uncommittedListChanges;
+    }
+
+    // whether a lazily converted list must find a connection of its own
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public ListMembershipCache getListMembershipCache() {
+        return listMembershipCache;
+    }
+
+    @Override
+    public ValueInternCache getValueInternCache() {
+        return valueInternCache;
+    }
+
+    @Override
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    @Override
+    public void setProfiler(final Profiler profiler) {
+        this.profiler = profiler;
+    }
+
     @Override
     public void close() throws RippleException {
         closed = true;
@@ -124,6 +262,13 @@ public class SesameModelConnection implements ModelConnection {
 
         closeSailConnection(true);
 
+        synchronized (this) {
+            for (SailConnection rc : idleReadConnections) {
+                closeReadConnection(rc);
+            }
+            idleReadConnections.clear();
+        }
+
         synchronized (model.openConnections) {
             model.openConnections.remove(this);
         }
@@ -134,16 +279,69 @@ public class SesameModelConnection implements ModelConnection {
      * been thrown.
      */
     @Override
-    public void reset(final boolean rollback) throws RippleException {
+    public synchronized void reset(final boolean rollback) throws RippleException {
+        // buffered changes were never written, and are simply discarded
+        if (null != writeBuffer) {
+            writeBuffer.clear();
+        }
+
         closeSailConnection(rollback);
         openSailConnection();
+        uncommittedSailChanges = false;
+        listMembershipCache.clear();
+        valueInternCache.clear();
+
+        if (uncommittedChanges) {
+            statementsChanged();
+            uncommittedChanges = false;
+            listStatementsCommitted();
+        }
     }
 
     @Override
-    public void commit() throws RippleException {
+    public synchronized void commit() throws RippleException {
+        // whether or not there is anything to commit, this is where the connection lets go of the values it has seen
+        valueInternCache.clear();
+
+        // A read-only model has nothing to commit, and its connection keeps its transaction, and its caches, for good
+        if (model.readOnly) {
+            return;
+        }
+
+        // Without any changes, there is nothing to commit, but the transaction is renewed all the same,
+        // so that the connection sees whatever other connections have committed
+        if (!uncommittedChanges && !uncommittedSailChanges) {
+            try {
+                sailConnection.rollback();
+                sailConnection.begin();
+            } catch (Throwable t) {
+                throw new RippleException(t);
+            }
+
+            listMembershipCache.clear();
+            return;
+        }
+
+        commitChanges();
+    }
+
+    // writes any buffered changes, and commits them along with any which have already been written
+    private synchronized void commitChanges() throws RippleException {
         try {
+            flushWrites();
             sailConnection.commit();
             sailConnection.begin();
+            uncommittedSailChanges = false;
+
+            // the changes of other connections may now be visible
+            listMembershipCache.clear();
+
+            // other connections may have memoized solutions in the meantime
+            if (uncommittedChanges) {
+                statementsChanged();
+                uncommittedChanges = false;
+                listStatementsCommitted();
+            }
         } catch (SailReadOnlyException e) {
             handleSailReadOnlyException();
         } catch (Throwable t) {
@@ -202,8 +400,18 @@ public class SesameModelConnection implements ModelConnection {
      * A new <code>SailConnection</code> is not created.
      * The connection comes with an active transaction,
      * and a new transaction should be begun immediately after external commit or rollback operations.
+     * Any changes held back in the write buffer of this model connection are first written to the Sail connection.
+     * As the caller may change the Sail connection, the next commit of this model connection commits it.
      */
     public SailConnection getSailConnection() {
+        try {
+            flushWrites();
+        } catch (RippleException e) {
+            logger.error("failed to write buffered changes", e);
+        }
+
+        uncommittedSailChanges = true;
+
         return sailConnection;
     }
 
@@ -265,6 +473,10 @@ public class SesameModelConnection implements ModelConnection {
             throws RippleException {
         ensureOpen();
 
+        if (model.readOnly) {
+            return;
+        }
+
         Value subjValue = toRDF(subj);
         Value predValue = toRDF(pred);
         Value objValue = toRDF(obj);
@@ -274,38 +486,39 @@ public class SesameModelConnection implements ModelConnection {
             return;
         }
 
-        try {
-            // Trick to be able to iterate through contexts even if none are given
-            if (0 == contexts.length) {
-                sailConnection.addStatement(
-                        (Resource) subjValue, (IRI) predValue, objValue);
-            } else {
-                for (Object context : contexts) {
-                    Value contextValue;
+        Resource[] contextValues = toContexts(contexts);
+        if (null == contextValues) {
+            return;
+        }
 
-                    if (null == context) {
-                        contextValue = null;
-                    } else {
-                        contextValue = toRDF(context);
-
-                        // rdf:nil is a special case -- as a analysis name in Ripple, it
-                        // actually represents the null analysis.
-                        if (contextValue.equals(RDF.NIL)) {
-                            contextValue = null;
-                        } else if (!(contextValue instanceof Resource)) {
-                            return;
-                        }
-                    }
+        synchronized (this) {
+            statementsChanged();
+            listStatementsChanged(subjValue, predValue);
 
-                    sailConnection.addStatement(
-                            (Resource) subjValue, (IRI) predValue, objValue, (Resource) contextValue);
+            if (null != writeBuffer) {
+                if (0 == contextValues.length) {
+                    writeBuffer.add((Resource) subjValue, (IRI) predValue, objValue, null);
+                } else {
+                    for (Resource c : contextValues) {
+                        writeBuffer.add((Resource) subjValue, (IRI) predValue, objValue, c);
+                    }
                 }
+
+                writesBuffered();
+                return;
+            }
+
+            uncommittedSailChanges = true;
+
+            try {
+                sailConnection.addStatement(
+                        (Resource) subjValue, (IRI) predValue, objValue, contextValues);
+            } catch (SailReadOnlyException e) {
+                handleSailReadOnlyException();
+            } catch (SailException e) {
+                reset(true);
+                throw new RippleException(e);
             }
-        } catch (SailReadOnlyException e) {
-            handleSailReadOnlyException();
-        } catch (SailException e) {
-            reset(true);
-            throw new RippleException(e);
         }
     }
 
@@ -317,6 +530,10 @@ public class SesameModelConnection implements ModelConnection {
 
         ensureOpen();
 
+        if (model.readOnly) {
+            return;
+        }
+
         Value subjValue, predValue, objValue;
 
         if (null == subj) {
@@ -343,34 +560,92 @@ public class SesameModelConnection implements ModelConnection {
             objValue = toRDF(obj);
         }
 
-        try {
-            // Trick to be able to iterate through contexts even if none are given
-            if (0 == contexts.length) {
+        Resource[] contextValues = toContexts(contexts);
+        if (null == contextValues) {
+            return;
+        }
+
+        synchronized (this) {
+            statementsChanged();
+            listStatementsChanged(subjValue, predValue);
+
+            // The matching statements of a pattern with a subject are buffered for removal.
+            // Any other pattern may match too many statements to buffer, and is removed from the Sail at once.
+            if (null != writeBuffer && null != subjValue) {
+                Collector<Statement> matching = new Collector<>();
+                readStatements((Resource) subjValue, (IRI) predValue, objValue, contextValues, matching);
+                for (Statement st : matching) {
+                    writeBuffer.remove(st);
+                }
+
+                writesBuffered();
+                return;
+            }
+
+            flushWrites();
+            uncommittedSailChanges = true;
+
+            try {
                 sailConnection.removeStatements(
-                        (Resource) subjValue, (IRI) predValue, objValue);
-            } else {
-                for (Object context : contexts) {
-                    Value contextValue;
+                        (Resource) subjValue, (IRI) predValue, objValue, contextValues);
+            } catch (SailReadOnlyException e) {
+                handleSailReadOnlyException();
+            } catch (SailException e) {
+                reset(true);
+                throw new RippleException(e);
+            }
+        }
+    }
 
-                    if (null == context) {
-                        contextValue = null;
-                    } else {
-                        contextValue = toRDF(context);
-
-                        // rdf:nil is a special case -- as a analysis name in Ripple, it
-                        // actually represents the null analysis.
-                        if (contextValue.equals(RDF.NIL)) {
-                            contextValue = null;
-                        } else if (!(contextValue instanceof Resource)) {
-                            return;
-                        }
-                    }
+    // finds the graph contexts of an add or remove operation, or returns null if any of them is not a resource
+    private Resource[] toContexts(final Object... contexts) throws RippleException {
+        Resource[] contextValues = new Resource[contexts.length];
+
+        for (int i = 0; i < contexts.length; i++) {
+            Object context = contexts[i];
+            Value contextValue;
 
-                    sailConnection.removeStatements(
-                            (Resource) subjValue, (IRI) predValue, objValue, (Resource) contextValue);
+            if (null == context) {
+                contextValue = null;
+            } else {
+                contextValue = toRDF(context);
+
+                // rdf:nil is a special case -- as a analysis name in Ripple, it
+                // actually represents the null analysis.
+                if (contextValue.equals(RDF.NIL)) {
+                    contextValue = null;
+                } else if (!(contextValue instanceof Resource)) {
+                    return null;
                 }
             }
+
+            contextValues[i] = (Resource) contextValue;
+        }
+
+        return contextValues;
+    }
+
+    // A full buffer is committed, rather than written to the Sail connection and left uncommitted.
+    // Otherwise, reads would have to move to the Sail connection for the rest of the transaction, reading its
+    // uncommitted writes, which a Sail which commits as it reads (such as LinkedDataSail) cannot support
+    private void writesBuffered() throws RippleException {
+        if (writeBuffer.size() >= writeBufferCapacity) {
+            commitChanges();
+        }
+    }
+
+    // writes any buffered changes to the Sail connection,
+    // whereupon they are visible to reads of this connection only through the Sail connection
+    private synchronized void flushWrites() throws RippleException {
+        if (null == writeBuffer || writeBuffer.isEmpty()) {
+            return;
+        }
+
+        try {
+            writeBuffer.flush(sailConnection);
+            uncommittedSailChanges = true;
         } catch (SailReadOnlyException e) {
+            writeBuffer.clear();
             handleSailReadOnlyException();
         } catch (SailException e) {
             reset(true);
@@ -378,10 +653,16 @@ public class SesameModelConnection implements ModelConnection {
         }
     }
 
+    // reads see any buffered changes through an overlay
+    private SailConnection withWrites(final SailConnection sc) {
+        return null == writeBuffer || writeBuffer.isEmpty() ? sc : new OverlaySailConnection(sc);
+    }
+
     // Note: this method is no longer in the ModelConnection API
-    public long countStatements(final Resource... contexts)
+    public synchronized long countStatements(final Resource... contexts)
             throws RippleException {
         ensureOpen();
+        flushWrites();
 
         int count = 0;
 
@@ -391,6 +672,9 @@ public class SesameModelConnection implements ModelConnection {
                 CloseableIteration<? extends Statement, SailException> stmtIter
                         = sailConnection.getStatements(
                         null, null, null, false, contexts);
+                if (null != profiler) {
+                    profiler.countGetStatements();
+                }
 
                 while (stmtIter.hasNext()) {
                     stmtIter.next();
@@ -445,7 +729,10 @@ public class SesameModelConnection implements ModelConnection {
 
     @Override
     public Object canonicalValue(final Value v) {
-        return model.specialValues.get(v);
+        Object special = model.specialValues.get(v);
+
+        // any value which is not special is interned, so that equal values are identical
+        return special == v ? valueInternCache.intern(v) : special;
     }
 
     @Override
@@ -470,15 +757,20 @@ public class SesameModelConnection implements ModelConnection {
     }
 
     @Override
-    public void setNamespace(final String prefix, final String ns, final boolean override)
+    public synchronized void setNamespace(final String prefix, final String ns, final boolean override)
             throws RippleException {
         ensureOpen();
 
+        if (model.readOnly) {
+            return;
+        }
+
         //logger.info( "### setting namespace: '" + prefix + "' to " + ns );
         try {
             //synchronized ( model )
             {
                 if (override || null == sailConnection.getNamespace(prefix)) {
+                    uncommittedSailChanges = true;
                     if (null == ns) {
                         sailConnection.removeNamespace(prefix);
                     } else {
@@ -513,10 +805,10 @@ public class SesameModelConnection implements ModelConnection {
                 return;
             }
 
-            Sink<Value> valueSink = val -> sink.accept(canonicalValue(val));
+            Sink<Value> valueSink = new CanonicalValueSink(sink);
 
             try {
-                sesameQuery.getValues(sailConnection, valueSink);
+                getValues(sesameQuery, valueSink);
             } catch (RippleException e) {
                 reset(true);
                 throw e;
@@ -524,21 +816,219 @@ public class SesameModelConnection implements ModelConnection {
         }
     }
 
-    @Override
-    public Source<Namespace> getNamespaces() throws RippleException {
+    public void query(final List<StatementPatternQuery> queries,
+                      final List<Sink> sinks,
+                      final boolean asynchronous) throws RippleException {
         ensureOpen();
 
-        Collector<Namespace> results = new Collector<>();
-        Source<Namespace> source;
+        if (asynchronous) {
+            taskSet.add(new BatchQueryTask(queries, sinks));
+            return;
+        }
+
+        // group the sinks of equivalent queries, so that each distinct query is evaluated once
+        Map<GetStatementsQuery, List<Sink>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            GetStatementsQuery sesameQuery;
+
+            try {
+                sesameQuery = new GetStatementsQuery(queries.get(i), this);
+            } catch (GetStatementsQuery.InvalidQueryException e) {
+                logger.warn("invalid query: " + e.getMessage(), e);
+                continue;
+            }
+
+            groups.computeIfAbsent(sesameQuery, q -> new ArrayList<>(1)).add(sinks.get(i));
+        }
+
+        // the subject lookups of each predicate are answered together, unless buffered writes are to be overlaid
+        boolean batched = null == writeBuffer || writeBuffer.isEmpty();
+        Map<IRI, List<GetStatementsQuery>> lookups = new LinkedHashMap<>();
 
         try {
-            source = new CloseableIterationSource<>(
-                    (CloseableIteration<Namespace, SailException>) sailConnection.getNamespaces());
+            for (Map.Entry<GetStatementsQuery, List<Sink>> e : groups.entrySet()) {
+                if (batched && e.getKey().isSubjectLookup()) {
+                    lookups.computeIfAbsent(e.getKey().getPredicate(), p -> new ArrayList<>()).add(e.getKey());
+                } else {
+                    getValues(e.getKey(), e.getValue());
+                }
+            }
+
+            for (List<GetStatementsQuery> l : lookups.values()) {
+                if (1 == l.size()) {
+                    getValues(l.get(0), groups.get(l.get(0)));
+                } else {
+                    getValues(l, groups);
+                }
+            }
+        } catch (RippleException e) {
+            reset(true);
+            throw e;
+        }
+    }
+
+    // the values of a query are passed along to each of the sinks of equivalent queries
+    private void getValues(final GetStatementsQuery query, final List<Sink> group) throws RippleException {
+        if (1 == group.size()) {
+            getValues(query, new CanonicalValueSink(group.get(0)));
+        } else {
+            SharedResults results = new SharedResults(group);
+            getValues(query, results);
+            results.flush();
+        }
+    }
+
+    // subject lookups of a single predicate are evaluated as one query, which binds each of their subjects in turn
+    private void getValues(final List<GetStatementsQuery> lookups,
+                           final Map<GetStatementsQuery, List<Sink>> groups) throws RippleException {
+        List<Sink<Value>> sinks = new ArrayList<>(lookups.size());
+        List<SharedResults> shared = new ArrayList<>();
+        for (GetStatementsQuery q : lookups) {
+            List<Sink> group = groups.get(q);
+            if (1 == group.size()) {
+                sinks.add(new CanonicalValueSink(group.get(0)));
+            } else {
+                SharedResults results = new SharedResults(group);
+                shared.add(results);
+                sinks.add(results);
+            }
+        }
+
+        if (!streamStatements || uncommittedSailChanges) {
+            List<Buffer<Value>> buffers = new ArrayList<>(sinks.size());
+            for (Sink<Value> sink : sinks) {
+                buffers.add(new Buffer<>(sink));
+            }
+
+            synchronized (this) {
+                GetStatementsQuery.streamValues(sailConnection, lookups, buffers, profiler);
+            }
+
+            for (Buffer<Value> buffer : buffers) {
+                buffer.flush();
+            }
+        } else {
+            SailConnection rc = acquireReadConnection();
+            boolean ok = false;
+            try {
+                GetStatementsQuery.streamValues(rc, lookups, sinks, profiler);
+                ok = true;
+            } finally {
+                releaseReadConnection(rc, ok);
+            }
+        }
+
+        for (SharedResults results : shared) {
+            results.flush();
+        }
+    }
+
+    // statements are streamed from a separate read connection, unless the Sail connection has uncommitted changes
+    // which the query must see
+    private void getValues(final GetStatementsQuery query, final Sink<Value> sink) throws RippleException {
+        if (!streamStatements || uncommittedSailChanges) {
+            // values are collected while the Sail connection is held, and passed along once it has been let go
+            Buffer<Value> buffer = new Buffer<>(sink);
+            synchronized (this) {
+                query.streamValues(withWrites(sailConnection), buffer);
+            }
+            buffer.flush();
+            return;
+        }
+
+        SailConnection rc = acquireReadConnection();
+        boolean ok = false;
+        try {
+            query.streamValues(withWrites(rc), sink);
+            ok = true;
+        } finally {
+            releaseReadConnection(rc, ok);
+        }
+    }
+
+    // each read takes place in a transaction of its own, as a Sail may write while it reads
+    // (LinkedDataSail, for instance, caches the documents it dereferences).
+    // The read connections of a read-only model, like its main connection, keep their transactions for good
+    private SailConnection acquireReadConnection() throws RippleException {
+        SailConnection rc;
+        synchronized (this) {
+            rc = idleReadConnections.poll();
+        }
+
+        try {
+            if (null == rc) {
+                rc = model.sail.getConnection();
+            }
+
+            if (!rc.isActive()) {
+                rc.begin();
+            }
+        } catch (SailException e) {
+            if (null != rc) {
+                closeReadConnection(rc);
+            }
+            throw new RippleException(e);
+        }
+
+        return rc;
+    }
+
+    // anything a Sail writes during a read, and does not commit itself, is discarded.
+    // Connections beyond the number which may be kept idle are closed
+    private void releaseReadConnection(final SailConnection rc, final boolean reusable)
+            throws RippleException {
+        boolean keep = reusable;
+        if (!model.readOnly) {
+            try {
+                if (rc.isOpen() && rc.isActive()) {
+                    rc.rollback();
+                }
+            } catch (SailException e) {
+                logger.warn("failed to roll back read connection", e);
+                keep = false;
+            }
+        }
+
+        synchronized (this) {
+            if (keep && !closed && idleReadConnections.size() < maxIdleReadConnections) {
+                idleReadConnections.push(rc);
+                return;
+            }
+        }
+
+        closeReadConnection(rc);
+    }
+
+    private void closeReadConnection(final SailConnection rc) throws RippleException {
+        try {
+            if (rc.isOpen()) {
+                if (rc.isActive()) {
+                    rc.rollback();
+                }
+                rc.close();
+            }
         } catch (SailException e) {
             throw new RippleException(e);
         }
+    }
 
-        source.writeTo(results);
+    @Override
+    public Source<Namespace> getNamespaces() throws RippleException {
+        ensureOpen();
+
+        Collector<Namespace> results = new Collector<>();
+        Source<Namespace> source;
+
+        synchronized (this) {
+            try {
+                source = new CloseableIterationSource<>(
+                        (CloseableIteration<Namespace, SailException>) sailConnection.getNamespaces());
+            } catch (SailException e) {
+                throw new RippleException(e);
+            }
+
+            source.writeTo(results);
+        }
 
         return results;
     }
@@ -552,46 +1042,122 @@ public class SesameModelConnection implements ModelConnection {
             throws RippleException {
         ensureOpen();
 
-        Value rdfSubj = (null == subj) ? null : subj;
-        Value rdfPred = (null == pred) ? null : pred;
-        Value rdfObj = (null == obj) ? null : obj;
+        if ((null == subj || subj instanceof Resource)
+                && (null == pred || pred instanceof IRI)) {
+            readStatements((Resource) subj, (IRI) pred, obj, new Resource[]{}, sink);
+        }
+    }
 
-        if ((null == rdfSubj || rdfSubj instanceof Resource)
-                && (null == rdfPred || rdfPred instanceof IRI)) {
-            // Note: we must collect results in a buffer before putting anything
-            //       into the sink, as inefficient as that is, because otherwise
+    private void readStatements(final Resource subj,
+                                final IRI pred,
+                                final Value obj,
+                                final Resource[] contexts,
+                                final Sink<Statement> sink) throws RippleException {
+        if (streamStatements && !uncommittedSailChanges) {
+            SailConnection rc = acquireReadConnection();
+            boolean ok = false;
+            try {
+                readStatements(rc, subj, pred, obj, contexts, sink);
+                ok = true;
+            } finally {
+                releaseReadConnection(rc, ok);
+            }
+        } else {
+            // Note: unless statements are read from a separate connection, we must collect results in a buffer
+            //       before putting anything into the sink, as inefficient as that is, because otherwise
             //       we might end up opening another RepositoryResult before
             //       the one below closes, which currently causes Sesame to
-            //       deadlock.  Even using a separate RepositoryConnection for
-            //       each RepositoryResult doesn't seem to help.
+            //       deadlock.
             Buffer<Statement> buffer = new Buffer<>(sink);
-            CloseableIteration<? extends Statement, SailException> stmtIter;
+            synchronized (this) {
+                readStatements(sailConnection, subj, pred, obj, contexts, buffer);
+            }
+            buffer.flush();
+        }
+    }
 
-            //TODO: use CloseableIterationSource
+    private void readStatements(final SailConnection sc,
+                                final Resource subj,
+                                final IRI pred,
+                                final Value obj,
+                                final Resource[] contexts,
+                                final Sink<Statement> results) throws RippleException {
+        CloseableIteration<? extends Statement, SailException> stmtIter;
 
+        //TODO: use CloseableIterationSource
+
+        try {
+            // Perform the query and collect results.
+            stmtIter = withWrites(sc).getStatements(subj, pred, obj, false, contexts);
+            if (null != profiler) {
+                profiler.countGetStatements();
+            }
+            //stmtIter.enableDuplicateFilter();
             try {
-                // Perform the query and collect results.
-                stmtIter = sailConnection.getStatements(
-                        (Resource) rdfSubj, (IRI) rdfPred, rdfObj, false);
-                //stmtIter.enableDuplicateFilter();
-                try {
-                    while (stmtIter.hasNext()) {
-                        Statement st = stmtIter.next();
-                        try {
-                            buffer.accept(st);
-                        } catch (RippleException e) {
-                            // Soft fail
-                            logger.warn("buffer failure", e);
-                        }
+                while (stmtIter.hasNext() && !Demand.isSatisfied(results)) {
+                    Statement st = stmtIter.next();
+                    try {
+                        results.accept(st);
+                    } catch (RippleException e) {
+                        // Soft fail
+                        logger.warn("buffer failure", e);
                     }
-                } finally {
-                    stmtIter.close();
                 }
-            } catch (SailException e) {
-                throw new RippleException(e);
+            } finally {
+                stmtIter.close();
             }
+        } catch (SailException e) {
+            throw new RippleException(e);
+        }
+    }
 
-            buffer.flush();
+    @Override
+    public boolean exists(final Value subj,
+                          final Value pred,
+                          final Value obj) throws RippleException {
+        ensureOpen();
+
+        if ((null != subj && !(subj instanceof Resource))
+                || (null != pred && !(pred instanceof IRI))) {
+            return false;
+        }
+
+        // only a single statement is read, so there is no need to buffer, even on the main connection
+        if (streamStatements && !uncommittedSailChanges) {
+            SailConnection rc = acquireReadConnection();
+            boolean ok = false;
+            try {
+                boolean b = exists(rc, (Resource) subj, (IRI) pred, obj);
+                ok = true;
+                return b;
+            } finally {
+                releaseReadConnection(rc, ok);
+            }
+        } else {
+            synchronized (this) {
+                return exists(sailConnection, (Resource) subj, (IRI) pred, obj);
+            }
+        }
+    }
+
+    private boolean exists(final SailConnection sc,
+                           final Resource subj,
+                           final IRI pred,
+                           final Value obj) throws RippleException {
+        try {
+            CloseableIteration<? extends Statement, SailException> stmtIter
+                    = withWrites(sc).getStatements(subj, pred, obj, false);
+            if (null != profiler) {
+                profiler.countGetStatements();
+            }
+
+            try {
+                return stmtIter.hasNext();
+            } finally {
+                stmtIter.close();
+            }
+        } catch (SailException e) {
+            throw new RippleException(e);
         }
     }
 
@@ -615,10 +1181,16 @@ public class SesameModelConnection implements ModelConnection {
 
         MapBindingSet bindings = new MapBindingSet();
 
-        try {
-            return sailConnection.evaluate(pq.getTupleExpr(), pq.getDataset(), bindings, useInference);
-        } catch (SailException e) {
-            throw new RippleException(e);
+        // SPARQL queries see buffered changes only once they have been written to the Sail connection.
+        // Note: the results are read from the Sail connection after the monitor has been let go
+        synchronized (this) {
+            flushWrites();
+
+            try {
+                return sailConnection.evaluate(pq.getTupleExpr(), pq.getDataset(), bindings, useInference);
+            } catch (SailException e) {
+                throw new RippleException(e);
+            }
         }
     }
 
@@ -627,18 +1199,26 @@ public class SesameModelConnection implements ModelConnection {
         ensureOpen();
 
         return sink -> {
-            try {
-                CloseableIteration<? extends Resource, SailException> iter
-                        = sailConnection.getContextIDs();
+            Buffer<Object> buffer = new Buffer<>(sink);
 
-                while (iter.hasNext()) {
-                    sink.accept(iter.next());
-                }
+            synchronized (this) {
+                flushWrites();
 
-                iter.close();
-            } catch (SailException e) {
-                throw new RippleException(e);
+                try {
+                    CloseableIteration<? extends Resource, SailException> iter
+                            = sailConnection.getContextIDs();
+
+                    while (iter.hasNext()) {
+                        buffer.accept(iter.next());
+                    }
+
+                    iter.close();
+                } catch (SailException e) {
+                    throw new RippleException(e);
+                }
             }
+
+            buffer.flush();
         };
     }
 
@@ -752,17 +1332,161 @@ public class SesameModelConnection implements ModelConnection {
         }
     }
 
+    private class OverlaySailConnection extends SailConnectionWrapper {
+        public OverlaySailConnection(final SailConnection sc) {
+            super(sc);
+        }
+
+        @Override
+        public CloseableIteration<? extends Statement, SailException> getStatements(final Resource subj,
+                                                                                 final IRI pred,
+                                                                                 final Value obj,
+                                                                                 final boolean includeInferred,
+                                                                                 final Resource... contexts)
+                throws SailException {
+            return writeBuffer.overlay(
+                    super.getStatements(subj, pred, obj, includeInferred, contexts), subj, pred, obj, contexts);
+        }
+    }
+
+    private class CanonicalValueSink implements Sink<Value>, Demand {
+        private final Sink<Object> sink;
+
+        // query sinks are untyped in the ModelConnection API, and accept any value
+        @SuppressWarnings("unchecked")
+        public CanonicalValueSink(final Sink<?> sink) {
+            this.sink = (Sink<Object>) sink;
+        }
+
+        public void accept(final Value value) throws RippleException {
+            sink.accept(canonicalValue(value));
+        }
+
+        public boolean isSatisfied() {
+            return Demand.isSatisfied(sink);
+        }
+    }
+
+    /**
+     * Collects the results of a query which is shared by a number of sinks, as long as any of them wants results
+     */
+    private class SharedResults implements Sink<Value>, Demand {
+        private final List<Sink> sinks;
+        private final List<Object> values = new ArrayList<>();
+
+        public SharedResults(final List<Sink> sinks) {
+            this.sinks = sinks;
+        }
+
+        public void accept(final Value value) throws RippleException {
+            values.add(canonicalValue(value));
+        }
+
+        public boolean isSatisfied() {
+            for (Sink sink : sinks) {
+                if (!Demand.isSatisfied(sink)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        public void flush() throws RippleException {
+            for (Sink sink : sinks) {
+                for (Object value : values) {
+                    if (Demand.isSatisfied(sink)) {
+                        break;
+                    }
+
+                    sink.accept(value);
+                }
+            }
+        }
+    }
+
+    private class BatchQueryTask extends Task {
+        private final List<StatementPatternQuery> queries;
+        private final List<Sink> sinks;
+
+        // the mapping, if any, to which the work of this task is charged
+        private final Profiler.Entry caller = null == profiler ? null : profiler.current();
+
+        private boolean stopped = false;
+
+        public BatchQueryTask(final List<StatementPatternQuery> queries, final List<Sink> sinks) {
+            this.queries = queries;
+            this.sinks = sinks;
+        }
+
+        public void executeProtected() throws RippleException {
+            List<StatementPatternQuery> wanted = new ArrayList<>();
+            List<Sink> wantedSinks = new ArrayList<>();
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+
+                for (int i = 0; i < queries.size(); i++) {
+                    if (!Demand.isSatisfied(sinks.get(i))) {
+                        wanted.add(queries.get(i));
+                        wantedSinks.add(sinks.get(i));
+                    }
+                }
+            }
+
+            if (wanted.isEmpty()) {
+                return;
+            }
+
+            Profiler p = profiler;
+            if (null == p) {
+                query(wanted, wantedSinks, false);
+            } else {
+                Profiler.Entry outer = p.enter(caller);
+                try {
+                    query(wanted, wantedSinks, false);
+                } finally {
+                    p.exit(outer);
+                }
+            }
+        }
+
+        protected synchronized void stopProtected() {
+            stopped = true;
+        }
+    }
+
     private class QueryTask<T> extends Task {
         private final StatementPatternQuery query;
         private Sink<T> sink;
 
+        // the mapping, if any, to which the work of this task is charged
+        private final Profiler.Entry caller = null == profiler ? null : profiler.current();
+
         public QueryTask(final StatementPatternQuery query, final Sink<T> sink) {
             this.query = query;
             this.sink = sink;
         }
 
         public void executeProtected() throws RippleException {
-            query(query, sink, false);
+            // a task whose results are no longer wanted need not query the store at all
+            // (which, for a Linked Data store, may involve dereferencing remote documents)
+            if (Demand.isSatisfied(sink)) {
+                return;
+            }
+
+            Profiler p = profiler;
+            if (null == p) {
+                query(query, sink, false);
+            } else {
+                Profiler.Entry outer = p.enter(caller);
+                try {
+                    query(query, sink, false);
+                } finally {
+                    p.exit(outer);
+                }
+            }
 
             /*
             ModelConnection mc = model.getConnection();
@@ -0,0 +1,242 @@
+package net.fortytwo.ripple.model.impl.sesame;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.FilterIteration;
+import info.aduna.iteration.UnionIteration;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The statements added to and removed from a model connection which have not yet been written to its Sail.
+ * Statements are identified by their subject, predicate, object and context alike,
+ * and a statement which is added after being removed (or vice versa) is simply added (or removed).
+ * Reads see the buffered changes through an overlay of the statements read from the Sail.
+ * Buffers are safe for concurrent use, so that asynchronous queries may read while evaluation writes.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class WriteBuffer {
+    private final ValueFactory valueFactory;
+
+    private final Map<Quad, Statement> added = new LinkedHashMap<>();
+    private final Map<Quad, Statement> removed = new LinkedHashMap<>();
+
+    // the added statements by subject and by object, for the sake of overlays of the usual query patterns
+    private final Map<Value, Set<Quad>> addedBySubject = new HashMap<>();
+    private final Map<Value, Set<Quad>> addedByObject = new HashMap<>();
+
+    public WriteBuffer(final ValueFactory valueFactory) {
+        this.valueFactory = valueFactory;
+    }
+
+    /**
+     * @param subj    the subject of the statement to add
+     * @param pred    the predicate of the statement to add
+     * @param obj     the object of the statement to add
+     * @param context the context of the statement to add, or null for the default context
+     */
+    public synchronized void add(final Resource subj, final IRI pred, final Value obj, final Resource context) {
+        Quad q = new Quad(subj, pred, obj, context);
+        removed.remove(q);
+
+        if (null == added.put(q, null == context
+                ? valueFactory.createStatement(subj, pred, obj)
+                : valueFactory.createStatement(subj, pred, obj, context))) {
+            addedBySubject.computeIfAbsent(subj, s -> new LinkedHashSet<>()).add(q);
+            addedByObject.computeIfAbsent(obj, o -> new LinkedHashSet<>()).add(q);
+        }
+    }
+
+    /**
+     * @param st a statement, in a specific context, to remove
+     */
+    public synchronized void remove(final Statement st) {
+        Quad q = new Quad(st);
+        if (null != added.remove(q)) {
+            unindex(addedBySubject, q.subj, q);
+            unindex(addedByObject, q.obj, q);
+        }
+
+        removed.put(q, st);
+    }
+
+    /**
+     * @return the number of buffered changes
+     */
+    public synchronized int size() {
+        return added.size() + removed.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Writes all buffered changes to a Sail connection, then discards them
+     *
+     * @param sc the connection to write to
+     * @throws SailException if the changes cannot be written
+     */
+    public synchronized void flush(final SailConnection sc) throws SailException {
+        for (Statement st : removed.values()) {
+            if (null == st.getContext()) {
+                sc.removeStatements(st.getSubject(), st.getPredicate(), st.getObject(), (Resource) null);
+            } else {
+                sc.removeStatements(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+            }
+        }
+
+        for (Statement st : added.values()) {
+            if (null == st.getContext()) {
+                sc.addStatement(st.getSubject(), st.getPredicate(), st.getObject());
+            } else {
+                sc.addStatement(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+            }
+        }
+
+        clear();
+    }
+
+    /**
+     * Discards all buffered changes
+     */
+    public synchronized void clear() {
+        added.clear();
+        removed.clear();
+        addedBySubject.clear();
+        addedByObject.clear();
+    }
+
+    /**
+     * Merges the buffered changes with statements read from a Sail.
+     * Statements read from the Sail which have since been removed are left out, and any added statements which
+     * match the pattern follow those read from the Sail.  The overlay reflects the changes buffered when it is
+     * created, so that a change made while the statements are being read neither drops nor duplicates any of them.
+     *
+     * @param base     the statements read from the Sail
+     * @param subj     the subject of the pattern, or null as a wildcard
+     * @param pred     the predicate of the pattern, or null as a wildcard
+     * @param obj      the object of the pattern, or null as a wildcard
+     * @param contexts the contexts of the pattern, as in <code>SailConnection.getStatements</code>
+     * @return the statements which currently match the pattern
+     */
+    public synchronized CloseableIteration<Statement, SailException> overlay(
+            final CloseableIteration<? extends Statement, SailException> base,
+            final Resource subj,
+            final IRI pred,
+            final Value obj,
+            final Resource... contexts) {
+        Collection<Quad> candidates = null != subj
+                ? addedBySubject.getOrDefault(subj, new LinkedHashSet<>())
+                : null != obj
+                ? addedByObject.getOrDefault(obj, new LinkedHashSet<>())
+                : added.keySet();
+
+        List<Statement> matches = new ArrayList<>();
+        Set<Quad> changed = new HashSet<>();
+        for (Quad q : candidates) {
+            if (q.matches(subj, pred, obj, contexts)) {
+                matches.add(added.get(q));
+                changed.add(q);
+            }
+        }
+        for (Quad q : removed.keySet()) {
+            if (q.matches(subj, pred, obj, contexts)) {
+                changed.add(q);
+            }
+        }
+
+        // an added statement which is already in the Sail is produced only once
+        CloseableIteration<Statement, SailException> unchanged = new FilterIteration<Statement, SailException>(base) {
+            @Override
+            protected boolean accept(final Statement st) {
+                return !changed.contains(new Quad(st));
+            }
+        };
+
+        return new UnionIteration<>(unchanged, new CloseableIteratorIteration<>(matches.iterator()));
+    }
+
+    private static void unindex(final Map<Value, Set<Quad>> index, final Value key, final Quad q) {
+        Set<Quad> quads = index.get(key);
+        if (null != quads) {
+            quads.remove(q);
+            if (quads.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static class Quad {
+        private final Resource subj;
+        private final IRI pred;
+        private final Value obj;
+        private final Resource context;
+
+        public Quad(final Resource subj, final IRI pred, final Value obj, final Resource context) {
+            this.subj = subj;
+            this.pred = pred;
+            this.obj = obj;
+            this.context = context;
+        }
+
+        public Quad(final Statement st) {
+            this(st.getSubject(), st.getPredicate(), st.getObject(), st.getContext());
+        }
+
+        public boolean matches(final Resource s, final IRI p, final Value o, final Resource... contexts) {
+            if ((null != s && !s.equals(subj))
+                    || (null != p && !p.equals(pred))
+                    || (null != o && !o.equals(obj))) {
+                return false;
+            }
+
+            if (0 == contexts.length) {
+                return true;
+            }
+
+            for (Resource c : contexts) {
+                if (Objects.equals(c, context)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (other instanceof Quad) {
+                Quad q = (Quad) other;
+                return subj.equals(q.subj)
+                        && pred.equals(q.pred)
+                        && obj.equals(q.obj)
+                        && Objects.equals(context, q.context);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(subj, pred, obj, context);
+        }
+    }
+}
@@ -39,4 +39,12 @@ public class OptionalQuantifier implements StackMapping {
     public StackMapping getInverse() throws RippleException {
         return new NullStackMapping();
     }
+
+    public boolean equals(final Object other) {
+        return other instanceof OptionalQuantifier && ((OptionalQuantifier) other).innerOperator.equals(innerOperator);
+    }
+
+    public int hashCode() {
+        return 1218806633 + innerOperator.hashCode();
+    }
 }
@@ -30,6 +30,11 @@ public class PlusQuantifier implements StackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
+        if (mc.getModel().usesFixpointQuantifiers()) {
+            TransitiveClosure.apply(innerOperator, arg, false, solutions, mc);
+            return;
+        }
+
         solutions.accept(arg
                 .push(innerOperator)
                 .push(new Operator(new StarQuantifier(innerOperator))));
@@ -38,5 +43,12 @@ public class PlusQuantifier implements StackMapping {
     public StackMapping getInverse() throws RippleException {
         return new NullStackMapping();
     }
-}
 
+    public boolean equals(final Object other) {
+        return other instanceof PlusQuantifier && ((PlusQuantifier) other).innerOperator.equals(innerOperator);
+    }
+
+    public int hashCode() {
+        return 726413553 + innerOperator.hashCode();
+    }
+}
@@ -30,6 +30,11 @@ public class StarQuantifier implements StackMapping {
     public void apply(final RippleList arg,
                       final Sink<RippleList> solutions,
                       final ModelConnection mc) throws RippleException {
+        if (mc.getModel().usesFixpointQuantifiers()) {
+            TransitiveClosure.apply(innerOperator, arg, true, solutions, mc);
+            return;
+        }
+
         solutions.accept(arg);
 
         solutions.accept(arg
@@ -40,4 +45,12 @@ public class StarQuantifier implements StackMapping {
     public StackMapping getInverse() throws RippleException {
         return new NullStackMapping();
     }
+
+    public boolean equals(final Object other) {
+        return other instanceof StarQuantifier && ((StarQuantifier) other).innerOperator.equals(innerOperator);
+    }
+
+    public int hashCode() {
+        return 1063447021 + innerOperator.hashCode();
+    }
 }
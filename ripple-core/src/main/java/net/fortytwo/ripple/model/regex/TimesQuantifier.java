@@ -54,4 +54,17 @@ public class TimesQuantifier implements StackMapping {
     public StackMapping getInverse() throws RippleException {
         return new NullStackMapping();
     }
+
+    public boolean equals(final Object other) {
+        if (other instanceof TimesQuantifier) {
+            TimesQuantifier q = (TimesQuantifier) other;
+            return q.min == min && q.max == max && q.innerOperator.equals(innerOperator);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return 402866329 + 31 * (31 * min + max) + innerOperator.hashCode();
+    }
 }
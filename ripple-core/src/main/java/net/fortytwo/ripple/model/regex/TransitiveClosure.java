@@ -0,0 +1,119 @@
+package net.fortytwo.ripple.model.regex;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Demand;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.NullStackMapping;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.query.IterativeStackEvaluator;
+import net.fortytwo.ripple.query.StackEvaluator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A semi-naive fixpoint evaluation of the repeated application of an operator, as in the <code>*</code> and
+ * <code>+</code> quantifiers.
+ * Each round applies the operator only to the stacks first reached in the previous round (the "frontier"),
+ * and a stack which has already been reached is neither passed along nor expanded again.
+ * Evaluation therefore terminates over cyclic graphs, and each distinct solution is produced exactly once.
+ * <p>
+ * Rounds are evaluated lazily: along with the new solutions of each round, this mapping produces a stack
+ * which evaluates the next round, so that a consumer which is satisfied early (for instance, by
+ * <code>limit</code>) need not wait for the closure to be complete.
+ * <p>
+ * Note that this changes the solutions of a quantifier, and not only its cost: where the inner operator reaches
+ * the same stack along more than one path, a quantifier which re-applies itself produces that stack once per
+ * path, whereas this mapping produces it only once.  It is used only in models which enable
+ * <code>net.fortytwo.ripple.query.fixpointQuantifiers</code>.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class TransitiveClosure implements StackMapping {
+    private final Operator operator;
+    private final Set<RippleList> visited;
+    private final List<RippleList> frontier;
+
+    private TransitiveClosure(final Operator operator,
+                              final Set<RippleList> visited,
+                              final List<RippleList> frontier) {
+        this.operator = operator;
+        this.visited = visited;
+        this.frontier = frontier;
+    }
+
+    /**
+     * Finds the distinct stacks reachable from a stack by applying an operator one or more times
+     *
+     * @param operator  the operator to apply
+     * @param arg       the stack to which the operator is first applied
+     * @param reflexive whether the argument itself is a solution (as for <code>*</code>, but not <code>+</code>)
+     * @param solutions a handler for the solutions
+     * @param mc        a connection to the model
+     * @throws RippleException if evaluation fails
+     */
+    static void apply(final Operator operator,
+                      final RippleList arg,
+                      final boolean reflexive,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        Set<RippleList> visited = new HashSet<>();
+        List<RippleList> frontier = new ArrayList<>();
+        frontier.add(arg);
+
+        if (reflexive) {
+            visited.add(arg);
+            solutions.accept(arg);
+        }
+
+        new TransitiveClosure(operator, visited, frontier).apply(arg, solutions, mc);
+    }
+
+    public int arity() {
+        return 0;
+    }
+
+    public boolean isTransparent() {
+        return operator.getMapping().isTransparent();
+    }
+
+    // evaluates a single round; the argument is only a place to leave the next round
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        List<RippleList> next = new ArrayList<>();
+
+        // as in Count, queries are answered synchronously (in this thread only) so that each round is complete
+        StackEvaluator e = new IterativeStackEvaluator(true);
+
+        for (RippleList stack : frontier) {
+            Collector<RippleList> results = new Collector<>();
+            e.apply(stack.push(operator), results, mc);
+
+            for (RippleList r : results) {
+                if (visited.add(r)) {
+                    if (Demand.isSatisfied(solutions)) {
+                        return;
+                    }
+
+                    solutions.accept(r);
+                    next.add(r);
+                }
+            }
+        }
+
+        if (!next.isEmpty()) {
+            solutions.accept(arg.push(new Operator(new TransitiveClosure(operator, visited, next))));
+        }
+    }
+
+    public StackMapping getInverse() throws RippleException {
+        return new NullStackMapping();
+    }
+}
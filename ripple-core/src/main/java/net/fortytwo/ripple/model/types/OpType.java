@@ -4,6 +4,7 @@ import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.io.RipplePrintStream;
+import net.fortytwo.ripple.model.CompiledProgram;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.Op;
 import net.fortytwo.ripple.model.Operator;
@@ -100,7 +101,9 @@ public class OpType extends SimpleType<Op> {
 
     @Override
     public StackMapping getMapping(Op instance) {
-        return mapping;
+        return instance instanceof CompiledProgram.ResolvedOp
+                ? ((CompiledProgram.ResolvedOp) instance).getMapping()
+                : mapping;
     }
 
     @Override
@@ -0,0 +1,185 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.Lexicon;
+import net.fortytwo.ripple.model.LexiconUpdater;
+import net.fortytwo.ripple.model.Model;
+import net.fortytwo.ripple.model.ModelConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of connections to a model, each of which keeps a shared lexicon up to date.
+ * At most a fixed number of connections are in use at any one time; a request for a connection beyond that
+ * number waits until another is released.
+ * Released connections are kept for reuse, and are closed once they have been idle for longer than a given timeout.
+ * Idle connections are checked whenever a connection is acquired or released.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+class ConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final Model model;
+    private final Lexicon lexicon;
+    private final Semaphore permits;
+    private final long idleTimeout;
+
+    // the most recently released connection comes first
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+
+    private boolean closed = false;
+
+    /**
+     * @param model       the model to connect to
+     * @param lexicon     the lexicon to be updated by each connection
+     * @param size        the maximum number of connections in use at the same time
+     * @param idleTimeout the time, in milliseconds, after which an idle connection is closed
+     */
+    public ConnectionPool(final Model model,
+                          final Lexicon lexicon,
+                          final int size,
+                          final long idleTimeout) {
+        if (size < 1) {
+            throw new IllegalArgumentException("pool size must be positive: " + size);
+        }
+
+        this.model = model;
+        this.lexicon = lexicon;
+        this.idleTimeout = idleTimeout;
+        permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Takes a connection from the pool, waiting for one to be released if all are in use
+     *
+     * @return a connection, to be returned to the pool with <code>release</code>
+     * @throws RippleException if the pool has been closed, or if a new connection cannot be created
+     */
+    public ModelConnection acquire() throws RippleException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RippleException(e);
+        }
+
+        boolean ok = false;
+        try {
+            IdleConnection idle;
+            List<IdleConnection> evicted;
+            synchronized (this) {
+                if (closed) {
+                    throw new RippleException("connection pool is closed");
+                }
+
+                evicted = evictIdleConnections();
+                idle = idleConnections.pollFirst();
+            }
+
+            closeAll(evicted);
+
+            ModelConnection mc = null == idle
+                    ? model.createConnection(new LexiconUpdater(lexicon))
+                    : idle.connection;
+            ok = true;
+            return mc;
+        } finally {
+            if (!ok) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Returns a connection to the pool
+     *
+     * @param mc       a connection previously acquired from this pool
+     * @param reusable whether the connection is in a fit state to be reused.  If not, it is closed
+     */
+    public void release(final ModelConnection mc,
+                        final boolean reusable) {
+        try {
+            boolean keep;
+            List<IdleConnection> evicted;
+            synchronized (this) {
+                evicted = evictIdleConnections();
+                keep = reusable && !closed;
+                if (keep) {
+                    idleConnections.addFirst(new IdleConnection(mc, System.currentTimeMillis()));
+                }
+            }
+
+            if (!keep) {
+                close(mc);
+            }
+
+            closeAll(evicted);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the number of connections which are currently idle
+     */
+    public synchronized int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Closes all idle connections.  Connections which are in use are closed as they are released.
+     */
+    public void close() {
+        List<IdleConnection> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+        }
+
+        closeAll(toClose);
+    }
+
+    // to be called while holding the lock of the pool
+    private List<IdleConnection> evictIdleConnections() {
+        List<IdleConnection> evicted = new ArrayList<>();
+        long cutoff = System.currentTimeMillis() - idleTimeout;
+
+        while (!idleConnections.isEmpty() && idleConnections.peekLast().releasedAt < cutoff) {
+            evicted.add(idleConnections.pollLast());
+        }
+
+        return evicted;
+    }
+
+    private void closeAll(final List<IdleConnection> connections) {
+        for (IdleConnection c : connections) {
+            close(c.connection);
+        }
+    }
+
+    private void close(final ModelConnection mc) {
+        try {
+            mc.close();
+        } catch (RippleException e) {
+            logger.warn("failed to close pooled connection", e);
+        }
+    }
+
+    private static class IdleConnection {
+        private final ModelConnection connection;
+        private final long releasedAt;
+
+        public IdleConnection(final ModelConnection connection, final long releasedAt) {
+            this.connection = connection;
+            this.releasedAt = releasedAt;
+        }
+    }
+}
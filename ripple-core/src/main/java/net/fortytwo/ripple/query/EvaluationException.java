@@ -0,0 +1,20 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.ripple.RippleException;
+
+/**
+ * An unchecked wrapper for a <code>RippleException</code> thrown while evaluating a program
+ * in a context which does not permit checked exceptions, such as a <code>java.util.stream.Stream</code>.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class EvaluationException extends RuntimeException {
+    public EvaluationException(final RippleException cause) {
+        super(cause);
+    }
+
+    @Override
+    public RippleException getCause() {
+        return (RippleException) super.getCause();
+    }
+}
@@ -0,0 +1,377 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.flow.Demand;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.Closure;
+import net.fortytwo.ripple.model.CompiledProgram;
+import net.fortytwo.ripple.model.MemoTable;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RDFPredicateMapping;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An evaluator with the same lazy, depth-first reduction strategy as <code>LazyStackEvaluator</code>,
+ * but which keeps pending reductions on a heap-allocated work stack rather than on the Java call stack.
+ * Each pending reduction carries a chain of "frames": the mappings still waiting for their topmost argument
+ * to be reduced.  The depth of a program therefore no longer determines the depth of the Java stack.
+ * <p>
+ * Solutions which a mapping produces asynchronously (i.e. in another thread, or after the mapping has returned)
+ * are reduced in the thread which produces them, as they are in <code>LazyStackEvaluator</code>.
+ * <p>
+ * A waiting mapping which is also a <code>Demand</code> (such as the filter produced by <code>limit</code>)
+ * may signal that it wants no further arguments, in which case any pending reductions which would only produce
+ * such arguments are abandoned.  Likewise, evaluation stops early if the downstream sink is satisfied,
+ * and mappings which produce solutions may check the demand of the sink they are given.
+ * <p>
+ * Where the pending reductions after an application of an RDF predicate come, one after another, to applications
+ * of the same predicate (as the solutions of a mapping often do), their statement lookups are made at once,
+ * up to <code>Ripple.PREDICATE_BATCH_SIZE</code> at a time.
+ * <p>
+ * A synchronous evaluator answers the queries of the mappings it applies in the calling thread, whatever the global
+ * setting of <code>Ripple.asynchronousQueries</code>, so that all solutions have been produced when
+ * <code>apply</code> returns.  Other threads are not affected.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class IterativeStackEvaluator extends StackEvaluator {
+
+    // the number of synchronous solutions of a nullary application which are held before being reduced
+    private static final int MAX_BUFFERED_SOLUTIONS = 1000;
+
+    // the number of reductions which a thread may nest, one inside the application of another, to reduce full buffers
+    private static final int MAX_NESTED_REDUCTIONS = 32;
+
+    private final boolean synchronous;
+
+    private volatile boolean stopped = true;
+
+    // the number of applications of an RDF predicate whose statement lookups may be made at once
+    private volatile int batchSize;
+
+    public IterativeStackEvaluator() {
+        this(false);
+    }
+
+    /**
+     * @param synchronous whether queries are to be answered synchronously for the duration of each application
+     */
+    public IterativeStackEvaluator(final boolean synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        if (arg.isNil()) {
+            return;
+        }
+
+        stopped = false;
+        batchSize = Ripple.getConfiguration().getInt(Ripple.PREDICATE_BATCH_SIZE, 0);
+
+        if (synchronous) {
+            boolean previous = Ripple.forceSynchronousQueries(true);
+            try {
+                new Reduction(solutions, mc, 0).run(arg, null);
+            } finally {
+                Ripple.forceSynchronousQueries(previous);
+            }
+        } else {
+            new Reduction(solutions, mc, 0).run(arg, null);
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Finds the mapping, if any, of a stack item.  Operators, by far the most common active items in a program,
+     * and the pre-resolved <code>op</code>s of compiled programs
+     * are recognized without a type lookup.
+     */
+    static StackMapping toMapping(final Object item, final ModelConnection mc) {
+        if (item instanceof Operator) {
+            return ((Operator) item).getMapping();
+        } else if (item instanceof CompiledProgram.ResolvedOp) {
+            return ((CompiledProgram.ResolvedOp) item).getMapping();
+        } else {
+            return mc.toMapping(item);
+        }
+    }
+
+    /**
+     * A mapping waiting for its topmost argument, linked to the frames below it
+     */
+    static class Frame {
+        final StackMapping mapping;
+        final Frame next;
+
+        // the nearest frame, at or below this one, whose mapping signals its demand
+        final Frame demand;
+
+        Frame(final StackMapping mapping, final Frame next) {
+            this.mapping = mapping;
+            this.next = next;
+
+            demand = mapping instanceof Demand
+                    ? this
+                    : null == next ? null : next.demand;
+        }
+
+        /**
+         * @param frames a chain of frames, possibly empty
+         * @return whether any mapping in the chain wants no further arguments,
+         * in which case a stack waiting on the chain need not be reduced
+         */
+        static boolean isSatisfied(final Frame frames) {
+            Frame f = null == frames ? null : frames.demand;
+            while (null != f) {
+                if (((Demand) f.mapping).isSatisfied()) {
+                    return true;
+                }
+
+                f = null == f.next ? null : f.next.demand;
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * A stack awaiting reduction, together with the mappings waiting for its result
+     */
+    static class Pending {
+        final RippleList stack;
+        final Frame frames;
+
+        Pending(final RippleList stack, final Frame frames) {
+            this.stack = stack;
+            this.frames = frames;
+        }
+    }
+
+    private class Reduction {
+        private final Sink<RippleList> solutions;
+        private final ModelConnection mc;
+        private final Deque<Pending> workStack = new ArrayDeque<>();
+        private final Thread thread = Thread.currentThread();
+
+        // the number of reductions within whose mapping applications this one runs, in the same thread
+        private final int depth;
+
+        public Reduction(final Sink<RippleList> solutions,
+                         final ModelConnection mc,
+                         final int depth) {
+            this.solutions = solutions;
+            this.mc = mc;
+            this.depth = depth;
+        }
+
+        public void run(final RippleList stack, final Frame frames) throws RippleException {
+            workStack.push(new Pending(stack, frames));
+
+            while (!workStack.isEmpty() && !stopped && !Demand.isSatisfied(solutions)) {
+                Pending p = workStack.pop();
+
+                if (!Frame.isSatisfied(p.frames)) {
+                    reduce(p);
+                }
+            }
+
+            workStack.clear();
+        }
+
+        private void reduce(final Pending pending) throws RippleException {
+            Pending p = advance(pending);
+            if (null == p) {
+                return;
+            }
+
+            StackMapping f = toMapping(p.stack.getFirst(), mc);
+
+            if (null == f) {
+                solutions.accept(p.stack);
+            } else if (isBatchable(f)) {
+                applyBatch(p, (Closure) f);
+            } else {
+                ResultSink results = new ResultSink(p.frames);
+                MemoTable.apply(f, p.stack.getRest(), results, mc);
+                results.flush();
+            }
+        }
+
+        /**
+         * Reduces a stack, without applying anything, as far as either a solution (with no frames)
+         * or a nullary application (the mapping of the topmost item)
+         *
+         * @return the reduced stack and its frames, or null if the stack reduces to nothing
+         */
+        private Pending advance(final Pending pending) {
+            RippleList stack = pending.stack;
+            Frame frames = pending.frames;
+
+            while (!stack.isNil()) {
+                Object first = stack.getFirst();
+                StackMapping f = toMapping(first, mc);
+
+                // A passive item is either a solution or the argument of the innermost waiting mapping.
+                if (null == f) {
+                    if (null == frames) {
+                        return new Pending(stack, null);
+                    }
+
+                    Closure c = new Closure(frames.mapping, first);
+                    stack = stack.getRest().push(new Operator(c));
+                    frames = frames.next;
+                }
+
+                // Nullary functions don't need their argument stacks reduced.
+                else if (0 == f.arity()) {
+                    return new Pending(stack, frames);
+                }
+
+                // Functions with positive arity wait for the rest of the stack to be reduced.
+                // We simply ignore stacks which can't be reduced to something with a passive item on top.
+                else {
+                    stack = stack.getRest();
+                    frames = new Frame(f, frames);
+                }
+            }
+
+            return null;
+        }
+
+        // as in StackSpliterator, applications are batched only if they would not otherwise be memoized or profiled
+        private boolean isBatchable(final StackMapping f) {
+            return batchSize > 1
+                    && f instanceof Closure
+                    && ((Closure) f).getInnerMapping() instanceof RDFPredicateMapping
+                    && null == mc.getModel().getMemoTable()
+                    && null == mc.getProfiler();
+        }
+
+        /**
+         * Applies an RDF predicate together with the applications of the same predicate which the pending
+         * reductions after it come to, for as long as they come to nothing else, so that all of their statement
+         * lookups are made at once.  Solutions keep their depth-first order.
+         */
+        private void applyBatch(final Pending first, final Closure c) throws RippleException {
+            RDFPredicateMapping predicate = (RDFPredicateMapping) c.getInnerMapping();
+            List<Pending> batch = new ArrayList<>();
+            batch.add(first);
+
+            while (batch.size() < batchSize && !workStack.isEmpty()) {
+                Pending next = workStack.pop();
+                if (Frame.isSatisfied(next.frames)) {
+                    continue;
+                }
+
+                Pending p = advance(next);
+                if (null == p) {
+                    continue;
+                }
+
+                StackMapping f = toMapping(p.stack.getFirst(), mc);
+                if (null == f || !isBatchable(f) || !predicate.equals(((Closure) f).getInnerMapping())) {
+                    // keep the reduction done so far
+                    workStack.push(p);
+                    break;
+                }
+
+                batch.add(p);
+            }
+
+            List<RippleList> args = new ArrayList<>(batch.size());
+            List<Sink<RippleList>> sinks = new ArrayList<>(batch.size());
+            List<ResultSink> results = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                Closure closure = (Closure) toMapping(p.stack.getFirst(), mc);
+                ResultSink r = new ResultSink(p.frames);
+                args.add(p.stack.getRest().push(closure.getArgument()));
+                sinks.add(r);
+                results.add(r);
+            }
+
+            if (1 == batch.size()) {
+                MemoTable.apply(c, first.stack.getRest(), results.get(0), mc);
+            } else {
+                predicate.applyAll(args, sinks, mc);
+            }
+
+            // the solutions of the first application are to be reduced first
+            for (int i = results.size() - 1; i >= 0; i--) {
+                results.get(i).flush();
+            }
+        }
+
+        /**
+         * Receives the solutions of a single nullary application.  Solutions received synchronously are pushed
+         * onto the work stack, in reverse order so that they are reduced in the order they were produced.
+         * So that a mapping with many solutions does not hold all of them in memory at once,
+         * a full buffer is instead reduced on the spot, in order, before the mapping produces any more.
+         * Each such reduction runs inside the application of the mapping, on the Java stack, so reductions are
+         * only nested to a fixed depth; beyond it, solutions are held until the mapping returns,
+         * trading memory for the Java stack as evaluation without a buffer limit would.
+         */
+        private class ResultSink implements Sink<RippleList>, Demand {
+            private final Frame frames;
+            private List<RippleList> buffer = new ArrayList<>();
+
+            public ResultSink(final Frame frames) {
+                this.frames = frames;
+            }
+
+            public void accept(final RippleList stack) throws RippleException {
+                if (isSatisfied()) {
+                    return;
+                }
+
+                if (Thread.currentThread() == thread && null != buffer) {
+                    buffer.add(stack);
+                    if (buffer.size() >= MAX_BUFFERED_SOLUTIONS && depth < MAX_NESTED_REDUCTIONS) {
+                        reduceBuffered();
+                    }
+                } else {
+                    // a solution from another thread is reduced on that thread's stack, which this one does not nest
+                    new Reduction(solutions, mc, 0).run(stack, frames);
+                }
+            }
+
+            private void reduceBuffered() throws RippleException {
+                List<RippleList> full = buffer;
+                buffer = new ArrayList<>();
+
+                Reduction nested = new Reduction(solutions, mc, depth + 1);
+                for (RippleList stack : full) {
+                    if (isSatisfied()) {
+                        break;
+                    }
+
+                    nested.run(stack, frames);
+                }
+            }
+
+            public void flush() {
+                for (int i = buffer.size() - 1; i >= 0; i--) {
+                    workStack.push(new Pending(buffer.get(i), frames));
+                }
+
+                buffer = null;
+            }
+
+            public boolean isSatisfied() {
+                return stopped || Frame.isSatisfied(frames) || Demand.isSatisfied(solutions);
+            }
+        }
+    }
+}
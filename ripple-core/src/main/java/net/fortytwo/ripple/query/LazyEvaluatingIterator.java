@@ -1,21 +1,19 @@
 package net.fortytwo.ripple.query;
 
 import info.aduna.iteration.CloseableIteration;
-import net.fortytwo.flow.Collector;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.RippleException;
-import net.fortytwo.ripple.model.Closure;
 import net.fortytwo.ripple.model.ModelConnection;
-import net.fortytwo.ripple.model.Operator;
 import net.fortytwo.ripple.model.RippleList;
-import net.fortytwo.ripple.model.StackMapping;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
 
 /**
  * A "pull-based" program evaluator which uses Ripple's lazy evaluation strategy but generates solutions
  * incrementally based on calls to next(), rather than pushing all solutions to a stream.
+ * This is a thin wrapper for a breadth-first <code>StackSpliterator</code>;
+ * see also <code>QueryEngine.stream</code>.
  * 
  * Note: this iterator is for single-threaded evaluation only.
  *
@@ -23,38 +21,40 @@ import java.util.List;
  */
 public class LazyEvaluatingIterator implements CloseableIteration<RippleList, RippleException> {
 
-    private final List<RippleList> intermediates = new LinkedList<>();
-    private final List<RippleList> solutions = new LinkedList<>();
-    private final ModelConnection mc;
+    private final Spliterator<RippleList> spliterator;
+    private RippleList next = null;
 
     public LazyEvaluatingIterator(final RippleList stack,
-                                  final ModelConnection mc) {
-        this.mc = mc;
-
-        // TODO: refusing to evaluate nil stacks makes this iterator like LazyStackEvaluator,
-        // but is this really the desired behavior?
-        if (!stack.isNil()) {
-            //System.out.println("adding initial intermediate: " + stack);
-            intermediates.add(stack);
-        }
+                                  final ModelConnection mc) throws RippleException {
+        spliterator = new StackSpliterator(stack, mc, StackSpliterator.Mode.BREADTH_FIRST);
     }
 
     @Override
     public boolean hasNext() throws RippleException {
-        while (true) {
-            if (solutions.size() > 0) {
-                return true;
-            } else if (intermediates.size() > 0) {
-                reduce(intermediates.remove(0));
-            } else {
-                return false;
+        if (null == next) {
+            try {
+                spliterator.tryAdvance(s -> next = s);
+            } catch (EvaluationException e) {
+                throw e.getCause();
             }
         }
+
+        return null != next;
     }
 
     @Override
     public RippleList next() {
-        return solutions.remove(0);
+        try {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+        } catch (RippleException e) {
+            throw new EvaluationException(e);
+        }
+
+        RippleList n = next;
+        next = null;
+        return n;
     }
 
     @Override
@@ -62,56 +62,6 @@ public class LazyEvaluatingIterator implements CloseableIteration<RippleList, Ri
         throw new UnsupportedOperationException();
     }
 
-    private void reduce(final RippleList stack) throws RippleException {
-
-        RippleList left = stack;
-        RippleList right = mc.list();
-
-        while (true) {
-            if (left.isNil()) {
-                if (right.isNil()) {
-                    solutions.add(left);
-                }
-
-                return;
-            }
-            Object first = left.getFirst();
-            final StackMapping f = mc.toMapping(first);
-
-            if (null == f) {
-                if (right.isNil()) {
-                    solutions.add(left);
-                    return;
-                } else {
-                    Closure c = new Closure(mc.toMapping(right.getFirst()), first);
-                    right = right.getRest();
-                    left = left.getRest().push(new Operator(c));
-                }
-            } else {
-                if (0 == f.arity()) {
-                    Collector<RippleList> results = new Collector<>();
-                    // Note: synchronous evaluation is required
-                    // Note: stack context is trivial
-                    f.apply(left.getRest(), results, mc);
-                    for (RippleList s : results) {
-                        RippleList i = s;
-                        RippleList cur = right;
-                        while (!cur.isNil()) {
-                            i = i.push(cur.getFirst());
-                            cur = cur.getRest();
-                        }
-
-                        intermediates.add(i);
-                    }
-                    return;
-                } else {
-                    right = right.push(first);
-                    left = left.getRest();
-                }
-            }
-        }
-    }
-
     @Override
     public void close() throws RippleException {
         // Do nothing.  We implement CloseableIteration simply so we can throw exceptions.
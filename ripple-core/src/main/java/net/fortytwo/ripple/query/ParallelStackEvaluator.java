@@ -0,0 +1,330 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.flow.Demand;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.flow.SynchronizedSink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.Closure;
+import net.fortytwo.ripple.model.MemoTable;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.query.IterativeStackEvaluator.Frame;
+import net.fortytwo.ripple.query.IterativeStackEvaluator.Pending;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An evaluator which reduces independent solution branches in parallel.
+ * Reduction proceeds as in <code>IterativeStackEvaluator</code>, each fork/join task keeping its own work stack.
+ * Whenever a task has more than <code>sequentialCutoff</code> pending branches,
+ * the oldest (i.e. shallowest) of them are forked off as new tasks, which idle workers may steal.
+ * As in <code>IterativeStackEvaluator</code>, a mapping with many solutions does not hold all of them at once:
+ * a full buffer of solutions is reduced, by the producing thread and any workers which steal from it,
+ * before the mapping may produce any more.
+ * <p>
+ * Solutions are passed into the downstream sink one at a time, although not in any particular order.
+ * Pending branches are abandoned when the downstream sink, or a waiting mapping, signals that it has no
+ * further demand.  If any branch fails, the others are abandoned as well, and evaluation does not return until
+ * every branch it has forked has finished.
+ * <p>
+ * Branches share the model connection of the evaluation, and rely on it to serialize access to the underlying
+ * Sail connection.  The worker threads belong to the evaluator, which must be shut down when it is no longer needed.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ParallelStackEvaluator extends StackEvaluator {
+
+    // the number of synchronous solutions of a nullary application which are held before being reduced
+    private static final int MAX_BUFFERED_SOLUTIONS = 1000;
+
+    // the number of reductions which a thread may nest, one inside the application of another, to reduce full buffers
+    private static final int MAX_NESTED_REDUCTIONS = 32;
+
+    private final ForkJoinPool pool;
+    private final int sequentialCutoff;
+
+    // whether the worker threads were created by, and are to be shut down with, this evaluator
+    private final boolean ownsPool;
+
+    private volatile boolean stopped = true;
+
+    /**
+     * Creates an evaluator with parallelism and sequential cutoff taken from the Ripple configuration
+     *
+     * @throws RippleException if the configuration cannot be read
+     */
+    public ParallelStackEvaluator() throws RippleException {
+        this(Ripple.getConfiguration().getInt(Ripple.EVALUATOR_PARALLELISM, 0),
+                Ripple.getConfiguration().getInt(Ripple.EVALUATOR_SEQUENTIAL_CUTOFF, 1));
+    }
+
+    /**
+     * @param parallelism      the number of worker threads, or 0 for the number of available processors
+     * @param sequentialCutoff the number of pending branches a task may accumulate before it forks any of them
+     */
+    public ParallelStackEvaluator(final int parallelism,
+                                  final int sequentialCutoff) {
+        if (parallelism < 0 || sequentialCutoff < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.pool = new ForkJoinPool(0 == parallelism ? Runtime.getRuntime().availableProcessors() : parallelism);
+        this.sequentialCutoff = sequentialCutoff;
+        this.ownsPool = true;
+    }
+
+    private ParallelStackEvaluator(final ParallelStackEvaluator other) {
+        this.pool = other.pool;
+        this.sequentialCutoff = other.sequentialCutoff;
+        this.ownsPool = false;
+    }
+
+    /**
+     * @return a new evaluator which uses the worker threads of this one, but which is stopped independently of it.
+     * Shutting down the new evaluator has no effect; the threads are shut down with this evaluator
+     */
+    public ParallelStackEvaluator share() {
+        return new ParallelStackEvaluator(this);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getSequentialCutoff() {
+        return sequentialCutoff;
+    }
+
+    public void apply(final RippleList arg,
+                      final Sink<RippleList> solutions,
+                      final ModelConnection mc) throws RippleException {
+        if (arg.isNil()) {
+            return;
+        }
+
+        stopped = false;
+
+        execute(new ReductionTask(
+                new Pending(arg, null), new SynchronizedSink<>(solutions), mc, new AtomicBoolean(), 0));
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Shuts down the worker threads of this evaluator, unless they are shared with another.
+     * Evaluations still in progress are allowed to finish.
+     */
+    public void shutDown() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    private void execute(final ReductionTask task) throws RippleException {
+        try {
+            if (ForkJoinTask.getPool() == pool) {
+                task.invoke();
+            } else {
+                pool.invoke(task);
+            }
+        } catch (RuntimeException e) {
+            // fork/join may re-wrap an exception thrown in another worker; look for the original cause
+            Throwable cause = e;
+            while (null != cause && !(cause instanceof RippleException)) {
+                cause = cause.getCause();
+            }
+
+            if (null == cause) {
+                throw e;
+            } else {
+                throw (RippleException) cause;
+            }
+        }
+    }
+
+    private class ReductionTask extends RecursiveAction {
+        private final Sink<RippleList> solutions;
+        private final ModelConnection mc;
+        private final Deque<Pending> workStack = new ArrayDeque<>();
+
+        // shared by all tasks of an evaluation, and set when any of them fails
+        private final AtomicBoolean aborted;
+
+        // the number of reductions of full buffers within which this task is nested, on the Java stack
+        private final int depth;
+
+        public ReductionTask(final Pending pending,
+                             final Sink<RippleList> solutions,
+                             final ModelConnection mc,
+                             final AtomicBoolean aborted,
+                             final int depth) {
+            this.solutions = solutions;
+            this.mc = mc;
+            this.aborted = aborted;
+            this.depth = depth;
+            workStack.push(pending);
+        }
+
+        // the branches are reduced in the given order
+        public ReductionTask(final List<RippleList> stacks,
+                             final Frame frames,
+                             final Sink<RippleList> solutions,
+                             final ModelConnection mc,
+                             final AtomicBoolean aborted,
+                             final int depth) {
+            this.solutions = solutions;
+            this.mc = mc;
+            this.aborted = aborted;
+            this.depth = depth;
+            for (int i = stacks.size() - 1; i >= 0; i--) {
+                workStack.push(new Pending(stacks.get(i), frames));
+            }
+        }
+
+        protected void compute() {
+            List<ReductionTask> forked = new LinkedList<>();
+            RuntimeException failure = null;
+
+            try {
+                while (!workStack.isEmpty() && !isAbandoned()) {
+                    Pending p = workStack.pop();
+                    if (!Frame.isSatisfied(p.frames)) {
+                        reduce(p);
+                    }
+
+                    while (workStack.size() > sequentialCutoff) {
+                        ReductionTask t = new ReductionTask(workStack.removeLast(), solutions, mc, aborted, depth);
+                        t.fork();
+                        forked.add(t);
+                    }
+                }
+            } catch (RippleException e) {
+                failure = new EvaluationException(e);
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                workStack.clear();
+            }
+
+            // Every forked branch is joined, so that no branch outlives the evaluation.
+            // Once a branch has failed, those which have not yet started are cancelled, and the others stop early.
+            for (ReductionTask t : forked) {
+                if (null != failure) {
+                    aborted.set(true);
+                    t.cancel(false);
+                    t.quietlyJoin();
+                } else {
+                    try {
+                        t.join();
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+            }
+
+            if (null != failure) {
+                aborted.set(true);
+                throw failure;
+            }
+        }
+
+        private boolean isAbandoned() {
+            return stopped || aborted.get() || Demand.isSatisfied(solutions);
+        }
+
+        private void reduce(final Pending pending) throws RippleException {
+            RippleList stack = pending.stack;
+            Frame frames = pending.frames;
+
+            while (!stack.isNil()) {
+                Object first = stack.getFirst();
+                StackMapping f = IterativeStackEvaluator.toMapping(first, mc);
+
+                if (null == f) {
+                    if (null == frames) {
+                        solutions.accept(stack);
+                        return;
+                    }
+
+                    Closure c = new Closure(frames.mapping, first);
+                    stack = stack.getRest().push(new Operator(c));
+                    frames = frames.next;
+                } else if (0 == f.arity()) {
+                    ResultSink results = new ResultSink(frames);
+                    MemoTable.apply(f, stack.getRest(), results, mc);
+                    results.flush();
+                    return;
+                } else {
+                    stack = stack.getRest();
+                    frames = new Frame(f, frames);
+                }
+            }
+        }
+
+        /**
+         * Receives the solutions of a single nullary application.  Synchronously produced solutions become branches
+         * on the work stack of this task; any others are reduced, in parallel, by the thread which produces them.
+         * A full buffer is reduced on the spot, as a task of its own, before the mapping produces any more.
+         * As such reductions nest on the Java stack, they are only nested to a fixed depth; beyond it, solutions
+         * are held until the mapping returns.
+         */
+        private class ResultSink implements Sink<RippleList>, Demand {
+            private final Frame frames;
+            private final Thread thread = Thread.currentThread();
+            private List<RippleList> buffer = new ArrayList<>();
+
+            public ResultSink(final Frame frames) {
+                this.frames = frames;
+            }
+
+            public void accept(final RippleList stack) throws RippleException {
+                if (isSatisfied()) {
+                    return;
+                }
+
+                if (Thread.currentThread() == thread && null != buffer) {
+                    buffer.add(stack);
+                    if (buffer.size() >= MAX_BUFFERED_SOLUTIONS && depth < MAX_NESTED_REDUCTIONS) {
+                        reduceBuffered();
+                    }
+                } else {
+                    // a solution from another thread is reduced on that thread's stack, which this one does not nest
+                    execute(new ReductionTask(new Pending(stack, frames), solutions, mc, aborted, 0));
+                }
+            }
+
+            // the producing thread waits while the full buffer is reduced, by itself and any workers which steal from it
+            private void reduceBuffered() throws RippleException {
+                List<RippleList> full = buffer;
+                buffer = new ArrayList<>();
+
+                execute(new ReductionTask(full, frames, solutions, mc, aborted, depth + 1));
+            }
+
+            public void flush() {
+                for (int i = buffer.size() - 1; i >= 0; i--) {
+                    workStack.push(new Pending(buffer.get(i), frames));
+                }
+
+                buffer = null;
+            }
+
+            public boolean isSatisfied() {
+                return isAbandoned() || Frame.isSatisfied(frames);
+            }
+        }
+    }
+}
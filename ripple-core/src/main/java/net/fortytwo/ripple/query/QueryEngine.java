@@ -1,14 +1,35 @@
 package net.fortytwo.ripple.query;
 
+import net.fortytwo.flow.Collector;
 import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.cli.Interpreter;
+import net.fortytwo.ripple.cli.RecognizerAdapter;
+import net.fortytwo.ripple.cli.RecognizerEvent;
+import net.fortytwo.ripple.cli.ast.KeywordAST;
+import net.fortytwo.ripple.cli.ast.ListAST;
 import net.fortytwo.ripple.io.RipplePrintStream;
+import net.fortytwo.ripple.model.CompiledProgram;
 import net.fortytwo.ripple.model.Lexicon;
 import net.fortytwo.ripple.model.LexiconUpdater;
 import net.fortytwo.ripple.model.Model;
 import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Profiler;
+import net.fortytwo.ripple.model.RippleList;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
@@ -17,36 +38,90 @@ public class QueryEngine {
     private final Model model;
     private final Lexicon lexicon;
     private final StackEvaluator evaluator;
+
+    // whether the evaluator was created by, and is to be shut down with, this engine
+    private final boolean ownsEvaluator;
+
+    // creates the evaluator of each query session, so that stopping a query in one session does not stop the others
+    private final Supplier<? extends StackEvaluator> sessionEvaluators;
+
+    // the evaluators of open sessions, by the connections of the sessions
+    private final Map<ModelConnection, StackEvaluator> evaluatorsByConnection = new ConcurrentHashMap<>();
     private final RipplePrintStream printStream;
     private final PrintStream errorPrintStream;
 
-    // this single connection is used for all query operations derived from this engine,
+    // this single connection is used for all query operations derived from this engine, other than those of sessions,
     // including the asynchronous SesameModelConnection query tasks which execute in worker threads.
     // This allows one thread to begin a query operation and another to finish it at any time;
     // the connection will still be active as long as the query engine has not been shut down.
     private final ModelConnection connection;
 
+    // queries evaluated through the shared connection, rather than in sessions of their own, take turns
+    final Object connectionMutex = new Object();
+
+    // the connections of concurrent query sessions
+    private final ConnectionPool connectionPool;
+
     public QueryEngine(final Model model) throws RippleException {
-        this(model, new LazyStackEvaluator(), System.out, System.err);
+        this(model, System.out, System.err);
     }
 
+    /**
+     * Creates a query engine with the evaluator chosen by the Ripple configuration:
+     * a <code>ParallelStackEvaluator</code> if parallel evaluation is enabled,
+     * otherwise an <code>IterativeStackEvaluator</code>.
+     * Each query session has an evaluator of the same kind, sharing the worker threads of a parallel evaluator
+     */
     public QueryEngine(final Model model,
                        final PrintStream out,
                        final PrintStream err) throws RippleException {
-        this(model, new LazyStackEvaluator(), out, err);
+        this(model, createEvaluator(), true, null, out, err);
     }
 
+    /**
+     * Creates a query engine with the given evaluator, which is also used by all query sessions of the engine,
+     * so that stopping the evaluator stops the queries of every session
+     */
     public QueryEngine(final Model model,
                        final StackEvaluator evaluator,
                        final PrintStream out,
                        final PrintStream err) throws RippleException {
+        this(model, evaluator, false, () -> evaluator, out, err);
+    }
+
+    /**
+     * Creates a query engine with an evaluator of its own and a new evaluator for each query session
+     *
+     * @param evaluators creates the evaluator of the engine and those of its sessions
+     * @return a new query engine
+     */
+    public static QueryEngine withSessionEvaluators(final Model model,
+                                                    final Supplier<? extends StackEvaluator> evaluators,
+                                                    final PrintStream out,
+                                                    final PrintStream err) throws RippleException {
+        return new QueryEngine(model, evaluators.get(), true, evaluators, out, err);
+    }
+
+    private QueryEngine(final Model model,
+                        final StackEvaluator evaluator,
+                        final boolean ownsEvaluator,
+                        final Supplier<? extends StackEvaluator> sessionEvaluators,
+                        final PrintStream out,
+                        final PrintStream err) throws RippleException {
         this.model = model;
         this.evaluator = evaluator;
+        this.ownsEvaluator = ownsEvaluator;
+        this.sessionEvaluators = null == sessionEvaluators ? sessionEvaluatorsFor(evaluator) : sessionEvaluators;
         lexicon = new Lexicon(model);
         printStream = new RipplePrintStream(out, lexicon);
         errorPrintStream = err;
 
         connection = model.createConnection(new LexiconUpdater(lexicon));
+        connectionPool = new ConnectionPool(model, lexicon,
+                Ripple.getConfiguration().getInt(Ripple.CONNECTION_POOL_SIZE, 64),
+                Ripple.getConfiguration().getLong(Ripple.CONNECTION_IDLE_TIMEOUT, 60000));
+
+        setProfilingEnabled(Ripple.getConfiguration().getBoolean(Ripple.PROFILE_QUERIES, false));
 
         initializeLexicon();
 
@@ -62,14 +137,42 @@ public class QueryEngine {
         connection.commit();
     }
 
+    /**
+     * @return the connection shared by all queries and commands which are not evaluated in a session of their own
+     */
     public ModelConnection getConnection() {
         return connection;
     }
 
+    /**
+     * Opens a session with its own connection to the model, in which queries may be evaluated concurrently with
+     * those of other sessions.  If the maximum number of connections are already in use,
+     * this method waits for a session to be closed.
+     *
+     * @return a new session, which must be closed when it is no longer needed
+     * @throws RippleException if a connection cannot be obtained
+     */
+    public QuerySession openSession() throws RippleException {
+        return new QuerySession(this, connectionPool);
+    }
+
+    /**
+     * @return the evaluator of queries which are not evaluated in a session of their own
+     */
     public StackEvaluator getEvaluator() {
         return evaluator;
     }
 
+    /**
+     * @param mc a connection of this engine
+     * @return the evaluator of the session whose connection is given, or the evaluator of this engine
+     * if the connection does not belong to an open session
+     */
+    public StackEvaluator getEvaluator(final ModelConnection mc) {
+        StackEvaluator e = evaluatorsByConnection.get(mc);
+        return null == e ? evaluator : e;
+    }
+
     public Lexicon getLexicon() {
         return lexicon;
     }
@@ -86,12 +189,173 @@ public class QueryEngine {
         return errorPrintStream;
     }
 
+    /**
+     * @return the profiler which records the evaluation statistics of the most recent query
+     * not evaluated in a session of its own, or null if profiling is disabled
+     */
+    public Profiler getProfiler() {
+        return connection.getProfiler();
+    }
+
+    /**
+     * @param enabled whether to record the time spent in each primitive and RDF predicate during evaluation.
+     *                Profiling is disabled by default, in which case it adds no overhead.
+     *                Sessions opened while profiling is enabled have profilers of their own
+     */
+    public void setProfilingEnabled(final boolean enabled) {
+        connection.setProfiler(enabled ? new Profiler() : null);
+    }
+
     public void executeCommand(final Command cmd) throws RippleException {
         cmd.execute(this, connection);
     }
 
+    /**
+     * Compiles a parsed list program, resolving its operators ahead of time.
+     * Note: list programs which are invoked by name are compiled and cached automatically.
+     *
+     * @param program a parsed list program
+     * @return the compiled program, a nullary mapping which may be applied any number of times
+     * @throws RippleException if the program does not resolve to a single list, or cannot be compiled
+     */
+    public CompiledProgram compile(final ListAST program) throws RippleException {
+        Collector<RippleList> lists = new Collector<>();
+        program.evaluate(lists, this, connection);
+
+        if (1 != lists.size()) {
+            throw new RippleException("program did not resolve to a single list: " + program);
+        }
+
+        // Note: the first element of the list will also be a list
+        return CompiledProgram.compile((RippleList) lists.iterator().next().getFirst(), connection);
+    }
+
+    /**
+     * Evaluates a stack lazily, computing solutions only as they are consumed
+     *
+     * @param stack the stack to evaluate
+     * @param mode  the order in which pending reductions are processed.
+     *              Depth-first evaluation keeps memory use proportional to the depth of the program,
+     *              rather than to the number of solutions in progress.
+     * @return a sequential stream of solutions.  The stream uses the connection of this engine, which the engine's
+     * other operations share, and is not to be made parallel; see {@link QuerySession#stream(RippleList,
+     * StackSpliterator.Mode)} for a stream which may be.
+     * A <code>RippleException</code> which occurs during evaluation is thrown as an
+     * <code>EvaluationException</code>
+     * @throws RippleException if the configuration cannot be read
+     */
+    public Stream<RippleList> stream(final RippleList stack,
+                                     final StackSpliterator.Mode mode) throws RippleException {
+        return StreamSupport.stream(new StackSpliterator(stack, connection, mode), false);
+    }
+
+    /**
+     * Evaluates an expression in Ripple's text-based syntax lazily, computing solutions only as they are consumed.
+     * Any commands in the expression are executed immediately, while the solutions of any queries are
+     * produced one query after another.
+     *
+     * @param expr a complete, valid expression consisting of a sequence of programs and/or commands
+     * @param mode the order in which pending reductions are processed
+     * @return a sequential stream of solutions, which, like that of {@link #stream(RippleList,
+     * StackSpliterator.Mode)}, is not to be made parallel
+     * @throws RippleException if the expression cannot be parsed
+     */
+    public Stream<RippleList> stream(final String expr,
+                                     final StackSpliterator.Mode mode) throws RippleException {
+        return StreamSupport.stream(new StackSpliterator(parse(expr, connection), connection, mode), false);
+    }
+
+    /**
+     * Evaluates a stack lazily, computing solutions only as they are consumed
+     *
+     * @param stack the stack to evaluate
+     * @param mode  the order in which pending reductions are processed
+     * @return an iterator over the solutions.
+     * A <code>RippleException</code> which occurs during evaluation is thrown as an
+     * <code>EvaluationException</code>
+     * @throws RippleException if the configuration cannot be read
+     */
+    public Iterator<RippleList> iterator(final RippleList stack,
+                                         final StackSpliterator.Mode mode) throws RippleException {
+        return Spliterators.iterator(new StackSpliterator(stack, connection, mode));
+    }
+
+    // Note: the global Scheduler is left running, as tasks may have been added to it by others;
+    // closing the engine's connections waits for any tasks of their own
     public void shutDown() throws RippleException {
-        connection.close();
+        try {
+            connectionPool.close();
+            connection.close();
+        } finally {
+            if (ownsEvaluator && evaluator instanceof ParallelStackEvaluator) {
+                ((ParallelStackEvaluator) evaluator).shutDown();
+            }
+        }
+    }
+
+    StackEvaluator openSessionEvaluator(final ModelConnection mc) {
+        StackEvaluator e = sessionEvaluators.get();
+        evaluatorsByConnection.put(mc, e);
+        return e;
+    }
+
+    void closeSessionEvaluator(final ModelConnection mc) {
+        StackEvaluator e = evaluatorsByConnection.remove(mc);
+        if (e != evaluator && e instanceof ParallelStackEvaluator) {
+            ((ParallelStackEvaluator) e).shutDown();
+        }
+    }
+
+    private static StackEvaluator createEvaluator() throws RippleException {
+        return Ripple.getConfiguration().getBoolean(Ripple.PARALLEL_EVALUATION, false)
+                ? new ParallelStackEvaluator()
+                : new IterativeStackEvaluator();
+    }
+
+    private static Supplier<? extends StackEvaluator> sessionEvaluatorsFor(final StackEvaluator evaluator) {
+        if (evaluator instanceof ParallelStackEvaluator) {
+            return ((ParallelStackEvaluator) evaluator)::share;
+        } else {
+            return IterativeStackEvaluator::new;
+        }
+    }
+
+    // parses an expression into the stacks of its queries, executing any commands along the way
+    List<RippleList> parse(final String expr, final ModelConnection mc) throws RippleException {
+        final List<RippleList> stacks = new LinkedList<>();
+        final Collector<Exception> parserExceptions = new Collector<>();
+
+        RecognizerAdapter adapter = new RecognizerAdapter(errorPrintStream) {
+            protected void handleQuery(final ListAST query) throws RippleException {
+                // Note: the first element of each list will also be a list
+                query.evaluate(l -> stacks.add(((RippleList) l.getFirst()).invert()), QueryEngine.this, mc);
+            }
+
+            protected void handleCommand(final Command command) throws RippleException {
+                command.execute(QueryEngine.this, mc);
+                mc.commit();
+            }
+
+            protected void handleEvent(final RecognizerEvent event) throws RippleException {
+                // Do nothing.
+            }
+
+            protected void handleAssignment(final KeywordAST name) throws RippleException {
+                throw new RippleException("assignment is not supported in a streaming query: " + name);
+            }
+        };
+
+        try (InputStream input = new ByteArrayInputStream((expr + "\n").getBytes())) {
+            new Interpreter(adapter, input, parserExceptions).parse();
+        } catch (IOException e) {
+            throw new RippleException(e);
+        }
+
+        if (parserExceptions.size() > 0) {
+            throw new RippleException(parserExceptions.iterator().next());
+        }
+
+        return stacks;
     }
 
     private void initializeLexicon() throws RippleException {
@@ -2,6 +2,7 @@ package net.fortytwo.ripple.query;
 
 import net.fortytwo.flow.Buffer;
 import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Demand;
 import net.fortytwo.flow.HistorySink;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.flow.Source;
@@ -29,6 +30,7 @@ import java.io.InputStream;
  * Expressions are pushed into the QueryPipe using the put method,
  * and the results flow from the other end of the pipe into the specified sink.
  * Results arrive at any time and in any order, depending on the intermediate components of the pipe.
+ * If the result sink is a <code>Demand</code>, evaluation of a query stops as soon as the sink is satisfied.
  *
  * @author Joshua Shinavier (http://fortytwo.net)
  */
@@ -40,15 +42,41 @@ public class QueryPipe implements Sink<String> {
             = new HistorySink<>(1);
     private final ModelConnection connection;
 
+    /**
+     * Creates a pipe which evaluates queries through the shared connection of a query engine.
+     * Queries evaluated through the shared connection take turns with those of all other such pipes.
+     *
+     * @param queryEngine the query engine
+     * @param resultSink  a handler for query results
+     * @throws RippleException if the pipe cannot be created
+     */
     public QueryPipe(final QueryEngine queryEngine,
                      final Sink<RippleList> resultSink) throws RippleException {
-        connection = queryEngine.getConnection();
+        this(queryEngine, queryEngine.getConnection(), queryEngine.connectionMutex, resultSink);
+    }
+
+    /**
+     * Creates a pipe which evaluates queries through the connection of a session,
+     * independently of the queries of any other session
+     *
+     * @param session    an open query session, which remains open when the pipe is closed
+     * @param resultSink a handler for query results
+     * @throws RippleException if the pipe cannot be created
+     */
+    public QueryPipe(final QuerySession session,
+                     final Sink<RippleList> resultSink) throws RippleException {
+        this(session.getQueryEngine(), session.getConnection(), new Object(), resultSink);
+    }
+
+    private QueryPipe(final QueryEngine queryEngine,
+                      final ModelConnection connection,
+                      final Object mutex,
+                      final Sink<RippleList> resultSink) throws RippleException {
+        this.connection = connection;
 
         resultBuffer = new Buffer<>(resultSink);
-        final Object mutex = "";
 
-        final Sink<RippleList> resultTee = new Tee<>
-                (resultBuffer, queryResultHistory);
+        final Sink<RippleList> resultTee = new ResultTee(resultBuffer, queryResultHistory, resultSink);
 
         recognizerAdapter = new RecognizerAdapter(queryEngine.getErrorPrintStream()) {
             protected void handleQuery(ListAST ast) throws RippleException {
@@ -117,4 +145,20 @@ public class QueryPipe implements Sink<String> {
             throw new RippleException(e);
         }
     }
+
+    // the demand of the consumer, rather than that of the query history, determines whether evaluation continues
+    private static class ResultTee extends Tee<RippleList> implements Demand {
+        private final Sink<RippleList> consumer;
+
+        public ResultTee(final Sink<RippleList> left,
+                         final Sink<RippleList> right,
+                         final Sink<RippleList> consumer) {
+            super(left, right);
+            this.consumer = consumer;
+        }
+
+        public boolean isSatisfied() {
+            return Demand.isSatisfied(consumer);
+        }
+    }
 }
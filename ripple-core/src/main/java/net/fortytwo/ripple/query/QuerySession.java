@@ -0,0 +1,149 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Profiler;
+import net.fortytwo.ripple.model.RippleList;
+
+import java.util.Iterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A session of query evaluation with its own connection to the model of a <code>QueryEngine</code>,
+ * and hence its own transaction and its own asynchronous query tasks.
+ * Any number of sessions of the same engine may be used concurrently, each in its own thread, while sharing
+ * the engine's lexicon.  Each session also has its own evaluator, so that stopping a query in one session does not
+ * stop those of the others, and its own profiler if profiling is enabled.  Connections are taken from a bounded
+ * pool, so that opening a session may wait for another session to be closed.
+ * A session must be closed when it is no longer needed, whereupon any changes made through its connection
+ * are committed, and the connection is returned to the pool.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class QuerySession {
+    private final QueryEngine queryEngine;
+    private final ConnectionPool pool;
+    private final ModelConnection connection;
+    private final StackEvaluator evaluator;
+
+    private boolean closed = false;
+
+    QuerySession(final QueryEngine queryEngine,
+                 final ConnectionPool pool) throws RippleException {
+        this.queryEngine = queryEngine;
+        this.pool = pool;
+        this.connection = pool.acquire();
+        this.evaluator = queryEngine.openSessionEvaluator(connection);
+
+        // sessions are profiled if the engine is, but each session records its statistics separately
+        setProfilingEnabled(null != queryEngine.getProfiler());
+    }
+
+    public QueryEngine getQueryEngine() {
+        return queryEngine;
+    }
+
+    /**
+     * @return the connection of this session, which is not to be used after the session is closed
+     */
+    public ModelConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return the evaluator of queries in this session
+     */
+    public StackEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * @return the profiler which records the evaluation statistics of the most recent query of this session,
+     * or null if profiling is disabled
+     */
+    public Profiler getProfiler() {
+        return connection.getProfiler();
+    }
+
+    /**
+     * @param enabled whether to record the time spent in each primitive and RDF predicate during evaluation
+     *                in this session
+     */
+    public void setProfilingEnabled(final boolean enabled) {
+        connection.setProfiler(enabled ? new Profiler() : null);
+    }
+
+    public void executeCommand(final Command cmd) throws RippleException {
+        cmd.execute(queryEngine, connection);
+    }
+
+    /**
+     * Evaluates a stack lazily, using the connection of this session
+     *
+     * @param stack the stack to evaluate
+     * @param mode  the order in which pending reductions are processed
+     * @return a stream of solutions, which may be made parallel, as the connection of this session is used by
+     * this session alone
+     * @throws RippleException if the configuration cannot be read
+     * @see QueryEngine#stream(RippleList, StackSpliterator.Mode)
+     */
+    public Stream<RippleList> stream(final RippleList stack,
+                                     final StackSpliterator.Mode mode) throws RippleException {
+        return StreamSupport.stream(new StackSpliterator(stack, connection, mode), false);
+    }
+
+    /**
+     * Evaluates an expression in Ripple's text-based syntax lazily, using the connection of this session
+     *
+     * @param expr a complete, valid expression consisting of a sequence of programs and/or commands
+     * @param mode the order in which pending reductions are processed
+     * @return a stream of solutions, which may be made parallel
+     * @throws RippleException if the expression cannot be parsed
+     * @see QueryEngine#stream(String, StackSpliterator.Mode)
+     */
+    public Stream<RippleList> stream(final String expr,
+                                     final StackSpliterator.Mode mode) throws RippleException {
+        return StreamSupport.stream(
+                new StackSpliterator(queryEngine.parse(expr, connection), connection, mode), false);
+    }
+
+    /**
+     * Evaluates a stack lazily, using the connection of this session
+     *
+     * @param stack the stack to evaluate
+     * @param mode  the order in which pending reductions are processed
+     * @return an iterator over the solutions
+     * @throws RippleException if the configuration cannot be read
+     * @see QueryEngine#iterator(RippleList, StackSpliterator.Mode)
+     */
+    public Iterator<RippleList> iterator(final RippleList stack,
+                                         final StackSpliterator.Mode mode) throws RippleException {
+        return Spliterators.iterator(new StackSpliterator(stack, connection, mode));
+    }
+
+    /**
+     * Completes any asynchronous query tasks of this session, commits its changes,
+     * and returns its connection to the pool.  Closing a session more than once has no effect.
+     *
+     * @throws RippleException if the tasks cannot be completed or the changes cannot be committed,
+     *                         in which case the connection is closed rather than returned to the pool
+     */
+    public void close() throws RippleException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        boolean ok = false;
+        try {
+            connection.finish();
+            connection.commit();
+            ok = true;
+        } finally {
+            queryEngine.closeSessionEvaluator(connection);
+            pool.release(connection, ok);
+        }
+    }
+}
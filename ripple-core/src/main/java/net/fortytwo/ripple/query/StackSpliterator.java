@@ -0,0 +1,345 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.Closure;
+import net.fortytwo.ripple.model.MemoTable;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RDFPredicateMapping;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.query.IterativeStackEvaluator.Frame;
+import net.fortytwo.ripple.query.IterativeStackEvaluator.Pending;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * A "pull-based" program evaluator which computes solutions only as they are requested.
+ * Reduction proceeds as in <code>IterativeStackEvaluator</code>, pending reductions being kept in a work queue
+ * which is either processed depth-first (so that memory use is bounded by the depth of the program and the
+ * number of solutions of each individual mapping) or breadth-first (the traditional order of
+ * <code>LazyEvaluatingIterator</code>).
+ * <p>
+ * A spliterator may be split by handing off a prefix of its pending work, so that a parallel stream may evaluate
+ * independent branches concurrently.  The spliterators of a stream share its model connection, which is safe for
+ * concurrent use.  Solutions which a mapping produces asynchronously are queued until they are requested, by the
+ * spliterator which applied the mapping; an exhausted spliterator waits for any outstanding operations of its
+ * connection before reporting that there are no more solutions.
+ * Solutions are in encounter order only in depth-first mode, and only if queries are not asynchronous.
+ * <p>
+ * In breadth-first mode, applications of RDF predicates are deferred until the work queue is exhausted or a
+ * batch is full, and the applications of each predicate are then evaluated together, as a single batch of
+ * statement lookups.
+ * <p>
+ * Any <code>RippleException</code> which occurs during evaluation is thrown as an <code>EvaluationException</code>.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class StackSpliterator implements Spliterator<RippleList> {
+    /**
+     * The order in which pending reductions are processed
+     */
+    public enum Mode {DEPTH_FIRST, BREADTH_FIRST}
+
+    // the number of reduction steps a spliterator may take in order to find work to hand off
+    private static final int MAX_SPLIT_STEPS = 16;
+
+    private final ModelConnection mc;
+    private final Mode mode;
+    private final boolean ordered;
+    private final int batchSize;
+    private final Deque<Pending> workQueue;
+    private final Queue<Pending> lateArrivals = new ConcurrentLinkedQueue<>();
+
+    // deferred applications of RDF predicates, by predicate, in breadth-first mode
+    private final Map<RDFPredicateMapping, List<Pending>> batches = new LinkedHashMap<>();
+    private int batchedCount = 0;
+
+    /**
+     * @param stack the stack to evaluate
+     * @param mc    a connection to the model
+     * @param mode  the order in which pending reductions are processed
+     * @throws RippleException if the configuration cannot be read
+     */
+    public StackSpliterator(final RippleList stack,
+                            final ModelConnection mc,
+                            final Mode mode) throws RippleException {
+        this(Collections.singletonList(stack), mc, mode);
+    }
+
+    /**
+     * @param stacks a number of stacks to evaluate, one after the other
+     * @param mc     a connection to the model
+     * @param mode   the order in which pending reductions are processed
+     * @throws RippleException if the configuration cannot be read
+     */
+    public StackSpliterator(final Collection<RippleList> stacks,
+                            final ModelConnection mc,
+                            final Mode mode) throws RippleException {
+        this.workQueue = new ArrayDeque<>();
+        this.mc = mc;
+        this.mode = mode;
+
+        // in breadth-first order, solutions are not produced in the order of their branches,
+        // and asynchronous solutions are passed along whenever they arrive
+        this.ordered = Mode.DEPTH_FIRST == mode && !Ripple.asynchronousQueries();
+
+        batchSize = Ripple.getConfiguration().getInt(Ripple.PREDICATE_BATCH_SIZE, 0);
+
+        // as in LazyStackEvaluator, nil stacks are not evaluated
+        stacks.stream().filter(s -> !s.isNil()).forEach(s -> workQueue.addLast(new Pending(s, null)));
+    }
+
+    // a spliterator for work handed off by another
+    private StackSpliterator(final StackSpliterator parent,
+                             final Deque<Pending> workQueue) {
+        this.workQueue = workQueue;
+        this.mc = parent.mc;
+        this.mode = parent.mode;
+        this.ordered = parent.ordered;
+        this.batchSize = parent.batchSize;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super RippleList> action) {
+        try {
+            while (true) {
+                Pending p = nextPending();
+                if (null == p) {
+                    return false;
+                }
+
+                RippleList solution = reduce(p);
+                if (null != solution) {
+                    action.accept(solution);
+                    return true;
+                }
+            }
+        } catch (RippleException e) {
+            throw new EvaluationException(e);
+        }
+    }
+
+    @Override
+    public Spliterator<RippleList> trySplit() {
+        try {
+            // reduce a little, if necessary, in order to have something to hand off
+            int steps = 0;
+            while (workQueue.size() < 2 && steps++ < MAX_SPLIT_STEPS) {
+                Pending p = workQueue.pollFirst();
+                if (null == p) {
+                    break;
+                }
+
+                if (Frame.isSatisfied(p.frames)) {
+                    continue;
+                }
+
+                RippleList solution = reduce(p);
+                if (null != solution) {
+                    // put the solution back in its place; it will be passed along as soon as it is requested
+                    workQueue.addFirst(new Pending(solution, null));
+                    break;
+                }
+            }
+        } catch (RippleException e) {
+            throw new EvaluationException(e);
+        }
+
+        int size = workQueue.size();
+        if (size < 2) {
+            return null;
+        }
+
+        // hand off a prefix of the pending work, which preserves encounter order in depth-first mode
+        Deque<Pending> prefix = new ArrayDeque<>();
+        for (int i = 0; i < size / 2; i++) {
+            prefix.addLast(workQueue.pollFirst());
+        }
+
+        return new StackSpliterator(this, prefix);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ordered
+                ? NONNULL | ORDERED
+                : NONNULL;
+    }
+
+    private Pending nextPending() throws RippleException {
+        while (true) {
+            Pending p = workQueue.pollFirst();
+
+            if (null == p && flushBatches()) {
+                continue;
+            }
+
+            if (null == p) {
+                p = lateArrivals.poll();
+            }
+
+            if (null == p) {
+                // wait for any asynchronous operations which may yet produce solutions
+                mc.finish();
+
+                p = lateArrivals.poll();
+                if (null == p) {
+                    return null;
+                }
+            }
+
+            if (!Frame.isSatisfied(p.frames)) {
+                return p;
+            }
+        }
+    }
+
+    // reduces a stack until it either yields a solution or produces further pending reductions
+    private RippleList reduce(final Pending pending) throws RippleException {
+        RippleList stack = pending.stack;
+        Frame frames = pending.frames;
+
+        while (!stack.isNil()) {
+            Object first = stack.getFirst();
+            StackMapping f = IterativeStackEvaluator.toMapping(first, mc);
+
+            if (null == f) {
+                if (null == frames) {
+                    return stack;
+                }
+
+                Closure c = new Closure(frames.mapping, first);
+                stack = stack.getRest().push(new Operator(c));
+                frames = frames.next;
+            } else if (0 == f.arity()) {
+                if (isBatchable(f)) {
+                    defer((Closure) f, stack.getRest(), frames);
+                    return null;
+                }
+
+                ResultSink results = new ResultSink(frames);
+                MemoTable.apply(f, stack.getRest(), results, mc);
+                results.flush();
+                return null;
+            } else {
+                stack = stack.getRest();
+                frames = new Frame(f, frames);
+            }
+        }
+
+        // as in LazyEvaluatingIterator, a stack which reduces to nil is itself a solution
+        return null == frames ? stack : null;
+    }
+
+    // an application of an RDF predicate may be deferred only if the order of solutions is not significant,
+    // and if it would not otherwise be memoized or profiled individually
+    private boolean isBatchable(final StackMapping f) {
+        return Mode.BREADTH_FIRST == mode
+                && f instanceof Closure
+                && ((Closure) f).getInnerMapping() instanceof RDFPredicateMapping
+                && batchSize > 0
+                && null == mc.getModel().getMemoTable()
+                && null == mc.getProfiler();
+    }
+
+    private void defer(final Closure c, final RippleList rest, final Frame frames) throws RippleException {
+        RDFPredicateMapping predicate = (RDFPredicateMapping) c.getInnerMapping();
+        batches.computeIfAbsent(predicate, p -> new ArrayList<>()).add(new Pending(rest.push(c.getArgument()), frames));
+
+        if (++batchedCount >= batchSize) {
+            flushBatches();
+        }
+    }
+
+    // applies each predicate to all of its deferred arguments at once
+    private boolean flushBatches() throws RippleException {
+        if (0 == batchedCount) {
+            return false;
+        }
+
+        for (Map.Entry<RDFPredicateMapping, List<Pending>> e : batches.entrySet()) {
+            List<RippleList> args = new ArrayList<>();
+            List<Sink<RippleList>> sinks = new ArrayList<>();
+            List<ResultSink> results = new ArrayList<>();
+
+            for (Pending p : e.getValue()) {
+                if (!Frame.isSatisfied(p.frames)) {
+                    ResultSink r = new ResultSink(p.frames);
+                    args.add(p.stack);
+                    sinks.add(r);
+                    results.add(r);
+                }
+            }
+
+            if (!args.isEmpty()) {
+                e.getKey().applyAll(args, sinks, mc);
+                for (ResultSink r : results) {
+                    r.flush();
+                }
+            }
+        }
+
+        batches.clear();
+        batchedCount = 0;
+        return true;
+    }
+
+    /**
+     * Receives the solutions of a single nullary application.  Solutions received synchronously are added to
+     * the work queue (in the same order, for either mode); any others are queued until they are requested.
+     */
+    private class ResultSink implements Sink<RippleList> {
+        private final Frame frames;
+        private final Thread thread = Thread.currentThread();
+        private List<RippleList> buffer = new ArrayList<>();
+
+        public ResultSink(final Frame frames) {
+            this.frames = frames;
+        }
+
+        public void accept(final RippleList stack) throws RippleException {
+            if (Thread.currentThread() == thread && null != buffer) {
+                buffer.add(stack);
+            } else {
+                lateArrivals.add(new Pending(stack, frames));
+            }
+        }
+
+        public void flush() {
+            if (Mode.DEPTH_FIRST == mode) {
+                for (int i = buffer.size() - 1; i >= 0; i--) {
+                    workQueue.addFirst(new Pending(buffer.get(i), frames));
+                }
+            } else {
+                for (RippleList stack : buffer) {
+                    workQueue.addLast(new Pending(stack, frames));
+                }
+            }
+
+            buffer = null;
+        }
+    }
+}
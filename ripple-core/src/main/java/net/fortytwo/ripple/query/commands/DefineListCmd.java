@@ -53,6 +53,9 @@ public class DefineListCmd extends Command {
 
             qe.getLexicon().addURI((IRI) id);
             mc.getModel().getSpecialValues().put(id, expr);
+
+            // compiled programs may refer to the previous definition
+            mc.getModel().getProgramCache().clear();
         }
     }
 
@@ -5,6 +5,7 @@ import net.fortytwo.flow.Sink;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.cli.ast.ListAST;
 import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Profiler;
 import net.fortytwo.ripple.model.RippleList;
 import net.fortytwo.ripple.query.Command;
 import net.fortytwo.ripple.query.QueryEngine;
@@ -29,6 +30,12 @@ public class RippleQueryCmd extends Command {
             throws RippleException {
         final Collector<RippleList> expressions = new Collector<>();
 
+        // each query is profiled separately (empty statements are also queries, but they do not count)
+        Profiler profiler = mc.getProfiler();
+        if (null != profiler && !query.isNil()) {
+            profiler.clear();
+        }
+
         final Sink<RippleList> exprSink = l -> {
             // Note: the first element of the list will also be a list
             final RippleList stack = ((RippleList) l.getFirst()).invert();
@@ -38,7 +45,7 @@ public class RippleQueryCmd extends Command {
 
         query.evaluate(exprSink, qe, mc);
 
-        evaluator = qe.getEvaluator();
+        evaluator = qe.getEvaluator(mc);
 
         final Sink<RippleList> evaluatorSink = l -> evaluator.apply(l, sink, mc);
 
@@ -0,0 +1,53 @@
+package net.fortytwo.ripple.query.commands;
+
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.io.RipplePrintStream;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Profiler;
+import net.fortytwo.ripple.query.Command;
+import net.fortytwo.ripple.query.QueryEngine;
+
+import java.util.List;
+
+/**
+ * Displays the time spent in each primitive and RDF predicate during the most recent query
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ShowProfileCmd extends Command {
+    public void execute(final QueryEngine qe, final ModelConnection mc)
+            throws RippleException {
+        final RipplePrintStream ps = qe.getPrintStream();
+
+        Profiler profiler = qe.getProfiler();
+        if (null == profiler) {
+            qe.getErrorPrintStream().println(
+                    "Warning: profiling is disabled. Set " + Ripple.PROFILE_QUERIES + " = true to enable it.");
+            return;
+        }
+
+        List<Profiler.Entry> report = profiler.getReport();
+
+        ps.println("");
+        ps.println(String.format("%12s %12s %12s %12s %14s  %s",
+                "invocations", "solutions", "wall (ms)", "cpu (ms)", "getStatements", "mapping"));
+        for (Profiler.Entry e : report) {
+            ps.println(String.format("%12d %12d %12.3f %12.3f %14d  %s",
+                    e.getInvocations(),
+                    e.getSolutions(),
+                    e.getWallNanos() / 1000000.0,
+                    e.getCpuNanos() / 1000000.0,
+                    e.getGetStatementsCalls(),
+                    e.getName()));
+        }
+        ps.println("");
+    }
+
+    public String getName() {
+        return "show profile";
+    }
+
+    protected void abort() {
+    }
+}
@@ -23,6 +23,9 @@ public class UndefineListCmd extends Command {
         mc.remove(uri, null, null);
         mc.commit();
         mc.getModel().getSpecialValues().remove(uri);
+
+        // compiled programs may refer to the previous definition
+        mc.getModel().getProgramCache().clear();
     }
 
     public String getName() {
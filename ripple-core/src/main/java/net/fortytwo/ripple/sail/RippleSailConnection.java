@@ -110,8 +110,12 @@ public class RippleSailConnection extends SailConnectionWrapper {
             stack = stack.push(modelConnection.canonicalValue(
                     valueFactory.nativize(predicate))).push(Operator.OP);
 
-            CloseableIteration<RippleList, RippleException> solutions
-                    = new LazyEvaluatingIterator(stack, modelConnection);
+            CloseableIteration<RippleList, RippleException> solutions;
+            try {
+                solutions = new LazyEvaluatingIterator(stack, modelConnection);
+            } catch (RippleException e) {
+                throw new SailException(e);
+            }
 
             return new SolutionIteration(solutions, false, subject, predicate, object, contexts);
         }
@@ -134,8 +138,12 @@ public class RippleSailConnection extends SailConnectionWrapper {
                     .push(Operator.OP)
                     .push(Operator.OP);
 
-            CloseableIteration<RippleList, RippleException> solutions
-                    = new LazyEvaluatingIterator(stack, modelConnection);
+            CloseableIteration<RippleList, RippleException> solutions;
+            try {
+                solutions = new LazyEvaluatingIterator(stack, modelConnection);
+            } catch (RippleException e) {
+                throw new SailException(e);
+            }
 
             return new SolutionIteration(solutions, true, subject, predicate, object, contexts);
         } else {
@@ -12,8 +12,8 @@ import net.fortytwo.ripple.model.impl.sesame.SesameModel;
 import net.fortytwo.ripple.query.LazyEvaluatingIterator;
 import net.fortytwo.ripple.query.QueryEngine;
 import net.fortytwo.ripple.query.QueryPipe;
-import net.fortytwo.ripple.query.StackEvaluator;
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.openrdf.model.IRI;
 import org.openrdf.model.vocabulary.RDF;
@@ -39,7 +39,8 @@ import static org.junit.Assert.assertTrue;
  * @author Joshua Shinavier (http://fortytwo.net)
  */
 public abstract class RippleTestCase {
-    // TODO: add a shutdown hook to clean up these objects
+    // these objects are shared by the tests of a class, and replaced for each class,
+    // so that the values a Sail keeps from one class of tests cannot change the types seen by another
     private static Sail sail = null;
     private static URIMap uriMap = null;
     private static Model model = null;
@@ -82,6 +83,25 @@ public abstract class RippleTestCase {
         }
     }
 
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        try {
+            if (null != queryEngine) {
+                queryEngine.shutDown();
+            }
+            if (null != model) {
+                model.shutDown();
+            }
+            if (null != sail) {
+                sail.shutDown();
+            }
+        } finally {
+            queryEngine = null;
+            model = null;
+            sail = null;
+        }
+    }
+
     protected Sail getTestSail() throws RippleException {
         if (null == sail) {
             sail = new MemoryStore();
@@ -132,9 +152,9 @@ public abstract class RippleTestCase {
 
     protected QueryEngine getTestQueryEngine() throws RippleException {
         if (null == queryEngine) {
-            StackEvaluator eval = new LazyEvaluatingIterator.WrappingEvaluator();
-            //StackEvaluator eval = new LazyStackEvaluator();
-            queryEngine = new QueryEngine(getTestModel(), eval, System.out, System.err);
+            // each query session has an evaluator of its own
+            queryEngine = QueryEngine.withSessionEvaluators(
+                    getTestModel(), LazyEvaluatingIterator.WrappingEvaluator::new, System.out, System.err);
         }
 
         return queryEngine;
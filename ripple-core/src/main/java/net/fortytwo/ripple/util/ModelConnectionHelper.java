@@ -74,8 +74,6 @@ public class ModelConnectionHelper {
             return true;
         }
 
-        final boolean[] b = {false};
-        mc.getStatements((Resource) r, RDF.FIRST, null, statement -> b[0] = true);
-        return b[0];
+        return mc.getListMembershipCache().isRDFList((Resource) r, mc);
     }
 }
@@ -0,0 +1,149 @@
+package net.fortytwo.ripple.control;
+
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.query.QueryEngine;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class SchedulerTest extends RippleTestCase {
+    @Test
+    public void testTaskSetWaitsForAllTasks() throws Exception {
+        final AtomicInteger count = new AtomicInteger(0);
+        TaskSet taskSet = new TaskSet();
+
+        for (int i = 0; i < 100; i++) {
+            taskSet.add(new CountingTask(count));
+        }
+
+        taskSet.waitUntilEmpty();
+        assertEquals(100, count.get());
+    }
+
+    @Test
+    public void testStoppingParentStopsChildren() throws Exception {
+        final AtomicInteger count = new AtomicInteger(0);
+        final CountDownLatch childrenAdded = new CountDownLatch(1);
+        final CountDownLatch parentStopped = new CountDownLatch(1);
+
+        Task parent = new Task() {
+            protected void executeProtected() throws RippleException {
+                for (int i = 0; i < 10; i++) {
+                    Scheduler.add(new CountingTask(count, parentStopped));
+                }
+
+                childrenAdded.countDown();
+            }
+
+            protected void stopProtected() {
+            }
+        };
+
+        TaskSet taskSet = new TaskSet();
+        taskSet.add(parent);
+        childrenAdded.await();
+
+        // children are blocked until the parent has been stopped; none of them should then do any work
+        parent.stop();
+        assertTrue(parent.isStopped());
+        parentStopped.countDown();
+
+        taskSet.waitUntilEmpty();
+        Thread.sleep(100);
+        assertEquals(0, count.get());
+    }
+
+    @Test
+    public void testStopAllStopsQueuedTasks() throws Exception {
+        final AtomicInteger count = new AtomicInteger(0);
+        int workers = Ripple.getConfiguration().getInt(Ripple.MAX_WORKER_THREADS);
+        final CountDownLatch workersBusy = new CountDownLatch(workers);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        TaskSet taskSet = new TaskSet();
+
+        // occupy every worker thread, so that the tasks added next remain in the queue
+        for (int i = 0; i < workers; i++) {
+            taskSet.add(new Task() {
+                protected void executeProtected() throws RippleException {
+                    workersBusy.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RippleException(e);
+                    }
+                }
+
+                protected void stopProtected() {
+                }
+            });
+        }
+        workersBusy.await();
+
+        for (int i = 0; i < 10; i++) {
+            taskSet.add(new CountingTask(count));
+        }
+
+        Scheduler.stopAll();
+        release.countDown();
+
+        // the queued tasks are completed without being executed
+        taskSet.waitUntilEmpty();
+        assertEquals(0, count.get());
+    }
+
+    @Test
+    public void testShuttingDownQueryEngineLeavesOtherTasksRunning() throws Exception {
+        final AtomicInteger count = new AtomicInteger(0);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // a task which was not added by the query engine
+        TaskSet taskSet = new TaskSet();
+        taskSet.add(new CountingTask(count, release));
+
+        QueryEngine qe = new QueryEngine(getTestModel());
+        qe.shutDown();
+        release.countDown();
+
+        taskSet.waitUntilEmpty();
+        assertEquals(1, count.get());
+    }
+
+    private static class CountingTask extends Task {
+        private final AtomicInteger count;
+        private final CountDownLatch latch;
+
+        public CountingTask(final AtomicInteger count) {
+            this(count, new CountDownLatch(0));
+        }
+
+        public CountingTask(final AtomicInteger count, final CountDownLatch latch) {
+            this.count = count;
+            this.latch = latch;
+        }
+
+        protected void executeProtected() throws RippleException {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new RippleException(e);
+            }
+
+            if (!isStopped()) {
+                count.incrementAndGet();
+            }
+        }
+
+        protected void stopProtected() {
+        }
+    }
+}
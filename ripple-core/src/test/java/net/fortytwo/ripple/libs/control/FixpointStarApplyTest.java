@@ -0,0 +1,105 @@
+package net.fortytwo.ripple.libs.control;
+
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.Model;
+import net.fortytwo.ripple.model.impl.sesame.SesameModel;
+import net.fortytwo.ripple.query.LazyEvaluatingIterator;
+import net.fortytwo.ripple.query.QueryEngine;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the <code>*</code> and <code>+</code> quantifiers in a model which evaluates them as a fixpoint
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class FixpointStarApplyTest extends RippleTestCase {
+    private static QueryEngine fixpointQueryEngine = null;
+
+    @Override
+    protected QueryEngine getTestQueryEngine() throws RippleException {
+        if (null == fixpointQueryEngine) {
+            // make sure the environment is initialized
+            getTestModel();
+
+            // the setting is read once, when the model is created
+            Model model;
+            Ripple.getConfiguration().setProperty(Ripple.FIXPOINT_QUANTIFIERS, "true");
+            try {
+                model = new SesameModel(getTestSail());
+            } finally {
+                Ripple.getConfiguration().remove(Ripple.FIXPOINT_QUANTIFIERS);
+            }
+
+            fixpointQueryEngine = QueryEngine.withSessionEvaluators(
+                    model, LazyEvaluatingIterator.WrappingEvaluator::new, System.out, System.err);
+        }
+
+        return fixpointQueryEngine;
+    }
+
+    // the engine's model belongs to the Sail of this class of tests, which is shut down after them
+    @AfterClass
+    public static void tearDownFixpointQueryEngine() throws Exception {
+        if (null != fixpointQueryEngine) {
+            try {
+                fixpointQueryEngine.shutDown();
+                fixpointQueryEngine.getModel().shutDown();
+            } finally {
+                fixpointQueryEngine = null;
+            }
+        }
+    }
+
+    @Test
+    public void testSettingIsReadPerModel() throws Exception {
+        assertTrue(getTestQueryEngine().getModel().usesFixpointQuantifiers());
+        assertFalse(getTestModel().usesFixpointQuantifiers());
+    }
+
+    @Test
+    public void testSimple() throws Exception {
+        assertReducesTo("(1 2 3) rdf:rest* rdf:first.", "1", "2", "3");
+        assertReducesTo("(1 2 3) (rdf:rest.)* rdf:first.", "1", "2", "3");
+        assertReducesTo("(1 2 3) rdf:rest+ rdf:first.", "2", "3");
+    }
+
+    @Test
+    public void testSolutionIsProducedOnce() throws Exception {
+        reduce("@prefix ex: <http://example.org/starApplyTest/>.");
+        reduce("ex:a ex:knows ex:b assert. ex:knows ex:c assert.");
+        reduce("ex:b ex:knows ex:d assert.");
+        reduce("ex:c ex:knows ex:d assert.");
+
+        // unlike the re-applying evaluation, each distinct solution is produced once, however many paths reach it
+        assertReducesTo("ex:a ex:knows*", "ex:a", "ex:b", "ex:c", "ex:d");
+        assertReducesTo("ex:a ex:knows+", "ex:b", "ex:c", "ex:d");
+    }
+
+    @Test
+    public void testCyclicGraph() throws Exception {
+        reduce("@prefix ex: <http://example.org/starApplyTest/>.");
+        reduce("ex:a ex:knows ex:b assert. ex:knows ex:c assert.");
+        reduce("ex:b ex:knows ex:a assert.");
+        reduce("ex:c ex:knows ex:c assert. ex:knows ex:a assert.");
+        reduce("ex:d ex:knows ex:a assert.");
+
+        // each reachable node is produced exactly once
+        assertReducesTo("ex:a ex:knows*", "ex:a", "ex:b", "ex:c");
+        assertReducesTo("ex:a ex:knows+", "ex:a", "ex:b", "ex:c");
+        assertReducesTo("ex:d ex:knows*", "ex:d", "ex:a", "ex:b", "ex:c");
+        assertReducesTo("ex:d ex:knows+", "ex:a", "ex:b", "ex:c");
+        assertReducesTo("ex:b ex:knows~ *", "ex:b", "ex:a", "ex:c", "ex:d");
+    }
+
+    @Test
+    public void testInfiniteClosure() throws Exception {
+        // rounds are evaluated only as they are needed
+        assertReducesTo("0 (1 add.)* 4 limit.", "0", "1", "2", "3");
+    }
+}
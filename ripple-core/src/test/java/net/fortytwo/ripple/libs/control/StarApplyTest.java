@@ -0,0 +1,29 @@
+package net.fortytwo.ripple.libs.control;
+
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class StarApplyTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        assertReducesTo("(1 2 3) rdf:rest* rdf:first.", "1", "2", "3");
+        assertReducesTo("(1 2 3) (rdf:rest.)* rdf:first.", "1", "2", "3");
+        assertReducesTo("(1 2 3) rdf:rest+ rdf:first.", "2", "3");
+        assertReducesTo("(1 2 3) rdf:rest star-apply.. rdf:first.", "1", "2", "3");
+    }
+
+    @Test
+    public void testSolutionIsProducedOncePerPath() throws Exception {
+        reduce("@prefix ex: <http://example.org/starApplyTest/>.");
+        reduce("ex:a ex:knows ex:b assert. ex:knows ex:c assert.");
+        reduce("ex:b ex:knows ex:d assert.");
+        reduce("ex:c ex:knows ex:d assert.");
+
+        // by default, quantifiers are not evaluated as a fixpoint
+        assertReducesTo("ex:a ex:knows*", "ex:a", "ex:b", "ex:c", "ex:d", "ex:d");
+        assertReducesTo("ex:a ex:knows+", "ex:b", "ex:c", "ex:d", "ex:d");
+    }
+}
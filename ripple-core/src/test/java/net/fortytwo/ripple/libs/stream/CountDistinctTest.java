@@ -0,0 +1,78 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class CountDistinctTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        assertReducesTo("(1 2 3 2 1) (each.) 0.01 countDistinct.", "(1 2 3 2 1) 3");
+        assertReducesTo("((1 2) (2 1) (1 2)) (each.) 0.01 countDistinct.", "((1 2) (2 1) (1 2)) 2");
+        assertReducesTo("() (each.) 0.01 countDistinct.", "() 0");
+
+        // integers which are equal as floats are nonetheless distinct
+        assertReducesTo("(16777216 16777217) (each.) 0.01 countDistinct.", "(16777216 16777217) 2");
+    }
+
+    @Test
+    public void testLargeDistinctNumbersAreCounted() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            SketchHash hash = new SketchHash(mc);
+            HyperLogLog sketch = new HyperLogLog(0.01);
+            int n = 1000000;
+            for (long i = 0; i < n; i++) {
+                sketch.add(hash.hash(mc.list().push(1000000000L + i)));
+            }
+
+            // five standard errors
+            assertEquals(n, sketch.estimate(), n * 0.05);
+
+            // numbers which compare as equal have the same hash
+            assertEquals(hash.hash(mc.list().push(2)), hash.hash(mc.list().push(2.0)));
+            assertEquals(hash.hash(mc.list().push(2L)), hash.hash(mc.list().push(new BigDecimal("2.00"))));
+            assertEquals(hash.hash(mc.list().push(0.5)), hash.hash(mc.list().push(new BigDecimal("0.50"))));
+            assertEquals(hash.hash(mc.list().push(0.0)), hash.hash(mc.list().push(-0.0)));
+            assertNotEquals(hash.hash(mc.list().push(16777216)), hash.hash(mc.list().push(16777217)));
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testEstimateIsWithinErrorBound() throws Exception {
+        HyperLogLog sketch = new HyperLogLog(0.01);
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            // each item twice
+            sketch.add(i);
+            sketch.add(i);
+        }
+
+        // five standard errors
+        assertEquals(n, sketch.estimate(), n * 0.05);
+    }
+
+    @Test
+    public void testErrorBelowLimitIsRejected() throws Exception {
+        new HyperLogLog(HyperLogLog.MIN_RELATIVE_ERROR);
+
+        try {
+            new HyperLogLog(0.001);
+            fail("an error which the sketch cannot achieve should not be accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -24,6 +24,7 @@ public class DistinctTest extends RippleTestCase {
         reduce("@list foo: 1 2 3");
         assertReducesTo(":foo", "(1 2 3)");
         assertReducesTo(":foo rdf:rest.", "(2 3)", "(2 3)");
+        assertReducesTo("(:foo (1 2 3) (1 2)) each. distinct.", "(1 2 3)", "(1 2)");
     }
 
     @Test
@@ -0,0 +1,67 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class GroupAggregationTest extends RippleTestCase {
+    @Test
+    public void testGroupByParity() throws Exception {
+        assertReducesTo("(1 2 3 4 5) (each.) (2 mod.) groupCount.", "(1 2 3 4 5) 1 3", "(1 2 3 4 5) 0 2");
+        assertReducesTo("(1 2 3 4 5) (each.) (2 mod.) groupSum.", "(1 2 3 4 5) 1 9", "(1 2 3 4 5) 0 6");
+        assertReducesTo("(1 2 3 4 5) (each.) (2 mod.) groupAvg.", "(1 2 3 4 5) 1 3.0", "(1 2 3 4 5) 0 3.0");
+        assertReducesTo("(1 2 3 4 5) (each.) (2 mod.) groupMin.", "(1 2 3 4 5) 1 1", "(1 2 3 4 5) 0 2");
+        assertReducesTo("(1 2 3 4 5) (each.) (2 mod.) groupMax.", "(1 2 3 4 5) 1 5", "(1 2 3 4 5) 0 4");
+        assertReducesTo("(1 2 3 4 5) (each.) (2 mod.) groupCollect.",
+                "(1 2 3 4 5) 1 (1 3 5)", "(1 2 3 4 5) 0 (2 4)");
+    }
+
+    @Test
+    public void testMixedValues() throws Exception {
+        // non-numeric values are ignored by numeric aggregates
+        assertReducesTo("(1 2.5 \"a\") (each.) (pop. 0) groupSum.", "(1 2.5 \"a\") 0 3.5");
+        assertReducesTo("(\"a\") (each.) (pop. 0) groupAvg.");
+        assertReducesTo("(\"a\") (each.) (pop. 0) groupSum.", "(\"a\") 0 0");
+
+        // other values are compared in Ripple's total order
+        assertReducesTo("(1 2.5 \"a\") (each.) (pop. 0) groupMax.", "(1 2.5 \"a\") 0 \"a\"");
+        assertReducesTo("(1 2.5 \"a\") (each.) (pop. 0) groupMin.", "(1 2.5 \"a\") 0 1");
+    }
+
+    @Test
+    public void testEmptyStream() throws Exception {
+        assertReducesTo("() (each.) () groupCount.");
+    }
+
+    @Test
+    public void testNumericSum() throws Exception {
+        NumericSum sum = new NumericSum();
+        assertNull(sum.getMean());
+        assertEquals(0, sum.getSum());
+
+        sum.add(1);
+        sum.add(2);
+        assertEquals(3, sum.getSum());
+        sum.add(3L);
+        assertEquals(6L, sum.getSum());
+        assertEquals(2.0, sum.getMean());
+
+        // integral sums which overflow a long become decimals
+        sum.add(Long.MAX_VALUE);
+        assertEquals(new BigDecimal(Long.MAX_VALUE).add(new BigDecimal(6)), sum.getSum());
+
+        sum = new NumericSum();
+        sum.add(1);
+        sum.add(0.5);
+        assertEquals(1.5, sum.getSum());
+        sum.add(new BigDecimal("0.25"));
+        assertEquals(new BigDecimal("1.75"), sum.getSum());
+    }
+}
@@ -0,0 +1,61 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class HeavyHittersTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        assertReducesTo("(1 2 3 2 1 1) (each.) 2 0.01 heavyHitters.", "1 3", "2 2");
+        assertReducesTo("(1 2 3 2 1 1) (each.) 0 0.01 heavyHitters.");
+        assertReducesTo("(\"a\" (1 2) \"a\" (1 2) (1 2)) (each.) 1 0.01 heavyHitters.", "(1 2) 3");
+    }
+
+    @Test
+    public void testLeastFrequentCandidateIsDisplaced() throws Exception {
+        assertReducesTo("(1 2 3 4 5 5 5 5) (each.) 1 0.01 heavyHitters.", "5 4");
+        assertReducesTo("(1 2 3 4 5 6 4 6 6 4 6) (each.) 2 0.01 heavyHitters.", "6 4", "4 3");
+
+        // memory is not reserved for a very large number of candidates
+        assertReducesTo("(1 2 1) (each.) 1000000000 0.01 heavyHitters.", "1 2", "2 1");
+    }
+
+    @Test
+    public void testMostFrequentComeFirst() throws Exception {
+        Collection<RippleList> results = reduce("(3 1 2 2 3 3) (each.) 3 0.01 heavyHitters.");
+        assertEquals(3, results.size());
+
+        Iterator<RippleList> iter = results.iterator();
+        for (int i = 3; i > 0; i--) {
+            RippleList l = iter.next();
+            assertEquals(i, modelConnection.toNumber(l.getFirst()).intValue());
+            assertEquals(i, modelConnection.toNumber(l.getRest().getFirst()).intValue());
+        }
+    }
+
+    @Test
+    public void testEstimatesAreBounded() throws Exception {
+        double epsilon = 0.001;
+        CountMinSketch sketch = new CountMinSketch(epsilon, 0.01);
+        int n = 100000;
+        long estimate = 0;
+        for (int i = 0; i < n; i++) {
+            // one item in ten is the same
+            estimate = sketch.add(0 == i % 10 ? -1 : i);
+        }
+
+        estimate = sketch.add(-1);
+        assertTrue(estimate >= n / 10 + 1);
+        assertTrue(estimate <= n / 10 + 1 + epsilon * n);
+    }
+}
@@ -1,8 +1,11 @@
 package net.fortytwo.ripple.libs.stream;
 
+import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.test.RippleTestCase;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
  */
@@ -19,4 +22,17 @@ public class IntersectTest extends RippleTestCase {
         // individual effects on the rest of the stack.
         assertReducesTo("(1 2) each (each. 2 mul.) intersect.", "2");
     }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        getTestModel();
+        Ripple.getConfiguration().setProperty(Ripple.JOIN_MEMORY_BUDGET, "3");
+
+        try {
+            assertReducesTo("((1 2) each.) (1 sqrt.) intersect.", "1");
+            assertEquals(0, reduce("((1 2 3 4) each.) ((1 2 3 4) each.) intersect.").size());
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.JOIN_MEMORY_BUDGET);
+        }
+    }
 }
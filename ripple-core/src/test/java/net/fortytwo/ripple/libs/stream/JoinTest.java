@@ -0,0 +1,45 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class JoinTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        assertReducesTo("((1 2 3) each.) ((2 3 4) each.) () join.", "2 2", "3 3");
+        assertReducesTo("((1 2 3) each.) ((4 5) each.) () join.");
+    }
+
+    @Test
+    public void testComputedKeys() throws Exception {
+        assertReducesTo("((1 2 3) each.) ((2 3 4) each.) (2 mod.) join.", "1 3", "2 2", "2 4", "3 3");
+
+        // a solution with several keys is paired on each of them
+        assertReducesTo("((1 2) each.) ((1 2) each.) ((0 1) each. add.) join.",
+                "1 1", "1 1", "1 2", "2 1", "2 2", "2 2");
+    }
+
+    @Test
+    public void testEffectsRestOfStack() throws Exception {
+        assertReducesTo("10 (1 add.) (2 add. 1 sub.) () join.", "11 11");
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        getTestModel();
+        Ripple.getConfiguration().setProperty(Ripple.JOIN_MEMORY_BUDGET, "3");
+
+        try {
+            assertReducesTo("((1 2) each.) (1) () join.", "1 1");
+            assertEquals(0, reduce("((1 2 3) each.) ((1 2 3) each.) () join.").size());
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.JOIN_MEMORY_BUDGET);
+        }
+    }
+}
@@ -1,8 +1,23 @@
 package net.fortytwo.ripple.libs.stream;
 
+import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.NullStackMapping;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.query.IterativeStackEvaluator;
+import net.fortytwo.ripple.query.ParallelStackEvaluator;
 import net.fortytwo.ripple.test.RippleTestCase;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Author: josh
  * Date: May 3, 2008
@@ -32,4 +47,77 @@ public class LimitTest extends RippleTestCase {
         assertReducesTo("42 2 limit.", "42");
         assertReducesTo("42 (dup. both.) {2} 1000 limit.", "42", "42", "42", "42");
     }
+
+    @Test
+    public void testLimitStopsUpstreamWork() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            AtomicInteger traced = new AtomicInteger(0);
+            Collector<RippleList> results = new Collector<>();
+
+            // 1000 solutions are available, but only the first 2 are ever traced
+            new IterativeStackEvaluator().apply(createLimitedStack(mc, traced), results, mc);
+            assertEquals(2, results.size());
+            assertEquals(2, traced.get());
+
+            traced.set(0);
+            results.clear();
+            ParallelStackEvaluator eval = new ParallelStackEvaluator(4, 0);
+            try {
+                eval.apply(createLimitedStack(mc, traced), results, mc);
+            } finally {
+                eval.shutDown();
+            }
+            assertEquals(2, results.size());
+            assertTrue(traced.get() < 1000);
+        } finally {
+            mc.close();
+        }
+    }
+
+    // (produce. trace. 2 limit.) where produce. yields 1000 solutions and trace. counts its arguments
+    private RippleList createLimitedStack(final ModelConnection mc,
+                                          final AtomicInteger traced) throws RippleException {
+        StackMapping produce = new TestMapping(0) {
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                for (int i = 0; i < 1000; i++) {
+                    solutions.accept(arg.push(i));
+                }
+            }
+        };
+
+        StackMapping trace = new TestMapping(1) {
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                traced.incrementAndGet();
+                solutions.accept(arg);
+            }
+        };
+
+        return createStack(mc, new Operator(produce), new Operator(trace), 2, new Limit(), Operator.OP);
+    }
+
+    private abstract class TestMapping implements StackMapping {
+        private final int arity;
+
+        public TestMapping(final int arity) {
+            this.arity = arity;
+        }
+
+        public int arity() {
+            return arity;
+        }
+
+        public boolean isTransparent() {
+            return true;
+        }
+
+        public StackMapping getInverse() throws RippleException {
+            return new NullStackMapping();
+        }
+    }
 }
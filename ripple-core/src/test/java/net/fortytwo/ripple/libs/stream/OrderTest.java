@@ -0,0 +1,89 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class OrderTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        assertOrdered("(3 1 2) each. order.", "1", "2", "3");
+        assertOrdered("10 (3 1 2) each. order.", "10 1", "10 2", "10 3");
+        assertOrdered("(\"b\" 2.5 \"a\" 2 3) each. order.", "2", "2.5", "3", "\"a\"", "\"b\"");
+    }
+
+    @Test
+    public void testOrderLimit() throws Exception {
+        assertOrdered("(3 1 2) each. 2 orderLimit.", "1", "2");
+        assertOrdered("10 (3 1 2) each. 5 orderLimit.", "10 1", "10 2", "10 3");
+        assertOrdered("(3 1 2) each. 0 orderLimit.");
+    }
+
+    @Test
+    public void testSpilledRunsAreMerged() throws Exception {
+        getTestModel();
+        Ripple.getConfiguration().setProperty(Ripple.ORDER_SPILL_THRESHOLD, "1");
+
+        try {
+            // more runs than are kept on disk at once
+            StringBuilder sb = new StringBuilder("(");
+            String[] expected = new String[100];
+            for (int i = 100; i > 0; i--) {
+                sb.append(" ").append(i);
+                expected[i - 1] = "" + i;
+            }
+            sb.append(") each. order.");
+            assertOrdered(sb.toString(), expected);
+
+            assertOrdered("(\"b\" rdf:type (2 1) 2.5 \"a\"@en dup) each. order.",
+                    "(2 1)", "2.5", "dup", "rdf:type", "\"a\"@en", "\"b\"");
+            assertOrdered("(3 1 2) each. 2 orderLimit.", "1", "2");
+
+            // stacks with pending operators cannot be written to disk, and are kept in memory
+            assertEquals(2, reduce("(2 1) each. (20 10) each. order.").size());
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.ORDER_SPILL_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testSpilledNumbersAreOrderedAsInMemory() throws Exception {
+        String query = "(3 -0.0e0 0 2.5 0.0e0 1.0e0 2 -1 10000000000 1.5 0.0) each. order.";
+        Collection<RippleList> inMemory = reduce(query);
+        assertEquals(11, inMemory.size());
+
+        Ripple.getConfiguration().setProperty(Ripple.ORDER_SPILL_THRESHOLD, "1");
+        try {
+            Collection<RippleList> spilled = reduce(query);
+            assertEquals(inMemory.size(), spilled.size());
+
+            Iterator<RippleList> iter = spilled.iterator();
+            for (RippleList expected : inMemory) {
+                assertRippleEquals(expected, iter.next());
+            }
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.ORDER_SPILL_THRESHOLD);
+        }
+    }
+
+    private void assertOrdered(final String from, final String... to) throws Exception {
+        Collection<RippleList> actual = reduce(from);
+        assertEquals(to.length, actual.size());
+
+        Iterator<RippleList> iter = actual.iterator();
+        for (String t : to) {
+            Collection<RippleList> expected = reduce(t);
+            assertEquals(1, expected.size());
+            assertRippleEquals(expected.iterator().next(), iter.next());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class QuantileTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        assertReducesTo("(5 1 4 2 3) (each.) 0.5 0.01 quantile.", "(5 1 4 2 3) 3");
+        assertReducesTo("(5 1 4 2 3) (each.) 0 0.01 quantile.", "(5 1 4 2 3) 1");
+        assertReducesTo("(5 1 4 2 3) (each.) 1 0.01 quantile.", "(5 1 4 2 3) 5");
+
+        // non-numeric solutions are ignored
+        assertReducesTo("(5 \"a\" 1) (each.) 1 0.01 quantile.", "(5 \"a\" 1) 5");
+        assertReducesTo("(\"a\") (each.) 0.5 0.01 quantile.");
+    }
+
+    @Test
+    public void testQuantileIsOneOfTheNumbers() throws Exception {
+        // the median of integers is an integer, not a double
+        Collection<RippleList> results = reduce("(1 2 3) (each.) 0.5 0.01 quantile.");
+        assertEquals(1, results.size());
+        assertEquals(2, results.iterator().next().getFirst());
+    }
+
+    @Test
+    public void testRankIsWithinErrorBound() throws Exception {
+        int n = 100000;
+        List<Integer> values = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(42));
+
+        QuantileSketch<Integer> sketch = new QuantileSketch<>(0.01, Comparator.naturalOrder());
+        for (int v : values) {
+            sketch.add(v);
+        }
+        assertEquals(n, sketch.getCount());
+
+        // the value at each rank is the rank itself
+        for (double q : new double[]{0.1, 0.5, 0.9}) {
+            assertEquals(q * n, (double) sketch.quantile(q), 3 * 0.01 * n);
+        }
+    }
+}
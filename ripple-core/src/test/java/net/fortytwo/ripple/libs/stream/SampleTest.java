@@ -0,0 +1,42 @@
+package net.fortytwo.ripple.libs.stream;
+
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class SampleTest extends RippleTestCase {
+    @Test
+    public void testSmallStreamsAreSampledInFull() throws Exception {
+        assertReducesTo("(1 2 3) (each.) 3 sample.", "1", "2", "3");
+        assertReducesTo("(1 2 3) (each.) 10 sample.", "1", "2", "3");
+        assertReducesTo("(1 2 3) (each.) 0 sample.");
+
+        // memory is not reserved for the whole of a very large sample
+        assertReducesTo("(1 2 3) (each.) 1000000000 sample.", "1", "2", "3");
+    }
+
+    @Test
+    public void testSampleIsDrawnFromSolutions() throws Exception {
+        Collection<RippleList> results = reduce("(1 2 3 4 5 6 7 8 9 10) (each.) 4 sample.");
+        assertEquals(4, results.size());
+
+        Set<Integer> distinct = new HashSet<>();
+        for (RippleList l : results) {
+            assertEquals(1, l.length());
+            int i = modelConnection.toNumber(l.getFirst()).intValue();
+            assertTrue(i >= 1 && i <= 10);
+            distinct.add(i);
+        }
+        assertEquals(4, distinct.size());
+    }
+}
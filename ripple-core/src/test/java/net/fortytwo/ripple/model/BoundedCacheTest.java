@@ -0,0 +1,67 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class BoundedCacheTest extends RippleTestCase {
+    @Test
+    public void testSmallCacheEvictsLeastRecentlyUsed() throws Exception {
+        List<Integer> evicted = new ArrayList<>();
+        BoundedCache<Integer, String> cache = new BoundedCache<>(2, (k, v) -> evicted.add(k));
+
+        cache.put(1, "one");
+        cache.put(2, "two");
+        assertEquals("one", cache.get(1));
+        cache.put(3, "three");
+
+        assertEquals(1, evicted.size());
+        assertEquals(2, (int) evicted.get(0));
+        assertNull(cache.get(2));
+        assertEquals("three", cache.get(3));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testConcurrentUseStaysWithinCapacity() throws Exception {
+        int capacity = 10000;
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(capacity);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t * 100000;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50000; i++) {
+                        cache.put(offset + i, i);
+                        cache.get(offset + i / 2);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.size() <= capacity);
+        assertTrue(cache.size() > capacity / 2);
+        assertEquals(200000, cache.getHits() + cache.getMisses());
+    }
+}
@@ -0,0 +1,146 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.io.RipplePrintStream;
+import net.fortytwo.ripple.libs.math.Mul;
+import net.fortytwo.ripple.libs.stack.Dup;
+import net.fortytwo.ripple.query.IterativeStackEvaluator;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class CompiledProgramTest extends RippleTestCase {
+    @Test
+    public void testOperatorsAreResolvedAtCompileTime() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            // (2 dup. mul.)
+            RippleList program = createQueue(mc, 2, new Dup(), Operator.OP, new Mul(), Operator.OP);
+            CompiledProgram compiled = CompiledProgram.compile(program, mc);
+            assertEquals(2, compiled.getOperatorCount());
+
+            Collector<RippleList> results = new Collector<>();
+            new IterativeStackEvaluator().apply(mc.list().push(new Operator(compiled)), results, mc);
+            assertEquals(1, results.size());
+            assertEquals(4, mc.toNumber(results.iterator().next().getFirst()).intValue());
+
+            // a trailing element without op is left alone
+            assertEquals(0, CompiledProgram.compile(createQueue(mc, new Dup()), mc).getOperatorCount());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testProgramsAreCached() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            ProgramCache cache = new ProgramCache(2);
+            RippleList p1 = program(mc, "p1", 1);
+            RippleList p2 = program(mc, "p2", 2);
+            RippleList p3 = program(mc, "p3", 3);
+
+            CompiledProgram c1 = cache.get(p1, mc);
+            assertSame(c1, cache.get(p1, mc));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+
+            // an equal list converted from the same RDF list shares the compiled program
+            assertSame(c1, cache.get(program(mc, "p1", 1), mc));
+            assertEquals(2, cache.getHits());
+
+            // the least recently used program is evicted
+            cache.get(p2, mc);
+            cache.get(p3, mc);
+            assertEquals(2, cache.size());
+            cache.get(p1, mc);
+            assertEquals(4, cache.getMisses());
+
+            cache.clear();
+            assertEquals(0, cache.size());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testOnlyProgramsWithAnRDFEquivalentAreCached() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            ProgramCache cache = new ProgramCache(10);
+
+            // a list built at runtime is not compiled
+            assertNull(cache.get(createQueue(mc, 1, new Dup(), Operator.OP), mc));
+            assertEquals(0, cache.size());
+
+            // a different list of the same RDF list, such as another branch, has a program of its own
+            CompiledProgram c1 = cache.get(program(mc, "branching", 1), mc);
+            CompiledProgram c2 = cache.get(program(mc, "branching", 2), mc);
+            assertNotSame(c1, c2);
+            assertEquals(2, cache.size());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testRedefinitionInvalidatesCompiledPrograms() throws Exception {
+        reduce("@prefix : <http://example.org/compiledProgramTest/>");
+        reduce("@list sq: dup. mul.");
+        reduce("@list quad: :sq. :sq.");
+        assertReducesTo("3 :sq.", "9");
+        assertReducesTo("2 :quad.", "16");
+
+        ProgramCache cache = getTestModel().getProgramCache();
+        assertTrue(cache.size() > 0);
+
+        reduce("@relist sq: dup. add.");
+        assertEquals(0, cache.size());
+        assertReducesTo("3 :sq.", "6");
+
+        // a program which is never fully reduced is unaffected by compilation
+        assertReducesTo("(1 dup. 2) apply.", "1 dup. 2");
+    }
+
+    @Test
+    public void testUnreducedCompiledStackIsPrinted() throws Exception {
+        reduce("@prefix : <http://example.org/compiledProgramTest/>");
+        reduce("@list unreduced: 2 dup. 1");
+
+        Collection<RippleList> results = reduce(":unreduced.");
+        assertEquals(1, results.size());
+        RippleList stack = results.iterator().next();
+
+        // the stack holds a resolved op, which is printed just as op would be
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        RipplePrintStream ps = new RipplePrintStream(new PrintStream(bos), getTestQueryEngine().getLexicon());
+        // Note: printing assumes diagrammatic order
+        stack.invert().printTo(ps, modelConnection, false);
+        assertEquals("2 dup. 1", bos.toString().trim());
+        assertTrue(stack.toString().contains(" op "));
+    }
+
+    // a program, as if converted from the given RDF list
+    private RippleList program(final ModelConnection mc,
+                               final String localName,
+                               final int n) throws Exception {
+        RippleList program = createQueue(mc, n, new Dup(), Operator.OP);
+        program.setRDFEquivalent(createIRI("http://example.org/compiledProgramTest/" + localName, mc));
+        return program;
+    }
+}
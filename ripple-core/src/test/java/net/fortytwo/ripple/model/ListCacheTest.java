@@ -0,0 +1,148 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ListCacheTest extends RippleTestCase {
+    @Test
+    public void testEvictionAndInvalidation() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            ListCache cache = new ListCache(2);
+            Value a = uri(mc, "a"), b = uri(mc, "b"), c = uri(mc, "c"), n = uri(mc, "n");
+            RippleList[] lists = new RippleList[]{createQueue(mc, 1, 2)};
+
+            cache.put(a, lists, Arrays.asList(a, n), cache.getGeneration());
+            cache.put(b, lists, Collections.singletonList(b), cache.getGeneration());
+            assertNotNull(cache.get(a));
+            assertNull(cache.get(c));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+
+            // the least recently used list is evicted
+            cache.put(c, lists, Arrays.asList(c, n), cache.getGeneration());
+            assertEquals(2, cache.size());
+            assertNull(cache.get(b));
+
+            // lists are invalidated through any of the nodes they depend on
+            cache.invalidate(n);
+            assertEquals(0, cache.size());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testConversionOverlappingInvalidationIsNotKept() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            ListCache cache = new ListCache(10);
+            Value a = uri(mc, "a"), n = uri(mc, "n");
+            RippleList[] lists = new RippleList[]{createQueue(mc, 1, 2)};
+
+            // the node is changed after the conversion has begun, but before its lists are put
+            long generation = cache.getGeneration();
+            cache.invalidate(n);
+            cache.put(a, lists, Arrays.asList(a, n), generation);
+            assertNull(cache.get(a));
+
+            cache.put(a, lists, Arrays.asList(a, n), cache.getGeneration());
+            assertNotNull(cache.get(a));
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testUncommittedListsAreNotShared() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        ModelConnection other = getTestModel().createConnection();
+
+        try {
+            ListCache cache = getTestModel().getListCache();
+            assertNotNull(cache);
+
+            IRI head = uri(mc, "uncommittedHead");
+            mc.add(head, RDF.FIRST, 1);
+            mc.add(head, RDF.REST, RDF.NIL);
+
+            // the list is seen by the connection which added it, but not kept for other connections
+            assertEquals(1, toList(head, mc).length());
+            assertNull(cache.get(head));
+
+            // to another connection, the head is not yet a list node, and converts to a "conceptual" list of itself
+            assertEquals(2, toList(head, other).length());
+
+            mc.commit();
+            assertEquals(1, toList(head, mc).length());
+            assertNotNull(cache.get(head));
+        } finally {
+            other.close();
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testChangedListsAreConvertedAgain() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            ListCache cache = getTestModel().getListCache();
+            assertNotNull(cache);
+
+            IRI head = uri(mc, "head"), second = uri(mc, "second");
+            mc.add(head, RDF.FIRST, 1);
+            mc.add(head, RDF.REST, second);
+            mc.add(second, RDF.FIRST, 2);
+            mc.add(second, RDF.REST, RDF.NIL);
+            mc.commit();
+
+            assertEquals(2, toList(head, mc).length());
+            long hits = cache.getHits();
+            assertEquals(2, toList(head, mc).length());
+            assertEquals(hits + 1, cache.getHits());
+
+            // a change to the rest of the list is seen
+            mc.remove(second, RDF.REST, RDF.NIL);
+            IRI third = uri(mc, "third");
+            mc.add(second, RDF.REST, third);
+            mc.add(third, RDF.FIRST, 3);
+            mc.add(third, RDF.REST, RDF.NIL);
+            mc.commit();
+
+            RippleList list = toList(head, mc);
+            assertEquals(3, list.length());
+            assertEquals(3, mc.toNumber(list.get(2)).intValue());
+        } finally {
+            mc.close();
+        }
+    }
+
+    private RippleList toList(final Value v, final ModelConnection mc) throws Exception {
+        Collector<RippleList> results = new Collector<>();
+        mc.toList(v, results);
+        assertEquals(1, results.size());
+        return results.iterator().next();
+    }
+
+    private IRI uri(final ModelConnection mc, final String localName) throws Exception {
+        return mc.valueOf(URI.create("http://example.org/listCacheTest/" + localName));
+    }
+}
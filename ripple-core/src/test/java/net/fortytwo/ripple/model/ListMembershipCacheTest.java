@@ -0,0 +1,80 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.ripple.test.RippleTestCase;
+import net.fortytwo.ripple.util.ModelConnectionHelper;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.vocabulary.RDF;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ListMembershipCacheTest extends RippleTestCase {
+    @Test
+    public void testAnswersAreCachedAndInvalidated() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            ListMembershipCache cache = mc.getListMembershipCache();
+            IRI a = uri(mc, "a"), b = uri(mc, "b");
+            mc.add(a, RDF.FIRST, 1);
+            mc.add(a, RDF.REST, RDF.NIL);
+            mc.commit();
+
+            long misses = cache.getMisses(), hits = cache.getHits();
+
+            // both positive and negative answers are kept
+            assertTrue(ModelConnectionHelper.isRDFList(a, mc));
+            assertFalse(ModelConnectionHelper.isRDFList(b, mc));
+            assertTrue(ModelConnectionHelper.isRDFList(a, mc));
+            assertFalse(ModelConnectionHelper.isRDFList(b, mc));
+            assertEquals(misses + 2, cache.getMisses());
+            assertEquals(hits + 2, cache.getHits());
+
+            // a change to an rdf:first statement is seen, even before it is committed
+            mc.add(b, RDF.FIRST, 2);
+            assertTrue(ModelConnectionHelper.isRDFList(b, mc));
+            mc.remove(a, RDF.FIRST, null);
+            assertFalse(ModelConnectionHelper.isRDFList(a, mc));
+            mc.commit();
+            assertEquals(0, cache.size());
+
+            // statements about other predicates leave answers in place
+            assertTrue(ModelConnectionHelper.isRDFList(b, mc));
+            mc.add(b, RDF.TYPE, RDF.LIST);
+            assertEquals(1, cache.size());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testExists() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            IRI s = uri(mc, "s"), p = uri(mc, "p");
+            assertFalse(mc.exists(s, null, null));
+            for (int i = 0; i < 100; i++) {
+                mc.add(s, p, i);
+            }
+            assertTrue(mc.exists(s, p, null));
+            mc.commit();
+            assertTrue(mc.exists(s, p, null));
+            assertTrue(mc.exists(null, p, mc.toRDF(42)));
+            assertFalse(mc.exists(p, null, null));
+        } finally {
+            mc.close();
+        }
+    }
+
+    private IRI uri(final ModelConnection mc, final String localName) throws Exception {
+        return mc.valueOf(URI.create("http://example.org/listMembershipCacheTest/" + localName));
+    }
+}
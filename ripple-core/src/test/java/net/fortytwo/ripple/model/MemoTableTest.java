@@ -0,0 +1,159 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.libs.stack.Dup;
+import net.fortytwo.ripple.libs.string.Sha1;
+import net.fortytwo.ripple.model.impl.sesame.SesameModel;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.memory.MemoryStore;
+
+import java.net.URI;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class MemoTableTest extends RippleTestCase {
+    @Test
+    public void testRepeatedApplicationsAreMemoized() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            MemoTable table = new MemoTable(10);
+            Object foo = mc.valueOf("foo", XMLSchema.STRING);
+
+            Collector<RippleList> results = new Collector<>();
+            table.applyMemoized(new Closure(new Sha1(), foo), createStack(mc, 1), results, mc);
+            assertEquals(0, table.getHits());
+            assertEquals(1, table.getMisses());
+
+            // an equal closure, applied to a different stack
+            table.applyMemoized(new Closure(new Sha1(), foo), createStack(mc, 2), results, mc);
+            assertEquals(1, table.getHits());
+            assertEquals(1, table.size());
+
+            assertEquals(2, results.size());
+            Iterator<RippleList> iter = results.iterator();
+            RippleList first = iter.next();
+            RippleList second = iter.next();
+            assertEquals(2, first.length());
+            assertEquals(1, mc.toNumber(first.getRest().getFirst()).intValue());
+            assertEquals(2, mc.toNumber(second.getRest().getFirst()).intValue());
+            assertEquals(first.getFirst(), second.getFirst());
+
+            // primitives which do not declare themselves functional are not memoized
+            table.applyMemoized(new Closure(new Dup(), 42), createStack(mc, 3), results, mc);
+            assertEquals(1, table.size());
+            assertEquals(3, results.size());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testWritesInvalidateMemoizedSolutions() throws Exception {
+        // make sure the environment is initialized for synchronous queries
+        getTestModel();
+
+        Sail sail = new MemoryStore();
+        sail.initialize();
+        Ripple.getConfiguration().setProperty(Ripple.MEMO_CAPACITY, "100");
+
+        try {
+            Model model = new SesameModel(sail);
+            ModelConnection mc = model.createConnection();
+
+            try {
+                MemoTable table = model.getMemoTable();
+                assertNotNull(table);
+
+                IRI a = mc.valueOf(URI.create("http://example.org/memoTableTest/a"));
+                IRI p = mc.valueOf(URI.create("http://example.org/memoTableTest/p"));
+                mc.add(a, p, mc.valueOf(URI.create("http://example.org/memoTableTest/b")));
+                mc.commit();
+
+                Closure query = new Closure(
+                        new RDFPredicateMapping(StatementPatternQuery.Pattern.SP_O, p, null), a);
+
+                Collector<RippleList> results = new Collector<>();
+                MemoTable.apply(query, mc.list(), results, mc);
+                MemoTable.apply(query, mc.list(), results, mc);
+                assertEquals(2, results.size());
+                assertEquals(1, table.getHits());
+
+                mc.add(a, p, mc.valueOf(URI.create("http://example.org/memoTableTest/c")));
+                assertEquals(0, table.size());
+                mc.commit();
+
+                results.clear();
+                MemoTable.apply(query, mc.list(), results, mc);
+                assertEquals(2, results.size());
+                assertEquals(1, table.size());
+            } finally {
+                mc.close();
+                model.shutDown();
+            }
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.MEMO_CAPACITY);
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testAsynchronousApplicationsAreRecordedCompletely() throws Exception {
+        // make sure the environment is initialized before switching to asynchronous queries
+        getTestModel();
+
+        Sail sail = new MemoryStore();
+        sail.initialize();
+        Ripple.getConfiguration().setProperty(Ripple.MEMO_CAPACITY, "100");
+        boolean a = Ripple.asynchronousQueries();
+        Ripple.enableAsynchronousQueries(true);
+
+        try {
+            Model model = new SesameModel(sail);
+            ModelConnection mc = model.createConnection();
+
+            try {
+                MemoTable table = model.getMemoTable();
+
+                IRI s = mc.valueOf(URI.create("http://example.org/memoTableTest/s"));
+                IRI p = mc.valueOf(URI.create("http://example.org/memoTableTest/p"));
+                mc.add(s, p, mc.valueOf(URI.create("http://example.org/memoTableTest/o1")));
+                mc.add(s, p, mc.valueOf(URI.create("http://example.org/memoTableTest/o2")));
+                mc.commit();
+
+                Closure query = new Closure(
+                        new RDFPredicateMapping(StatementPatternQuery.Pattern.SP_O, p, null), s);
+
+                Collector<RippleList> first = new Collector<>();
+                MemoTable.apply(query, mc.list(), first, mc);
+                mc.finish();
+                assertEquals(2, first.size());
+                assertEquals(1, table.size());
+
+                // the second application is answered from the table, with the same solutions
+                Collector<RippleList> second = new Collector<>();
+                MemoTable.apply(query, mc.list(), second, mc);
+                mc.finish();
+                assertEquals(1, table.getHits());
+                assertEquals(2, second.size());
+            } finally {
+                mc.close();
+                model.shutDown();
+            }
+        } finally {
+            Ripple.enableAsynchronousQueries(a);
+            Ripple.getConfiguration().remove(Ripple.MEMO_CAPACITY);
+            sail.shutDown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.vocabulary.RDF;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class OperatorCacheTest extends RippleTestCase {
+    @Test
+    public void testPredicateOperatorsAreShared() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            OperatorCache cache = mc.getModel().getOperatorCache();
+            IRI p = mc.valueOf(URI.create("http://example.org/operatorCacheTest/p"));
+
+            long hits = cache.getHits();
+            Operator first = resolve(p, mc);
+            assertTrue(first.getMapping() instanceof RDFPredicateMapping);
+            assertSame(first, resolve(p, mc));
+            assertEquals(hits + 1, cache.getHits());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testValuesWhichBecomeListsAreDequoted() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            IRI l = mc.valueOf(URI.create("http://example.org/operatorCacheTest/l"));
+            assertTrue(resolve(l, mc).getMapping() instanceof RDFPredicateMapping);
+
+            // the cached operator is passed over once the value is the head of a list
+            mc.add(l, RDF.FIRST, 42);
+            mc.add(l, RDF.REST, RDF.NIL);
+            assertTrue(resolve(l, mc).getMapping() instanceof ListDequotation);
+
+            mc.remove(l, RDF.FIRST, null);
+            assertTrue(resolve(l, mc).getMapping() instanceof RDFPredicateMapping);
+        } finally {
+            mc.close();
+        }
+    }
+
+    private Operator resolve(final Object v, final ModelConnection mc) throws Exception {
+        Collector<Operator> ops = new Collector<>();
+        Operator.createOperator(v, ops, mc);
+        assertEquals(1, ops.size());
+        return ops.iterator().next();
+    }
+}
@@ -0,0 +1,72 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.ripple.query.QueryEngine;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ProfilerTest extends RippleTestCase {
+    @Test
+    public void testPrimitivesAndPredicatesAreProfiled() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        ModelConnection mc = qe.getConnection();
+
+        assertNull(qe.getProfiler());
+        qe.setProfilingEnabled(true);
+
+        try {
+            assertEquals(3, reduce("(1 2 3) each. dup. mul.").size());
+
+            Profiler.Entry dup = find(qe.getProfiler(), "dup");
+            assertNotNull(dup);
+            assertEquals(3, dup.getInvocations());
+            assertEquals(3, dup.getSolutions());
+            assertTrue(dup.getWallNanos() > 0);
+
+            Profiler.Entry each = find(qe.getProfiler(), "each");
+            assertEquals(1, each.getInvocations());
+            assertEquals(3, each.getSolutions());
+
+            mc.add(mc.valueOf(URI.create("http://example.org/profilerTest/a")),
+                    mc.valueOf(URI.create("http://example.org/profilerTest/p")),
+                    mc.valueOf(URI.create("http://example.org/profilerTest/b")));
+            mc.commit();
+
+            // each query is profiled separately
+            assertEquals(1, reduce("<http://example.org/profilerTest/a> <http://example.org/profilerTest/p>.").size());
+            assertEquals(1, qe.getProfiler().getReport().size());
+            Profiler.Entry p = find(qe.getProfiler(), "profilerTest/p");
+            assertEquals(1, p.getInvocations());
+            assertEquals(1, p.getSolutions());
+            assertTrue(p.getGetStatementsCalls() > 0);
+
+            // the report is displayed with a command
+            reduce("@show profile");
+        } finally {
+            qe.setProfilingEnabled(false);
+        }
+
+        assertNull(qe.getProfiler());
+    }
+
+    private Profiler.Entry find(final Profiler profiler, final String name) {
+        List<Profiler.Entry> report = profiler.getReport();
+        for (Profiler.Entry e : report) {
+            if (e.getName().contains(name)) {
+                return e;
+            }
+        }
+
+        return null;
+    }
+}
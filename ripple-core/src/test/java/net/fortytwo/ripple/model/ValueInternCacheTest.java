@@ -0,0 +1,69 @@
+package net.fortytwo.ripple.model;
+
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ValueInternCacheTest extends RippleTestCase {
+    private static final String NS = "http://example.org/valueInternCacheTest/";
+
+    @Test
+    public void testValuesAreInternedUpToCapacity() throws Exception {
+        SimpleValueFactory vf = SimpleValueFactory.getInstance();
+        ValueInternCache cache = new ValueInternCache(2);
+
+        IRI a = vf.createIRI(NS + "a");
+        Value one = vf.createLiteral(1);
+        assertSame(a, cache.intern(a));
+        assertSame(one, cache.intern(one));
+        assertSame(a, cache.intern(vf.createIRI(NS + "a")));
+        assertSame(one, cache.intern(vf.createLiteral(1)));
+
+        // once the cache is full, values are passed along as they are
+        IRI b = vf.createIRI(NS + "b");
+        IRI b2 = vf.createIRI(NS + "b");
+        assertSame(b, cache.intern(b));
+        assertSame(b2, cache.intern(b2));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testCanonicalValuesAreIdentical() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            SimpleValueFactory vf = SimpleValueFactory.getInstance();
+            IRI a1 = vf.createIRI(NS + "a");
+            IRI a2 = vf.createIRI(NS + "a");
+            assertNotSame(a1, a2);
+
+            Object c = mc.canonicalValue(a1);
+            assertSame(c, mc.canonicalValue(a2));
+            assertTrue(mc.getValueInternCache().size() > 0);
+            assertEquals(0, mc.getComparator().compare(c, mc.canonicalValue(a2)));
+
+            // special values take precedence
+            assertTrue(mc.canonicalValue(RDF.NIL) instanceof RippleList);
+
+            // the connection lets go of its values when it commits
+            mc.commit();
+            assertEquals(0, mc.getValueInternCache().size());
+            assertSame(a1, mc.canonicalValue(a1));
+        } finally {
+            mc.close();
+        }
+    }
+}
@@ -1,11 +1,37 @@
 package net.fortytwo.ripple.model.impl.sesame;
 
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.StatementPatternQuery;
 import net.fortytwo.ripple.test.RippleTestCase;
 import org.junit.Test;
+import org.openrdf.IsolationLevels;
 import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.sail.SailConnection;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.helpers.SailConnectionWrapper;
+import org.openrdf.sail.helpers.SailWrapper;
+import org.openrdf.sail.memory.MemoryStore;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
@@ -105,5 +131,496 @@ mc.commit();
         assertEquals( mc.countStatements( ctxA ), 1 );
     }
 */
-}
 
+    @Test
+    public void testStatementsAreStreamed() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            IRI s = createIRI("http://example.org/modelConnectionTest/s", mc);
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", mc);
+            for (int i = 0; i < 1000; i++) {
+                mc.add(s, p, i);
+            }
+            mc.commit();
+
+            // statements may be read from the same connection while others are still being passed along
+            final int[] nested = {0};
+            Collector<Statement> results = new Collector<>();
+            Sink<Statement> sink = st -> {
+                mc.getStatements(s, p, st.getObject(), n -> nested[0]++);
+                results.accept(st);
+            };
+            mc.getStatements(s, p, null, sink);
+            assertEquals(1000, results.size());
+            assertEquals(1000, nested[0]);
+
+            // uncommitted changes are visible
+            mc.add(s, p, 1000);
+            results.clear();
+            mc.getStatements(s, p, null, results);
+            assertEquals(1001, results.size());
+
+            mc.remove(s, p, null);
+            mc.commit();
+            results.clear();
+            mc.getStatements(s, p, null, results);
+            assertEquals(0, results.size());
+        } finally {
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testWritesAreBuffered() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        ModelConnection other = getTestModel().createConnection();
+
+        try {
+            IRI s = createIRI("http://example.org/modelConnectionTest/buffered", mc);
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", mc);
+            IRI ctx = createIRI("http://example.org/modelConnectionTest/ctx", mc);
+            for (int i = 0; i < 100; i++) {
+                mc.add(s, p, i);
+            }
+            mc.add(s, p, 100, ctx);
+
+            // buffered changes are visible to the connection which made them, and only to that connection
+            assertEquals(101, count(mc, s));
+            assertEquals(0, count(other, s));
+            assertTrue(mc.exists(s, p, mc.toRDF(100)));
+
+            // a statement is removed from the buffer, or from the store, in the given context only
+            mc.remove(s, p, 100, (Object) null);
+            assertEquals(101, count(mc, s));
+            mc.remove(s, p, 100, ctx);
+            mc.remove(s, p, 99);
+            assertEquals(99, count(mc, s));
+            mc.commit();
+            assertEquals(99, count(other, s));
+
+            // statements in the store are hidden by buffered removals, and not duplicated by buffered additions
+            mc.remove(s, p, null);
+            mc.add(s, p, 0);
+            assertEquals(1, count(mc, s));
+            assertEquals(99, count(other, s));
+
+            // changes which are rolled back are never written
+            mc.reset(true);
+            assertEquals(99, count(mc, s));
+
+            mc.remove(s, p, null);
+            mc.commit();
+            assertEquals(0, count(other, s));
+        } finally {
+            other.close();
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testFullWriteBufferIsCommitted() throws Exception {
+        CountingSail sail = new CountingSail(true);
+        sail.initialize();
+        SesameModel model = new SesameModel(sail);
+
+        // the capacity is read when the connection is created
+        ModelConnection mc;
+        Ripple.getConfiguration().setProperty(Ripple.WRITE_BUFFER_CAPACITY, "1");
+        try {
+            mc = model.createConnection();
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.WRITE_BUFFER_CAPACITY);
+        }
+        ModelConnection other = model.createConnection();
+
+        try {
+            IRI s = createIRI("http://example.org/modelConnectionTest/full", mc);
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", mc);
+
+            // each write fills the buffer, which is committed before anything reads it
+            int commits = sail.commits;
+            for (int i = 0; i < 10; i++) {
+                mc.add(s, p, i);
+                assertEquals(commits + i + 1, sail.commits);
+                assertEquals(i + 1, count(mc, s));
+                assertEquals(i + 1, count(other, s));
+            }
+
+            mc.remove(s, p, 0);
+            assertEquals(9, count(mc, s));
+            assertEquals(9, count(other, s));
+
+            // a rollback discards only the changes which have not been committed
+            mc.reset(true);
+            assertEquals(9, count(mc, s));
+        } finally {
+            other.close();
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testOverlayReflectsChangesBufferedWhenCreated() throws Exception {
+        ValueFactory vf = SimpleValueFactory.getInstance();
+        IRI s = vf.createIRI("http://example.org/modelConnectionTest/overlaid");
+        IRI p = vf.createIRI("http://example.org/modelConnectionTest/p");
+        Statement st1 = vf.createStatement(s, p, vf.createLiteral(1));
+        Statement st2 = vf.createStatement(s, p, vf.createLiteral(2));
+        List<Statement> stored = new ArrayList<>();
+        stored.add(st1);
+        stored.add(st2);
+
+        WriteBuffer buffer = new WriteBuffer(vf);
+        CloseableIteration<Statement, SailException> iter
+                = buffer.overlay(new CloseableIteratorIteration<>(stored.iterator()), s, null, null);
+
+        // statements already in the Sail are added again, or removed, while they are being read
+        buffer.add(s, p, st1.getObject(), null);
+        buffer.remove(st2);
+
+        List<Statement> results = new ArrayList<>();
+        while (iter.hasNext()) {
+            results.add(iter.next());
+        }
+        iter.close();
+        assertEquals(stored, results);
+    }
+
+    @Test
+    public void testCommitsOnlyChanges() throws Exception {
+        CountingSail sail = new CountingSail(true);
+        sail.initialize();
+        SesameModel model = new SesameModel(sail);
+        ModelConnection mc = model.createConnection();
+
+        try {
+            assertFalse(model.isReadOnly());
+            IRI s = createIRI("http://example.org/modelConnectionTest/committed", mc);
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", mc);
+
+            // a connection which has only read from the Sail commits nothing
+            int commits = sail.commits;
+            assertEquals(0, count(mc, s));
+            mc.commit();
+            mc.commit();
+            assertEquals(commits, sail.commits);
+
+            mc.add(s, p, 1);
+            mc.commit();
+            assertEquals(commits + 1, sail.commits);
+            mc.commit();
+            assertEquals(commits + 1, sail.commits);
+            assertEquals(1, count(mc, s));
+        } finally {
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testCommitWithoutChangesSeesChangesOfOtherConnections() throws Exception {
+        // each transaction reads from a snapshot of the store
+        MemoryStore sail = new MemoryStore();
+        sail.setDefaultIsolationLevel(IsolationLevels.SNAPSHOT);
+        sail.initialize();
+        SesameModel model = new SesameModel(sail);
+
+        // without streaming, all reads take place in the transaction of the connection
+        Ripple.getConfiguration().setProperty(Ripple.STREAM_STATEMENTS, "false");
+        ModelConnection reader;
+        try {
+            reader = model.createConnection();
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.STREAM_STATEMENTS);
+        }
+        ModelConnection writer = model.createConnection();
+
+        try {
+            IRI s = createIRI("http://example.org/modelConnectionTest/seen", reader);
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", reader);
+            assertEquals(0, count(reader, s));
+
+            writer.add(s, p, 1);
+            writer.commit();
+
+            // a connection which has made no changes nonetheless moves on to a new transaction when it commits
+            reader.commit();
+            assertEquals(1, count(reader, s));
+        } finally {
+            reader.close();
+            writer.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testReadOnlyModelNeverCommits() throws Exception {
+        CountingSail sail = new CountingSail(false);
+        sail.initialize();
+        IRI s = sail.getValueFactory().createIRI("http://example.org/modelConnectionTest/readOnly");
+        IRI p = sail.getValueFactory().createIRI("http://example.org/modelConnectionTest/p");
+        SailConnection sc = sail.getBaseSail().getConnection();
+        try {
+            sc.begin();
+            sc.addStatement(s, p, s);
+            sc.commit();
+        } finally {
+            sc.close();
+        }
+
+        SesameModel model = new SesameModel(sail);
+        ModelConnection mc = model.createConnection();
+
+        try {
+            assertTrue(model.isReadOnly());
+
+            // changes are ignored, and all reads take place in a single transaction
+            mc.add(s, p, 1);
+            mc.remove(s, p, s);
+            mc.commit();
+            assertEquals(1, count(mc, s));
+            mc.commit();
+            assertEquals(0, sail.commits);
+        } finally {
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testReadsTakePlaceInTransactions() throws Exception {
+        WritingSail sail = new WritingSail();
+        sail.initialize();
+        SesameModel model = new SesameModel(sail);
+        Ripple.getConfiguration().setProperty(Ripple.MAX_IDLE_READ_CONNECTIONS, "1");
+        ModelConnection mc = model.createConnection();
+
+        try {
+            IRI s = createIRI("http://example.org/modelConnectionTest/written", mc);
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", mc);
+            for (int i = 0; i < 10; i++) {
+                mc.add(s, p, i);
+            }
+            mc.commit();
+
+            // each statement is read while the others are still being read, and each read writes to the Sail
+            final int[] nested = {0};
+            Collector<Statement> results = new Collector<>();
+            Sink<Statement> sink = st -> {
+                mc.getStatements(s, p, st.getObject(), n -> nested[0]++);
+                results.accept(st);
+            };
+            mc.getStatements(s, p, null, sink);
+            assertEquals(10, results.size());
+            assertEquals(10, nested[0]);
+
+            // two read connections were in use at once, but only one is kept open once the reads are done
+            assertEquals(2, sail.open);
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.MAX_IDLE_READ_CONNECTIONS);
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+
+        assertEquals(0, sail.open);
+    }
+
+    @Test
+    public void testReadOnlyModelReadsWithoutTransactionChurn() throws Exception {
+        CountingSail sail = new CountingSail(false);
+        sail.initialize();
+        IRI s = sail.getValueFactory().createIRI("http://example.org/modelConnectionTest/readOnlyChurn");
+        IRI p = sail.getValueFactory().createIRI("http://example.org/modelConnectionTest/p");
+        SailConnection sc = sail.getBaseSail().getConnection();
+        try {
+            sc.begin();
+            sc.addStatement(s, p, s);
+            sc.commit();
+        } finally {
+            sc.close();
+        }
+
+        SesameModel model = new SesameModel(sail);
+        ModelConnection mc = model.createConnection();
+
+        try {
+            int begins = sail.begins;
+            int rollbacks = sail.rollbacks;
+
+            // the pooled read connection keeps the transaction it began for its first read
+            for (int i = 0; i < 10; i++) {
+                assertEquals(1, count(mc, s));
+                mc.commit();
+            }
+            assertEquals(begins + 1, sail.begins);
+            assertEquals(rollbacks, sail.rollbacks);
+        } finally {
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testSubjectLookupsOfOnePredicateAreAnsweredTogether() throws Exception {
+        CountingSail sail = new CountingSail(true);
+        sail.initialize();
+        SesameModel model = new SesameModel(sail);
+        ModelConnection mc = model.createConnection();
+
+        try {
+            IRI p = createIRI("http://example.org/modelConnectionTest/p", mc);
+            List<StatementPatternQuery> queries = new ArrayList<>();
+            List<Sink> sinks = new ArrayList<>();
+            List<Collector<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                IRI s = createIRI("http://example.org/modelConnectionTest/batched" + i, mc);
+                for (int j = 0; j <= i; j++) {
+                    mc.add(s, p, j);
+                }
+
+                Collector<Object> c = new Collector<>();
+                queries.add(new StatementPatternQuery(s, p, null));
+                sinks.add(c);
+                results.add(c);
+            }
+            mc.commit();
+
+            int evaluations = sail.evaluations;
+            int gets = sail.gets;
+            mc.query(queries, sinks, false);
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i + 1, results.get(i).size());
+            }
+            assertEquals(evaluations + 1, sail.evaluations);
+            assertEquals(gets, sail.gets);
+        } finally {
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    private int count(final ModelConnection mc, final IRI subj) throws Exception {
+        Collector<Statement> results = new Collector<>();
+        mc.getStatements(subj, null, null, results);
+        return results.size();
+    }
+
+    // a memory store which writes whenever statements are read from it, and counts its open connections
+    private static class WritingSail extends SailWrapper {
+        private int open = 0;
+
+        public WritingSail() {
+            super(new MemoryStore());
+        }
+
+        @Override
+        public SailConnection getConnection() throws SailException {
+            synchronized (this) {
+                open++;
+            }
+
+            return new SailConnectionWrapper(super.getConnection()) {
+                @Override
+                public CloseableIteration<? extends Statement, SailException> getStatements(
+                        final Resource subj, final IRI pred, final Value obj, final boolean includeInferred,
+                        final Resource... contexts) throws SailException {
+                    // fails unless the connection has an active transaction
+                    removeStatements(null, null, null, getValueFactory().createIRI("http://example.org/cache"));
+                    return super.getStatements(subj, pred, obj, includeInferred, contexts);
+                }
+
+                @Override
+                public void close() throws SailException {
+                    synchronized (WritingSail.this) {
+                        open--;
+                    }
+                    super.close();
+                }
+            };
+        }
+    }
+
+    // a memory store which counts the transactions of its connections
+    private static class CountingSail extends SailWrapper {
+        private final boolean writable;
+        private int commits = 0;
+        private int begins = 0;
+        private int rollbacks = 0;
+        private int evaluations = 0;
+        private int gets = 0;
+
+        public CountingSail(final boolean writable) {
+            super(new MemoryStore());
+            this.writable = writable;
+        }
+
+        @Override
+        public boolean isWritable() throws SailException {
+            return writable;
+        }
+
+        @Override
+        public SailConnection getConnection() throws SailException {
+            return new SailConnectionWrapper(super.getConnection()) {
+                @Override
+                public void commit() throws SailException {
+                    synchronized (CountingSail.this) {
+                        commits++;
+                    }
+                    super.commit();
+                }
+
+                @Override
+                public void begin() throws SailException {
+                    synchronized (CountingSail.this) {
+                        begins++;
+                    }
+                    super.begin();
+                }
+
+                @Override
+                public CloseableIteration<? extends BindingSet, QueryEvaluationException> evaluate(
+                        final TupleExpr tupleExpr,
+                        final Dataset dataset,
+                        final BindingSet bindings,
+                        final boolean includeInferred) throws SailException {
+                    synchronized (CountingSail.this) {
+                        evaluations++;
+                    }
+                    return super.evaluate(tupleExpr, dataset, bindings, includeInferred);
+                }
+
+                @Override
+                public CloseableIteration<? extends Statement, SailException> getStatements(
+                        final Resource subj,
+                        final IRI pred,
+                        final Value obj,
+                        final boolean includeInferred,
+                        final Resource... contexts) throws SailException {
+                    synchronized (CountingSail.this) {
+                        gets++;
+                    }
+                    return super.getStatements(subj, pred, obj, includeInferred, contexts);
+                }
+
+                @Override
+                public void rollback() throws SailException {
+                    synchronized (CountingSail.this) {
+                        rollbacks++;
+                    }
+                    super.rollback();
+                }
+            };
+        }
+    }
+}
@@ -1,7 +1,25 @@
 package net.fortytwo.ripple.model.impl.sesame;
 
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.io.RipplePrintStream;
+import net.fortytwo.ripple.model.Model;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.RippleType;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.model.types.NumberType;
+import net.fortytwo.ripple.model.types.SimpleType;
 import net.fortytwo.ripple.test.RippleTestCase;
 import org.junit.Test;
+import org.openrdf.model.Value;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.memory.MemoryStore;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author Joshua Shinavier (http://fortytwo.net)
@@ -11,5 +29,73 @@ public class ModelTest extends RippleTestCase {
     public void testModelConstructor() throws Exception {
         getTestModel();
     }
-}
 
+    @Test
+    public void testTypeDispatch() throws Exception {
+        // make sure the environment is initialized
+        getTestModel();
+
+        // use a fresh model, as the shared test model should not see the registered type
+        Sail sail = new MemoryStore();
+        sail.initialize();
+        Model model = new SesameModel(sail);
+
+        try {
+            // a type registered for a superclass is found for its subclasses
+            assertTrue(model.getTypeOf(42) instanceof NumberType);
+            assertTrue(model.getTypeOf(42L) instanceof NumberType);
+
+            // a class which has already been found to be unmapped is mapped once a type is registered for it
+            assertNull(model.getTypeOf(new SpecialThing()));
+            ThingType type = new ThingType();
+            model.register(type);
+            assertSame(type, model.getTypeOf(new SpecialThing()));
+            assertSame(type, model.getTypeOf(new Thing()));
+
+            // dispatch is safe for concurrent use
+            assertEquals(10000, IntStream.range(0, 10000).parallel()
+                    .filter(i -> model.getTypeOf(0 == i % 2 ? new SpecialThing() : new Thing()) == type)
+                    .count());
+        } finally {
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    private static class Thing {
+    }
+
+    private static class SpecialThing extends Thing {
+    }
+
+    private static class ThingType extends SimpleType<Thing> {
+        public ThingType() {
+            super(Thing.class);
+        }
+
+        public boolean isInstance(final Thing instance) {
+            return true;
+        }
+
+        public Value toRDF(final Thing instance, final ModelConnection mc) throws RippleException {
+            return null;
+        }
+
+        public StackMapping getMapping(final Thing instance) {
+            return null;
+        }
+
+        public void print(final Thing instance, final RipplePrintStream p, final ModelConnection mc)
+                throws RippleException {
+            p.print("thing");
+        }
+
+        public RippleType.Category getCategory() {
+            return RippleType.Category.OTHER_RESOURCE;
+        }
+
+        public int compare(final Thing o1, final Thing o2, final ModelConnection mc) {
+            return 0;
+        }
+    }
+}
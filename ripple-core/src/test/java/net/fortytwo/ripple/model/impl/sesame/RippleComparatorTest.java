@@ -2,10 +2,16 @@ package net.fortytwo.ripple.model.impl.sesame;
 
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.NullStackMapping;
+import net.fortytwo.ripple.model.RippleComparator;
+import net.fortytwo.ripple.model.RippleList;
 import net.fortytwo.ripple.model.StackMappingWrapper;
 import net.fortytwo.ripple.test.RippleTestCase;
 import org.junit.Test;
+import org.openrdf.model.IRI;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
 
+import java.math.BigDecimal;
 import java.util.Comparator;
 
 import static org.junit.Assert.assertEquals;
@@ -49,6 +55,41 @@ public class RippleComparatorTest extends RippleTestCase {
         mc.close();
     }
 
+    @Test
+    public void testHashIsConsistentWithComparison() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        try {
+            RippleComparator c = mc.getComparator();
+            Object[][] equal = {
+                    {42, 42.0},
+                    {42, mc.toRDF(42)},
+                    {42L, new BigDecimal("42.0")},
+                    {"foo", mc.valueOf("foo", XMLSchema.STRING)},
+                    {mc.valueOf("foo", "en"), mc.valueOf("foo", "en")},
+                    {createStack(mc, 1, "two"), createStack(mc, 1.0, mc.valueOf("two", XMLSchema.STRING))}};
+
+            for (Object[] pair : equal) {
+                assertEquals(0, c.compare(pair[0], pair[1]));
+                assertEquals(c.hash(pair[0]), c.hash(pair[1]));
+            }
+
+            // a resource at the head of an RDF list hashes like the list
+            IRI head = mc.valueOf(java.net.URI.create("http://example.org/rippleComparatorTest/head"));
+            mc.add(head, RDF.FIRST, 1);
+            mc.add(head, RDF.REST, RDF.NIL);
+            RippleList list = createStack(mc, 1);
+            assertEquals(0, c.compare(head, list));
+            assertEquals(c.hash(head), c.hash(list));
+
+            // hashes are kept with the lists
+            RippleList longer = list.push(2);
+            assertEquals(c.hashList(longer), c.hashList(createStack(mc, 1, 2)));
+        } finally {
+            mc.close();
+        }
+    }
+
     @Test
     public void testCompareNegativeZero() throws Exception {
         ModelConnection mc = getTestModel().createConnection();
@@ -3,15 +3,20 @@ package net.fortytwo.ripple.model.impl.sesame;
 import net.fortytwo.flow.Collector;
 import net.fortytwo.flow.Sink;
 import net.fortytwo.flow.rdf.SesameInputAdapter;
+import net.fortytwo.ripple.Ripple;
 import net.fortytwo.ripple.RippleException;
 import net.fortytwo.ripple.io.RDFImporter;
 import net.fortytwo.ripple.model.ModelConnection;
 import net.fortytwo.ripple.model.RippleList;
 import net.fortytwo.ripple.test.RippleTestCase;
 import org.junit.Test;
+import org.openrdf.model.IRI;
 import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.sail.Sail;
+import org.openrdf.sail.memory.MemoryStore;
 
 import java.io.InputStream;
 import java.util.Iterator;
@@ -162,5 +167,166 @@ public class RippleListTest extends RippleTestCase {
         assertEquals(lresult.length(), 0);
         assertRippleEquals(lresult, mc.list());
     }
-}
 
+    @Test
+    public void testLazyFromRDF() throws Exception {
+        // make sure the environment is initialized
+        getTestModel();
+
+        Sail sail = new MemoryStore();
+        sail.initialize();
+        SesameModel model = createLazyModel(sail);
+        ModelConnection mc = model.createConnection();
+
+        try {
+            // a long list
+            int length = 2000;
+            IRI head = createIRI("urn:test.RippleListTest.LazyFromRdfTest#node0", mc);
+            IRI node = head;
+            for (int i = 0; i < length; i++) {
+                IRI next = createIRI("urn:test.RippleListTest.LazyFromRdfTest#node" + (i + 1), mc);
+                mc.add(node, RDF.FIRST, i);
+                mc.add(node, RDF.REST, i == length - 1 ? RDF.NIL : next);
+                node = next;
+            }
+            mc.commit();
+
+            Collector<RippleList> created = new Collector<>();
+            mc.toList(head, created);
+            assertEquals(1, created.size());
+            RippleList list = created.iterator().next();
+            assertTrue(list instanceof LazySesameList);
+            assertEquals(0, mc.toNumber(list.getFirst()).intValue());
+            assertEquals(1, mc.toNumber(list.getRest().getFirst()).intValue());
+
+            assertEquals(length, list.length());
+
+            // a node without a first ends the list, as it does when the list is converted all at once
+            IRI tenth = createIRI("urn:test.RippleListTest.LazyFromRdfTest#node10", mc);
+            mc.remove(tenth, RDF.FIRST, 10);
+            mc.commit();
+            created.clear();
+            mc.toList(head, created);
+            assertEquals(1, created.size());
+            // ten elements, followed by the "conceptual" list of the node without a first
+            assertEquals(12, created.iterator().next().length());
+            mc.add(tenth, RDF.FIRST, 10);
+            mc.commit();
+
+            // a list which branches far from its head produces every branch
+            IRI hundredth = createIRI("urn:test.RippleListTest.LazyFromRdfTest#node100", mc);
+            mc.add(hundredth, RDF.FIRST, -100);
+            mc.commit();
+            created.clear();
+            mc.toList(head, created);
+            assertEquals(2, created.size());
+            for (RippleList l : created) {
+                assertEquals(length, l.length());
+            }
+            mc.remove(hundredth, RDF.FIRST, -100);
+            mc.commit();
+
+            // a lazy list may be read after the connection which created it has been closed
+            ModelConnection other = model.createConnection();
+            created.clear();
+            other.toList(head, created);
+            other.close();
+            RippleList detached = created.iterator().next();
+            assertEquals(length, detached.length());
+            assertEquals(length - 1, mc.toNumber(detached.get(length - 1)).intValue());
+
+            // a list which branches at its head produces every branch
+            InputStream is = RippleListTest.class.getResourceAsStream("listTest.ttl");
+            SesameInputAdapter.parse(is, new RDFImporter(mc), "", RDFFormat.TURTLE);
+            mc.commit();
+            is.close();
+
+            created.clear();
+            mc.toList(createIRI("urn:test.RippleListTest.FromRdfTest#firstAndRestBranchingList", mc), created);
+            assertEquals(4, created.size());
+            for (RippleList l : created) {
+                assertEquals(2, l.length());
+            }
+        } finally {
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    @Test
+    public void testBrokenListIsNotTruncated() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+
+        Sail sail = new MemoryStore();
+        sail.initialize();
+        SesameModel model = createLazyModel(sail);
+        ModelConnection lazy = model.createConnection();
+
+        try {
+            // the second node has a first, but no rest
+            for (ModelConnection c : new ModelConnection[]{mc, lazy}) {
+                IRI head = createIRI("urn:test.RippleListTest.BrokenListTest#node0", c);
+                IRI second = createIRI("urn:test.RippleListTest.BrokenListTest#node1", c);
+                c.add(head, RDF.FIRST, 0);
+                c.add(head, RDF.REST, second);
+                c.add(second, RDF.FIRST, 1);
+                c.commit();
+            }
+            IRI head = createIRI("urn:test.RippleListTest.BrokenListTest#node0", mc);
+
+            // the list is dropped, whether or not lists are converted lazily
+            Collector<RippleList> created = new Collector<>();
+            mc.toList(head, created);
+            assertEquals(0, created.size());
+            lazy.toList(head, created);
+            assertEquals(0, created.size());
+        } finally {
+            lazy.close();
+            model.shutDown();
+            sail.shutDown();
+            mc.close();
+        }
+    }
+
+    @Test
+    public void testCyclicListIsDroppedWhenConvertedLazily() throws Exception {
+        // make sure the environment is initialized
+        getTestModel();
+
+        Sail sail = new MemoryStore();
+        sail.initialize();
+        SesameModel model = createLazyModel(sail);
+        ModelConnection mc = model.createConnection();
+
+        try {
+            // (1 2 1 2 ...)
+            IRI a = createIRI("urn:test.RippleListTest.CyclicListTest#a", mc);
+            IRI b = createIRI("urn:test.RippleListTest.CyclicListTest#b", mc);
+            mc.add(a, RDF.FIRST, 1);
+            mc.add(a, RDF.REST, b);
+            mc.add(b, RDF.FIRST, 2);
+            mc.add(b, RDF.REST, a);
+            mc.commit();
+
+            // as when the list is converted all at once, the cycle is not followed
+            Collector<RippleList> created = new Collector<>();
+            mc.toList(a, created);
+            assertEquals(0, created.size());
+        } finally {
+            mc.close();
+            model.shutDown();
+            sail.shutDown();
+        }
+    }
+
+    // the setting is read once, when the model is created
+    private SesameModel createLazyModel(final Sail sail) throws RippleException {
+        Ripple.getConfiguration().setProperty(Ripple.LAZY_LISTS_FROM_RDF, "true");
+        try {
+            return new SesameModel(sail);
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.LAZY_LISTS_FROM_RDF);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.libs.math.Abs;
+import net.fortytwo.ripple.libs.math.Add;
+import net.fortytwo.ripple.libs.math.Sqrt;
+import net.fortytwo.ripple.libs.stack.Dup;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.NullStackMapping;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class IterativeStackEvaluatorTest extends RippleTestCase {
+    @Test
+    public void testSimple() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        Evaluator<RippleList, RippleList, ModelConnection> eval = new IterativeStackEvaluator();
+        Collector<RippleList> expected = new Collector<>();
+        final Collector<RippleList> actual = new Collector<>();
+        RippleList input;
+
+        Object op = Operator.OP;
+        Object
+                dup = new Dup(),
+                sqrt = new Sqrt(),
+                abs = new Abs();
+        Number
+                minusone = -1.0,
+                one = 1,
+                two = 2;
+
+        // passive stack passes through unchanged
+        // (1 2) -> (1 2)
+        input = createStack(mc, one, two);
+        expected.clear();
+        expected.accept(createStack(mc, one, two));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // replacement rules are applied at the head of the stack
+        // (1 /dup) -> (1 1)
+        input = createStack(mc, one, dup, op);
+        expected.clear();
+        expected.accept(createStack(mc, one, one));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // evaluation is recursive
+        // (1 /dup /dup) -> (1 1 1)
+        input = createStack(mc, one, dup, op, dup, op);
+        expected.clear();
+        expected.accept(createStack(mc, one, one, one));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // evaluator drops anything which can't be reduced to head-normal form
+        // (/dup) ->
+        input = createStack(mc, dup, op);
+        expected.clear();
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // evaluator drops the nil list
+        // () ->
+        input = mc.list();
+        expected.clear();
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // distributive reduction
+        // (1 /sqrt /dup) -> (1 1), (-1, -1)
+        input = createStack(mc, one, sqrt, op, dup, op);
+        expected.clear();
+        expected.accept(createStack(mc, one, one));
+        expected.accept(createStack(mc, minusone, minusone));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // no eager reduction
+        // (2 /dup 1) -> (2 /dup 1)
+        input = createStack(mc, two, dup, op, one);
+        expected.clear();
+        expected.accept(createStack(mc, two, dup, op, one));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // lists are opaque
+        // ((2 /dup)) -> ((2 /dup))
+        input = createStack(mc, createQueue(mc, two, dup, op));
+        expected.clear();
+        expected.accept(createStack(mc, createQueue(mc, two, dup, op)));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // list dequotation
+        // (2 /(1 /dup)) -> (2 1 1)
+        input = createStack(mc, two, createQueue(mc, one, dup, op), op);
+        expected.clear();
+        expected.accept(createStack(mc, two, one, one));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        // results are not necessarily a set
+        // (1 /sqrt /abs)
+        input = createStack(mc, one, sqrt, op, abs, op);
+        expected.clear();
+        expected.accept(createStack(mc, one));
+        expected.accept(createStack(mc, one));
+        actual.clear();
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        mc.close();
+    }
+
+    @Test
+    public void testDeepProgramDoesNotOverflowJavaStack() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        Evaluator<RippleList, RippleList, ModelConnection> eval = new IterativeStackEvaluator();
+        Collector<RippleList> expected = new Collector<>();
+        final Collector<RippleList> actual = new Collector<>();
+
+        Object op = Operator.OP;
+        Object add = new Add();
+        int depth = 100000;
+
+        // (0 1 /add 1 /add ... 1 /add) -> (100000)
+        RippleList input = createStack(mc, 0);
+        for (int i = 0; i < depth; i++) {
+            input = input.push(1).push(add).push(op);
+        }
+
+        expected.accept(createStack(mc, depth));
+        eval.apply(input, actual, mc);
+        assertCollectorsEqual(expected, actual);
+
+        mc.close();
+    }
+
+    @Test
+    public void testSolutionsOfHighFanOutMappingAreReducedAsTheyArrive() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        Evaluator<RippleList, RippleList, ModelConnection> eval = new IterativeStackEvaluator();
+        final Collector<RippleList> actual = new Collector<>();
+        final int fanOut = 10000;
+        final int[] produced = {0};
+        final int[] producedAtFirstSolution = {-1};
+
+        // a nullary mapping which pushes each of 0 ... fanOut - 1 in turn
+        StackMapping range = new StackMapping() {
+            public int arity() {
+                return 0;
+            }
+
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                for (int i = 0; i < fanOut; i++) {
+                    produced[0]++;
+                    solutions.accept(arg.push(i));
+                }
+            }
+
+            public boolean isTransparent() {
+                return true;
+            }
+
+            public StackMapping getInverse() {
+                return new NullStackMapping();
+            }
+        };
+
+        Sink<RippleList> sink = stack -> {
+            if (producedAtFirstSolution[0] < 0) {
+                producedAtFirstSolution[0] = produced[0];
+            }
+            actual.accept(stack);
+        };
+
+        // (/range /dup) -> (0 0), (1 1), ...
+        RippleList input = createStack(mc, new Operator(range), new Dup(), Operator.OP);
+        eval.apply(input, sink, mc);
+
+        assertEquals(fanOut, actual.size());
+        int i = 0;
+        for (RippleList stack : actual) {
+            assertEquals(i, ((Number) stack.getFirst()).intValue());
+            assertEquals(i, ((Number) stack.getRest().getFirst()).intValue());
+            i++;
+        }
+
+        // the first solutions were reduced before the mapping had produced all of its solutions
+        assertTrue(producedAtFirstSolution[0] < fanOut);
+
+        mc.close();
+    }
+
+    @Test
+    public void testDeeplyNestedHighFanOutDoesNotOverflowJavaStack() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        Evaluator<RippleList, RippleList, ModelConnection> eval = new IterativeStackEvaluator();
+        final Collector<RippleList> actual = new Collector<>();
+        int depth = 5000;
+
+        // a nullary mapping whose first solution is its argument, followed by enough dead ends to fill a buffer,
+        // so that the rest of the program is reduced within its application
+        StackMapping fan = new StackMapping() {
+            public int arity() {
+                return 0;
+            }
+
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                solutions.accept(arg);
+                for (int i = 0; i < 1000; i++) {
+                    solutions.accept(mc.list());
+                }
+            }
+
+            public boolean isTransparent() {
+                return true;
+            }
+
+            public StackMapping getInverse() {
+                return new NullStackMapping();
+            }
+        };
+
+        // (1 /fan /fan ... /fan) -> (1)
+        RippleList input = createStack(mc, 1);
+        for (int i = 0; i < depth; i++) {
+            input = input.push(new Operator(fan));
+        }
+
+        eval.apply(input, actual, mc);
+        assertEquals(1, actual.size());
+        assertEquals(1, ((Number) actual.iterator().next().getFirst()).intValue());
+
+        mc.close();
+    }
+
+    @Test
+    public void testSynchronousEvaluationDoesNotAffectOtherThreads() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        Evaluator<RippleList, RippleList, ModelConnection> eval = new IterativeStackEvaluator(true);
+        final Collector<RippleList> actual = new Collector<>();
+        final boolean[] asynchronousInMapping = {true};
+        final boolean[] asynchronousElsewhere = {false};
+
+        // a nullary mapping which observes the query mode of its own thread and of another
+        StackMapping probe = new StackMapping() {
+            public int arity() {
+                return 0;
+            }
+
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                asynchronousInMapping[0] = Ripple.asynchronousQueries();
+                Thread t = new Thread(() -> asynchronousElsewhere[0] = Ripple.asynchronousQueries());
+                t.start();
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    throw new RippleException(e);
+                }
+                solutions.accept(arg);
+            }
+
+            public boolean isTransparent() {
+                return true;
+            }
+
+            public StackMapping getInverse() {
+                return new NullStackMapping();
+            }
+        };
+
+        boolean a = Ripple.asynchronousQueries();
+        Ripple.enableAsynchronousQueries(true);
+        try {
+            eval.apply(createStack(mc, 1, new Operator(probe)), actual, mc);
+
+            assertEquals(1, actual.size());
+            assertFalse(asynchronousInMapping[0]);
+            assertTrue(asynchronousElsewhere[0]);
+            assertTrue(Ripple.asynchronousQueries());
+        } finally {
+            Ripple.enableAsynchronousQueries(a);
+        }
+
+        mc.close();
+    }
+}
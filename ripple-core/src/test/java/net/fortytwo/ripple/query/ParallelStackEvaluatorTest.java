@@ -0,0 +1,293 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.flow.Sink;
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.libs.math.Abs;
+import net.fortytwo.ripple.libs.math.Sqrt;
+import net.fortytwo.ripple.libs.stack.Dup;
+import net.fortytwo.ripple.libs.stream.Each;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.NullStackMapping;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.model.StackMapping;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.io.PrintStream;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class ParallelStackEvaluatorTest extends RippleTestCase {
+    @Test
+    public void testSolutionsAgreeWithIterativeEvaluator() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        Evaluator<RippleList, RippleList, ModelConnection> iterative = new IterativeStackEvaluator();
+
+        Object op = Operator.OP;
+        Object
+                dup = new Dup(),
+                sqrt = new Sqrt(),
+                abs = new Abs(),
+                each = new Each();
+
+        RippleList range = mc.list();
+        for (int i = 99; i >= 0; i--) {
+            range = range.push(i);
+        }
+
+        RippleList[] inputs = {
+                createStack(mc, 1, 2),
+                createStack(mc, 1, dup, op, dup, op),
+                createStack(mc, dup, op),
+                createStack(mc, 1, sqrt, op, dup, op),
+                createStack(mc, 2, dup, op, 1),
+                createStack(mc, 2, createQueue(mc, 1, dup, op), op),
+                createStack(mc, 1, sqrt, op, abs, op),
+                createStack(mc, range, each, op, sqrt, op, abs, op, dup, op)};
+
+        // any cutoff, including one which forks every branch, gives the same solutions
+        for (int cutoff : new int[]{0, 1, 16}) {
+            ParallelStackEvaluator parallel = new ParallelStackEvaluator(4, cutoff);
+            try {
+                for (RippleList input : inputs) {
+                    Collector<RippleList> expected = new Collector<>();
+                    Collector<RippleList> actual = new Collector<>();
+                    iterative.apply(input, expected, mc);
+                    parallel.apply(input, actual, mc);
+                    assertCollectorsEqual(expected, actual);
+                }
+            } finally {
+                parallel.shutDown();
+            }
+        }
+
+        mc.close();
+    }
+
+    @Test
+    public void testWideFanOut() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        ParallelStackEvaluator eval = new ParallelStackEvaluator(4, 1);
+        Collector<RippleList> expected = new Collector<>();
+        final Collector<RippleList> actual = new Collector<>();
+
+        Object op = Operator.OP;
+        Object
+                dup = new Dup(),
+                each = new Each();
+        int width = 1000;
+
+        // ((0 1 ... 999) /each /dup) -> (0 0), (1 1), ... (999 999)
+        RippleList list = mc.list();
+        for (int i = width - 1; i >= 0; i--) {
+            list = list.push(i);
+            expected.accept(createStack(mc, i, i));
+        }
+
+        RippleList input = createStack(mc, list, each, op, dup, op);
+        try {
+            eval.apply(input, actual, mc);
+        } finally {
+            eval.shutDown();
+        }
+        assertCollectorsEqual(expected, actual);
+
+        mc.close();
+    }
+
+    @Test
+    public void testSolutionsOfHighFanOutMappingAreReducedAsTheyArrive() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        final int fanOut = 10000;
+        final AtomicInteger produced = new AtomicInteger(0);
+        final AtomicInteger producedAtFirstSolution = new AtomicInteger(-1);
+        final Collector<RippleList> actual = new Collector<>();
+
+        // a nullary mapping which pushes each of 0 ... fanOut - 1 in turn
+        StackMapping range = new StackMapping() {
+            public int arity() {
+                return 0;
+            }
+
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                for (int i = 0; i < fanOut; i++) {
+                    produced.incrementAndGet();
+                    solutions.accept(arg.push(i));
+                }
+            }
+
+            public boolean isTransparent() {
+                return true;
+            }
+
+            public StackMapping getInverse() {
+                return new NullStackMapping();
+            }
+        };
+
+        Sink<RippleList> sink = stack -> {
+            producedAtFirstSolution.compareAndSet(-1, produced.get());
+            actual.accept(stack);
+        };
+
+        ParallelStackEvaluator parallel = new ParallelStackEvaluator(4, 16);
+        try {
+            // (/range /dup) -> (0 0), (1 1), ...
+            parallel.apply(createStack(mc, new Operator(range), new Dup(), Operator.OP), sink, mc);
+        } finally {
+            parallel.shutDown();
+        }
+
+        assertEquals(fanOut, actual.size());
+
+        // the first solutions were reduced before the mapping had produced all of its solutions
+        assertTrue(producedAtFirstSolution.get() < fanOut);
+
+        mc.close();
+    }
+
+    @Test
+    public void testBranchesAreReducedConcurrently() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        int width = 4;
+        ParallelStackEvaluator eval = new ParallelStackEvaluator(width, 0);
+        Collector<RippleList> actual = new Collector<>();
+
+        // each branch waits for another to arrive, which is possible only if branches run at the same time
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        StackMapping await = new TestMapping() {
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RippleException("branches were not reduced concurrently");
+                }
+
+                solutions.accept(arg);
+            }
+        };
+
+        RippleList list = mc.list();
+        for (int i = width - 1; i >= 0; i--) {
+            list = list.push(i);
+        }
+
+        RippleList input = createStack(mc, list, new Each(), Operator.OP, new Operator(await));
+        try {
+            eval.apply(input, actual, mc);
+        } finally {
+            eval.shutDown();
+        }
+        assertEquals(width, actual.size());
+
+        mc.close();
+    }
+
+    @Test
+    public void testFailedBranchAbandonsTheOthers() throws Exception {
+        ModelConnection mc = getTestModel().createConnection();
+        int width = 200;
+        ParallelStackEvaluator eval = new ParallelStackEvaluator(2, 0);
+
+        // the first branch to be reduced fails, while each of the others takes a little while
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final AtomicInteger started = new AtomicInteger(0);
+        final AtomicInteger running = new AtomicInteger(0);
+        StackMapping failOnce = new TestMapping() {
+            public void apply(final RippleList arg,
+                              final Sink<RippleList> solutions,
+                              final ModelConnection mc) throws RippleException {
+                started.incrementAndGet();
+                running.incrementAndGet();
+                try {
+                    if (failed.compareAndSet(false, true)) {
+                        throw new RippleException("branch failed");
+                    }
+
+                    Thread.sleep(20);
+                    solutions.accept(arg);
+                } catch (InterruptedException e) {
+                    throw new RippleException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+
+        RippleList list = mc.list();
+        for (int i = width - 1; i >= 0; i--) {
+            list = list.push(i);
+        }
+
+        RippleList input = createStack(mc, list, new Each(), Operator.OP, new Operator(failOnce));
+        try {
+            eval.apply(input, new Collector<>(), mc);
+            fail("evaluation should have failed");
+        } catch (RippleException e) {
+            assertEquals("branch failed", e.getMessage());
+        } finally {
+            eval.shutDown();
+        }
+
+        // no branch outlives the evaluation, and most are never started
+        assertEquals(0, running.get());
+        assertTrue(started.get() < width);
+
+        mc.close();
+    }
+
+    @Test
+    public void testQueryEngineUsesConfiguredEvaluator() throws Exception {
+        PrintStream out = new PrintStream(new NullOutputStream());
+
+        QueryEngine qe = new QueryEngine(getTestModel(), out, out);
+        try {
+            assertTrue(qe.getEvaluator() instanceof IterativeStackEvaluator);
+        } finally {
+            qe.shutDown();
+        }
+
+        Ripple.getConfiguration().setProperty(Ripple.PARALLEL_EVALUATION, "true");
+        try {
+            qe = new QueryEngine(getTestModel(), out, out);
+            try {
+                assertTrue(qe.getEvaluator() instanceof ParallelStackEvaluator);
+            } finally {
+                qe.shutDown();
+            }
+        } finally {
+            Ripple.getConfiguration().remove(Ripple.PARALLEL_EVALUATION);
+        }
+    }
+
+    // a mapping which waits for the top of the stack to be reduced, then leaves the stack alone
+    private abstract static class TestMapping implements StackMapping {
+        public int arity() {
+            return 1;
+        }
+
+        public boolean isTransparent() {
+            return false;
+        }
+
+        public StackMapping getInverse() {
+            return new NullStackMapping();
+        }
+    }
+}
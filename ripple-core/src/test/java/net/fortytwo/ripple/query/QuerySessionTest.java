@@ -0,0 +1,142 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.flow.Collector;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class QuerySessionTest extends RippleTestCase {
+    private static final int SESSIONS = 8;
+
+    @Test
+    public void testSessionsRunConcurrently() throws Exception {
+        final QueryEngine qe = getTestQueryEngine();
+        final CountDownLatch allOpen = new CountDownLatch(SESSIONS);
+        ExecutorService executor = Executors.newFixedThreadPool(SESSIONS);
+
+        try {
+            List<Future<List<Number>>> futures = new ArrayList<>();
+            for (int i = 0; i < SESSIONS; i++) {
+                final int n = i;
+                futures.add(executor.submit(() -> {
+                    QuerySession session = qe.openSession();
+                    try {
+                        ModelConnection mc = session.getConnection();
+                        assertNotSame(qe.getConnection(), mc);
+
+                        // each session evaluates a query while all of the others are open
+                        allOpen.countDown();
+                        assertTrue(allOpen.await(10, TimeUnit.SECONDS));
+
+                        Collector<RippleList> results = new Collector<>();
+                        QueryPipe pipe = new QueryPipe(session, results);
+                        pipe.accept("(1 2) each. " + n + " add.");
+                        pipe.close();
+
+                        List<Number> sums = new ArrayList<>();
+                        for (RippleList l : results) {
+                            sums.add(mc.toNumber(l.getFirst()));
+                        }
+                        sums.addAll(session.stream(n + " 10 mul.", StackSpliterator.Mode.DEPTH_FIRST)
+                                .map(l -> (Number) l.getFirst()).collect(Collectors.toList()));
+                        return sums;
+                    } finally {
+                        session.close();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < SESSIONS; i++) {
+                List<Number> sums = futures.get(i).get(30, TimeUnit.SECONDS);
+                assertEquals(3, sums.size());
+                assertEquals(i + 1, sums.get(0).intValue());
+                assertEquals(i + 2, sums.get(1).intValue());
+                assertEquals(i * 10, sums.get(2).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSessionsHaveTheirOwnEvaluatorsAndProfilers() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        QuerySession first = qe.openSession();
+        QuerySession second = qe.openSession();
+
+        try {
+            assertNotSame(qe.getEvaluator(), first.getEvaluator());
+            assertNotSame(first.getEvaluator(), second.getEvaluator());
+            assertSame(first.getEvaluator(), qe.getEvaluator(first.getConnection()));
+            assertSame(qe.getEvaluator(), qe.getEvaluator(qe.getConnection()));
+
+            // stopping the evaluator of one session does not stop the queries of another
+            first.getEvaluator().stop();
+            Collector<RippleList> results = new Collector<>();
+            QueryPipe pipe = new QueryPipe(second, results);
+            pipe.accept("(1 2) each.");
+            pipe.close();
+            assertEquals(2, results.size());
+
+            // profiling one session does not profile the others
+            first.setProfilingEnabled(true);
+            assertNotNull(first.getProfiler());
+            assertNotSame(qe.getProfiler(), first.getProfiler());
+            assertNull(second.getProfiler());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testPoolIsBoundedAndEvictsIdleConnections() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        ConnectionPool pool = new ConnectionPool(getTestModel(), qe.getLexicon(), 1, 200);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            ModelConnection first = pool.acquire();
+
+            // a second connection is not available until the first is released
+            Future<ModelConnection> second = executor.submit(pool::acquire);
+            Thread.sleep(100);
+            assertFalse(second.isDone());
+            pool.release(first, true);
+            assertSame(first, second.get(10, TimeUnit.SECONDS));
+
+            // a connection which has been idle for too long is closed, rather than reused
+            pool.release(first, true);
+            assertEquals(1, pool.getIdleCount());
+            Thread.sleep(400);
+            ModelConnection third = pool.acquire();
+            assertNotSame(first, third);
+            assertEquals(0, pool.getIdleCount());
+            pool.release(third, true);
+        } finally {
+            executor.shutdownNow();
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package net.fortytwo.ripple.query;
+
+import net.fortytwo.ripple.Ripple;
+import net.fortytwo.ripple.RippleException;
+import net.fortytwo.ripple.libs.math.Add;
+import net.fortytwo.ripple.model.ModelConnection;
+import net.fortytwo.ripple.model.Operator;
+import net.fortytwo.ripple.model.RippleList;
+import net.fortytwo.ripple.test.RippleTestCase;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public class StackSpliteratorTest extends RippleTestCase {
+    @Test
+    public void testDepthFirstOrder() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+
+        // each solution of the outer "each" is fully explored before the next one
+        List<Integer> results = topNumbers(
+                qe.stream("((1 2) (3 4)) each. each.", StackSpliterator.Mode.DEPTH_FIRST), qe.getConnection());
+        assertEquals(4, results.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 1, (int) results.get(i));
+        }
+    }
+
+    @Test
+    public void testBreadthFirst() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+
+        List<Integer> results = topNumbers(
+                qe.stream("(1 2 3) each. 10 add.", StackSpliterator.Mode.BREADTH_FIRST), qe.getConnection());
+        assertEquals(3, results.size());
+        assertTrue(results.contains(11));
+        assertTrue(results.contains(12));
+        assertTrue(results.contains(13));
+
+        assertEquals(0, qe.stream("() each.", StackSpliterator.Mode.BREADTH_FIRST).count());
+    }
+
+    @Test
+    public void testSolutionsAreComputedOnDemand() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        ModelConnection mc = qe.getConnection();
+
+        // applying (dup. both.) 30 times would produce over a billion solutions
+        RippleList first = qe.stream("42 (dup. both.) {30}", StackSpliterator.Mode.DEPTH_FIRST)
+                .findFirst().get();
+        assertEquals(42, mc.toNumber(first.getFirst()).intValue());
+
+        Iterator<RippleList> iter = qe.iterator(
+                first.push(1).push(new Add()).push(Operator.OP), StackSpliterator.Mode.DEPTH_FIRST);
+        assertTrue(iter.hasNext());
+        assertEquals(43, mc.toNumber(iter.next().getFirst()).intValue());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testParallelStream() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        ModelConnection mc = qe.getConnection();
+
+        // pending work is handed off to a new spliterator over the same connection
+        StackSpliterator s = new StackSpliterator(
+                qe.parse("(1 2 3 4 5 6 7 8 9 10) each. dup. mul.", mc), mc, StackSpliterator.Mode.BREADTH_FIRST);
+        Spliterator<RippleList> prefix = s.trySplit();
+        assertNotNull(prefix);
+        List<Integer> split = topNumbers(StreamSupport.stream(prefix, false), mc);
+        split.addAll(topNumbers(StreamSupport.stream(s, false), mc));
+        assertEquals(10, split.size());
+        assertEquals(385, split.stream().mapToInt(Integer::intValue).sum());
+
+        // a parallel stream uses a connection of its own, that of a session
+        QuerySession session = qe.openSession();
+        try {
+            ModelConnection sc = session.getConnection();
+            List<Integer> squares = topNumbers(session.stream(
+                    "(1 2 3 4 5 6 7 8 9 10) each. dup. mul.", StackSpliterator.Mode.BREADTH_FIRST).parallel(), sc);
+            assertEquals(10, squares.size());
+            assertEquals(385, squares.stream().mapToInt(Integer::intValue).sum());
+
+            // encounter order is preserved in depth-first mode
+            List<Integer> ordered = topNumbers(session.stream(
+                    "(1 2 3 4 5 6 7 8 9 10) each. 1 add.", StackSpliterator.Mode.DEPTH_FIRST).parallel(), sc);
+            assertEquals(10, ordered.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 2, (int) ordered.get(i));
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testOrderedOnlyWithoutAsynchronousQueries() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        ModelConnection mc = qe.getConnection();
+        RippleList stack = mc.list().push(1);
+
+        boolean async = Ripple.asynchronousQueries();
+        try {
+            Ripple.enableAsynchronousQueries(true);
+            assertFalse(new StackSpliterator(stack, mc, StackSpliterator.Mode.DEPTH_FIRST)
+                    .hasCharacteristics(Spliterator.ORDERED));
+
+            Ripple.enableAsynchronousQueries(false);
+            assertTrue(new StackSpliterator(stack, mc, StackSpliterator.Mode.DEPTH_FIRST)
+                    .hasCharacteristics(Spliterator.ORDERED));
+            assertFalse(new StackSpliterator(stack, mc, StackSpliterator.Mode.BREADTH_FIRST)
+                    .hasCharacteristics(Spliterator.ORDERED));
+
+            // encounter order is preserved
+            List<Integer> ordered = topNumbers(
+                    qe.stream("(1 2 3 4 5 6 7 8 9 10) each. 1 add.", StackSpliterator.Mode.DEPTH_FIRST), mc);
+            assertEquals(10, ordered.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 2, (int) ordered.get(i));
+            }
+        } finally {
+            Ripple.enableAsynchronousQueries(async);
+        }
+    }
+
+    @Test
+    public void testPredicateApplicationsAreBatched() throws Exception {
+        QueryEngine qe = getTestQueryEngine();
+        ModelConnection mc = qe.getConnection();
+
+        reduce("@prefix ex: <http://example.org/stackSpliteratorTest/>.");
+        reduce("ex:a ex:weight 1 assert. ex:weight 2 assert.");
+        reduce("ex:b ex:weight 10 assert.");
+
+        // several applications of the same predicate, some of them to the same subject
+        String query = "(ex:a ex:b ex:a ex:c) each. ex:weight.";
+        List<Integer> batched = topNumbers(qe.stream(query, StackSpliterator.Mode.BREADTH_FIRST), mc);
+        assertEquals(5, batched.size());
+        assertEquals(16, batched.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(batched.size(), qe.stream(query, StackSpliterator.Mode.DEPTH_FIRST).count());
+
+        assertReducesTo("(1 2 10) each. ex:weight~.", "ex:a", "ex:a", "ex:b");
+        assertReducesTo("(ex:a ex:b ex:a) each. ex:weight. 2 limit.", "1", "2");
+    }
+
+    private List<Integer> topNumbers(final Stream<RippleList> solutions,
+                                     final ModelConnection mc) throws RippleException {
+        List<Integer> numbers = new LinkedList<>();
+        for (RippleList s : solutions.collect(Collectors.toList())) {
+            numbers.add(mc.toNumber(s.getFirst()).intValue());
+        }
+
+        return numbers;
+    }
+}
@@ -6,9 +6,7 @@ import net.fortytwo.ripple.cli.RippleCommandLine;
 import net.fortytwo.ripple.config.SailConfiguration;
 import net.fortytwo.ripple.model.Model;
 import net.fortytwo.ripple.model.impl.sesame.SesameModel;
-import net.fortytwo.ripple.query.LazyStackEvaluator;
 import net.fortytwo.ripple.query.QueryEngine;
-import net.fortytwo.ripple.query.StackEvaluator;
 import org.apache.log4j.BasicConfigurator;
 import org.openrdf.sail.Sail;
 import org.slf4j.Logger;
@@ -44,10 +42,9 @@ public final class Demo {
         // Attach a Ripple model to the repository.
         Model model = new SesameModel(sail);
 
-        // Attach a query engine to the model.
-        StackEvaluator evaluator = new LazyStackEvaluator();
+        // Attach a query engine to the model, with the evaluator chosen by the configuration.
         QueryEngine qe
-                = new QueryEngine(model, evaluator, out, err);
+                = new QueryEngine(model, out, err);
 
         // Attach an interpreter to the query engine and let it query from
         // standard input.
@@ -55,6 +52,7 @@ public final class Demo {
         r.run();
 
         // Shut down.
+        qe.shutDown();
         model.shutDown();
     }
 
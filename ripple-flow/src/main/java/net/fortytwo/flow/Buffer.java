@@ -8,7 +8,7 @@ import net.fortytwo.ripple.RippleException;
  * @param <T> the type of data being passed
  * @author Joshua Shinavier (http://fortytwo.net)
  */
-public class Buffer<T> extends Collector<T> {
+public class Buffer<T> extends Collector<T> implements Demand {
     private final Sink<T> sink;
 
     /**
@@ -30,4 +30,12 @@ public class Buffer<T> extends Collector<T> {
 
         clear();
     }
+
+    /**
+     * @return whether the downstream sink wants no further data,
+     * in which case there is no need to collect any more data items
+     */
+    public boolean isSatisfied() {
+        return Demand.isSatisfied(sink);
+    }
 }
@@ -0,0 +1,26 @@
+package net.fortytwo.flow;
+
+/**
+ * A signal from a consumer of data (typically a <code>Sink</code>) to its producers,
+ * indicating whether any further data is wanted.
+ * Producers may check for demand before doing expensive work, and give up as soon as their results would
+ * only be discarded.  Demand is advisory: a consumer must still accept (and may ignore) any data it receives.
+ *
+ * @author Joshua Shinavier (http://fortytwo.net)
+ */
+public interface Demand {
+    /**
+     * @return whether this consumer has received all of the data it will ever need.
+     * Once satisfied, a consumer should remain satisfied.
+     */
+    boolean isSatisfied();
+
+    /**
+     * @param consumer a sink or other consumer of data, which may or may not signal its demand
+     * @return whether the consumer signals that it wants no further data.
+     * A consumer which does not signal its demand is never satisfied.
+     */
+    static boolean isSatisfied(final Object consumer) {
+        return consumer instanceof Demand && ((Demand) consumer).isSatisfied();
+    }
+}
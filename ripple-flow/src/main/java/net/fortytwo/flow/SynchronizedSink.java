@@ -9,7 +9,7 @@ import net.fortytwo.ripple.RippleException;
  * @param <T> the type of data being passed
  * @author Joshua Shinavier (http://fortytwo.net)
  */
-public class SynchronizedSink<T> implements Sink<T> {
+public class SynchronizedSink<T> implements Sink<T>, Demand {
     private final Object mutex;
     private final Sink<T> sink;
 
@@ -39,6 +39,13 @@ public class SynchronizedSink<T> implements Sink<T> {
         }
     }
 
+    /**
+     * @return whether the downstream sink wants no further data
+     */
+    public boolean isSatisfied() {
+        return Demand.isSatisfied(sink);
+    }
+
     /**
      * @return the mutex which this pipeline uses for synchronization
      */
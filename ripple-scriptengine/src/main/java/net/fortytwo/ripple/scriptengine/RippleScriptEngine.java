@@ -10,7 +10,6 @@ import net.fortytwo.ripple.model.impl.sesame.SesameModel;
 import net.fortytwo.ripple.query.LazyStackEvaluator;
 import net.fortytwo.ripple.query.QueryEngine;
 import net.fortytwo.ripple.query.QueryPipe;
-import net.fortytwo.ripple.query.StackEvaluator;
 import org.openrdf.model.BNode;
 import org.openrdf.model.IRI;
 import org.openrdf.model.Literal;
@@ -49,8 +48,7 @@ public class RippleScriptEngine implements ScriptEngine {
         // TODO: shutDown on failure
         model = new SesameModel(sailConfig.getSail());
 
-        StackEvaluator eval = new LazyStackEvaluator();
-        QueryEngine queryEngine = new QueryEngine(model, eval, System.out, System.err);
+        QueryEngine queryEngine = QueryEngine.withSessionEvaluators(model, LazyStackEvaluator::new, System.out, System.err);
 
         queryPipe = new QueryPipe(queryEngine, results);
     }